@@ -24,6 +24,7 @@ import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import onl.area51.gfs.grib2.Grib2File;
 import onl.area51.gfs.grib2.io.Grib2FileFilter;
+import onl.area51.gfs.grib2.io.MappedGribInputStream;
 import onl.area51.gfs.grib2.section.SectionType;
 import onl.area51.gfs.grib2.section.product.AbstractForecastProduct;
 import onl.area51.gfs.mapviewer.Main;
@@ -84,7 +85,7 @@ public class OpenGribAction
 
         MapViewer viewer = Main.getFrame();
 
-        Grib2File grib = new Grib2File( file );
+        Grib2File grib = new Grib2File( file, new MappedGribInputStream( file ) );
         Main.setGribFile( grib );
 
         // Replace the list model
@@ -18,24 +18,40 @@ package onl.area51.gfs.grib2;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
-import onl.area51.gfs.grib2.io.GribFileInputStream;
+import onl.area51.gfs.grib2.io.ChannelGribInputStream;
 import onl.area51.gfs.grib2.io.GribInputStream;
 import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.Header;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
 
 /**
- *
+ * A GRIB2 file.
+ * <p>
+ * Once open the content of each {@link DataSet} is read with positional access (see {@link GribInputStream#slice(long, long)}) rather than by seeking the
+ * shared stream, so different DataSet's may be decoded from different threads at the same time, e.g. via {@link #parallelStream()}. Code needing to read
+ * the file directly from another thread should use {@link #newInputStream()} which returns a cursor of its own.
+ * <p>
  * @author peter
  */
 public class Grib2File
         implements Closeable
 {
 
+    /**
+     * Number of messages parsed by each task in {@link #scanParallel(GribInputStream, boolean)}
+     */
+    private static final int BATCH_SIZE = 16;
+
     private final File file;
     private final GribInputStream gis;
 
@@ -44,15 +60,163 @@ public class Grib2File
 
     public Grib2File( File file )
             throws IOException
+    {
+        this( file, new ChannelGribInputStream( file ) );
+    }
+
+    /**
+     * Open a grib file using a specific {@link GribInputStream} implementation
+     * <p>
+     * @param file the file
+     * @param gis  stream of the file's content. This will be closed when this file is closed
+     * <p>
+     * @throws IOException
+     */
+    public Grib2File( File file, GribInputStream gis )
+            throws IOException
+    {
+        this( file, gis, scan( gis, false ) );
+    }
+
+    /**
+     * Open a grib file keeping only the messages accepted by a filter.
+     * <p>
+     * Only the header, Section 4 and the position of each section are read for each message, and for the messages kept their remaining sections are read
+     * when they are first used. Use {@link Grib2FileBuilder} to combine this with an index.
+     * <p>
+     * @param file   the file
+     * @param filter ProductFilter
+     * <p>
+     * @return Grib2File
+     * <p>
+     * @throws IOException
+     */
+    public static Grib2File open( File file, ProductFilter filter )
+            throws IOException
+    {
+        return new Grib2FileBuilder( file )
+                .filter( filter )
+                .build();
+    }
+
+    /**
+     * Create a grib file whose DataSet's have already been located, e.g. from a {@link Grib2Index}
+     * <p>
+     * @param file    the file
+     * @param gis     stream of the file's content. This will be closed when this file is closed
+     * @param entries DataSet's in file order
+     */
+    Grib2File( File file, GribInputStream gis, List<DataSet> entries )
     {
         this.file = file;
-        gis = new GribFileInputStream( file );
+        this.gis = gis;
 
+        for( DataSet dataSet: entries ) {
+            this.entries.add( dataSet );
+            index.put( this.entries.size(), dataSet );
+        }
+    }
+
+    /**
+     * Scan a stream for every DataSet within it
+     * <p>
+     * @param gis  stream
+     * @param lazy true to only record section positions, see {@link DataSet#DataSet(GribInputStream, boolean)}
+     * <p>
+     * @return list of DataSet's in file order
+     * <p>
+     * @throws IOException
+     */
+    static List<DataSet> scan( GribInputStream gis, boolean lazy )
+            throws IOException
+    {
+        final List<DataSet> entries = new ArrayList<>();
         while( gis.position() < gis.length() ) {
-            DataSet dataSet = new DataSet( gis );
-            entries.add( dataSet );
-            index.put( entries.size(), dataSet );
+            entries.add( new DataSet( gis, lazy ) );
         }
+        return entries;
+    }
+
+    /**
+     * Scan a stream for every DataSet within it in parallel.
+     * <p>
+     * First the position of each message is found by following the total length in each {@link Header}, then the messages are parsed in batches on the
+     * common {@link java.util.concurrent.ForkJoinPool}, each batch using its own cursor from {@link GribInputStream#duplicate()}. The result is identical to
+     * {@link #scan(GribInputStream, boolean)}.
+     * <p>
+     * Each batch's cursor is owned by the DataSet's parsed from it, which read their remaining sections and slice their data through it, so it is left open.
+     * Closing a duplicate never closes the underlying stream, it is released with the DataSet's, and the underlying stream is closed with the file.
+     * <p>
+     * @param gis  stream
+     * @param lazy true to only record section positions, see {@link DataSet#DataSet(GribInputStream, boolean)}
+     * <p>
+     * @return list of DataSet's in file order
+     * <p>
+     * @throws IOException
+     */
+    static List<DataSet> scanParallel( GribInputStream gis, boolean lazy )
+            throws IOException
+    {
+        final long[] offsets = locate( gis );
+        final int batches = (offsets.length + BATCH_SIZE - 1) / BATCH_SIZE;
+
+        try {
+            return IntStream.range( 0, batches )
+                    .parallel()
+                    .mapToObj( batch -> {
+                        try {
+                            // Owned by the DataSet's of this batch so not closed here
+                            final GribInputStream cursor = gis.duplicate();
+                            final int end = Math.min( offsets.length, (batch + 1) * BATCH_SIZE );
+                            final List<DataSet> l = new ArrayList<>( end - batch * BATCH_SIZE );
+                            for( int i = batch * BATCH_SIZE; i < end; i++ ) {
+                                cursor.seek( offsets[i] );
+                                l.add( new DataSet( cursor, lazy ) );
+                            }
+                            return l;
+                        }
+                        catch( IOException ex ) {
+                            throw new UncheckedIOException( ex );
+                        }
+                    } )
+                    .flatMap( List::stream )
+                    .collect( Collectors.toList() );
+        }
+        catch( UncheckedIOException ex ) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Locate the start of every message by reading just their headers
+     * <p>
+     * A message whose total length is shorter than its header or runs past the end of the stream fails rather than being followed, as such a length
+     * would otherwise never reach the end.
+     * <p>
+     * @param gis stream
+     * <p>
+     * @return position of each message in file order
+     * <p>
+     * @throws IOException
+     */
+    private static long[] locate( GribInputStream gis )
+            throws IOException
+    {
+        final LongStream.Builder offsets = LongStream.builder();
+        final long length = gis.length();
+        long pos = gis.position();
+        while( pos < length ) {
+            gis.seek( pos );
+            final Header header = new Header( gis );
+            final long totalLength = header.getTotalLength();
+            if( totalLength < Header.SIZE || pos + totalLength > length ) {
+                throw new IOException( "Invalid message length " + totalLength + " at " + pos + " in " + length );
+            }
+            offsets.add( pos );
+            pos += totalLength;
+        }
+        gis.seek( pos );
+        return offsets.build().toArray();
     }
 
     @Override
@@ -62,6 +226,21 @@ public class Grib2File
         gis.close();
     }
 
+    /**
+     * Returns a new cursor of this file, so reads from different threads do not interfere.
+     * <p>
+     * The cursor belongs to the caller who must close it, which does not close this file.
+     * <p>
+     * @return GribInputStream positioned at 0
+     * <p>
+     * @throws IOException
+     */
+    public GribInputStream newInputStream()
+            throws IOException
+    {
+        return gis.duplicate();
+    }
+
     public File getFile()
     {
         return file;
@@ -91,4 +270,14 @@ public class Grib2File
     {
         return entries.stream();
     }
+
+    /**
+     * A parallel stream of the entries in this file. It is safe to decode each entry's data from within this stream.
+     * <p>
+     * @return parallel Stream
+     */
+    public Stream<DataSet> parallelStream()
+    {
+        return entries.parallelStream();
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import onl.area51.gfs.grib2.io.ChannelGribInputStream;
+import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.io.MappedGribInputStream;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+
+/**
+ * Builder for opening a {@link Grib2File} with options other than the defaults used by {@link Grib2File#Grib2File(java.io.File)}.
+ * <p>
+ * <pre>
+ * Grib2File file = new Grib2FileBuilder( new File( "gfs.t06z.pgrb2.0p25.f012" ) )
+ *         .mapped()
+ *         .lazy()
+ *         .index()
+ *         .build();
+ * </pre>
+ * <p>
+ * @author peter
+ */
+public class Grib2FileBuilder
+{
+
+    private static final Logger LOG = Logger.getLogger( Grib2FileBuilder.class.getName() );
+
+    private final File file;
+    private boolean mapped;
+    private boolean index;
+    private boolean mapIndex;
+    private boolean groupIndex;
+    private boolean lazy;
+    private boolean parallel;
+    private ProductFilter filter;
+
+    public Grib2FileBuilder( File file )
+    {
+        this.file = file;
+    }
+
+    /**
+     * Memory map the file rather than reading it
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder mapped()
+    {
+        mapped = true;
+        return this;
+    }
+
+    /**
+     * Use the sidecar {@link Grib2Index}. If it is present and up to date the file is not scanned, otherwise the file is scanned and the index (re)written.
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder index()
+    {
+        index = true;
+        return this;
+    }
+
+    /**
+     * Use the sidecar {@link Grib2Index}, memory mapping it rather than reading it
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder mapIndex()
+    {
+        index = true;
+        mapIndex = true;
+        return this;
+    }
+
+    /**
+     * Use the sidecar {@link Grib2Index} including the {@link onl.area51.gfs.grib2.section.data.GroupIndex} of each complex packed message, so points and
+     * windows can be decoded without reading the whole Data Section. If the index was written without them the file is scanned and the index rewritten.
+     * <p>
+     * Building the group indexes decodes every complex packed message once, so this is only worth it when a file is read many times.
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder groupIndex()
+    {
+        index = true;
+        groupIndex = true;
+        return this;
+    }
+
+    /**
+     * Only record the position of each section when scanning, parsing sections the first time they are used. This reduces both the time taken to open the
+     * file and the memory used when only a few sections of each DataSet are needed, e.g. the product for filtering.
+     * <p>
+     * DataSet's created from an index are always lazy.
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder lazy()
+    {
+        lazy = true;
+        return this;
+    }
+
+    /**
+     * Scan the file in parallel. The message boundaries are found first from their headers alone, then the messages are parsed on the common ForkJoinPool.
+     * This is of most benefit with large concatenated archives.
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder parallel()
+    {
+        parallel = true;
+        return this;
+    }
+
+    /**
+     * Only keep the messages accepted by a filter. Scanning is lazy so only the header, Section 4 and the position of each section is read for the messages
+     * which are discarded. With {@link #index()} the filter is evaluated against the index so those messages are not read at all.
+     * <p>
+     * @param filter ProductFilter
+     * <p>
+     * @return this builder
+     */
+    public Grib2FileBuilder filter( ProductFilter filter )
+    {
+        this.filter = filter;
+        return this;
+    }
+
+    public Grib2File build()
+            throws IOException
+    {
+        final GribInputStream gis = mapped ? new MappedGribInputStream( file ) : new ChannelGribInputStream( file );
+        try {
+            List<DataSet> entries = null;
+
+            if( index ) {
+                final Grib2Index idx = Grib2Index.read( file, mapIndex );
+                if( idx != null && (idx.hasGroupIndexes() || !groupIndex) ) {
+                    entries = filter == null ? idx.toDataSets( gis ) : idx.toDataSets( gis, filter );
+                }
+            }
+
+            if( entries == null ) {
+                final boolean scanLazy = lazy || filter != null;
+                entries = parallel ? Grib2File.scanParallel( gis, scanLazy ) : Grib2File.scan( gis, scanLazy );
+
+                if( groupIndex ) {
+                    createGroupIndexes( entries );
+                }
+
+                if( index ) {
+                    try {
+                        Grib2Index.write( file, entries, groupIndex );
+                    }
+                    catch( IOException ex ) {
+                        // Not fatal, we just have to scan again next time
+                        LOG.log( Level.WARNING, "Failed to write index for " + file, ex );
+                    }
+                }
+
+                if( filter != null ) {
+                    entries = (parallel ? entries.parallelStream() : entries.stream())
+                            .filter( dataSet -> dataSet.matches( filter ) )
+                            .collect( Collectors.toList() );
+                }
+            }
+
+            return new Grib2File( file, gis, entries );
+        }
+        catch( IOException | RuntimeException ex ) {
+            gis.close();
+            throw ex;
+        }
+    }
+
+    private void createGroupIndexes( List<DataSet> entries )
+            throws IOException
+    {
+        try {
+            (parallel ? entries.parallelStream() : entries.stream()).forEach( dataSet -> {
+                try {
+                    dataSet.createGroupIndex();
+                }
+                catch( IOException ex ) {
+                    throw new UncheckedIOException( ex );
+                }
+            } );
+        }
+        catch( UncheckedIOException ex ) {
+            throw ex.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.Discipline;
+import onl.area51.gfs.grib2.section.Header;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.data.DataRepresentation;
+import onl.area51.gfs.grib2.section.data.GroupIndex;
+import onl.area51.gfs.grib2.section.data.TemplateType;
+import onl.area51.gfs.grib2.section.product.AbstractForecastProduct;
+import onl.area51.gfs.grib2.section.product.FixedSurfaceType;
+import onl.area51.gfs.grib2.section.product.ParameterCategory;
+import onl.area51.gfs.grib2.section.product.Product;
+import onl.area51.gfs.grib2.section.product.ProductDefinition;
+import onl.area51.gfs.grib2.section.product.ProductDefinitionTemplate;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+import onl.area51.gfs.grib2.section.product.UnitOfTimeRange;
+
+/**
+ * A sidecar index of a {@link Grib2File}, stored alongside it as {@code <file>.g2idx}.
+ * <p>
+ * The index holds the position of every message and of each section within it, plus the key product metadata so messages can be selected without reading
+ * the GRIB file. It is only valid whilst the size and last modified time of the GRIB file are the same as when the index was written.
+ * <p>
+ * The index is a 32 byte header followed by one fixed size record per message, so it can be memory mapped and any entry accessed directly. The
+ * {@link GroupIndex} of each complex packed message, if written, follows the records.
+ * <p>
+ * @author peter
+ */
+public class Grib2Index
+        extends AbstractList<Grib2Index.Entry>
+{
+
+    public static final String SUFFIX = ".g2idx";
+
+    private static final int MAGIC = 0x47324958;
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 112;
+
+    // Header flags
+    private static final int FLAG_GROUP_INDEX = 0x01;
+
+    // Record layout
+    private static final int OFF_OFFSET = 0;
+    private static final int OFF_TOTAL_LENGTH = 8;
+    private static final int OFF_DISCIPLINE = 16;
+    private static final int OFF_CATEGORY = 17;
+    private static final int OFF_PARAMETER = 18;
+    private static final int OFF_SURFACE_TYPE = 19;
+    private static final int OFF_SURFACE_SCALE = 20;
+    private static final int OFF_UNIT_TIME_RANGE = 21;
+    private static final int OFF_PRODUCT_TEMPLATE = 22;
+    private static final int OFF_SURFACE_VALUE = 24;
+    private static final int OFF_FORECAST_TIME = 28;
+    private static final int OFF_DATA_TEMPLATE = 32;
+    private static final int OFF_NO_DATA_POINTS = 36;
+    private static final int OFF_SECTIONS = 40;
+    private static final int OFF_GROUP_INDEX = 96;
+    private static final int OFF_GROUP_INDEX_LENGTH = 104;
+
+    private static final int MISSING_BYTE = 0xff;
+    private static final int MISSING_SHORT = 0xffff;
+
+    private final ByteBuffer buffer;
+    private final int size;
+
+    private Grib2Index( ByteBuffer buffer )
+    {
+        this.buffer = buffer;
+        this.size = buffer.getInt( 24 );
+    }
+
+    /**
+     * The index file for a GRIB file
+     * <p>
+     * @param file GRIB file
+     * <p>
+     * @return index file
+     */
+    public static File getIndexFile( File file )
+    {
+        return new File( file.getPath() + SUFFIX );
+    }
+
+    /**
+     * Read the index of a GRIB file.
+     * <p>
+     * @param file GRIB file
+     * @param map  true to memory map the index, false to read it into the heap
+     * <p>
+     * @return the index or null if there is no index or it is out of date
+     * <p>
+     * @throws IOException
+     */
+    public static Grib2Index read( File file, boolean map )
+            throws IOException
+    {
+        final File indexFile = getIndexFile( file );
+        if( !indexFile.isFile() ) {
+            return null;
+        }
+
+        final ByteBuffer b;
+        try( FileChannel channel = FileChannel.open( indexFile.toPath(), StandardOpenOption.READ ) ) {
+            final long length = channel.size();
+            if( length < HEADER_SIZE || length > Integer.MAX_VALUE ) {
+                return null;
+            }
+
+            if( map ) {
+                b = channel.map( FileChannel.MapMode.READ_ONLY, 0, length );
+            }
+            else {
+                b = ByteBuffer.allocate( (int) length );
+                while( b.hasRemaining() ) {
+                    if( channel.read( b ) < 0 ) {
+                        // Truncated since we took its size so it is being rewritten
+                        return null;
+                    }
+                }
+                b.flip();
+            }
+        }
+
+        if( b.limit() < HEADER_SIZE
+            || b.getInt( 0 ) != MAGIC
+            || b.getInt( 4 ) != VERSION
+            || b.getLong( 8 ) != file.length()
+            || b.getLong( 16 ) != file.lastModified()
+            || b.limit() < HEADER_SIZE + (long) b.getInt( 24 ) * RECORD_SIZE ) {
+            return null;
+        }
+
+        // Check each group index lies within the file, they are read only when a DataSet needs one
+        final int size = b.getInt( 24 );
+        final long records = HEADER_SIZE + (long) size * RECORD_SIZE;
+        for( int i = 0; i < size; i++ ) {
+            final int record = HEADER_SIZE + i * RECORD_SIZE;
+            final long offset = b.getLong( record + OFF_GROUP_INDEX );
+            final int length = b.getInt( record + OFF_GROUP_INDEX_LENGTH );
+            if( length != 0 && (offset < records || length < 0 || offset + length > b.limit()) ) {
+                return null;
+            }
+        }
+
+        return new Grib2Index( b );
+    }
+
+    /**
+     * Write the index of a GRIB file. The index is written to a temporary file first so a reader never sees a partial index.
+     * <p>
+     * @param file    GRIB file
+     * @param entries DataSet's within the file
+     * <p>
+     * @throws IOException
+     */
+    public static void write( File file, List<DataSet> entries )
+            throws IOException
+    {
+        write( file, entries, false );
+    }
+
+    /**
+     * Write the index of a GRIB file. The index is written to a temporary file first so a reader never sees a partial index.
+     * <p>
+     * @param file         GRIB file
+     * @param entries      DataSet's within the file
+     * @param groupIndexes true if every DataSet has had {@link DataSet#createGroupIndex()} called, so they are all written
+     * <p>
+     * @throws IOException
+     */
+    public static void write( File file, List<DataSet> entries, boolean groupIndexes )
+            throws IOException
+    {
+        long length = HEADER_SIZE + (long) entries.size() * RECORD_SIZE;
+        for( DataSet dataSet: entries ) {
+            final GroupIndex groupIndex = dataSet.getGroupIndex();
+            length += groupIndex == null ? 0 : groupIndex.byteSize();
+        }
+        if( length > Integer.MAX_VALUE ) {
+            throw new IOException( "Index of " + file + " too large" );
+        }
+
+        final ByteBuffer b = ByteBuffer.allocate( (int) length );
+        b.putInt( MAGIC )
+                .putInt( VERSION )
+                .putLong( file.length() )
+                .putLong( file.lastModified() )
+                .putInt( entries.size() )
+                .putInt( groupIndexes ? FLAG_GROUP_INDEX : 0 );
+
+        for( DataSet dataSet: entries ) {
+            writeEntry( b, dataSet );
+        }
+
+        // The group indexes follow the records
+        for( int i = 0; i < entries.size(); i++ ) {
+            final GroupIndex groupIndex = entries.get( i ).getGroupIndex();
+            if( groupIndex != null ) {
+                final int record = HEADER_SIZE + i * RECORD_SIZE;
+                b.putLong( record + OFF_GROUP_INDEX, b.position() );
+                b.putInt( record + OFF_GROUP_INDEX_LENGTH, groupIndex.byteSize() );
+                groupIndex.write( b );
+            }
+        }
+        b.flip();
+
+        final File indexFile = getIndexFile( file );
+        final File tempFile = new File( indexFile.getPath() + ".tmp" );
+        try( FileChannel channel = FileChannel.open( tempFile.toPath(),
+                                                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+            while( b.hasRemaining() ) {
+                channel.write( b );
+            }
+        }
+        Files.move( tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+
+    private static void writeEntry( ByteBuffer b, DataSet dataSet )
+    {
+        final int start = b.position();
+        final Header header = dataSet.getHeader();
+
+        b.putLong( start + OFF_OFFSET, dataSet.getPos() );
+        b.putLong( start + OFF_TOTAL_LENGTH, header.getTotalLength() );
+        b.put( start + OFF_DISCIPLINE, (byte) header.getDiscipline().getCode() );
+
+        final ProductDefinition prodDef = dataSet.get( SectionType.PRODUCT_DEFINITION );
+        b.putShort( start + OFF_PRODUCT_TEMPLATE, (short) (prodDef == null ? MISSING_SHORT : prodDef.getTemplate().getCode()) );
+        if( prodDef instanceof AbstractForecastProduct ) {
+            final AbstractForecastProduct<?> prod = (AbstractForecastProduct<?>) prodDef;
+            b.put( start + OFF_CATEGORY, (byte) prod.getParameterCategory().getCode() );
+            b.put( start + OFF_PARAMETER, (byte) (prod.getProduct() == null ? MISSING_BYTE : prod.getProduct().getCode()) );
+            b.put( start + OFF_SURFACE_TYPE, (byte) prod.getFirstFixedSurfaceType().getCode() );
+            b.put( start + OFF_SURFACE_SCALE, (byte) prod.getScaleFactorFirstFixedSurface() );
+            b.put( start + OFF_UNIT_TIME_RANGE, (byte) prod.getUnitTimeRange().getCode() );
+            b.putInt( start + OFF_SURFACE_VALUE, prod.getScaleValueFirstFixedSurface() );
+            b.putInt( start + OFF_FORECAST_TIME, prod.getForecastTime() );
+        }
+        else {
+            b.put( start + OFF_CATEGORY, (byte) MISSING_BYTE );
+            b.put( start + OFF_PARAMETER, (byte) MISSING_BYTE );
+            b.put( start + OFF_SURFACE_TYPE, (byte) MISSING_BYTE );
+            b.put( start + OFF_UNIT_TIME_RANGE, (byte) MISSING_BYTE );
+        }
+
+        final DataRepresentation rep = dataSet.get( SectionType.DATA_REPRESENTATION );
+        b.putShort( start + OFF_DATA_TEMPLATE, (short) (rep == null ? MISSING_SHORT : rep.getTemplateType().getCode()) );
+        b.putInt( start + OFF_NO_DATA_POINTS, rep == null ? 0 : rep.getNoDataPoints() );
+
+        for( SectionType type: SectionType.values() ) {
+            b.putLong( start + OFF_SECTIONS + (type.ordinal() << 3), dataSet.getSectionPos( type ) );
+        }
+
+        b.position( start + RECORD_SIZE );
+    }
+
+    /**
+     * Create the DataSet's described by this index. No sections are read until they are used.
+     * <p>
+     * @param gis stream of the GRIB file
+     * <p>
+     * @return list of DataSet's in file order
+     */
+    public List<DataSet> toDataSets( GribInputStream gis )
+    {
+        final List<DataSet> entries = new ArrayList<>( size );
+        for( Entry e: this ) {
+            entries.add( e.toDataSet( gis ) );
+        }
+        return entries;
+    }
+
+    /**
+     * Create the DataSet's described by this index which are accepted by a filter. The filter is evaluated against the index alone so nothing is read from
+     * the GRIB file.
+     * <p>
+     * @param gis    stream of the GRIB file
+     * @param filter ProductFilter
+     * <p>
+     * @return list of DataSet's in file order
+     */
+    public List<DataSet> toDataSets( GribInputStream gis, ProductFilter filter )
+    {
+        final List<DataSet> entries = new ArrayList<>();
+        for( Entry e: this ) {
+            if( e.matches( filter ) ) {
+                entries.add( e.toDataSet( gis ) );
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Were the group indexes of the messages written with this index. If not {@link Entry#getGroupIndex()} is always null.
+     * <p>
+     * @return true if group indexes are present
+     */
+    public boolean hasGroupIndexes()
+    {
+        return (buffer.getInt( 28 ) & FLAG_GROUP_INDEX) != 0;
+    }
+
+    @Override
+    public Entry get( int index )
+    {
+        if( index < 0 || index >= size ) {
+            throw new IndexOutOfBoundsException( "Index " + index + " size " + size );
+        }
+        return new Entry( HEADER_SIZE + index * RECORD_SIZE );
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * An entry in the index. This is a view of the underlying index so creating one reads nothing.
+     */
+    public final class Entry
+    {
+
+        private final int pos;
+
+        private Entry( int pos )
+        {
+            this.pos = pos;
+        }
+
+        private int getByte( int off )
+        {
+            return buffer.get( pos + off ) & 0xff;
+        }
+
+        public long getOffset()
+        {
+            return buffer.getLong( pos + OFF_OFFSET );
+        }
+
+        public long getTotalLength()
+        {
+            return buffer.getLong( pos + OFF_TOTAL_LENGTH );
+        }
+
+        public Discipline getDiscipline()
+        {
+            return Discipline.lookup( getByte( OFF_DISCIPLINE ) );
+        }
+
+        /**
+         * The product definition template or null if the message has no Section 4
+         * <p>
+         * @return ProductDefinitionTemplate
+         */
+        public ProductDefinitionTemplate getProductTemplate()
+        {
+            final int code = buffer.getShort( pos + OFF_PRODUCT_TEMPLATE ) & 0xffff;
+            return code == MISSING_SHORT ? null : ProductDefinitionTemplate.lookup( code );
+        }
+
+        public ParameterCategory getParameterCategory()
+        {
+            return ParameterCategory.lookup( getDiscipline().getCode(), getByte( OFF_CATEGORY ) );
+        }
+
+        public <P extends Product> P getProduct()
+        {
+            return getParameterCategory().lookupProduct( getByte( OFF_PARAMETER ) );
+        }
+
+        public FixedSurfaceType getFirstFixedSurfaceType()
+        {
+            return FixedSurfaceType.lookup( getByte( OFF_SURFACE_TYPE ) );
+        }
+
+        public BigDecimal getFirstFixedSurface()
+        {
+            return BigDecimal.valueOf( buffer.getInt( pos + OFF_SURFACE_VALUE ), getByte( OFF_SURFACE_SCALE ) );
+        }
+
+        public UnitOfTimeRange getUnitTimeRange()
+        {
+            return UnitOfTimeRange.lookup( getByte( OFF_UNIT_TIME_RANGE ) );
+        }
+
+        public int getForecastTime()
+        {
+            return buffer.getInt( pos + OFF_FORECAST_TIME );
+        }
+
+        /**
+         * The data representation template or null if the message has no Section 5
+         * <p>
+         * @return TemplateType
+         */
+        public TemplateType getDataTemplate()
+        {
+            final int code = buffer.getShort( pos + OFF_DATA_TEMPLATE ) & 0xffff;
+            return code == MISSING_SHORT ? null : TemplateType.lookup( code );
+        }
+
+        public int getNoDataPoints()
+        {
+            return buffer.getInt( pos + OFF_NO_DATA_POINTS );
+        }
+
+        /**
+         * The position of a section within the GRIB file
+         * <p>
+         * @param type SectionType
+         * <p>
+         * @return position or -1 if not present
+         */
+        public long getSectionPos( SectionType type )
+        {
+            return buffer.getLong( pos + OFF_SECTIONS + (type.ordinal() << 3) );
+        }
+
+        /**
+         * Does the message have a {@link GroupIndex} in this index
+         * <p>
+         * @return true if {@link #getGroupIndex()} is not null
+         */
+        public boolean hasGroupIndex()
+        {
+            return buffer.getInt( pos + OFF_GROUP_INDEX_LENGTH ) != 0;
+        }
+
+        /**
+         * The {@link GroupIndex} of the message, a new view of this index. Its position was checked when the index was read.
+         * <p>
+         * @return GroupIndex or null if the message has none
+         * <p>
+         * @throws IOException if the GroupIndex is invalid
+         */
+        public GroupIndex getGroupIndex()
+                throws IOException
+        {
+            if( !hasGroupIndex() ) {
+                return null;
+            }
+            final int offset = (int) buffer.getLong( pos + OFF_GROUP_INDEX );
+            final ByteBuffer b = buffer.duplicate();
+            b.limit( offset + buffer.getInt( pos + OFF_GROUP_INDEX_LENGTH ) ).position( offset );
+            return GroupIndex.read( b );
+        }
+
+        /**
+         * Test this entry against a filter using only the index
+         * <p>
+         * @param filter ProductFilter
+         * <p>
+         * @return true if the filter accepts this entry
+         */
+        public boolean matches( ProductFilter filter )
+        {
+            if( getByte( OFF_CATEGORY ) == MISSING_BYTE ) {
+                return filter.test( getDiscipline(), ParameterCategory.MISSING, null, FixedSurfaceType.MISSING, null, -1 );
+            }
+            return filter.test( getDiscipline(), getParameterCategory(), getProduct(), getFirstFixedSurfaceType(), getFirstFixedSurface(), getForecastTime() );
+        }
+
+        public DataSet toDataSet( GribInputStream gis )
+        {
+            final long[] sectionPos = new long[SectionType.values().length];
+            for( SectionType type: SectionType.values() ) {
+                sectionPos[type.ordinal()] = getSectionPos( type );
+            }
+            // The GroupIndex is read when the DataSet first needs it
+            return new DataSet( gis, new Header( getOffset(), getDiscipline(), 2, getTotalLength() ), sectionPos,
+                                hasGroupIndex() ? ds -> getGroupIndex() : null );
+        }
+    }
+}
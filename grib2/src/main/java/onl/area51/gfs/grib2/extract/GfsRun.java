@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.Grib2FileBuilder;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.grid.Interpolation;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+
+/**
+ * The files of one cycle of a GFS forecast run, one per forecast hour named like {@code gfs.t06z.pgrb2.0p25.f012}.
+ * <p>
+ * Time series for many stations and parameters are extracted with {@link #extract(double[], double[], ProductFilter, Interpolation)}. The files are
+ * opened and scanned in parallel and only the messages accepted by the filter are read.
+ * <p>
+ * Nothing is written to the directory unless {@link #setIndex(boolean)} is set. Then with a sidecar {@link onl.area51.gfs.grib2.Grib2Index} the filter is
+ * evaluated against the index, otherwise the index is written on the first extraction so later ones do not scan the files.
+ * <p>
+ * <pre>
+ * GfsRun run = new GfsRun( new File( "/data/gfs/20150601" ), 6 );
+ * Meteogram meteogram = run.extract( lats, lons, ProductFilter.product( Temperature.TMP ), Interpolation.BILINEAR );
+ * </pre>
+ * <p>
+ * @author peter
+ */
+public final class GfsRun
+{
+
+    private static final Logger LOG = Logger.getLogger( GfsRun.class.getName() );
+
+    private static final Pattern FILE_NAME = Pattern.compile( "gfs\\.t(\\d{2})z\\.pgrb2\\.([0-9a-z]+)\\.f(\\d{3})" );
+
+    private final int cycle;
+    private final String resolution;
+    // File of each forecast hour
+    private final SortedMap<Integer, File> files = new TreeMap<>();
+    private volatile boolean index;
+
+    /**
+     * The 0.25 degree files of a cycle
+     * <p>
+     * @param directory directory holding the files
+     * @param cycle     hour of the cycle, 0, 6, 12 or 18
+     * <p>
+     * @throws IOException if the directory cannot be read
+     */
+    public GfsRun( File directory, int cycle )
+            throws IOException
+    {
+        this( directory, cycle, "0p25" );
+    }
+
+    /**
+     * The files of a cycle
+     * <p>
+     * @param directory  directory holding the files
+     * @param cycle      hour of the cycle, 0, 6, 12 or 18
+     * @param resolution resolution of the files, e.g. 0p25, 0p50 or 1p00
+     * <p>
+     * @throws IOException if the directory cannot be read
+     */
+    public GfsRun( File directory, int cycle, String resolution )
+            throws IOException
+    {
+        this.cycle = cycle;
+        this.resolution = resolution;
+
+        final File[] list = directory.listFiles();
+        if( list == null ) {
+            throw new IOException( "Cannot read " + directory );
+        }
+        for( File file: list ) {
+            final Matcher m = FILE_NAME.matcher( file.getName() );
+            if( m.matches() && Integer.parseInt( m.group( 1 ) ) == cycle && m.group( 2 ).equals( resolution ) && file.isFile() ) {
+                files.put( Integer.parseInt( m.group( 3 ) ), file );
+            }
+        }
+    }
+
+    /**
+     * The name of the file of a forecast hour
+     * <p>
+     * @param cycle      hour of the cycle
+     * @param resolution resolution, e.g. 0p25
+     * @param hour       forecast hour
+     * <p>
+     * @return file name
+     */
+    public static String getFileName( int cycle, String resolution, int hour )
+    {
+        return String.format( "gfs.t%02dz.pgrb2.%s.f%03d", cycle, resolution, hour );
+    }
+
+    public int getCycle()
+    {
+        return cycle;
+    }
+
+    public String getResolution()
+    {
+        return resolution;
+    }
+
+    /**
+     * Does extraction use the sidecar index of each file
+     * <p>
+     * @return true if the index is read, or written when missing or out of date
+     */
+    public boolean isIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Use the sidecar {@link onl.area51.gfs.grib2.Grib2Index} of each file, writing it alongside the file when it is missing or out of date. Off by
+     * default so the directory is only read.
+     * <p>
+     * @param index true to use the index
+     * <p>
+     * @return this
+     */
+    public GfsRun setIndex( boolean index )
+    {
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * The forecast hours with a file
+     * <p>
+     * @return hours in ascending order
+     */
+    public int[] getForecastHours()
+    {
+        return files.keySet().stream().mapToInt( Integer::intValue ).toArray();
+    }
+
+    /**
+     * The file of a forecast hour
+     * <p>
+     * @param hour forecast hour
+     * <p>
+     * @return file or null if there is none
+     */
+    public File getFile( int hour )
+    {
+        return files.get( hour );
+    }
+
+    /**
+     * Extract the time series of the parameters accepted by a filter at a set of stations from every file of this run.
+     * <p>
+     * The files are processed in parallel, each being opened with its index if {@link #isIndex()}, only the messages accepted by the filter read and the
+     * stations extracted with a {@link StationExtractor} shared between them so the interpolation weights are only found once.
+     * <p>
+     * Each {@link Parameter} is a series of the meteogram, so accumulations or averages over different time ranges are separate series. Where a file
+     * holds more than one message for the same parameter with the same values, as GFS does for the 0-6 hour accumulations, one is used. If their values
+     * differ the first is used and a warning logged.
+     * <p>
+     * @param lats          latitude of each station in degrees
+     * @param lons          longitude of each station in degrees
+     * @param filter        ProductFilter selecting the parameters
+     * @param interpolation Interpolation
+     * <p>
+     * @return Meteogram
+     * <p>
+     * @throws IOException
+     */
+    public Meteogram extract( double[] lats, double[] lons, ProductFilter filter, Interpolation interpolation )
+            throws IOException
+    {
+        final StationExtractor extractor = new StationExtractor( lats, lons, interpolation );
+        final int[] hours = getForecastHours();
+        final StationMatrix[] matrices = new StationMatrix[hours.length];
+        // The parameter of each column of each matrix, found whilst the file is open
+        final Parameter[][] columns = new Parameter[hours.length][];
+
+        try {
+            IntStream.range( 0, hours.length ).parallel().forEach( h -> {
+                final Grib2FileBuilder builder = new Grib2FileBuilder( files.get( hours[h] ) ).mapped().filter( filter );
+                if( index ) {
+                    builder.index();
+                }
+                try( Grib2File file = builder.build() ) {
+                    matrices[h] = extractor.extract( file );
+                    columns[h] = matrices[h].getParameters().stream().map( Parameter::of ).toArray( Parameter[]::new );
+                }
+                catch( IOException ex ) {
+                    throw new UncheckedIOException( ex );
+                }
+            } );
+        }
+        catch( UncheckedIOException ex ) {
+            throw ex.getCause();
+        }
+
+        // Parameters in the order first seen
+        final Map<Parameter, Integer> parameters = new LinkedHashMap<>();
+        for( Parameter[] c: columns ) {
+            for( Parameter p: c ) {
+                if( p != null ) {
+                    parameters.putIfAbsent( p, parameters.size() );
+                }
+            }
+        }
+
+        final Meteogram meteogram = new Meteogram( lats.length, new ArrayList<>( parameters.keySet() ), hours );
+        for( int h = 0; h < hours.length; h++ ) {
+            final StationMatrix matrix = matrices[h];
+            // The column used for each parameter of this file
+            final Map<Parameter, Integer> used = new HashMap<>();
+            for( int c = 0; c < columns[h].length; c++ ) {
+                final Parameter p = columns[h][c];
+                if( p == null ) {
+                    continue;
+                }
+                final Integer first = used.putIfAbsent( p, c );
+                if( first != null ) {
+                    if( !isSameColumn( matrix, first, c ) ) {
+                        LOG.log( Level.WARNING, "{0} has more than one {1} with different values, using the first",
+                                 new Object[]{ files.get( hours[h] ), p } );
+                    }
+                    continue;
+                }
+                final int parameter = parameters.get( p );
+                for( int s = 0; s < lats.length; s++ ) {
+                    meteogram.set( s, parameter, h, matrix.get( s, c ) );
+                }
+            }
+        }
+        return meteogram;
+    }
+
+    private static boolean isSameColumn( StationMatrix matrix, int a, int b )
+    {
+        for( int s = 0; s < matrix.getStations(); s++ ) {
+            if( Float.compare( matrix.get( s, a ), matrix.get( s, b ) ) != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GfsRun[t" + String.format( "%02d", cycle ) + "z " + resolution + " " + files.size() + " files]";
+    }
+
+}
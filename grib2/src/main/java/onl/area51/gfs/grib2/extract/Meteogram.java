@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time series of a set of parameters at a set of stations over the forecast hours of a run, held in one float[] so the series of a station and parameter
+ * is contiguous.
+ * <p>
+ * @author peter
+ */
+public final class Meteogram
+{
+
+    private final int stations;
+    private final List<Parameter> parameters;
+    private final int[] hours;
+    private final float[] values;
+
+    /**
+     * @param stations   number of stations
+     * @param parameters the parameters
+     * @param hours      forecast hours in ascending order
+     */
+    Meteogram( int stations, List<Parameter> parameters, int[] hours )
+    {
+        this.stations = stations;
+        this.parameters = Collections.unmodifiableList( parameters );
+        this.hours = hours.clone();
+        values = new float[stations * parameters.size() * hours.length];
+        Arrays.fill( values, Float.NaN );
+    }
+
+    void set( int station, int parameter, int hour, float value )
+    {
+        values[index( station, parameter ) + hour] = value;
+    }
+
+    private int index( int station, int parameter )
+    {
+        if( station < 0 || station >= stations || parameter < 0 || parameter >= parameters.size() ) {
+            throw new IndexOutOfBoundsException( "Station " + station + " parameter " + parameter + " of " + stations + "x" + parameters.size() );
+        }
+        return (station * parameters.size() + parameter) * hours.length;
+    }
+
+    public int getStations()
+    {
+        return stations;
+    }
+
+    /**
+     * The parameters found in the run, in the order first seen
+     * <p>
+     * @return unmodifiable list of parameters
+     */
+    public List<Parameter> getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * The forecast hours of the series
+     * <p>
+     * @return copy of the hours in ascending order
+     */
+    public int[] getHours()
+    {
+        return hours.clone();
+    }
+
+    /**
+     * The value of a parameter at a station for one forecast hour
+     * <p>
+     * @param station   station
+     * @param parameter index in {@link #getParameters()}
+     * @param hour      index in {@link #getHours()}
+     * <p>
+     * @return value, NaN if the parameter is not in that hour's file or the station has no value
+     */
+    public float get( int station, int parameter, int hour )
+    {
+        if( hour < 0 || hour >= hours.length ) {
+            throw new IndexOutOfBoundsException( "Hour " + hour + " of " + hours.length );
+        }
+        return values[index( station, parameter ) + hour];
+    }
+
+    /**
+     * The time series of a parameter at a station
+     * <p>
+     * @param station   station
+     * @param parameter index in {@link #getParameters()}
+     * <p>
+     * @return value for each of {@link #getHours()}
+     */
+    public float[] getSeries( int station, int parameter )
+    {
+        final int i = index( station, parameter );
+        return Arrays.copyOfRange( values, i, i + hours.length );
+    }
+
+    /**
+     * The time series of a parameter at a station
+     * <p>
+     * @param station   station
+     * @param parameter the parameter
+     * <p>
+     * @return value for each of {@link #getHours()} or null if the parameter was not found
+     */
+    public float[] getSeries( int station, Parameter parameter )
+    {
+        final int p = parameters.indexOf( parameter );
+        return p < 0 ? null : getSeries( station, p );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Meteogram[" + stations + " stations x " + parameters.size() + " parameters x " + hours.length + " hours]";
+    }
+
+}
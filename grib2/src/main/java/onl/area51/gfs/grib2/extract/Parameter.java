@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.product.AbstractForecastProduct;
+import onl.area51.gfs.grib2.section.product.AverageAccumulationExtremeValues;
+import onl.area51.gfs.grib2.section.product.AverageAccumulationExtremeValues.TimeRange;
+import onl.area51.gfs.grib2.section.product.FixedSurfaceType;
+import onl.area51.gfs.grib2.section.product.ParameterCategory;
+import onl.area51.gfs.grib2.section.product.Product;
+import onl.area51.gfs.grib2.section.product.ProductDefinition;
+import onl.area51.gfs.grib2.section.product.StatisticalProcess;
+import onl.area51.gfs.grib2.section.product.UnitOfTimeRange;
+
+/**
+ * A parameter of a forecast independent of its forecast time, i.e. the product at a fixed surface or in a layer between two, so the same parameter can be
+ * matched between the files of a forecast run.
+ * <p>
+ * A statistically processed product, Template 4.8, also has the process and the length of its outermost time range so for example a 6 hour and a 12 hour
+ * accumulation of precipitation are different parameters. The start of the time range is the forecast time so is not part of the parameter.
+ * <p>
+ * @author peter
+ */
+public final class Parameter
+{
+
+    private final ParameterCategory category;
+    private final Product product;
+    private final FixedSurfaceType surfaceType;
+    private final BigDecimal surface;
+    private final FixedSurfaceType secondSurfaceType;
+    private final BigDecimal secondSurface;
+    private final StatisticalProcess statisticalProcess;
+    private final UnitOfTimeRange timeRangeUnit;
+    private final int timeRange;
+
+    /**
+     * A parameter at a fixed surface at a point in time
+     * <p>
+     * @param category    ParameterCategory
+     * @param product     Product
+     * @param surfaceType type of the surface
+     * @param surface     value of the surface
+     */
+    public Parameter( ParameterCategory category, Product product, FixedSurfaceType surfaceType, BigDecimal surface )
+    {
+        this( category, product, surfaceType, surface, FixedSurfaceType.MISSING, null, null, UnitOfTimeRange.MISSING, 0 );
+    }
+
+    /**
+     * @param category           ParameterCategory
+     * @param product            Product
+     * @param surfaceType        type of the first surface
+     * @param surface            value of the first surface
+     * @param secondSurfaceType  type of the second surface, {@link FixedSurfaceType#MISSING} if none
+     * @param secondSurface      value of the second surface, ignored if there is none
+     * @param statisticalProcess StatisticalProcess or null if not statistically processed
+     * @param timeRangeUnit      unit of the time range, ignored if not statistically processed
+     * @param timeRange          length of the time range over which the statistical process is done
+     */
+    public Parameter( ParameterCategory category, Product product, FixedSurfaceType surfaceType, BigDecimal surface,
+                      FixedSurfaceType secondSurfaceType, BigDecimal secondSurface,
+                      StatisticalProcess statisticalProcess, UnitOfTimeRange timeRangeUnit, int timeRange )
+    {
+        this.category = category;
+        this.product = product;
+        this.surfaceType = surfaceType;
+        // So 500 and 500.0 are the same surface
+        this.surface = surface == null ? null : surface.stripTrailingZeros();
+        this.secondSurfaceType = secondSurfaceType;
+        this.secondSurface = secondSurfaceType == FixedSurfaceType.MISSING || secondSurface == null ? null : secondSurface.stripTrailingZeros();
+        this.statisticalProcess = statisticalProcess;
+        this.timeRangeUnit = statisticalProcess == null ? UnitOfTimeRange.MISSING : timeRangeUnit;
+        this.timeRange = statisticalProcess == null ? 0 : timeRange;
+    }
+
+    /**
+     * The parameter of a DataSet
+     * <p>
+     * @param dataSet DataSet
+     * <p>
+     * @return Parameter or null if the DataSet is not a forecast product
+     */
+    public static Parameter of( DataSet dataSet )
+    {
+        final ProductDefinition prodDef = dataSet.get( SectionType.PRODUCT_DEFINITION );
+        if( !(prodDef instanceof AbstractForecastProduct) ) {
+            return null;
+        }
+        final AbstractForecastProduct<?> prod = (AbstractForecastProduct<?>) prodDef;
+
+        StatisticalProcess process = null;
+        UnitOfTimeRange unit = UnitOfTimeRange.MISSING;
+        int length = 0;
+        if( prod instanceof AverageAccumulationExtremeValues ) {
+            final TimeRange range = ((AverageAccumulationExtremeValues<?>) prod).getOutermostTimeRange();
+            if( range != null ) {
+                process = range.getStatisticalProcess();
+                unit = range.getUnitOfTimeRange();
+                length = range.getLengthTimeRangeStatProcessingDone();
+            }
+        }
+
+        return new Parameter( prod.getParameterCategory(), prod.getProduct(), prod.getFirstFixedSurfaceType(), prod.getFirstFixedSurface(),
+                              prod.getSecondFixedSurfaceType(), prod.getSecondFixedSurface(), process, unit, length );
+    }
+
+    public ParameterCategory getCategory()
+    {
+        return category;
+    }
+
+    public <P extends Product> P getProduct()
+    {
+        return (P) product;
+    }
+
+    public FixedSurfaceType getSurfaceType()
+    {
+        return surfaceType;
+    }
+
+    public BigDecimal getSurface()
+    {
+        return surface;
+    }
+
+    public FixedSurfaceType getSecondSurfaceType()
+    {
+        return secondSurfaceType;
+    }
+
+    /**
+     * @return value of the second surface or null if there is none
+     */
+    public BigDecimal getSecondSurface()
+    {
+        return secondSurface;
+    }
+
+    /**
+     * @return StatisticalProcess or null if this is not statistically processed
+     */
+    public StatisticalProcess getStatisticalProcess()
+    {
+        return statisticalProcess;
+    }
+
+    public UnitOfTimeRange getTimeRangeUnit()
+    {
+        return timeRangeUnit;
+    }
+
+    /**
+     * @return length of the time range of the statistical process, 0 if none
+     */
+    public int getTimeRange()
+    {
+        return timeRange;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( category, product, surfaceType, surface, secondSurfaceType, secondSurface, statisticalProcess, timeRangeUnit, timeRange );
+    }
+
+    @Override
+    public boolean equals( Object obj )
+    {
+        if( this == obj ) {
+            return true;
+        }
+        if( !(obj instanceof Parameter) ) {
+            return false;
+        }
+        final Parameter other = (Parameter) obj;
+        return category == other.category
+               && Objects.equals( product, other.product )
+               && surfaceType == other.surfaceType
+               && Objects.equals( surface, other.surface )
+               && secondSurfaceType == other.secondSurfaceType
+               && Objects.equals( secondSurface, other.secondSurface )
+               && statisticalProcess == other.statisticalProcess
+               && timeRangeUnit == other.timeRangeUnit
+               && timeRange == other.timeRange;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (product == null ? category.toString() : product.getAbbrev())
+               + " " + surfaceType + (surface == null ? "" : " " + surface.toPlainString())
+               + (secondSurface == null ? "" : " - " + secondSurfaceType + " " + secondSurface.toPlainString())
+               + (statisticalProcess == null ? "" : " " + timeRange + " " + timeRangeUnit.getLabel() + " " + statisticalProcess.getAbbrev());
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.grid.GridPoints;
+import onl.area51.gfs.grib2.section.grid.Interpolation;
+import onl.area51.gfs.grib2.section.grid.LatLongGrid;
+
+/**
+ * Extracts the values of a fixed set of stations from many DataSet's at once.
+ * <p>
+ * The grid points and interpolation weights of the stations are found once per grid and reused for every DataSet on that grid. Each DataSet is then read
+ * once, decoding only the grid points the stations need, and the results written to a {@link StationMatrix}. DataSet's are processed in parallel on the
+ * common ForkJoinPool.
+ * <p>
+ * <pre>
+ * StationExtractor extractor = new StationExtractor( lats, lons, Interpolation.BILINEAR );
+ * try( Grib2File file = Grib2File.open( new File( "gfs.t06z.pgrb2.0p25.f012" ), filter ) ) {
+ *     StationMatrix matrix = extractor.extract( file );
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * A StationExtractor is thread safe so may be shared, e.g. between the files of a forecast run.
+ * <p>
+ * @author peter
+ */
+public final class StationExtractor
+{
+
+    private final double[] lats;
+    private final double[] lons;
+    private final Interpolation interpolation;
+    private final Map<List<Object>, GridPoints> points = new ConcurrentHashMap<>();
+
+    /**
+     * @param lats          latitude of each station in degrees
+     * @param lons          longitude of each station in degrees
+     * @param interpolation Interpolation
+     */
+    public StationExtractor( double[] lats, double[] lons, Interpolation interpolation )
+    {
+        if( lats.length != lons.length ) {
+            throw new IllegalArgumentException( "Have " + lats.length + " latitudes but " + lons.length + " longitudes" );
+        }
+        this.lats = lats.clone();
+        this.lons = lons.clone();
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * The number of stations
+     * <p>
+     * @return number of stations
+     */
+    public int getStations()
+    {
+        return lats.length;
+    }
+
+    /**
+     * The grid points and weights of the stations on a grid. These are found the first time a grid is seen and reused for any grid of the same geometry.
+     * <p>
+     * @param grid LatLongGrid
+     * <p>
+     * @return GridPoints
+     */
+    public GridPoints getPoints( LatLongGrid grid )
+    {
+        return points.computeIfAbsent( getKey( grid ), k -> grid.getPoints( lats, lons, interpolation ) );
+    }
+
+    /**
+     * Extract the stations from every DataSet in a file
+     * <p>
+     * @param file Grib2File, e.g. opened with a ProductFilter to select the parameters
+     * <p>
+     * @return StationMatrix with a column per DataSet in file order
+     * <p>
+     * @throws IOException
+     */
+    public StationMatrix extract( Grib2File file )
+            throws IOException
+    {
+        return extract( file.stream().collect( Collectors.toList() ) );
+    }
+
+    /**
+     * Extract the stations from a list of DataSet's
+     * <p>
+     * @param dataSets DataSet's, each becoming a column of the matrix
+     * <p>
+     * @return StationMatrix
+     * <p>
+     * @throws IOException
+     */
+    public StationMatrix extract( List<DataSet> dataSets )
+            throws IOException
+    {
+        final StationMatrix matrix = new StationMatrix( lats.length, dataSets );
+        final float[] values = matrix.getValues();
+        final int stations = lats.length;
+        final int columns = dataSets.size();
+        try {
+            IntStream.range( 0, columns ).parallel().forEach( column -> {
+                try {
+                    final DataSet dataSet = dataSets.get( column );
+                    final GridPoints gridPoints = getPoints( dataSet.getLatLongGrid() );
+
+                    // Interpolate into a buffer of our own then copy it into the column in one pass. Interpolating straight into the matrix has
+                    // every task writing its own float of the same cache lines for the whole of its interpolation.
+                    final float[] buffer = new float[stations];
+                    gridPoints.interpolate( dataSet.decode( gridPoints ), buffer );
+                    for( int s = 0, o = column; s < stations; s++, o += columns ) {
+                        values[o] = buffer[s];
+                    }
+                }
+                catch( IOException ex ) {
+                    throw new UncheckedIOException( ex );
+                }
+            } );
+        }
+        catch( UncheckedIOException ex ) {
+            throw ex.getCause();
+        }
+        return matrix;
+    }
+
+    /**
+     * The geometry of a grid, equal for any grids whose points are in the same place in the same order
+     */
+    private static List<Object> getKey( LatLongGrid grid )
+    {
+        return Arrays.asList( grid.getNoPointsAlongParallel(), grid.getNoPointsAlingMeridian(),
+                              grid.getLatFirstPoint(), grid.getLongFirstPoint(), grid.getLatLastPoint(), grid.getLongLastPoint(),
+                              grid.getDi(), grid.getDj(), grid.toDegrees( 1 ),
+                              grid.isPointsFirstRowNegativeX(), grid.isPointsFirstRowNegativeY(),
+                              grid.isAdjacentPointsConsecutiveXY(), grid.isAdjacentRowsScanOppositeDirection() );
+    }
+
+}
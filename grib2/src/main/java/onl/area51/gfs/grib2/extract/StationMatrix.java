@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.util.Collections;
+import java.util.List;
+import onl.area51.gfs.grib2.section.DataSet;
+
+/**
+ * The values of a set of stations from a set of DataSet's, held in one float[] with a row per station and a column per DataSet.
+ * <p>
+ * @author peter
+ */
+public final class StationMatrix
+{
+
+    private final int stations;
+    private final List<DataSet> parameters;
+    private final float[] values;
+
+    StationMatrix( int stations, List<DataSet> parameters )
+    {
+        this.stations = stations;
+        this.parameters = Collections.unmodifiableList( parameters );
+        values = new float[stations * parameters.size()];
+    }
+
+    /**
+     * The number of stations, i.e. rows
+     * <p>
+     * @return number of stations
+     */
+    public int getStations()
+    {
+        return stations;
+    }
+
+    /**
+     * The number of parameters, i.e. columns
+     * <p>
+     * @return number of parameters
+     */
+    public int getParameterCount()
+    {
+        return parameters.size();
+    }
+
+    /**
+     * The DataSet of each column
+     * <p>
+     * @return unmodifiable list of DataSet's
+     */
+    public List<DataSet> getParameters()
+    {
+        return parameters;
+    }
+
+    /**
+     * The value of a station for a parameter
+     * <p>
+     * @param station   station
+     * @param parameter parameter, the index in {@link #getParameters()}
+     * <p>
+     * @return value, NaN if the station is outside the grid or has no value
+     */
+    public float get( int station, int parameter )
+    {
+        if( station < 0 || station >= stations || parameter < 0 || parameter >= parameters.size() ) {
+            throw new IndexOutOfBoundsException( "Station " + station + " parameter " + parameter + " of " + stations + "x" + parameters.size() );
+        }
+        return values[station * parameters.size() + parameter];
+    }
+
+    /**
+     * The values of every parameter for one station
+     * <p>
+     * @param station station
+     * @param dst     destination of {@link #getParameterCount()} values
+     * @param offset  index in dst of the first value
+     */
+    public void getStation( int station, float[] dst, int offset )
+    {
+        System.arraycopy( values, station * parameters.size(), dst, offset, parameters.size() );
+    }
+
+    /**
+     * The underlying array, the value of station s for parameter p being at {@code s * getParameterCount() + p}
+     * <p>
+     * @return values
+     */
+    public float[] getValues()
+    {
+        return values;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StationMatrix[" + stations + " stations x " + parameters.size() + " parameters]";
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link Field} held off-heap in a direct buffer.
+ * <p>
+ * Closing the field only drops its reference to the buffer, the memory being freed by the garbage collector once nothing refers to it. Freeing it when the
+ * field is closed would leave a view from {@link #getBuffer()}, or a read racing with {@link #close()}, reading freed memory. To avoid the allocations
+ * borrow fields from a {@link FieldPool} instead.
+ * <p>
+ * @author peter
+ */
+public class DirectField
+        extends Field
+{
+
+    /**
+     * The maximum number of values, as a direct buffer holds at most {@link Integer#MAX_VALUE} bytes
+     */
+    public static final int MAX_SIZE = Integer.MAX_VALUE >> 2;
+
+    /**
+     * @param size number of values
+     * <p>
+     * @throws IllegalArgumentException if size is negative or more than {@link #MAX_SIZE}
+     */
+    public DirectField( int size )
+    {
+        super( allocate( size ) );
+    }
+
+    private static FloatBuffer allocate( int size )
+    {
+        if( size < 0 || size > MAX_SIZE ) {
+            throw new IllegalArgumentException( "Invalid size " + size + " valid 0," + MAX_SIZE );
+        }
+        return ByteBuffer.allocateDirect( size << 2 ).order( ByteOrder.nativeOrder() ).asFloatBuffer();
+    }
+
+    @Override
+    protected void release( FloatBuffer buffer )
+    {
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The decoded values of a DataSet.
+ * <p>
+ * A Field either lives on the heap ({@link #heap(int)}) or off-heap in a direct buffer ({@link #direct(int)}). Fields should be released with
+ * {@link #close()} once finished with, after which the field cannot be used. Closing a field borrowed from a {@link FieldPool} returns it to the pool.
+ * <p>
+ * <pre>
+ * try( Field field = Field.direct( rep.getNoDataPoints() ) ) {
+ *     rep.decode( data, field );
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * @author peter
+ */
+public abstract class Field
+        implements AutoCloseable
+{
+
+    private final int size;
+    private volatile FloatBuffer buffer;
+
+    protected Field( FloatBuffer buffer )
+    {
+        this.size = buffer.capacity();
+        this.buffer = buffer;
+    }
+
+    /**
+     * A field backed by a float[]
+     * <p>
+     * @param size number of values
+     * <p>
+     * @return Field
+     */
+    public static Field heap( int size )
+    {
+        return new HeapField( size );
+    }
+
+    /**
+     * A field held off-heap in a direct buffer in native byte order
+     * <p>
+     * @param size number of values
+     * <p>
+     * @return Field
+     */
+    public static Field direct( int size )
+    {
+        return new DirectField( size );
+    }
+
+    /**
+     * The number of values in this field
+     * <p>
+     * @return size
+     */
+    public final int size()
+    {
+        return size;
+    }
+
+    /**
+     * A view of the values in this field, position 0 and limit {@link #size()}. The view must not be used after this field is released.
+     * <p>
+     * @return FloatBuffer
+     * <p>
+     * @throws IllegalStateException if this field has been released
+     */
+    public final FloatBuffer getBuffer()
+    {
+        return buffer().duplicate();
+    }
+
+    private FloatBuffer buffer()
+    {
+        final FloatBuffer b = buffer;
+        if( b == null ) {
+            throw new IllegalStateException( "Field has been released" );
+        }
+        return b;
+    }
+
+    public float get( int index )
+    {
+        return buffer().get( index );
+    }
+
+    public void set( int index, float value )
+    {
+        buffer().put( index, value );
+    }
+
+    /**
+     * Copy the values into an array
+     * <p>
+     * @param dst    destination
+     * @param offset offset in dst
+     */
+    public void get( float[] dst, int offset )
+    {
+        final FloatBuffer b = getBuffer();
+        b.get( dst, offset, size );
+    }
+
+    public float[] toArray()
+    {
+        final float[] a = new float[size];
+        get( a, 0 );
+        return a;
+    }
+
+    public boolean isReleased()
+    {
+        return buffer == null;
+    }
+
+    /**
+     * Release this field, after which its accessors throw IllegalStateException. Releasing a field more than once has no effect.
+     */
+    @Override
+    public final void close()
+    {
+        final FloatBuffer b;
+        synchronized( this ) {
+            b = buffer;
+            buffer = null;
+        }
+        if( b != null ) {
+            release( b );
+        }
+    }
+
+    /**
+     * Called once when this field is closed
+     * <p>
+     * @param buffer the buffer of this field
+     */
+    protected abstract void release( FloatBuffer buffer );
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of {@link Field}'s keyed by size.
+ * <p>
+ * When decoding every message of a file the fields are usually all the same size, so rather than allocating a new field per message one is borrowed from
+ * the pool with {@link #borrow(int)} and returned to it by closing it. The content of a borrowed field is undefined until it has been written to.
+ * <p>
+ * Each size has its own queue so threads borrowing different sizes do not contend. Up to {@code maxPerSize} fields of each size are kept, any more
+ * returned are released, as are those returned once the pool is closed.
+ * <p>
+ * <pre>
+ * FieldPool pool = new FieldPool( true, 4 );
+ * for( DataSet dataSet: ... ) {
+ *     try( Field field = dataSet.decode( pool ) ) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * <p>
+ * @author peter
+ */
+public class FieldPool
+        implements AutoCloseable
+{
+
+    private final boolean direct;
+    private final int maxPerSize;
+    private final Map<Integer, BlockingQueue<Field>> pools = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder returns = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * @param direct     true to pool off-heap fields, false for heap fields
+     * @param maxPerSize maximum number of idle fields kept of each size
+     */
+    public FieldPool( boolean direct, int maxPerSize )
+    {
+        if( maxPerSize < 1 ) {
+            throw new IllegalArgumentException( "maxPerSize must be at least 1" );
+        }
+        this.direct = direct;
+        this.maxPerSize = maxPerSize;
+    }
+
+    /**
+     * Borrow a field. Closing the returned field returns it to this pool.
+     * <p>
+     * @param size number of values
+     * <p>
+     * @return Field
+     * <p>
+     * @throws IllegalStateException if this pool has been closed
+     */
+    public Field borrow( int size )
+    {
+        if( closed ) {
+            throw new IllegalStateException( "FieldPool closed" );
+        }
+        Field field = pool( size ).poll();
+        if( field == null ) {
+            misses.increment();
+            field = direct ? Field.direct( size ) : Field.heap( size );
+        }
+        else {
+            hits.increment();
+        }
+        return new PooledField( field );
+    }
+
+    private BlockingQueue<Field> pool( int size )
+    {
+        return pools.computeIfAbsent( size, s -> new ArrayBlockingQueue<>( maxPerSize ) );
+    }
+
+    private void giveBack( Field field )
+    {
+        if( !closed && pool( field.size() ).offer( field ) ) {
+            returns.increment();
+            if( closed ) {
+                // Closed while we were returning it
+                clear();
+            }
+        }
+        else {
+            discards.increment();
+            field.close();
+        }
+    }
+
+    /**
+     * Number of borrows satisfied from the pool
+     * <p>
+     * @return hits
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Number of borrows which had to allocate a new field
+     * <p>
+     * @return misses
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Number of fields returned and kept for reuse
+     * <p>
+     * @return returns
+     */
+    public long getReturns()
+    {
+        return returns.sum();
+    }
+
+    /**
+     * Number of fields returned but released as the pool for their size was full or the pool was closed
+     * <p>
+     * @return discards
+     */
+    public long getDiscards()
+    {
+        return discards.sum();
+    }
+
+    /**
+     * The proportion of borrows satisfied from the pool
+     * <p>
+     * @return hit ratio, 0 if nothing has been borrowed
+     */
+    public double getHitRatio()
+    {
+        final long h = getHits();
+        final long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Release all idle fields. Fields currently borrowed are still returned to the pool when closed.
+     */
+    public void clear()
+    {
+        pools.values().forEach( q -> {
+            Field f;
+            while( (f = q.poll()) != null ) {
+                f.close();
+            }
+        } );
+    }
+
+    /**
+     * Release all idle fields. Fields currently borrowed are released when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FieldPool[direct=" + direct
+               + ", hits=" + getHits()
+               + ", misses=" + getMisses()
+               + ", returns=" + getReturns()
+               + ", discards=" + getDiscards()
+               + "]";
+    }
+
+    /**
+     * A view of a pooled field which returns it to the pool when closed
+     */
+    private class PooledField
+            extends Field
+    {
+
+        private final Field field;
+
+        PooledField( Field field )
+        {
+            super( field.getBuffer() );
+            this.field = field;
+        }
+
+        @Override
+        protected void release( FloatBuffer buffer )
+        {
+            giveBack( field );
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link Field} backed by a float[]
+ * <p>
+ * @author peter
+ */
+public class HeapField
+        extends Field
+{
+
+    private final float[] array;
+
+    public HeapField( int size )
+    {
+        this( new float[size] );
+    }
+
+    public HeapField( float[] array )
+    {
+        super( FloatBuffer.wrap( array ) );
+        this.array = array;
+    }
+
+    /**
+     * The array backing this field
+     * <p>
+     * @return float[]
+     */
+    public float[] getArray()
+    {
+        return array;
+    }
+
+    @Override
+    protected void release( FloatBuffer buffer )
+    {
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link GribInputStream} which serves all reads from a big-endian {@link ByteBuffer} window.
+ * <p>
+ * Primitive reads are taken from the window in bulk, so a {@link #readInt()} is a single buffer access rather than four calls to {@link #read()}. Subclasses
+ * only have to implement {@link #fill(long, int)} which is called when the window does not hold the bytes required.
+ * <p>
+ * @author peter
+ */
+public abstract class AbstractBufferedGribInputStream
+        implements GribInputStream
+{
+
+    /**
+     * The current window. Index 0 of this buffer is at {@link #bufferStart} within the underlying data
+     */
+    protected ByteBuffer buffer;
+
+    /**
+     * The position within the underlying data of index 0 of {@link #buffer}
+     */
+    protected long bufferStart;
+
+    protected AbstractBufferedGribInputStream( ByteBuffer buffer )
+    {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Refill the window so that it starts at pos. On return the window should have at least len bytes remaining unless the end of the data has been reached.
+     * <p>
+     * @param pos position within the underlying data
+     * @param len number of bytes required, never more than 8
+     * <p>
+     * @throws IOException
+     */
+    protected abstract void fill( long pos, int len )
+            throws IOException;
+
+    /**
+     * Ensure that the window has len bytes available at the current position
+     * <p>
+     * @param len number of bytes required
+     * <p>
+     * @throws IOException if the end of the data has been reached
+     */
+    protected final void ensure( int len )
+            throws IOException
+    {
+        if( buffer.remaining() < len ) {
+            fill( position(), len );
+            if( buffer.remaining() < len ) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public long position()
+            throws IOException
+    {
+        return bufferStart + buffer.position();
+    }
+
+    @Override
+    public void seek( long pos )
+            throws IOException
+    {
+        if( pos < 0 ) {
+            throw new IllegalArgumentException( "Invalid position " + pos );
+        }
+
+        final long rel = pos - bufferStart;
+        if( rel >= 0 && rel <= buffer.limit() ) {
+            buffer.position( (int) rel );
+        }
+        else {
+            // Outside the window so invalidate it, the next read will refill from pos
+            buffer.limit( 0 );
+            bufferStart = pos;
+        }
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if( !buffer.hasRemaining() ) {
+            fill( position(), 1 );
+            if( !buffer.hasRemaining() ) {
+                return -1;
+            }
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len )
+            throws IOException
+    {
+        if( len == 0 ) {
+            return 0;
+        }
+
+        int total = 0;
+        while( total < len ) {
+            if( !buffer.hasRemaining() ) {
+                fill( position(), 1 );
+                if( !buffer.hasRemaining() ) {
+                    break;
+                }
+            }
+            final int n = Math.min( buffer.remaining(), len - total );
+            buffer.get( b, off + total, n );
+            total += n;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public void readFully( byte[] b, int off, int len )
+            throws IOException
+    {
+        int total = 0;
+        while( total < len ) {
+            final int n = read( b, off + total, len - total );
+            if( n < 0 ) {
+                throw new EOFException();
+            }
+            total += n;
+        }
+    }
+
+    @Override
+    public int skipBytes( int n )
+            throws IOException
+    {
+        if( n <= 0 ) {
+            return 0;
+        }
+        final long pos = position();
+        final int skip = (int) Math.min( n, Math.max( 0L, length() - pos ) );
+        seek( pos + skip );
+        return skip;
+    }
+
+    @Override
+    public final boolean readBoolean()
+            throws IOException
+    {
+        ensure( 1 );
+        return buffer.get() != 0;
+    }
+
+    @Override
+    public final byte readByte()
+            throws IOException
+    {
+        ensure( 1 );
+        return buffer.get();
+    }
+
+    @Override
+    public final int readUnsignedByte()
+            throws IOException
+    {
+        ensure( 1 );
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public final short readShort()
+            throws IOException
+    {
+        ensure( 2 );
+        return buffer.getShort();
+    }
+
+    @Override
+    public final int readUnsignedShort()
+            throws IOException
+    {
+        ensure( 2 );
+        return buffer.getShort() & 0xffff;
+    }
+
+    @Override
+    public final char readChar()
+            throws IOException
+    {
+        ensure( 2 );
+        return buffer.getChar();
+    }
+
+    @Override
+    public final int readInt()
+            throws IOException
+    {
+        ensure( 4 );
+        return buffer.getInt();
+    }
+
+    @Override
+    public final long readLong()
+            throws IOException
+    {
+        ensure( 8 );
+        return buffer.getLong();
+    }
+
+    @Override
+    public final float readFloat()
+            throws IOException
+    {
+        ensure( 4 );
+        return buffer.getFloat();
+    }
+
+    @Override
+    public final double readDouble()
+            throws IOException
+    {
+        ensure( 8 );
+        return buffer.getDouble();
+    }
+
+    @Override
+    public final String readLine()
+            throws IOException
+    {
+        final StringBuilder input = new StringBuilder();
+        int c = -1;
+        boolean eol = false;
+        while( !eol ) {
+            switch( c = read() ) {
+                case -1:
+                case '\n':
+                    eol = true;
+                    break;
+                case '\r':
+                    eol = true;
+                    final long cur = position();
+                    if( (read()) != '\n' ) {
+                        seek( cur );
+                    }
+                    break;
+                default:
+                    input.append( (char) c );
+                    break;
+            }
+        }
+        if( (c == -1) && (input.length() == 0) ) {
+            return null;
+        }
+        return input.toString();
+    }
+
+    @Override
+    public final String readUTF()
+            throws IOException
+    {
+        return DataInputStream.readUTF( this );
+    }
+
+}
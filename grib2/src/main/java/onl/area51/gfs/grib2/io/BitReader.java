@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads unsigned integers of any width up to 32 bits from a packed bit stream, most significant bit first, as used by the GRIB2 Data Section.
+ * <p>
+ * Each value is extracted from a single 64 bit big-endian load with a shift and mask, falling back to reading bytes only within the last 8 bytes of the
+ * data. The buffer is never repositioned so a reader may be created over a shared buffer, e.g. a segment of a {@link MappedGribInputStream}, however a
+ * reader itself is not thread safe.
+ * <p>
+ * @author peter
+ */
+public final class BitReader
+{
+
+    private final ByteBuffer data;
+    private final int base;
+    private final int length;
+    // Last byte index from which a 64 bit load can be made
+    private final int lastWord;
+    private long bitPos;
+
+    /**
+     * A reader over the remaining content of a buffer
+     * <p>
+     * @param data buffer, bit 0 is the most significant bit of the byte at its position
+     */
+    public BitReader( ByteBuffer data )
+    {
+        this( data, data.position() );
+    }
+
+    /**
+     * A reader from an absolute position within a buffer up to its limit
+     * <p>
+     * @param data   buffer
+     * @param offset index of the byte containing bit 0
+     */
+    public BitReader( ByteBuffer data, int offset )
+    {
+        this.data = data.order() == ByteOrder.BIG_ENDIAN ? data : data.duplicate().order( ByteOrder.BIG_ENDIAN );
+        base = offset;
+        length = Math.max( 0, data.limit() - offset );
+        lastWord = length - 8;
+    }
+
+    /**
+     * The current position in bits
+     * <p>
+     * @return bit position
+     */
+    public long position()
+    {
+        return bitPos;
+    }
+
+    /**
+     * Set the current position
+     * <p>
+     * @param bitPos position in bits
+     */
+    public void seek( long bitPos )
+    {
+        this.bitPos = bitPos;
+    }
+
+    /**
+     * Skip a number of bits
+     * <p>
+     * @param bits number of bits
+     */
+    public void skip( long bits )
+    {
+        bitPos += bits;
+    }
+
+    /**
+     * Move to the start of the next byte unless already at the start of one
+     */
+    public void align()
+    {
+        bitPos = (bitPos + 7) & ~7L;
+    }
+
+    /**
+     * The number of bits remaining
+     * <p>
+     * @return remaining bits
+     */
+    public long remaining()
+    {
+        return ((long) length << 3) - bitPos;
+    }
+
+    /**
+     * Read an unsigned value
+     * <p>
+     * @param bits width in bits, 0 to 32
+     * <p>
+     * @return value
+     * <p>
+     * @throws BufferUnderflowException if there are fewer than bits remaining
+     */
+    public long read( int bits )
+    {
+        if( bits == 0 ) {
+            return 0;
+        }
+        final long pos = bitPos;
+        final int idx = (int) (pos >>> 3);
+        bitPos = pos + bits;
+        if( idx <= lastWord ) {
+            return (data.getLong( base + idx ) << (pos & 7)) >>> (64 - bits);
+        }
+        return readSlow( pos, bits );
+    }
+
+    /**
+     * Read a sign-magnitude value, the first bit being the sign
+     * <p>
+     * @param bits width in bits including the sign, 2 to 33
+     * <p>
+     * @return value
+     */
+    public long readSignMagnitude( int bits )
+    {
+        final boolean negative = read( 1 ) == 1;
+        final long v = read( bits - 1 );
+        return negative ? -v : v;
+    }
+
+    /**
+     * Unpack a run of values of the same width
+     * <p>
+     * @param bits  width in bits, 0 to 32. For 32 the values in dst are the raw bits so use {@code dst[i] & 0xffffffffL} for the unsigned value
+     * @param count number of values
+     * @param dst   destination
+     */
+    public void unpack( int bits, int count, int[] dst )
+    {
+        unpack( bits, count, dst, 0 );
+    }
+
+    /**
+     * Unpack a run of values of the same width. No objects are allocated.
+     * <p>
+     * @param bits   width in bits, 0 to 32. For 32 the values in dst are the raw bits so use {@code dst[i] & 0xffffffffL} for the unsigned value
+     * @param count  number of values
+     * @param dst    destination
+     * @param offset offset in dst of the first value
+     */
+    public void unpack( int bits, int count, int[] dst, int offset )
+    {
+        if( bits < 0 || bits > 32 ) {
+            throw new IllegalArgumentException( "Invalid width " + bits );
+        }
+        if( (long) bits * count > remaining() ) {
+            throw new BufferUnderflowException();
+        }
+
+        if( bits == 0 ) {
+            for( int i = 0; i < count; i++ ) {
+                dst[offset + i] = 0;
+            }
+            return;
+        }
+
+        final int shift = 64 - bits;
+        long pos = bitPos;
+        int i = 0;
+        for( ; i < count && (pos >>> 3) <= lastWord; i++, pos += bits ) {
+            dst[offset + i] = (int) ((data.getLong( base + (int) (pos >>> 3) ) << (pos & 7)) >>> shift);
+        }
+        for( ; i < count; i++, pos += bits ) {
+            dst[offset + i] = (int) readSlow( pos, bits );
+        }
+        bitPos = pos;
+    }
+
+    /**
+     * Read a value near the end of the data a byte at a time
+     */
+    private long readSlow( long pos, int bits )
+    {
+        final long end = pos + bits;
+        if( end > ((long) length << 3) ) {
+            throw new BufferUnderflowException();
+        }
+
+        long acc = 0;
+        int idx = (int) (pos >>> 3);
+        final int last = (int) ((end - 1) >>> 3);
+        while( idx <= last ) {
+            acc = (acc << 8) | (data.get( base + idx++ ) & 0xff);
+        }
+        // acc holds whole bytes, drop the bits after end
+        return (acc >>> (((long) (last + 1) << 3) - end)) & ((1L << bits) - 1);
+    }
+
+}
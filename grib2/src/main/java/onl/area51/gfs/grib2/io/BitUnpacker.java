@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Kernels which unpack a run of equal width unsigned values starting on a byte boundary.
+ * <p>
+ * The widths commonly used by GFS have their own kernel which reads whole bytes, shorts or ints with no per value shifting of a bit position. Any other
+ * width uses {@link BitReader}. Use {@link #forWidth(int)} to select the kernel for a width.
+ * <p>
+ * For 32 bit values the contents of dst are the raw bits, use {@code dst[i] & 0xffffffffL} for the unsigned value.
+ * <p>
+ * @author peter
+ */
+public enum BitUnpacker
+{
+
+    /**
+     * Any width from 0 to 32
+     */
+    GENERIC( -1 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            new BitReader( data, offset ).unpack( bits, count, dst, dstOffset );
+        }
+    },
+    BITS_4( 4 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            final int pairs = count >>> 1;
+            for( int i = 0, d = dstOffset; i < pairs; i++, d += 2 ) {
+                final int b = data.get( offset + i );
+                dst[d] = (b >>> 4) & 0xf;
+                dst[d + 1] = b & 0xf;
+            }
+            if( (count & 1) != 0 ) {
+                dst[dstOffset + count - 1] = (data.get( offset + pairs ) >>> 4) & 0xf;
+            }
+        }
+    },
+    BITS_8( 8 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            for( int i = 0; i < count; i++ ) {
+                dst[dstOffset + i] = data.get( offset + i ) & 0xff;
+            }
+        }
+    },
+    BITS_10( 10 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            // 4 values in every 5 bytes
+            final int blocks = count >>> 2;
+            for( int i = 0, s = offset, d = dstOffset; i < blocks; i++, s += 5, d += 4 ) {
+                final long w = ((data.getInt( s ) & 0xffffffffL) << 8) | (data.get( s + 4 ) & 0xff);
+                dst[d] = (int) (w >>> 30) & 0x3ff;
+                dst[d + 1] = (int) (w >>> 20) & 0x3ff;
+                dst[d + 2] = (int) (w >>> 10) & 0x3ff;
+                dst[d + 3] = (int) w & 0x3ff;
+            }
+            tail( data, offset, bits, blocks << 2, count, dst, dstOffset );
+        }
+    },
+    BITS_12( 12 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            // 2 values in every 3 bytes
+            final int pairs = count >>> 1;
+            for( int i = 0, s = offset, d = dstOffset; i < pairs; i++, s += 3, d += 2 ) {
+                final int b1 = data.get( s + 1 ) & 0xff;
+                dst[d] = ((data.get( s ) & 0xff) << 4) | (b1 >>> 4);
+                dst[d + 1] = ((b1 & 0xf) << 8) | (data.get( s + 2 ) & 0xff);
+            }
+            tail( data, offset, bits, pairs << 1, count, dst, dstOffset );
+        }
+    },
+    BITS_16( 16 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            for( int i = 0; i < count; i++ ) {
+                dst[dstOffset + i] = data.getShort( offset + (i << 1) ) & 0xffff;
+            }
+        }
+    },
+    BITS_24( 24 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            for( int i = 0, s = offset; i < count; i++, s += 3 ) {
+                dst[dstOffset + i] = ((data.get( s ) & 0xff) << 16) | (data.getShort( s + 1 ) & 0xffff);
+            }
+        }
+    },
+    BITS_32( 32 )
+    {
+        @Override
+        protected void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+        {
+            for( int i = 0; i < count; i++ ) {
+                dst[dstOffset + i] = data.getInt( offset + (i << 2) );
+            }
+        }
+    };
+
+    private static final BitUnpacker[] WIDTHS = new BitUnpacker[33];
+
+    static {
+        for( BitUnpacker u: values() ) {
+            if( u.width > -1 ) {
+                WIDTHS[u.width] = u;
+            }
+        }
+    }
+
+    /**
+     * Returns the kernel for a width
+     * <p>
+     * @param bits width in bits, 0 to 32
+     * <p>
+     * @return BitUnpacker, {@link #GENERIC} if there is no specialised kernel
+     */
+    public static BitUnpacker forWidth( int bits )
+    {
+        if( bits < 0 || bits > 32 ) {
+            throw new IllegalArgumentException( "Invalid width " + bits );
+        }
+        final BitUnpacker u = WIDTHS[bits];
+        return u == null ? GENERIC : u;
+    }
+
+    private final int width;
+
+    private BitUnpacker( int width )
+    {
+        this.width = width;
+    }
+
+    /**
+     * The width this kernel is specialised for, -1 for {@link #GENERIC}
+     * <p>
+     * @return width in bits
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Unpack a run of values. The position of data is not changed.
+     * <p>
+     * @param data      data
+     * @param offset    index in data of the byte holding the first value
+     * @param bits      width of each value, must be the width of this kernel unless this is {@link #GENERIC}
+     * @param count     number of values
+     * @param dst       destination
+     * @param dstOffset offset in dst of the first value
+     * <p>
+     * @throws BufferUnderflowException if data does not hold count values
+     */
+    public final void unpack( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset )
+    {
+        if( width > -1 && bits != width ) {
+            throw new IllegalArgumentException( this + " cannot unpack " + bits + " bits" );
+        }
+        if( offset + (((long) count * bits + 7) >>> 3) > data.limit() ) {
+            throw new BufferUnderflowException();
+        }
+        unpackImpl( data.order() == ByteOrder.BIG_ENDIAN ? data : data.duplicate().order( ByteOrder.BIG_ENDIAN ), offset, bits, count, dst, dstOffset );
+    }
+
+    protected abstract void unpackImpl( ByteBuffer data, int offset, int bits, int count, int[] dst, int dstOffset );
+
+    /**
+     * Unpack the values after the last whole block of a kernel
+     */
+    private static void tail( ByteBuffer data, int offset, int bits, int from, int count, int[] dst, int dstOffset )
+    {
+        if( from < count ) {
+            final BitReader reader = new BitReader( data, offset );
+            reader.seek( (long) from * bits );
+            reader.unpack( bits, count - from, dst, dstOffset + from );
+        }
+    }
+}
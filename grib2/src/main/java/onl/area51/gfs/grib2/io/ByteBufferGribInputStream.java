@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link GribInputStream} over a {@link ByteBuffer} already in memory, usually a slice of a mapping or of a larger buffer.
+ * <p>
+ * Position 0 of this stream is index 0 of the buffer. No data is copied, so slices of this stream share the same memory.
+ * <p>
+ * @author peter
+ */
+public class ByteBufferGribInputStream
+        extends AbstractBufferedGribInputStream
+{
+
+    private final ByteBuffer data;
+
+    public ByteBufferGribInputStream( ByteBuffer data )
+    {
+        super( data.slice() );
+        this.data = buffer;
+    }
+
+    @Override
+    protected void fill( long pos, int len )
+            throws IOException
+    {
+        // All of the data is in memory so just restore the window after a seek outside of it
+        buffer = data;
+        bufferStart = 0;
+        data.limit( data.capacity() );
+        data.position( (int) Math.min( pos, data.capacity() ) );
+    }
+
+    /**
+     * Returns a big-endian view of the entire content of this stream, independent of the position of this stream.
+     * <p>
+     * @return ByteBuffer positioned at 0
+     */
+    public ByteBuffer getBuffer()
+    {
+        final ByteBuffer b = data.duplicate();
+        b.clear();
+        return b;
+    }
+
+    @Override
+    public GribInputStream slice( long offset, long length )
+            throws IOException
+    {
+        final ByteBuffer b = getBuffer();
+        b.position( (int) offset );
+        b.limit( (int) (offset + length) );
+        return new ByteBufferGribInputStream( b );
+    }
+
+    @Override
+    public GribInputStream duplicate()
+            throws IOException
+    {
+        return new ByteBufferGribInputStream( getBuffer() );
+    }
+
+    @Override
+    public long length()
+            throws IOException
+    {
+        return data.capacity();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+    }
+
+}
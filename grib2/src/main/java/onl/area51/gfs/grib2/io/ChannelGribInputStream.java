@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link GribInputStream} of a {@link File} which reads through a {@link FileChannel} into a large reusable window.
+ * <p>
+ * The underlying file is only touched when a read falls outside of the current window, so parsing the headers of a file is a handful of large reads rather
+ * than a system call per byte as with {@link GribFileInputStream}.
+ * <p>
+ * Only positional reads are used on the channel, so {@link #slice(long, long)} and {@link #duplicate()} may be used from multiple threads at the same time.
+ * <p>
+ * Nothing is memory mapped, a slice being read into the heap. Use {@link MappedGribInputStream} to map the file.
+ * <p>
+ * @author peter
+ */
+public class ChannelGribInputStream
+        extends AbstractBufferedGribInputStream
+{
+
+    /**
+     * The default window size, 1Mb
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The window size used by duplicates, 64Kb
+     */
+    public static final int DUPLICATE_BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer window;
+    private final long length;
+    // false for duplicates which must not close the channel
+    private final boolean owner;
+
+    public ChannelGribInputStream( File file )
+            throws IOException
+    {
+        this( FileChannel.open( file.toPath(), StandardOpenOption.READ ) );
+    }
+
+    public ChannelGribInputStream( FileChannel channel )
+            throws IOException
+    {
+        this( channel, DEFAULT_BUFFER_SIZE );
+    }
+
+    public ChannelGribInputStream( FileChannel channel, int bufferSize )
+            throws IOException
+    {
+        this( channel, ByteBuffer.allocateDirect( bufferSize ), channel.size(), true );
+    }
+
+    private ChannelGribInputStream( FileChannel channel, ByteBuffer window, long length, boolean owner )
+    {
+        super( window );
+        this.channel = channel;
+        this.window = window;
+        this.length = length;
+        this.owner = owner;
+        window.limit( 0 );
+    }
+
+    @Override
+    protected void fill( long pos, int len )
+            throws IOException
+    {
+        window.clear();
+        long p = pos;
+        while( window.hasRemaining() ) {
+            final int n = channel.read( window, p );
+            if( n <= 0 ) {
+                break;
+            }
+            p += n;
+        }
+        window.flip();
+        bufferStart = pos;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len )
+            throws IOException
+    {
+        if( len <= window.capacity() ) {
+            return super.read( b, off, len );
+        }
+
+        // Too big for the window so drain what we have then read directly into the destination
+        final int buffered = Math.min( buffer.remaining(), len );
+        buffer.get( b, off, buffered );
+
+        final long pos = position();
+        final ByteBuffer dst = ByteBuffer.wrap( b, off + buffered, len - buffered );
+        long p = pos;
+        while( dst.hasRemaining() ) {
+            final int n = channel.read( dst, p );
+            if( n <= 0 ) {
+                break;
+            }
+            p += n;
+        }
+        seek( p );
+
+        final int total = buffered + (int) (p - pos);
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Slices never touch the window, they are read into the heap with a positional read
+     * <p>
+     * @param offset offset within this stream
+     * @param length length of the slice
+     * <p>
+     * @return GribInputStream of the slice
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public GribInputStream slice( long offset, long length )
+            throws IOException
+    {
+        if( offset < 0 || length < 0 || offset + length > this.length ) {
+            throw new EOFException( "Slice " + offset + "+" + length + " beyond " + this.length );
+        }
+        if( length > Integer.MAX_VALUE ) {
+            throw new IOException( "Slice " + offset + "+" + length + " too large" );
+        }
+
+        final ByteBuffer b = ByteBuffer.allocate( (int) length );
+        long p = offset;
+        while( b.hasRemaining() ) {
+            final int n = channel.read( b, p );
+            if( n <= 0 ) {
+                throw new EOFException();
+            }
+            p += n;
+        }
+        b.flip();
+        return new ByteBufferGribInputStream( b );
+    }
+
+    @Override
+    public GribInputStream duplicate()
+            throws IOException
+    {
+        return new ChannelGribInputStream( channel, ByteBuffer.allocateDirect( DUPLICATE_BUFFER_SIZE ), length, false );
+    }
+
+    @Override
+    public long length()
+            throws IOException
+    {
+        return length;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if( owner ) {
+            channel.close();
+        }
+    }
+
+}
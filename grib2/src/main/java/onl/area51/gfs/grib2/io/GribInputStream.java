@@ -56,6 +56,68 @@ public interface GribInputStream
     void seek( long position )
             throws IOException;
 
+    /**
+     * Returns a stream of part of this stream. Position 0 of the returned stream is offset within this one.
+     * <p>
+     * The returned stream has its own position, so reading it does not affect this stream or any other slice. Implementations backed by memory return a view
+     * of that memory rather than copying it.
+     * <p>
+     * @param offset offset within this stream
+     * @param length length of the slice
+     * <p>
+     * @return GribInputStream of the slice
+     * <p>
+     * @throws IOException
+     */
+    default GribInputStream slice( long offset, long length )
+            throws IOException
+    {
+        return new SubGribInputStream( this, offset, length );
+    }
+
+    /**
+     * Returns an independent cursor over the same data as this stream.
+     * <p>
+     * The returned stream has its own position so it can be used from another thread at the same time as this one. Closing it does not close this stream.
+     * <p>
+     * @return GribInputStream positioned at 0
+     * <p>
+     * @throws IOException
+     */
+    default GribInputStream duplicate()
+            throws IOException
+    {
+        return new SubGribInputStream( this, 0, length() );
+    }
+
+    /**
+     * Reads a 16 bit signed value. GRIB2 does not use two's complement, instead the most significant bit is the sign and the remaining 15 bits the magnitude.
+     * <p>
+     * @return value
+     * <p>
+     * @throws IOException
+     */
+    default int readSignMagnitudeShort()
+            throws IOException
+    {
+        final int v = readUnsignedShort();
+        return (v & 0x8000) == 0 ? v : -(v & 0x7fff);
+    }
+
+    /**
+     * Reads a 32 bit signed value. GRIB2 does not use two's complement, instead the most significant bit is the sign and the remaining 31 bits the magnitude.
+     * <p>
+     * @return value
+     * <p>
+     * @throws IOException
+     */
+    default int readSignMagnitudeInt()
+            throws IOException
+    {
+        final int v = readInt();
+        return v >= 0 ? v : -(v & 0x7fffffff);
+    }
+
     /**
      * Reads a char array from a series of bytes
      * <p>
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link GribInputStream} of a {@link File} which is memory mapped.
+ * <p>
+ * As a single {@link MappedByteBuffer} is limited to 2Gb the file is mapped as a series of segments, so files of any size are supported. Reads are plain
+ * memory accesses and the pages are shared with any other process mapping or reading the same file.
+ * <p>
+ * {@link #slice(long, long)} and {@link #duplicate()} share the mapping without changing it, so they may be used from multiple threads at the same time.
+ * <p>
+ * @author peter
+ */
+public class MappedGribInputStream
+        extends AbstractBufferedGribInputStream
+{
+
+    /**
+     * The default segment size, 1Gb
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate( 0 );
+
+    private final FileChannel channel;
+    private final long length;
+    private final int segmentSize;
+    // Shared with duplicates, their position is never changed
+    private final MappedByteBuffer[] segments;
+    // false for duplicates which must not close the channel
+    private final boolean owner;
+    // Our own views of each segment so our position does not affect any other user of the mapping
+    private final ByteBuffer[] views;
+    // Used when a primitive straddles two segments
+    private final ByteBuffer scratch = ByteBuffer.allocate( 16 );
+
+    public MappedGribInputStream( File file )
+            throws IOException
+    {
+        this( FileChannel.open( file.toPath(), StandardOpenOption.READ ) );
+    }
+
+    public MappedGribInputStream( FileChannel channel )
+            throws IOException
+    {
+        this( channel, DEFAULT_SEGMENT_SIZE );
+    }
+
+    public MappedGribInputStream( FileChannel channel, int segmentSize )
+            throws IOException
+    {
+        super( EMPTY );
+        if( segmentSize < 16 ) {
+            throw new IllegalArgumentException( "Invalid segment size " + segmentSize );
+        }
+
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+        length = channel.size();
+        owner = true;
+
+        final int count = (int) ((length + segmentSize - 1) / segmentSize);
+        segments = new MappedByteBuffer[count];
+        for( int i = 0; i < count; i++ ) {
+            final long start = (long) i * segmentSize;
+            segments[i] = channel.map( FileChannel.MapMode.READ_ONLY, start, Math.min( segmentSize, length - start ) );
+        }
+        views = createViews( segments );
+    }
+
+    private MappedGribInputStream( MappedGribInputStream parent )
+    {
+        super( EMPTY );
+        channel = parent.channel;
+        segmentSize = parent.segmentSize;
+        length = parent.length;
+        segments = parent.segments;
+        owner = false;
+        views = createViews( segments );
+    }
+
+    private static ByteBuffer[] createViews( MappedByteBuffer[] segments )
+    {
+        final ByteBuffer[] views = new ByteBuffer[segments.length];
+        for( int i = 0; i < segments.length; i++ ) {
+            views[i] = segments[i].duplicate();
+        }
+        return views;
+    }
+
+    @Override
+    protected void fill( long pos, int len )
+            throws IOException
+    {
+        if( pos >= length ) {
+            buffer = EMPTY;
+            bufferStart = pos;
+            return;
+        }
+
+        final int seg = (int) (pos / segmentSize);
+        final long segStart = (long) seg * segmentSize;
+        final int rel = (int) (pos - segStart);
+        final ByteBuffer view = views[seg];
+
+        if( view.capacity() - rel >= len || seg + 1 == views.length ) {
+            view.limit( view.capacity() );
+            view.position( rel );
+            buffer = view;
+            bufferStart = segStart;
+        }
+        else {
+            // The read straddles the segment boundary so copy the bytes into the scratch buffer
+            scratch.clear();
+            final int n = (int) Math.min( scratch.capacity(), length - pos );
+            for( int i = 0; i < n; i++ ) {
+                final long p = pos + i;
+                scratch.put( segments[(int) (p / segmentSize)].get( (int) (p % segmentSize) ) );
+            }
+            scratch.flip();
+            buffer = scratch;
+            bufferStart = pos;
+        }
+    }
+
+    @Override
+    public GribInputStream slice( long offset, long length )
+            throws IOException
+    {
+        if( offset < 0 || length < 0 || offset + length > this.length ) {
+            throw new EOFException( "Slice " + offset + "+" + length + " beyond " + this.length );
+        }
+
+        final int seg = (int) (offset / segmentSize);
+        final long rel = offset - (long) seg * segmentSize;
+        if( seg < segments.length && rel + length <= segments[seg].capacity() ) {
+            final ByteBuffer b = segments[seg].duplicate();
+            b.position( (int) rel );
+            b.limit( (int) (rel + length) );
+            return new ByteBufferGribInputStream( b );
+        }
+
+        // Crosses a segment boundary so map just that region
+        return new ByteBufferGribInputStream( channel.map( FileChannel.MapMode.READ_ONLY, offset, length ) );
+    }
+
+    @Override
+    public GribInputStream duplicate()
+            throws IOException
+    {
+        return new MappedGribInputStream( this );
+    }
+
+    @Override
+    public long length()
+            throws IOException
+    {
+        return length;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if( owner ) {
+            channel.close();
+        }
+    }
+
+}
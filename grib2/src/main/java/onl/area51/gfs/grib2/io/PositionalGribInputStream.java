@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A cursor over another stream which never moves it, reading through {@link GribInputStream#slice(long, long)} instead.
+ * <p>
+ * Positions are those of the parent, so blocks read through this stream record their position within the file and slice the parent directly. As slices of
+ * the channel and mapped streams are positional reads, any number of these may read the same parent from different threads at the same time.
+ * <p>
+ * @author peter
+ */
+public class PositionalGribInputStream
+        extends AbstractBufferedGribInputStream
+{
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final GribInputStream gis;
+    private final long length;
+
+    private final byte[] data;
+
+    /**
+     * Create a cursor at a position within a stream
+     * <p>
+     * @param gis parent stream
+     * @param pos initial position within the parent
+     * <p>
+     * @throws IOException
+     */
+    public PositionalGribInputStream( GribInputStream gis, long pos )
+            throws IOException
+    {
+        super( ByteBuffer.wrap( new byte[BUFFER_SIZE] ) );
+        this.gis = gis;
+        length = gis.length();
+        data = buffer.array();
+        buffer.limit( 0 );
+        bufferStart = pos;
+    }
+
+    @Override
+    protected void fill( long pos, int len )
+            throws IOException
+    {
+        final int size = (int) Math.max( 0L, Math.min( BUFFER_SIZE, length - pos ) );
+        if( size > 0 ) {
+            gis.slice( pos, size ).readFully( data, 0, size );
+        }
+        buffer.clear();
+        buffer.limit( size );
+        bufferStart = pos;
+    }
+
+    @Override
+    public long length()
+            throws IOException
+    {
+        return length;
+    }
+
+    @Override
+    public GribInputStream slice( long offset, long length )
+            throws IOException
+    {
+        return gis.slice( offset, length );
+    }
+
+    @Override
+    public GribInputStream duplicate()
+            throws IOException
+    {
+        return new PositionalGribInputStream( gis, 0 );
+    }
+
+    /**
+     * Does nothing as the parent is not owned by this stream
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        buffer.limit( 0 );
+    }
+
+}
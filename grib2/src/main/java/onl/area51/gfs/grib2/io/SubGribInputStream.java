@@ -17,14 +17,19 @@ package onl.area51.gfs.grib2.io;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
- *
+ * A {@link GribInputStream} of part of another stream which has no direct access to its data.
+ * <p>
+ * The parent is read through a small buffer. Each refill seeks the parent and then restores its position while holding the parent's monitor, so neither the
+ * parent nor any other SubGribInputStream of it is affected by reading this one, even from another thread. Code using the parent directly while
+ * SubGribInputStream's are in use from other threads must also synchronize on it.
+ * <p>
  * @author peter
  */
 public class SubGribInputStream
-        extends AbstractGribInputStream
-        implements GribInputStream
+        extends AbstractBufferedGribInputStream
 {
 
     private static final int BUFFER_SIZE = 1024;
@@ -33,34 +38,29 @@ public class SubGribInputStream
     private final long dataOffset;
     private final long length;
 
-    private byte[] buffer = null;
-    private int cpos = -1;
-    private int size = -1;
-    // Position of the GribInputStream implementationj
-    private int pos = 0;
+    private final byte[] data;
 
     public SubGribInputStream()
     {
-        this.gis = null;
-        this.dataOffset = 0;
-        this.length = 0;
+        this( null, 0, 0 );
     }
 
     public SubGribInputStream( GribInputStream gis, long dataOffset, long length )
     {
+        super( ByteBuffer.wrap( new byte[BUFFER_SIZE] ) );
         this.gis = gis;
         this.dataOffset = dataOffset;
         this.length = length;
+        data = buffer.array();
+        buffer.limit( 0 );
     }
 
     @Override
     public void close()
             throws IOException
     {
-        buffer = null;
-        cpos = -1;
-        size = -1;
-        pos = (int) length;
+        buffer.limit( 0 );
+        bufferStart = length;
     }
 
     /**
@@ -93,41 +93,45 @@ public class SubGribInputStream
         if( len < 1 || len > BUFFER_SIZE ) {
             throw new IllegalArgumentException( "Invalid length " + len );
         }
-        return buffer != null && cpos > -1 && size > -1 && pos >= cpos && (pos + len) <= (cpos + size);
+        return pos >= bufferStart && (pos + len) <= (bufferStart + buffer.limit());
     }
 
-    /**
-     * Ensures we have the required bytes in the buffer
-     * <p>
-     * @param pos
-     * @param len
-     *            <p>
-     * @throws IOException
-     */
     @Override
-    protected void ensure( int len )
+    protected void fill( long pos, int len )
             throws IOException
     {
-        if( pos + len >= length ) {
-            throw new EOFException();
-        }
-
-        if( buffer == null || pos < cpos || (pos - cpos + len) >= size ) {
-            if( buffer == null ) {
-                buffer = new byte[BUFFER_SIZE];
-            }
-            cpos = pos;
-            size = Math.min( BUFFER_SIZE, (int) (this.length - pos - len) );
-            gis.seek( dataOffset + cpos );
-            gis.readFully( buffer, 0, size );
+        final int size = (int) Math.max( 0L, Math.min( BUFFER_SIZE, length - pos ) );
+        if( size > 0 ) {
+            readParent( pos, data, 0, size );
         }
+        buffer.clear();
+        buffer.limit( size );
+        bufferStart = pos;
     }
 
-    @Override
-    public long position()
+    /**
+     * Read from the parent stream, leaving its position unchanged.
+     * <p>
+     * @param pos position within this stream
+     * @param b   destination
+     * @param off offset in b
+     * @param len number of bytes to read
+     * <p>
+     * @throws IOException
+     */
+    private void readParent( long pos, byte[] b, int off, int len )
             throws IOException
     {
-        return pos;
+        synchronized( gis ) {
+            final long mark = gis.position();
+            try {
+                gis.seek( dataOffset + pos );
+                gis.readFully( b, off, len );
+            }
+            finally {
+                gis.seek( mark );
+            }
+        }
     }
 
     @Override
@@ -137,65 +141,40 @@ public class SubGribInputStream
         return length;
     }
 
-    @Override
-    public int read()
-            throws IOException
-    {
-        ensure( 1 );
-
-        if( pos + dataOffset >= length ) {
-            throw new EOFException();
-        }
-
-        int v = (int) buffer[pos - cpos];
-        pos++;
-        return v;
-    }
-
     @Override
     public int read( byte[] b, int off, int len )
             throws IOException
     {
-        if( pos + dataOffset + len >= length ) {
-            throw new EOFException();
-        }
-
         if( len <= BUFFER_SIZE ) {
-            ensure( len );
-            System.arraycopy( buffer, pos - cpos, b, off, len );
+            return super.read( b, off, len );
         }
-        else {
-            // Do a raw read as its too big for the buffer
-            gis.readFully( b, off, len );
-        }
-        pos += len;
-        return len;
-    }
 
-    @Override
-    public void seek( long position )
-            throws IOException
-    {
-        if( position < 0 || position > length ) {
-            throw new IllegalArgumentException( "Invalid position " + position + " not in 0<=position<" + length );
+        // Do a raw read as its too big for the buffer
+        final long pos = position();
+        final int n = (int) Math.min( len, length - pos );
+        if( n <= 0 ) {
+            return -1;
         }
-
-        pos = (int) position;
+        readParent( pos, b, off, n );
+        seek( pos + n );
+        return n;
     }
 
     @Override
-    public void readFully( byte[] b, int off, int len )
+    public GribInputStream slice( long offset, long length )
             throws IOException
     {
-        read( b, off, len );
+        if( offset < 0 || offset + length > this.length ) {
+            throw new EOFException();
+        }
+        return gis.slice( dataOffset + offset, length );
     }
 
     @Override
-    public int skipBytes( int n )
+    public GribInputStream duplicate()
             throws IOException
     {
-        seek( pos + n );
-        return n;
+        return gis == null ? new SubGribInputStream() : new SubGribInputStream( gis, dataOffset, length );
     }
 
 }
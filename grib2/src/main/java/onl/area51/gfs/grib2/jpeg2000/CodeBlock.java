@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A code-block, accumulating its codeword segments from each packet in which it is included
+ * <p>
+ * @author peter
+ */
+final class CodeBlock
+{
+
+    /**
+     * The maximum number of coding passes in a segment when passes are not terminated
+     */
+    private static final int ALL_PASSES = 109;
+
+    final Subband band;
+    final int x0;
+    final int y0;
+    final int x1;
+    final int y1;
+
+    boolean included;
+    int bitPlanes;
+    int lblock = 3;
+    int passes;
+    final List<Segment> segments = new ArrayList<>();
+    byte[] data = new byte[0];
+    int length;
+
+    CodeBlock( Subband band, int x0, int y0, int x1, int y1 )
+    {
+        this.band = band;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+    }
+
+    /**
+     * The segment to which the next coding pass belongs, starting a new one when the current one is complete
+     * <p>
+     * @param style code-block style
+     * <p>
+     * @return Segment
+     */
+    Segment nextSegment( int style )
+    {
+        Segment seg = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+        if( seg == null || seg.passes == seg.maxPasses ) {
+            final int max;
+            if( (style & CodingStyle.TERMALL) != 0 ) {
+                max = 1;
+            }
+            else if( (style & CodingStyle.BYPASS) != 0 ) {
+                // The first 10 passes are arithmetic coded, then raw significance and refinement passes alternate with arithmetic cleanup passes
+                max = seg == null ? 10 : seg.maxPasses == 1 || seg.maxPasses == 10 ? 2 : 1;
+            }
+            else {
+                max = ALL_PASSES;
+            }
+            // Segments are contiguous, the body of the packet declaring them is appended later
+            seg = new Segment( max, seg == null ? 0 : seg.start + seg.length );
+            segments.add( seg );
+        }
+        return seg;
+    }
+
+    /**
+     * Append the body of a packet
+     * <p>
+     * @param src    data
+     * @param offset offset in src
+     * @param len    number of bytes
+     */
+    void append( byte[] src, int offset, int len )
+    {
+        if( length + len > data.length ) {
+            data = Arrays.copyOf( data, Math.max( length + len, data.length << 1 ) );
+        }
+        System.arraycopy( src, offset, data, length, len );
+        length += len;
+    }
+
+    /**
+     * A codeword segment, the coding passes between two terminations of the arithmetic coder
+     */
+    static final class Segment
+    {
+
+        final int maxPasses;
+        final int start;
+        int passes;
+        int length;
+
+        Segment( int maxPasses, int start )
+        {
+            this.maxPasses = maxPasses;
+            this.start = start;
+        }
+    }
+
+}
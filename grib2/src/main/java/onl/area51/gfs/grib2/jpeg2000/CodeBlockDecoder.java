@@ -0,0 +1,355 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.util.Arrays;
+
+/**
+ * Tier-1 decoding of a code-block, ITU-T T.800 Annex D.
+ * <p>
+ * Each coding pass runs over stripes of four rows, a column at a time. Magnitudes are built up with one extra bit below the last decoded bit plane so an
+ * incomplete coefficient is reconstructed at the middle of its interval.
+ * <p>
+ * An instance holds the working state for one code-block at a time so each thread needs its own.
+ * <p>
+ * @author peter
+ */
+final class CodeBlockDecoder
+{
+
+    private static final int CTX_SC = 9;
+    private static final int CTX_MR = 14;
+    private static final int CTX_RL = 17;
+    private static final int CTX_UNIFORM = 18;
+    private static final int CONTEXTS = 19;
+
+    private static final int SIGNIFICANCE = 0;
+    private static final int REFINEMENT = 1;
+    private static final int CLEANUP = 2;
+
+    private static final int SIG = 1;
+    private static final int NEG = 2;
+    private static final int VISIT = 4;
+    private static final int REFINED = 8;
+
+    /**
+     * Zero coding context by orientation then h * 15 + v * 5 + d, Table D.1
+     */
+    private static final byte[][] ZC = new byte[4][45];
+
+    static {
+        for( int h = 0; h < 3; h++ ) {
+            for( int v = 0; v < 3; v++ ) {
+                for( int d = 0; d < 5; d++ ) {
+                    final int i = h * 15 + v * 5 + d;
+                    ZC[Subband.LL][i] = (byte) zeroContext( h, v, d );
+                    ZC[Subband.LH][i] = ZC[Subband.LL][i];
+                    ZC[Subband.HL][i] = (byte) zeroContext( v, h, d );
+
+                    final int hv = h + v;
+                    ZC[Subband.HH][i] = (byte) (d >= 3 ? 8
+                                                : d == 2 ? (hv >= 1 ? 7 : 6)
+                                                  : d == 1 ? (hv >= 2 ? 5 : hv == 1 ? 4 : 3)
+                                                    : (hv >= 2 ? 2 : hv));
+                }
+            }
+        }
+    }
+
+    private static int zeroContext( int h, int v, int d )
+    {
+        if( h == 2 ) {
+            return 8;
+        }
+        if( h == 1 ) {
+            return v >= 1 ? 7 : d >= 1 ? 6 : 5;
+        }
+        return v == 2 ? 4 : v == 1 ? 3 : d >= 2 ? 2 : d;
+    }
+
+    private final MQDecoder mq = new MQDecoder( CONTEXTS );
+    private int[] flags = new int[0];
+    private int[] magnitude = new int[0];
+    private int width;
+    private int height;
+    private int stride;
+    private byte[] zc;
+    private boolean causal;
+    // Set by signContext()
+    private int signXor;
+
+    /**
+     * Decode a code-block into its subband
+     * <p>
+     * @param cb    code-block
+     * @param style code-block style
+     */
+    void decode( CodeBlock cb, int style )
+    {
+        width = cb.x1 - cb.x0;
+        height = cb.y1 - cb.y0;
+        stride = width + 2;
+        zc = ZC[cb.band.orientation];
+        causal = (style & CodingStyle.VCAUSAL) != 0;
+
+        final int size = stride * (height + 2);
+        if( flags.length < size ) {
+            flags = new int[size];
+        }
+        else {
+            Arrays.fill( flags, 0, size, 0 );
+        }
+        if( magnitude.length < width * height ) {
+            magnitude = new int[width * height];
+        }
+        else {
+            Arrays.fill( magnitude, 0, width * height, 0 );
+        }
+
+        resetContexts();
+
+        final boolean bypass = (style & CodingStyle.BYPASS) != 0;
+        final boolean reset = (style & CodingStyle.RESET) != 0;
+        final boolean segsym = (style & CodingStyle.SEGSYM) != 0;
+        final int maxPasses = Math.min( cb.passes, 3 * cb.bitPlanes - 2 );
+
+        int pass = 0;
+        for( CodeBlock.Segment seg: cb.segments ) {
+            if( pass >= maxPasses ) {
+                break;
+            }
+
+            final boolean raw = bypass && pass >= 10 && passType( pass ) != CLEANUP;
+            final int end = Math.min( seg.start + seg.length, cb.length );
+            if( raw ) {
+                mq.initRaw( cb.data, seg.start, end );
+            }
+            else {
+                mq.init( cb.data, seg.start, end );
+            }
+
+            for( int i = 0; i < seg.passes && pass < maxPasses; i++, pass++ ) {
+                final int plane = cb.bitPlanes - 1 - (pass + 2) / 3;
+                switch( passType( pass ) ) {
+                    case SIGNIFICANCE:
+                        significancePass( plane, raw );
+                        break;
+                    case REFINEMENT:
+                        refinementPass( plane, raw );
+                        break;
+                    default:
+                        cleanupPass( plane );
+                        if( segsym ) {
+                            for( int s = 0; s < 4; s++ ) {
+                                mq.decode( CTX_UNIFORM );
+                            }
+                        }
+                        break;
+                }
+                if( reset ) {
+                    resetContexts();
+                }
+            }
+        }
+
+        // Write the coefficients to the subband
+        final Subband band = cb.band;
+        final int bw = band.getWidth();
+        for( int y = 0; y < height; y++ ) {
+            final int dst = (cb.y0 - band.y0 + y) * bw + cb.x0 - band.x0;
+            for( int x = 0; x < width; x++ ) {
+                final int m = magnitude[y * width + x];
+                band.data[dst + x] = (flags[index( x, y )] & NEG) != 0 ? -m : m;
+            }
+        }
+    }
+
+    private static int passType( int pass )
+    {
+        return pass == 0 ? CLEANUP : (pass - 1) % 3;
+    }
+
+    private void resetContexts()
+    {
+        mq.resetStates();
+        mq.setState( 0, 4, 0 );
+        mq.setState( CTX_RL, 3, 0 );
+        mq.setState( CTX_UNIFORM, 46, 0 );
+    }
+
+    private int index( int x, int y )
+    {
+        return (y + 1) * stride + x + 1;
+    }
+
+    /**
+     * The neighbours below are ignored for the last row of a stripe in vertically causal mode
+     */
+    private boolean below( int y )
+    {
+        return !causal || (y & 3) != 3;
+    }
+
+    private int zeroContext( int i, int y )
+    {
+        final int[] f = flags;
+        final int h = (f[i - 1] & SIG) + (f[i + 1] & SIG);
+        int v = f[i - stride] & SIG;
+        int d = (f[i - stride - 1] & SIG) + (f[i - stride + 1] & SIG);
+        if( below( y ) ) {
+            v += f[i + stride] & SIG;
+            d += (f[i + stride - 1] & SIG) + (f[i + stride + 1] & SIG);
+        }
+        return zc[h * 15 + v * 5 + d];
+    }
+
+    private static int contribution( int f )
+    {
+        return (f & SIG) == 0 ? 0 : (f & NEG) == 0 ? 1 : -1;
+    }
+
+    /**
+     * The sign coding context, Table D.3, setting signXor
+     */
+    private int signContext( int i, int y )
+    {
+        int h = contribution( flags[i - 1] ) + contribution( flags[i + 1] );
+        int v = contribution( flags[i - stride] ) + (below( y ) ? contribution( flags[i + stride] ) : 0);
+        h = Integer.signum( h );
+        v = Integer.signum( v );
+
+        if( h < 0 || (h == 0 && v < 0) ) {
+            signXor = 1;
+            h = -h;
+            v = -v;
+        }
+        else {
+            signXor = 0;
+        }
+        return CTX_SC + (h == 0 ? (v == 0 ? 0 : 1) : 3 + v);
+    }
+
+    private int refinementContext( int i, int y )
+    {
+        if( (flags[i] & REFINED) != 0 ) {
+            return CTX_MR + 2;
+        }
+        return zeroContext( i, y ) == 0 ? CTX_MR : CTX_MR + 1;
+    }
+
+    private void setSignificant( int i, int m, int negative, int plane )
+    {
+        flags[i] |= negative != 0 ? SIG | NEG : SIG;
+        // One at the bit plane plus a half
+        magnitude[m] = 3 << plane;
+    }
+
+    private void decodeSign( int i, int m, int y, int plane )
+    {
+        final int cx = signContext( i, y );
+        setSignificant( i, m, mq.decode( cx ) ^ signXor, plane );
+    }
+
+    private void significancePass( int plane, boolean raw )
+    {
+        for( int y0 = 0; y0 < height; y0 += 4 ) {
+            final int y1 = Math.min( y0 + 4, height );
+            for( int x = 0; x < width; x++ ) {
+                for( int y = y0; y < y1; y++ ) {
+                    final int i = index( x, y );
+                    if( (flags[i] & SIG) == 0 ) {
+                        final int cx = zeroContext( i, y );
+                        if( cx != 0 ) {
+                            if( raw ) {
+                                if( mq.decodeRaw() != 0 ) {
+                                    setSignificant( i, y * width + x, mq.decodeRaw(), plane );
+                                }
+                            }
+                            else if( mq.decode( cx ) != 0 ) {
+                                decodeSign( i, y * width + x, y, plane );
+                            }
+                            flags[i] |= VISIT;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void refinementPass( int plane, boolean raw )
+    {
+        final int one = 2 << plane;
+        final int half = 1 << plane;
+        for( int y0 = 0; y0 < height; y0 += 4 ) {
+            final int y1 = Math.min( y0 + 4, height );
+            for( int x = 0; x < width; x++ ) {
+                for( int y = y0; y < y1; y++ ) {
+                    final int i = index( x, y );
+                    if( (flags[i] & (SIG | VISIT)) == SIG ) {
+                        final int bit = raw ? mq.decodeRaw() : mq.decode( refinementContext( i, y ) );
+                        final int m = y * width + x;
+                        // The previous half becomes the decoded bit
+                        magnitude[m] = (magnitude[m] & ~one) | (bit != 0 ? one : 0) | half;
+                        flags[i] |= REFINED;
+                    }
+                }
+            }
+        }
+    }
+
+    private void cleanupPass( int plane )
+    {
+        for( int y0 = 0; y0 < height; y0 += 4 ) {
+            final int y1 = Math.min( y0 + 4, height );
+            for( int x = 0; x < width; x++ ) {
+                int y = y0;
+
+                if( y0 + 4 <= height && isRunLength( x, y0 ) ) {
+                    if( mq.decode( CTX_RL ) == 0 ) {
+                        // All four remain insignificant
+                        continue;
+                    }
+                    y += (mq.decode( CTX_UNIFORM ) << 1) | mq.decode( CTX_UNIFORM );
+                    decodeSign( index( x, y ), y * width + x, y, plane );
+                    y++;
+                }
+
+                for( ; y < y1; y++ ) {
+                    final int i = index( x, y );
+                    if( (flags[i] & (SIG | VISIT)) == 0 && mq.decode( zeroContext( i, y ) ) != 0 ) {
+                        decodeSign( i, y * width + x, y, plane );
+                    }
+                    flags[i] &= ~VISIT;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run length mode applies when the four samples of a column are insignificant, not yet visited and have no significant neighbours
+     */
+    private boolean isRunLength( int x, int y0 )
+    {
+        for( int y = y0; y < y0 + 4; y++ ) {
+            final int i = index( x, y );
+            if( (flags[i] & (SIG | VISIT)) != 0 || zeroContext( i, y ) != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
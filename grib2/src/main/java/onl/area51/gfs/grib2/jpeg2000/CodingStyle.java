@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The coding style of a tile-component from the COD and COC marker segments, ITU-T T.800 A.6.1 and A.6.2
+ * <p>
+ * @author peter
+ */
+final class CodingStyle
+        implements Cloneable
+{
+
+    static final int LRCP = 0;
+    static final int RLCP = 1;
+    static final int RPCL = 2;
+    static final int PCRL = 3;
+    static final int CPRL = 4;
+
+    /**
+     * Code-block style: selective arithmetic coding bypass
+     */
+    static final int BYPASS = 0x01;
+    /**
+     * Code-block style: reset context probabilities on coding pass boundaries
+     */
+    static final int RESET = 0x02;
+    /**
+     * Code-block style: termination on each coding pass
+     */
+    static final int TERMALL = 0x04;
+    /**
+     * Code-block style: vertically causal context
+     */
+    static final int VCAUSAL = 0x08;
+    /**
+     * Code-block style: segmentation symbols are used
+     */
+    static final int SEGSYM = 0x20;
+
+    private static final int DEFAULT_PRECINCT = 15;
+
+    boolean sop;
+    boolean eph;
+    int progression;
+    int layers;
+    int levels;
+    int codeBlockWidth;
+    int codeBlockHeight;
+    int codeBlockStyle;
+    boolean reversible;
+    int[] precinctWidth;
+    int[] precinctHeight;
+
+    /**
+     * Read a COD marker segment
+     * <p>
+     * @param b marker segment after Lcod
+     * <p>
+     * @return CodingStyle
+     * <p>
+     * @throws IOException if invalid
+     */
+    static CodingStyle readCOD( ByteBuffer b )
+            throws IOException
+    {
+        final CodingStyle cs = new CodingStyle();
+        final int scod = b.get() & 0xff;
+        cs.sop = (scod & 0x02) != 0;
+        cs.eph = (scod & 0x04) != 0;
+        cs.progression = b.get() & 0xff;
+        cs.layers = b.getShort() & 0xffff;
+        // Multiple component transform, not applicable to a single component
+        b.get();
+        cs.readComponent( b, (scod & 0x01) != 0 );
+        if( cs.progression > CPRL || cs.layers == 0 ) {
+            throw new IOException( "Invalid COD" );
+        }
+        return cs;
+    }
+
+    /**
+     * A copy with the component specific parameters replaced from a COC marker segment
+     * <p>
+     * @param b marker segment after Ccoc
+     * <p>
+     * @return CodingStyle
+     * <p>
+     * @throws IOException if invalid
+     */
+    CodingStyle withCOC( ByteBuffer b )
+            throws IOException
+    {
+        final CodingStyle cs = copy();
+        cs.readComponent( b, (b.get() & 0x01) != 0 );
+        return cs;
+    }
+
+    private void readComponent( ByteBuffer b, boolean precincts )
+            throws IOException
+    {
+        levels = b.get() & 0xff;
+        codeBlockWidth = (b.get() & 0xff) + 2;
+        codeBlockHeight = (b.get() & 0xff) + 2;
+        codeBlockStyle = b.get() & 0xff;
+        reversible = (b.get() & 0xff) == 1;
+        if( levels > 32 || codeBlockWidth > 10 || codeBlockHeight > 10 || codeBlockWidth + codeBlockHeight > 12 ) {
+            throw new IOException( "Invalid coding style" );
+        }
+
+        precinctWidth = new int[levels + 1];
+        precinctHeight = new int[levels + 1];
+        for( int r = 0; r <= levels; r++ ) {
+            if( precincts ) {
+                final int pp = b.get() & 0xff;
+                precinctWidth[r] = pp & 0x0f;
+                precinctHeight[r] = pp >>> 4;
+            }
+            else {
+                precinctWidth[r] = DEFAULT_PRECINCT;
+                precinctHeight[r] = DEFAULT_PRECINCT;
+            }
+        }
+    }
+
+    CodingStyle copy()
+    {
+        try {
+            return (CodingStyle) clone();
+        }
+        catch( CloneNotSupportedException ex ) {
+            throw new IllegalStateException( ex );
+        }
+    }
+
+}
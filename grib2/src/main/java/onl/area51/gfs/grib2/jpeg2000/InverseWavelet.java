@@ -0,0 +1,300 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.util.stream.IntStream;
+
+/**
+ * The inverse discrete wavelet transform of a tile-component, ITU-T T.800 Annex F, using the reversible 5-3 filter in integers or the irreversible 9-7
+ * filter in floating point.
+ * <p>
+ * Each level interleaves the subbands into the next resolution then filters every row followed by every column. Rows and columns are filtered in parallel
+ * in groups of {@link #GROUP} as they are independent.
+ * <p>
+ * @author peter
+ */
+final class InverseWavelet
+{
+
+    /**
+     * Number of rows or columns filtered by each task
+     */
+    private static final int GROUP = 64;
+
+    private static final float ALPHA = -1.586134342059924f;
+    private static final float BETA = -0.052980118572961f;
+    private static final float GAMMA = 0.882911075530934f;
+    private static final float DELTA = 0.443506852043971f;
+    private static final float K = 1.230174104914001f;
+
+    private InverseWavelet()
+    {
+    }
+
+    /**
+     * Reconstruct a tile-component with the reversible 5-3 filter
+     * <p>
+     * @param res resolutions of the tile-component, lowest first
+     * <p>
+     * @return samples of the highest resolution, row major
+     */
+    static int[] reversible( Resolution[] res )
+    {
+        int[] a = dequantize( res[0].bands[0] );
+        for( int r = 1; r < res.length; r++ ) {
+            final Resolution R = res[r];
+            final int w = R.getWidth();
+            final int h = R.getHeight();
+            final int[] out = new int[w * h];
+            final Resolution prev = res[r - 1];
+            interleave( a, prev.x0, prev.y0, prev.getWidth(), prev.getHeight(), R, 0, 0, out );
+            for( Subband b: R.bands ) {
+                interleave( dequantize( b ), b.x0, b.y0, b.getWidth(), b.getHeight(), R, b.orientation & 1, b.orientation >> 1, out );
+            }
+
+            if( w > 0 && h > 0 ) {
+                parallel( h, ( from, to ) -> {
+                    final int[] buf = new int[w + 4];
+                    for( int y = from; y < to; y++ ) {
+                        synthesize53( out, y * w, 1, w, R.x0, buf );
+                    }
+                } );
+                parallel( w, ( from, to ) -> {
+                    final int[] buf = new int[h + 4];
+                    for( int x = from; x < to; x++ ) {
+                        synthesize53( out, x, w, h, R.y0, buf );
+                    }
+                } );
+            }
+            a = out;
+        }
+        return a;
+    }
+
+    /**
+     * Reconstruct a tile-component with the irreversible 9-7 filter
+     * <p>
+     * @param res resolutions of the tile-component, lowest first
+     * <p>
+     * @return samples of the highest resolution, row major
+     */
+    static float[] irreversible( Resolution[] res )
+    {
+        float[] a = dequantizeFloat( res[0].bands[0] );
+        for( int r = 1; r < res.length; r++ ) {
+            final Resolution R = res[r];
+            final int w = R.getWidth();
+            final int h = R.getHeight();
+            final float[] out = new float[w * h];
+            final Resolution prev = res[r - 1];
+            interleave( a, prev.x0, prev.y0, prev.getWidth(), prev.getHeight(), R, 0, 0, out );
+            for( Subband b: R.bands ) {
+                interleave( dequantizeFloat( b ), b.x0, b.y0, b.getWidth(), b.getHeight(), R, b.orientation & 1, b.orientation >> 1, out );
+            }
+
+            if( w > 0 && h > 0 ) {
+                parallel( h, ( from, to ) -> {
+                    final float[] buf = new float[w + 8];
+                    for( int y = from; y < to; y++ ) {
+                        synthesize97( out, y * w, 1, w, R.x0, buf );
+                    }
+                } );
+                parallel( w, ( from, to ) -> {
+                    final float[] buf = new float[h + 8];
+                    for( int x = from; x < to; x++ ) {
+                        synthesize97( out, x, w, h, R.y0, buf );
+                    }
+                } );
+            }
+            a = out;
+        }
+        return a;
+    }
+
+    /**
+     * Drop the extra bit of the tier-1 coefficients, which rounds an incomplete coefficient to the middle of its interval
+     */
+    private static int[] dequantize( Subband b )
+    {
+        final int[] d = b.data;
+        final int[] v = new int[d.length];
+        for( int i = 0; i < d.length; i++ ) {
+            v[i] = d[i] < 0 ? -(-d[i] >> 1) : d[i] >> 1;
+        }
+        return v;
+    }
+
+    private static float[] dequantizeFloat( Subband b )
+    {
+        final int[] d = b.data;
+        final float[] v = new float[d.length];
+        final float step = b.stepSize * 0.5f;
+        for( int i = 0; i < d.length; i++ ) {
+            v[i] = d[i] * step;
+        }
+        return v;
+    }
+
+    /**
+     * Copy a subband, or the previous resolution, into its place within a resolution, 2D_INTERLEAVE
+     * <p>
+     * @param src source samples, row major
+     * @param sx0 source left
+     * @param sy0 source top
+     * @param sw  source width
+     * @param sh  source height
+     * @param R   resolution
+     * @param xo  1 if horizontally high pass
+     * @param yo  1 if vertically high pass
+     * @param dst resolution samples
+     */
+    private static void interleave( int[] src, int sx0, int sy0, int sw, int sh, Resolution R, int xo, int yo, int[] dst )
+    {
+        final int w = R.getWidth();
+        for( int j = 0; j < sh; j++ ) {
+            final int row = (2 * (sy0 + j) + yo - R.y0) * w + 2 * sx0 + xo - R.x0;
+            for( int i = 0; i < sw; i++ ) {
+                dst[row + 2 * i] = src[j * sw + i];
+            }
+        }
+    }
+
+    private static void interleave( float[] src, int sx0, int sy0, int sw, int sh, Resolution R, int xo, int yo, float[] dst )
+    {
+        final int w = R.getWidth();
+        for( int j = 0; j < sh; j++ ) {
+            final int row = (2 * (sy0 + j) + yo - R.y0) * w + 2 * sx0 + xo - R.x0;
+            for( int i = 0; i < sw; i++ ) {
+                dst[row + 2 * i] = src[j * sw + i];
+            }
+        }
+    }
+
+    /**
+     * Periodic symmetric extension of an index, 1D_EXTR
+     */
+    private static int reflect( int k, int n )
+    {
+        final int period = 2 * (n - 1);
+        final int m = Math.floorMod( k, period );
+        return m < n ? m : period - m;
+    }
+
+    /**
+     * Reversible 1D synthesis of one row or column in place, 1D_SR with the 5-3 filter
+     * <p>
+     * @param a      samples
+     * @param offset index of the first sample
+     * @param step   distance between samples
+     * @param n      number of samples
+     * @param i0     coordinate of the first sample, its parity says whether it is low or high pass
+     * @param buf    working buffer of at least n + 4
+     */
+    static void synthesize53( int[] a, int offset, int step, int n, int i0, int[] buf )
+    {
+        if( n == 1 ) {
+            if( (i0 & 1) == 1 ) {
+                a[offset] >>= 1;
+            }
+            return;
+        }
+
+        for( int k = -2; k < n + 2; k++ ) {
+            buf[k + 2] = a[offset + reflect( k, n ) * step];
+        }
+
+        // buf[j] is at coordinate i0 - 2 + j, low pass samples at even coordinates
+        final int odd = (i0 & 1) ^ 1;
+        for( int j = 1 + odd; j < n + 3; j += 2 ) {
+            buf[j] -= (buf[j - 1] + buf[j + 1] + 2) >> 2;
+        }
+        for( int j = 2 + odd; j < n + 2; j += 2 ) {
+            buf[j] += (buf[j - 1] + buf[j + 1]) >> 1;
+        }
+
+        for( int k = 0; k < n; k++ ) {
+            a[offset + k * step] = buf[k + 2];
+        }
+    }
+
+    /**
+     * Irreversible 1D synthesis of one row or column in place, 1D_SR with the 9-7 filter
+     * <p>
+     * @param a      samples
+     * @param offset index of the first sample
+     * @param step   distance between samples
+     * @param n      number of samples
+     * @param i0     coordinate of the first sample, its parity says whether it is low or high pass
+     * @param buf    working buffer of at least n + 8
+     */
+    static void synthesize97( float[] a, int offset, int step, int n, int i0, float[] buf )
+    {
+        if( n == 1 ) {
+            if( (i0 & 1) == 1 ) {
+                a[offset] *= 0.5f;
+            }
+            return;
+        }
+
+        for( int k = -4; k < n + 4; k++ ) {
+            buf[k + 4] = a[offset + reflect( k, n ) * step];
+        }
+
+        // buf[j] is at coordinate i0 - 4 + j, low pass samples at even coordinates
+        final int odd = (i0 & 1) ^ 1;
+        for( int j = odd ^ 1; j < n + 8; j += 2 ) {
+            buf[j] *= K;
+        }
+        for( int j = odd; j < n + 8; j += 2 ) {
+            buf[j] *= 1 / K;
+        }
+        lift( buf, 1 + odd, n + 7, DELTA );
+        lift( buf, 2 + odd, n + 6, GAMMA );
+        lift( buf, 3 + odd, n + 5, BETA );
+        lift( buf, 4 + odd, n + 4, ALPHA );
+
+        for( int k = 0; k < n; k++ ) {
+            a[offset + k * step] = buf[k + 4];
+        }
+    }
+
+    private static void lift( float[] buf, int from, int to, float c )
+    {
+        for( int j = from; j < to; j += 2 ) {
+            buf[j] -= c * (buf[j - 1] + buf[j + 1]);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Range
+    {
+
+        void apply( int from, int to );
+    }
+
+    private static void parallel( int n, Range task )
+    {
+        if( n <= GROUP ) {
+            task.apply( 0, n );
+        }
+        else {
+            IntStream.range( 0, (n + GROUP - 1) / GROUP )
+                    .parallel()
+                    .forEach( g -> task.apply( g * GROUP, Math.min( n, (g + 1) * GROUP ) ) );
+        }
+    }
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A decoder of single component JPEG 2000 code streams, ITU-T T.800, as used by GRIB2 data representation template 5.40.
+ * <p>
+ * Both the raw code stream and the JP2 file format are accepted. All of the progression orders, code-block styles, precincts, tiles and both the 5-3
+ * reversible and 9-7 irreversible wavelets are supported. Progression order changes, packed packet headers and regions of interest are not, as GRIB2 encoders
+ * do not use them, and are reported with an {@link IOException}.
+ * <p>
+ * The headers are read when the decoder is created, the samples when {@link #decode(int[])} is called. Code-blocks are decoded in parallel.
+ * <p>
+ * @author peter
+ */
+public final class JPEG2000Decoder
+{
+
+    private static final int SOC = 0xff4f;
+    private static final int SIZ = 0xff51;
+    private static final int COD = 0xff52;
+    private static final int COC = 0xff53;
+    private static final int TLM = 0xff55;
+    private static final int PLM = 0xff57;
+    private static final int PLT = 0xff58;
+    private static final int QCD = 0xff5c;
+    private static final int QCC = 0xff5d;
+    private static final int RGN = 0xff5e;
+    private static final int POC = 0xff5f;
+    private static final int PPM = 0xff60;
+    private static final int PPT = 0xff61;
+    private static final int CRG = 0xff63;
+    private static final int COM = 0xff64;
+    private static final int SOT = 0xff90;
+    private static final int SOD = 0xff93;
+    private static final int EOC = 0xffd9;
+
+    private static final int JP2_SIGNATURE = 0x6a502020;
+    private static final int JP2C = 0x6a703263;
+
+    private final ByteBuffer b;
+
+    private int imageX1;
+    private int imageY1;
+    private int imageX0;
+    private int imageY0;
+    private int tileWidth;
+    private int tileHeight;
+    private int tileX0;
+    private int tileY0;
+    private int dx;
+    private int dy;
+    private int depth;
+    private boolean signed;
+
+    private final Header main = new Header();
+    private final Map<Integer, TileData> tiles = new TreeMap<>();
+
+    /**
+     * Read the headers of a code stream
+     * <p>
+     * @param data code stream or JP2 file, from its position to its limit. It is not modified.
+     * <p>
+     * @throws IOException if the code stream is invalid or unsupported
+     */
+    public JPEG2000Decoder( ByteBuffer data )
+            throws IOException
+    {
+        b = data.slice().order( ByteOrder.BIG_ENDIAN );
+        try {
+            if( b.remaining() >= 12 && b.getInt( 0 ) == 12 && b.getInt( 4 ) == JP2_SIGNATURE ) {
+                findCodeStream();
+            }
+            readHeaders();
+        }
+        catch( RuntimeException ex ) {
+            throw new IOException( "Invalid JPEG 2000 code stream", ex );
+        }
+    }
+
+    /**
+     * Position the buffer at the contiguous code stream box of a JP2 file
+     */
+    private void findCodeStream()
+            throws IOException
+    {
+        int pos = 0;
+        while( pos + 8 <= b.limit() ) {
+            long len = b.getInt( pos ) & 0xffffffffL;
+            final int type = b.getInt( pos + 4 );
+            int header = 8;
+            if( len == 1 ) {
+                len = b.getLong( pos + 8 );
+                header = 16;
+            }
+            else if( len == 0 ) {
+                len = b.limit() - pos;
+            }
+            if( len < header || pos + len > b.limit() ) {
+                break;
+            }
+            if( type == JP2C ) {
+                b.limit( (int) (pos + len) );
+                b.position( pos + header );
+                return;
+            }
+            pos += len;
+        }
+        throw new IOException( "No code stream in JP2 file" );
+    }
+
+    private int marker()
+    {
+        return b.getShort() & 0xffff;
+    }
+
+    /**
+     * The body of a marker segment, the buffer being positioned after it
+     */
+    private ByteBuffer segment()
+    {
+        final int len = marker();
+        final ByteBuffer s = b.slice().order( ByteOrder.BIG_ENDIAN );
+        s.limit( len - 2 );
+        b.position( b.position() + len - 2 );
+        return s;
+    }
+
+    private void readHeaders()
+            throws IOException
+    {
+        if( marker() != SOC ) {
+            throw new IOException( "Not a JPEG 2000 code stream" );
+        }
+        if( marker() != SIZ ) {
+            throw new IOException( "SIZ marker expected" );
+        }
+        readSIZ( segment() );
+
+        int m = marker();
+        while( m != SOT ) {
+            readHeaderSegment( m, main );
+            m = marker();
+        }
+
+        // Tile-parts until the end of the code stream
+        while( m == SOT ) {
+            final int start = b.position() - 2;
+            final ByteBuffer sot = segment();
+            final int index = sot.getShort() & 0xffff;
+            final long length = sot.getInt() & 0xffffffffL;
+            final int part = sot.get() & 0xff;
+            if( index >= getTilesWide() * getTilesHigh() ) {
+                throw new IOException( "Invalid tile " + index );
+            }
+
+            final TileData tile = tiles.computeIfAbsent( index, i -> new TileData() );
+            m = marker();
+            while( m != SOD ) {
+                if( part != 0 && m != COM && m != PLT ) {
+                    throw new IOException( "Unsupported marker in tile-part " + Integer.toHexString( m ) );
+                }
+                readHeaderSegment( m, tile.header );
+                m = marker();
+            }
+
+            int end = length == 0 ? b.limit() : (int) Math.min( b.limit(), start + length );
+            if( length == 0 && end - 2 >= b.position() && (b.getShort( end - 2 ) & 0xffff) == EOC ) {
+                end -= 2;
+            }
+            // The buffer may be direct or mapped so copy rather than use its array
+            final byte[] body = new byte[end - b.position()];
+            b.get( body );
+            tile.data.write( body, 0, body.length );
+
+            m = b.remaining() >= 2 ? marker() : EOC;
+        }
+    }
+
+    private void readSIZ( ByteBuffer s )
+            throws IOException
+    {
+        // Capabilities
+        s.getShort();
+        imageX1 = s.getInt();
+        imageY1 = s.getInt();
+        imageX0 = s.getInt();
+        imageY0 = s.getInt();
+        tileWidth = s.getInt();
+        tileHeight = s.getInt();
+        tileX0 = s.getInt();
+        tileY0 = s.getInt();
+        final int components = s.getShort() & 0xffff;
+        if( components != 1 ) {
+            throw new IOException( "Unsupported number of components " + components );
+        }
+        final int ssiz = s.get() & 0xff;
+        signed = (ssiz & 0x80) != 0;
+        depth = (ssiz & 0x7f) + 1;
+        dx = s.get() & 0xff;
+        dy = s.get() & 0xff;
+        if( imageX1 <= imageX0 || imageY1 <= imageY0 || tileWidth <= 0 || tileHeight <= 0 || dx == 0 || dy == 0 || depth > 31 ) {
+            throw new IOException( "Invalid SIZ" );
+        }
+    }
+
+    private void readHeaderSegment( int m, Header h )
+            throws IOException
+    {
+        switch( m ) {
+            case COD:
+                h.cod = CodingStyle.readCOD( segment() );
+                break;
+
+            case COC:
+                h.coc = skipComponent( segment() );
+                break;
+
+            case QCD:
+                h.qcd = Quantization.read( segment() );
+                break;
+
+            case QCC:
+                h.qcc = Quantization.read( skipComponent( segment() ) );
+                break;
+
+            case TLM:
+            case PLM:
+            case PLT:
+            case CRG:
+            case COM:
+                segment();
+                break;
+
+            case RGN:
+            case POC:
+            case PPM:
+            case PPT:
+                throw new IOException( "Unsupported marker " + Integer.toHexString( m ) );
+
+            default:
+                throw new IOException( "Unknown marker " + Integer.toHexString( m ) );
+        }
+    }
+
+    private static ByteBuffer skipComponent( ByteBuffer s )
+    {
+        // One byte as there are fewer than 257 components
+        s.get();
+        return s;
+    }
+
+    private int getTilesWide()
+    {
+        return (int) ((imageX1 - tileX0 + (long) tileWidth - 1) / tileWidth);
+    }
+
+    private int getTilesHigh()
+    {
+        return (int) ((imageY1 - tileY0 + (long) tileHeight - 1) / tileHeight);
+    }
+
+    private static int ceilDiv( int a, int b )
+    {
+        return (int) ((a + (long) b - 1) / b);
+    }
+
+    /**
+     * @return width of the image in samples
+     */
+    public int getWidth()
+    {
+        return ceilDiv( imageX1, dx ) - ceilDiv( imageX0, dx );
+    }
+
+    /**
+     * @return height of the image in samples
+     */
+    public int getHeight()
+    {
+        return ceilDiv( imageY1, dy ) - ceilDiv( imageY0, dy );
+    }
+
+    /**
+     * @return bits per sample
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return true if samples are signed
+     */
+    public boolean isSigned()
+    {
+        return signed;
+    }
+
+    /**
+     * Decode the samples of the image.
+     * <p>
+     * A code stream may only be decoded once.
+     * <p>
+     * @param dst samples in raster order, at least {@link #getWidth()} * {@link #getHeight()}
+     * <p>
+     * @throws IOException if the code stream is invalid
+     */
+    public void decode( int[] dst )
+            throws IOException
+    {
+        final int width = getWidth();
+        if( dst.length < (long) width * getHeight() ) {
+            throw new IllegalArgumentException( "Destination too small" );
+        }
+
+        final int ox = ceilDiv( imageX0, dx );
+        final int oy = ceilDiv( imageY0, dy );
+        final int tw = getTilesWide();
+        try {
+            for( Map.Entry<Integer, TileData> e: tiles.entrySet() ) {
+                final int p = e.getKey() % tw;
+                final int q = e.getKey() / tw;
+                final int tx0 = Math.max( tileX0 + p * tileWidth, imageX0 );
+                final int ty0 = Math.max( tileY0 + q * tileHeight, imageY0 );
+                final int tx1 = (int) Math.min( tileX0 + (p + 1L) * tileWidth, imageX1 );
+                final int ty1 = (int) Math.min( tileY0 + (q + 1L) * tileHeight, imageY1 );
+
+                final Header h = e.getValue().header;
+                final Tile tile = new Tile( getCodingStyle( h ), getQuantization( h ), depth,
+                                            ceilDiv( tx0, dx ), ceilDiv( ty0, dy ), ceilDiv( tx1, dx ), ceilDiv( ty1, dy ) );
+                tile.readPackets( e.getValue().data.toByteArray() );
+                tile.decode( dst, width, ox, oy, signed );
+            }
+        }
+        catch( RuntimeException ex ) {
+            throw new IOException( "Invalid JPEG 2000 code stream", ex );
+        }
+    }
+
+    /**
+     * The coding style of a tile, in order of precedence the tile COC, tile COD, main COC then main COD
+     */
+    private CodingStyle getCodingStyle( Header h )
+            throws IOException
+    {
+        if( h.coc != null ) {
+            return resolveCOD( h ).withCOC( h.coc.duplicate() );
+        }
+        if( h.cod != null ) {
+            return h.cod;
+        }
+        if( main.coc != null ) {
+            return resolveCOD( main ).withCOC( main.coc.duplicate() );
+        }
+        return resolveCOD( main );
+    }
+
+    private CodingStyle resolveCOD( Header h )
+            throws IOException
+    {
+        final CodingStyle cs = h.cod != null ? h.cod : main.cod;
+        if( cs == null ) {
+            throw new IOException( "No COD" );
+        }
+        return cs;
+    }
+
+    private Quantization getQuantization( Header h )
+            throws IOException
+    {
+        final Quantization q = h.qcc != null ? h.qcc
+                               : h.qcd != null ? h.qcd
+                                 : main.qcc != null ? main.qcc
+                                   : main.qcd;
+        if( q == null ) {
+            throw new IOException( "No QCD" );
+        }
+        return q;
+    }
+
+    /**
+     * Coding parameters from the main or a tile header
+     */
+    private static final class Header
+    {
+
+        CodingStyle cod;
+        ByteBuffer coc;
+        Quantization qcd;
+        Quantization qcc;
+    }
+
+    private static final class TileData
+    {
+
+        final Header header = new Header();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+    }
+
+}
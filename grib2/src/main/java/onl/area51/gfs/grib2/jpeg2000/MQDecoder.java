@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+/**
+ * The MQ arithmetic decoder, ITU-T T.800 Annex C, along with the raw (bypass) decoder used by the selective arithmetic coding bypass mode.
+ * <p>
+ * Reads past the end of a codeword segment return 0xff, the same as a terminating marker.
+ * <p>
+ * @author peter
+ */
+final class MQDecoder
+{
+
+    private static final int[] QE = {
+        0x5601, 0x3401, 0x1801, 0x0ac1, 0x0521, 0x0221, 0x5601, 0x5401, 0x4801, 0x3801, 0x3001, 0x2401, 0x1c01, 0x1601, 0x5601, 0x5401,
+        0x5101, 0x4801, 0x3801, 0x3401, 0x3001, 0x2801, 0x2401, 0x2201, 0x1c01, 0x1801, 0x1601, 0x1401, 0x1201, 0x1101, 0x0ac1, 0x09c1,
+        0x08a1, 0x0521, 0x0441, 0x02a1, 0x0221, 0x0141, 0x0111, 0x0085, 0x0049, 0x0025, 0x0015, 0x0009, 0x0005, 0x0001, 0x5601
+    };
+
+    private static final int[] NMPS = {
+        1, 2, 3, 4, 5, 38, 7, 8, 9, 10, 11, 12, 13, 29, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32,
+        33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 45, 46
+    };
+
+    private static final int[] NLPS = {
+        1, 6, 9, 12, 29, 33, 6, 14, 14, 14, 17, 18, 20, 21, 14, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29,
+        30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 46
+    };
+
+    private static final int[] SWITCH = {
+        1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    // Per context, the index into the tables shifted left by 1 with the MPS in bit 0
+    private final int[] states;
+
+    private byte[] data;
+    private int pos;
+    private int end;
+    private int a;
+    private int c;
+    private int ct;
+
+    MQDecoder( int contexts )
+    {
+        states = new int[contexts];
+    }
+
+    /**
+     * Set the state of a context
+     * <p>
+     * @param cx    context
+     * @param index index into the probability table
+     * @param mps   the more probable symbol
+     */
+    void setState( int cx, int index, int mps )
+    {
+        states[cx] = (index << 1) | mps;
+    }
+
+    /**
+     * Reset every context to index 0 with an MPS of 0
+     */
+    void resetStates()
+    {
+        for( int i = 0; i < states.length; i++ ) {
+            states[i] = 0;
+        }
+    }
+
+    private int byteAt( int i )
+    {
+        return i < end ? data[i] & 0xff : 0xff;
+    }
+
+    /**
+     * Start decoding a codeword segment, INITDEC
+     * <p>
+     * @param data  data
+     * @param start offset of the segment
+     * @param end   offset after the segment
+     */
+    void init( byte[] data, int start, int end )
+    {
+        this.data = data;
+        this.end = end;
+        pos = start;
+        c = byteAt( pos ) << 16;
+        byteIn();
+        c <<= 7;
+        ct -= 7;
+        a = 0x8000;
+    }
+
+    private void byteIn()
+    {
+        if( byteAt( pos ) == 0xff ) {
+            final int b = byteAt( pos + 1 );
+            if( b > 0x8f ) {
+                // A marker so feed 1's
+                c += 0xff00;
+                ct = 8;
+            }
+            else {
+                pos++;
+                c += b << 9;
+                ct = 7;
+            }
+        }
+        else {
+            pos++;
+            c += byteAt( pos ) << 8;
+            ct = 8;
+        }
+    }
+
+    private void renormalize()
+    {
+        // Shift as many bits at once as possible rather than one at a time
+        do {
+            if( ct == 0 ) {
+                byteIn();
+            }
+            final int n = Math.min( Integer.numberOfLeadingZeros( a ) - 16, ct );
+            a <<= n;
+            c <<= n;
+            ct -= n;
+        }
+        while( (a & 0x8000) == 0 );
+    }
+
+    /**
+     * Decode a decision, DECODE
+     * <p>
+     * @param cx context
+     * <p>
+     * @return 0 or 1
+     */
+    int decode( int cx )
+    {
+        final int state = states[cx];
+        final int index = state >>> 1;
+        final int mps = state & 1;
+        final int qe = QE[index];
+        int d;
+
+        a -= qe;
+        if( (c >>> 16) < qe ) {
+            // LPS_EXCHANGE
+            if( a < qe ) {
+                d = mps;
+                states[cx] = (NMPS[index] << 1) | mps;
+            }
+            else {
+                d = 1 - mps;
+                states[cx] = (NLPS[index] << 1) | (mps ^ SWITCH[index]);
+            }
+            a = qe;
+            renormalize();
+        }
+        else {
+            c -= qe << 16;
+            if( (a & 0x8000) == 0 ) {
+                // MPS_EXCHANGE
+                if( a < qe ) {
+                    d = 1 - mps;
+                    states[cx] = (NLPS[index] << 1) | (mps ^ SWITCH[index]);
+                }
+                else {
+                    d = mps;
+                    states[cx] = (NMPS[index] << 1) | mps;
+                }
+                renormalize();
+            }
+            else {
+                d = mps;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Start decoding a raw codeword segment
+     * <p>
+     * @param data  data
+     * @param start offset of the segment
+     * @param end   offset after the segment
+     */
+    void initRaw( byte[] data, int start, int end )
+    {
+        this.data = data;
+        this.end = end;
+        pos = start;
+        c = 0;
+        ct = 0;
+    }
+
+    /**
+     * Read a bit from a raw segment, skipping the bit stuffed after each 0xff
+     * <p>
+     * @return 0 or 1
+     */
+    int decodeRaw()
+    {
+        if( ct == 0 ) {
+            if( c == 0xff ) {
+                final int b = byteAt( pos );
+                if( b > 0x8f ) {
+                    c = 0xff;
+                    ct = 8;
+                }
+                else {
+                    c = b;
+                    pos++;
+                    ct = 7;
+                }
+            }
+            else {
+                c = byteAt( pos );
+                pos++;
+                ct = 8;
+            }
+        }
+        ct--;
+        return (c >>> ct) & 1;
+    }
+
+}
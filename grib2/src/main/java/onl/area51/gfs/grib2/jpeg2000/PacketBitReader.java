@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+/**
+ * Reads the bits of a packet header, ITU-T T.800 B.10.1. A byte following 0xff only holds 7 bits, its most significant bit being a stuffed 0.
+ * <p>
+ * @author peter
+ */
+final class PacketBitReader
+{
+
+    private final byte[] data;
+    private final int end;
+    private int pos;
+    private int buf;
+    private int ct;
+
+    /**
+     * @param data data
+     * @param pos  offset of the first byte of the header
+     * @param end  offset after the last byte available
+     */
+    PacketBitReader( byte[] data, int pos, int end )
+    {
+        this.data = data;
+        this.pos = pos;
+        this.end = end;
+    }
+
+    private void byteIn()
+    {
+        buf = (buf << 8) & 0xffff;
+        ct = buf == 0xff00 ? 7 : 8;
+        if( pos < end ) {
+            buf |= data[pos++] & 0xff;
+        }
+    }
+
+    int bit()
+    {
+        if( ct == 0 ) {
+            byteIn();
+        }
+        ct--;
+        return (buf >> ct) & 1;
+    }
+
+    int bits( int n )
+    {
+        int v = 0;
+        for( int i = 0; i < n; i++ ) {
+            v = (v << 1) | bit();
+        }
+        return v;
+    }
+
+    /**
+     * Skip to the end of the header. If the last byte was 0xff the following byte, which holds the stuffed bit, is also part of the header.
+     */
+    void align()
+    {
+        if( (buf & 0xff) == 0xff ) {
+            byteIn();
+        }
+        ct = 0;
+    }
+
+    /**
+     * The offset of the next unread byte
+     * <p>
+     * @return offset
+     */
+    int position()
+    {
+        return pos;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+/**
+ * A precinct of a resolution, holding the code-blocks of each of its subbands along with their tag trees
+ * <p>
+ * @author peter
+ */
+final class Precinct
+{
+
+    final Band[] bands;
+
+    Precinct( Band[] bands )
+    {
+        this.bands = bands;
+    }
+
+    /**
+     * The code-blocks of one subband within the precinct
+     */
+    static final class Band
+    {
+
+        final CodeBlock[] blocks;
+        final TagTree inclusion;
+        final TagTree zeroBitPlanes;
+
+        /**
+         * @param blocks code-blocks in raster order
+         * @param width  code-blocks across
+         * @param height code-blocks down
+         */
+        Band( CodeBlock[] blocks, int width, int height )
+        {
+            this.blocks = blocks;
+            inclusion = blocks.length == 0 ? null : new TagTree( width, height );
+            zeroBitPlanes = blocks.length == 0 ? null : new TagTree( width, height );
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The quantization of a tile-component from the QCD and QCC marker segments, ITU-T T.800 A.6.4 and A.6.5
+ * <p>
+ * @author peter
+ */
+final class Quantization
+{
+
+    static final int NONE = 0;
+    static final int DERIVED = 1;
+    static final int EXPOUNDED = 2;
+
+    final int style;
+    final int guardBits;
+    private final int[] exponent;
+    private final int[] mantissa;
+
+    private Quantization( ByteBuffer b )
+            throws IOException
+    {
+        final int sqcd = b.get() & 0xff;
+        style = sqcd & 0x1f;
+        guardBits = sqcd >>> 5;
+
+        final int n = style == NONE ? b.remaining() : style == DERIVED ? 1 : b.remaining() >> 1;
+        if( style > EXPOUNDED || n == 0 ) {
+            throw new IOException( "Invalid quantization" );
+        }
+
+        exponent = new int[n];
+        mantissa = new int[n];
+        for( int i = 0; i < n; i++ ) {
+            if( style == NONE ) {
+                exponent[i] = (b.get() & 0xff) >>> 3;
+            }
+            else {
+                final int v = b.getShort() & 0xffff;
+                exponent[i] = v >>> 11;
+                mantissa[i] = v & 0x7ff;
+            }
+        }
+    }
+
+    /**
+     * Read a QCD or QCC marker segment
+     * <p>
+     * @param b marker segment after Lqcd or Cqcc
+     * <p>
+     * @return Quantization
+     * <p>
+     * @throws IOException if invalid
+     */
+    static Quantization read( ByteBuffer b )
+            throws IOException
+    {
+        return new Quantization( b );
+    }
+
+    /**
+     * The exponent of a subband
+     * <p>
+     * @param band   subband index, 0 for LL then HL, LH and HH of each resolution in turn
+     * @param level  decomposition level of the subband
+     * @param levels number of decomposition levels
+     * <p>
+     * @return exponent
+     * <p>
+     * @throws IOException if there is none for the subband
+     */
+    int getExponent( int band, int level, int levels )
+            throws IOException
+    {
+        if( style == DERIVED ) {
+            return exponent[0] - levels + level;
+        }
+        if( band >= exponent.length ) {
+            throw new IOException( "No quantization for subband " + band );
+        }
+        return exponent[band];
+    }
+
+    /**
+     * The mantissa of a subband
+     * <p>
+     * @param band subband index
+     * <p>
+     * @return mantissa, 0 when there is no quantization
+     */
+    int getMantissa( int band )
+    {
+        return style == DERIVED ? mantissa[0] : band < mantissa.length ? mantissa[band] : 0;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+/**
+ * A resolution level of a tile-component
+ * <p>
+ * @author peter
+ */
+final class Resolution
+{
+
+    final int level;
+    final int x0;
+    final int y0;
+    final int x1;
+    final int y1;
+    final int precinctWidth;
+    final int precinctHeight;
+    final int precinctsWide;
+    final int precinctsHigh;
+    final Subband[] bands;
+    Precinct[] precincts;
+
+    Resolution( int level, int x0, int y0, int x1, int y1, int precinctWidth, int precinctHeight, Subband[] bands )
+    {
+        this.level = level;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.precinctWidth = precinctWidth;
+        this.precinctHeight = precinctHeight;
+        this.bands = bands;
+        precinctsWide = x1 > x0 ? ((x1 + (1 << precinctWidth) - 1) >> precinctWidth) - (x0 >> precinctWidth) : 0;
+        precinctsHigh = y1 > y0 ? ((y1 + (1 << precinctHeight) - 1) >> precinctHeight) - (y0 >> precinctHeight) : 0;
+    }
+
+    int getWidth()
+    {
+        return x1 - x0;
+    }
+
+    int getHeight()
+    {
+        return y1 - y0;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+/**
+ * A subband of a tile-component
+ * <p>
+ * @author peter
+ */
+final class Subband
+{
+
+    static final int LL = 0;
+    static final int HL = 1;
+    static final int LH = 2;
+    static final int HH = 3;
+
+    final int orientation;
+    final int x0;
+    final int y0;
+    final int x1;
+    final int y1;
+    /**
+     * Maximum number of magnitude bit planes, M<sub>b</sub>
+     */
+    final int magnitudeBits;
+    /**
+     * Quantization step size, 1 when reversible
+     */
+    final float stepSize;
+    /**
+     * Coefficients from tier-1 decoding, sign and magnitude with one extra bit below the least significant decoded bit plane, row major
+     */
+    final int[] data;
+
+    Subband( int orientation, int x0, int y0, int x1, int y1, int magnitudeBits, float stepSize )
+    {
+        this.orientation = orientation;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.magnitudeBits = magnitudeBits;
+        this.stepSize = stepSize;
+        data = new int[getWidth() * getHeight()];
+    }
+
+    int getWidth()
+    {
+        return x1 - x0;
+    }
+
+    int getHeight()
+    {
+        return y1 - y0;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.util.Arrays;
+
+/**
+ * A tag tree, ITU-T T.800 B.10.2, used in packet headers for the inclusion and number of zero bit planes of each code-block in a precinct.
+ * <p>
+ * @author peter
+ */
+final class TagTree
+{
+
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private final int[] value;
+    private final int[] low;
+    private final int[] parent;
+    private final int[] stack = new int[32];
+
+    /**
+     * @param width  leaves across
+     * @param height leaves down
+     */
+    TagTree( int width, int height )
+    {
+        int count = 0;
+        for( int w = width, h = height;; w = (w + 1) >> 1, h = (h + 1) >> 1 ) {
+            count += w * h;
+            if( w * h <= 1 ) {
+                break;
+            }
+        }
+
+        value = new int[count];
+        low = new int[count];
+        parent = new int[count];
+        Arrays.fill( value, UNKNOWN );
+
+        int offset = 0;
+        for( int w = width, h = height; w * h > 1; w = (w + 1) >> 1, h = (h + 1) >> 1 ) {
+            final int next = offset + w * h;
+            final int nw = (w + 1) >> 1;
+            for( int j = 0; j < h; j++ ) {
+                for( int i = 0; i < w; i++ ) {
+                    parent[offset + j * w + i] = next + (j >> 1) * nw + (i >> 1);
+                }
+            }
+            offset = next;
+        }
+        parent[count - 1] = -1;
+    }
+
+    /**
+     * Decode whether the value of a leaf is less than a threshold, reading only the bits needed
+     * <p>
+     * @param in        packet header
+     * @param leaf      leaf index, row major
+     * @param threshold threshold
+     * <p>
+     * @return true if the value of the leaf is below threshold
+     */
+    boolean decode( PacketBitReader in, int leaf, int threshold )
+    {
+        int sp = 0;
+        int node = leaf;
+        while( parent[node] >= 0 ) {
+            stack[sp++] = node;
+            node = parent[node];
+        }
+
+        int l = 0;
+        for( ;; ) {
+            if( l > low[node] ) {
+                low[node] = l;
+            }
+            else {
+                l = low[node];
+            }
+            while( l < threshold && l < value[node] ) {
+                if( in.bit() != 0 ) {
+                    value[node] = l;
+                }
+                else {
+                    l++;
+                }
+            }
+            low[node] = l;
+            if( sp == 0 ) {
+                break;
+            }
+            node = stack[--sp];
+        }
+        return value[node] < threshold;
+    }
+
+    /**
+     * Decode the value of a leaf
+     * <p>
+     * @param in   packet header
+     * @param leaf leaf index, row major
+     * <p>
+     * @return value
+     */
+    int decodeValue( PacketBitReader in, int leaf )
+    {
+        int threshold = 1;
+        while( !decode( in, leaf, threshold ) ) {
+            threshold++;
+        }
+        return threshold - 1;
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A tile of a single component image, ITU-T T.800 Annex B.
+ * <p>
+ * Decoding reads every packet header in progression order, which is inherently sequential, collecting the codeword segments of each code-block. The
+ * code-blocks are independent of each other so they are then decoded in parallel, before the inverse wavelet transform.
+ * <p>
+ * @author peter
+ */
+final class Tile
+{
+
+    private static final int SOP = 0xff91;
+    private static final int EPH = 0xff92;
+
+    private static final ThreadLocal<CodeBlockDecoder> DECODER = ThreadLocal.withInitial( CodeBlockDecoder::new );
+
+    private final CodingStyle cs;
+    private final int depth;
+    private final int x0;
+    private final int y0;
+    private final int x1;
+    private final int y1;
+    private final Resolution[] resolutions;
+    private final List<CodeBlock> codeBlocks = new ArrayList<>();
+
+    /**
+     * @param cs    coding style
+     * @param q     quantization
+     * @param depth bit depth of the component
+     * @param x0    left of the tile-component
+     * @param y0    top of the tile-component
+     * @param x1    right of the tile-component
+     * @param y1    bottom of the tile-component
+     * <p>
+     * @throws IOException if the parameters are invalid
+     */
+    Tile( CodingStyle cs, Quantization q, int depth, int x0, int y0, int x1, int y1 )
+            throws IOException
+    {
+        this.cs = cs;
+        this.depth = depth;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+
+        final int levels = cs.levels;
+        resolutions = new Resolution[levels + 1];
+        for( int r = 0; r <= levels; r++ ) {
+            final int s = levels - r;
+            final Subband[] bands;
+            if( r == 0 ) {
+                bands = new Subband[]{
+                    createBand( q, 0, Subband.LL, levels, ceilShift( x0, s ), ceilShift( y0, s ), ceilShift( x1, s ), ceilShift( y1, s ) )
+                };
+            }
+            else {
+                // Decomposition level of the subbands
+                final int nb = s + 1;
+                bands = new Subband[3];
+                for( int o = Subband.HL; o <= Subband.HH; o++ ) {
+                    final int xo = (o & 1) << (nb - 1);
+                    final int yo = (o >> 1) << (nb - 1);
+                    bands[o - 1] = createBand( q, 3 * (r - 1) + o, o, nb,
+                                               ceilShift( x0 - xo, nb ), ceilShift( y0 - yo, nb ), ceilShift( x1 - xo, nb ), ceilShift( y1 - yo, nb ) );
+                }
+            }
+
+            final Resolution res = new Resolution( r, ceilShift( x0, s ), ceilShift( y0, s ), ceilShift( x1, s ), ceilShift( y1, s ),
+                                                   cs.precinctWidth[r], cs.precinctHeight[r], bands );
+            createPrecincts( res );
+            resolutions[r] = res;
+        }
+    }
+
+    private static int ceilShift( int v, int s )
+    {
+        return -((-v) >> s);
+    }
+
+    private Subband createBand( Quantization q, int index, int orientation, int level, int bx0, int by0, int bx1, int by1 )
+            throws IOException
+    {
+        final int exponent = q.getExponent( index, level, cs.levels );
+        final int magnitudeBits = q.guardBits + exponent - 1;
+        if( magnitudeBits > 30 ) {
+            throw new IOException( "Unsupported number of bit planes " + magnitudeBits );
+        }
+
+        float step = 1;
+        if( !cs.reversible ) {
+            // Nominal dynamic range is the bit depth plus the gain of the subband
+            final int gain = orientation == Subband.LL ? 0 : orientation == Subband.HH ? 2 : 1;
+            step = (float) (Math.scalb( 1.0, depth + gain - exponent ) * (1 + q.getMantissa( index ) / 2048.0));
+        }
+        return new Subband( orientation, bx0, by0, bx1, by1, magnitudeBits, step );
+    }
+
+    /**
+     * Partition each subband of a resolution into precincts and code-blocks
+     */
+    private void createPrecincts( Resolution res )
+    {
+        final int r = res.level;
+        // Precinct size within the subbands
+        final int pw = r == 0 ? res.precinctWidth : Math.max( res.precinctWidth - 1, 0 );
+        final int ph = r == 0 ? res.precinctHeight : Math.max( res.precinctHeight - 1, 0 );
+        final int cbw = Math.min( cs.codeBlockWidth, pw );
+        final int cbh = Math.min( cs.codeBlockHeight, ph );
+
+        res.precincts = new Precinct[res.precinctsWide * res.precinctsHigh];
+        for( int py = 0; py < res.precinctsHigh; py++ ) {
+            for( int px = 0; px < res.precinctsWide; px++ ) {
+                final int pxa = (res.x0 >> res.precinctWidth) + px;
+                final int pya = (res.y0 >> res.precinctHeight) + py;
+
+                final Precinct.Band[] pbs = new Precinct.Band[res.bands.length];
+                for( int b = 0; b < res.bands.length; b++ ) {
+                    final Subband band = res.bands[b];
+                    final int rx0 = Math.max( band.x0, pxa << pw );
+                    final int ry0 = Math.max( band.y0, pya << ph );
+                    final int rx1 = Math.min( band.x1, (pxa + 1) << pw );
+                    final int ry1 = Math.min( band.y1, (pya + 1) << ph );
+
+                    if( rx1 <= rx0 || ry1 <= ry0 ) {
+                        pbs[b] = new Precinct.Band( new CodeBlock[0], 0, 0 );
+                        continue;
+                    }
+
+                    final int cx0 = rx0 >> cbw;
+                    final int cy0 = ry0 >> cbh;
+                    final int cw = ceilShift( rx1, cbw ) - cx0;
+                    final int ch = ceilShift( ry1, cbh ) - cy0;
+                    final CodeBlock[] blocks = new CodeBlock[cw * ch];
+                    for( int j = 0; j < ch; j++ ) {
+                        for( int i = 0; i < cw; i++ ) {
+                            final CodeBlock cb = new CodeBlock( band,
+                                                                Math.max( rx0, (cx0 + i) << cbw ), Math.max( ry0, (cy0 + j) << cbh ),
+                                                                Math.min( rx1, (cx0 + i + 1) << cbw ), Math.min( ry1, (cy0 + j + 1) << cbh ) );
+                            blocks[j * cw + i] = cb;
+                            codeBlocks.add( cb );
+                        }
+                    }
+                    pbs[b] = new Precinct.Band( blocks, cw, ch );
+                }
+                res.precincts[py * res.precinctsWide + px] = new Precinct( pbs );
+            }
+        }
+    }
+
+    /**
+     * The packets of this tile in progression order, each as { layer, resolution, precinct }
+     */
+    private List<int[]> getPackets()
+    {
+        final List<int[]> packets = new ArrayList<>();
+        final int layers = cs.layers;
+        switch( cs.progression ) {
+            case CodingStyle.LRCP:
+                for( int l = 0; l < layers; l++ ) {
+                    for( Resolution res: resolutions ) {
+                        for( int p = 0; p < res.precincts.length; p++ ) {
+                            packets.add( new int[]{ l, res.level, p } );
+                        }
+                    }
+                }
+                break;
+
+            case CodingStyle.RLCP:
+                for( Resolution res: resolutions ) {
+                    for( int l = 0; l < layers; l++ ) {
+                        for( int p = 0; p < res.precincts.length; p++ ) {
+                            packets.add( new int[]{ l, res.level, p } );
+                        }
+                    }
+                }
+                break;
+
+            case CodingStyle.RPCL:
+                for( Resolution res: resolutions ) {
+                    for( int p = 0; p < res.precincts.length; p++ ) {
+                        for( int l = 0; l < layers; l++ ) {
+                            packets.add( new int[]{ l, res.level, p } );
+                        }
+                    }
+                }
+                break;
+
+            default:
+                // PCRL and CPRL are the same for one component, precincts in order of their position on the reference grid then resolution
+                final List<int[]> precincts = new ArrayList<>();
+                for( Resolution res: resolutions ) {
+                    final int s = cs.levels - res.level;
+                    for( int p = 0; p < res.precincts.length; p++ ) {
+                        final int px = (res.x0 >> res.precinctWidth) + p % res.precinctsWide;
+                        final int py = (res.y0 >> res.precinctHeight) + p / res.precinctsWide;
+                        precincts.add( new int[]{
+                            Math.max( y0, py << (res.precinctHeight + s) ), Math.max( x0, px << (res.precinctWidth + s) ), res.level, p
+                        } );
+                    }
+                }
+                precincts.sort( Comparator.<int[]>comparingInt( a -> a[0] ).thenComparingInt( a -> a[1] ).thenComparingInt( a -> a[2] ) );
+                for( int[] p: precincts ) {
+                    for( int l = 0; l < layers; l++ ) {
+                        packets.add( new int[]{ l, p[2], p[3] } );
+                    }
+                }
+                break;
+        }
+        return packets;
+    }
+
+    /**
+     * Read every packet of the tile
+     * <p>
+     * @param data tile data, the concatenated bodies of its tile-parts
+     * <p>
+     * @throws IOException if a packet is invalid
+     */
+    void readPackets( byte[] data )
+            throws IOException
+    {
+        int pos = 0;
+        for( int[] packet: getPackets() ) {
+            if( pos >= data.length ) {
+                // Truncated, the remaining packets are empty
+                break;
+            }
+            pos = readPacket( data, pos, packet[0], resolutions[packet[1]].precincts[packet[2]], resolutions[packet[1]].bands );
+        }
+    }
+
+    private static boolean isMarker( byte[] data, int pos, int marker )
+    {
+        return pos + 1 < data.length && (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff)) == marker;
+    }
+
+    private int readPacket( byte[] data, int pos, int layer, Precinct precinct, Subband[] bands )
+            throws IOException
+    {
+        if( cs.sop && isMarker( data, pos, SOP ) ) {
+            pos += 6;
+        }
+
+        final PacketBitReader in = new PacketBitReader( data, pos, data.length );
+        final List<CodeBlock> included = new ArrayList<>();
+        final List<Integer> lengths = new ArrayList<>();
+
+        if( in.bit() != 0 ) {
+            for( int b = 0; b < bands.length; b++ ) {
+                final Precinct.Band pb = precinct.bands[b];
+                for( int i = 0; i < pb.blocks.length; i++ ) {
+                    final CodeBlock cb = pb.blocks[i];
+
+                    final boolean first = !cb.included;
+                    if( first ? !pb.inclusion.decode( in, i, layer + 1 ) : in.bit() == 0 ) {
+                        continue;
+                    }
+
+                    if( first ) {
+                        cb.included = true;
+                        cb.bitPlanes = bands[b].magnitudeBits - pb.zeroBitPlanes.decodeValue( in, i );
+                    }
+
+                    final int passes = readPasses( in );
+                    while( in.bit() != 0 ) {
+                        cb.lblock++;
+                    }
+
+                    // The new passes may complete the current segment and start others, each with its own length
+                    int total = 0;
+                    for( int remaining = passes; remaining > 0; ) {
+                        final CodeBlock.Segment seg = cb.nextSegment( cs.codeBlockStyle );
+                        final int n = Math.min( remaining, seg.maxPasses - seg.passes );
+                        final int len = in.bits( cb.lblock + 31 - Integer.numberOfLeadingZeros( n ) );
+                        seg.passes += n;
+                        seg.length += len;
+                        cb.passes += n;
+                        total += len;
+                        remaining -= n;
+                    }
+                    included.add( cb );
+                    lengths.add( total );
+                }
+            }
+        }
+        in.align();
+
+        pos = in.position();
+        if( cs.eph && isMarker( data, pos, EPH ) ) {
+            pos += 2;
+        }
+
+        for( int i = 0; i < included.size(); i++ ) {
+            final int len = Math.min( lengths.get( i ), data.length - pos );
+            if( len < 0 ) {
+                throw new IOException( "Packet body past end of tile" );
+            }
+            included.get( i ).append( data, pos, len );
+            pos += len;
+        }
+        return pos;
+    }
+
+    /**
+     * Number of new coding passes, Table B.4
+     */
+    private static int readPasses( PacketBitReader in )
+    {
+        if( in.bit() == 0 ) {
+            return 1;
+        }
+        if( in.bit() == 0 ) {
+            return 2;
+        }
+        int n = in.bits( 2 );
+        if( n != 3 ) {
+            return 3 + n;
+        }
+        n = in.bits( 5 );
+        if( n != 31 ) {
+            return 6 + n;
+        }
+        return 37 + in.bits( 7 );
+    }
+
+    /**
+     * Decode the tile into the image
+     * <p>
+     * @param dst    image samples
+     * @param width  image width
+     * @param ox     image left
+     * @param oy     image top
+     * @param signed true if samples are signed
+     */
+    void decode( int[] dst, int width, int ox, int oy, boolean signed )
+    {
+        final int style = cs.codeBlockStyle;
+        codeBlocks.parallelStream()
+                .filter( cb -> cb.passes > 0 )
+                .forEach( cb -> DECODER.get().decode( cb, style ) );
+
+        final int w = x1 - x0;
+        final int shift = signed ? 0 : 1 << (depth - 1);
+        final int min = signed ? -(1 << (depth - 1)) : 0;
+        final int max = signed ? (1 << (depth - 1)) - 1 : (int) ((1L << depth) - 1);
+
+        if( cs.reversible ) {
+            final int[] v = InverseWavelet.reversible( resolutions );
+            for( int y = y0; y < y1; y++ ) {
+                final int src = (y - y0) * w;
+                final int d = (y - oy) * width - ox;
+                for( int x = x0; x < x1; x++ ) {
+                    dst[d + x] = v[src + x - x0] + shift;
+                }
+            }
+        }
+        else {
+            final float[] v = InverseWavelet.irreversible( resolutions );
+            for( int y = y0; y < y1; y++ ) {
+                final int src = (y - y0) * w;
+                final int d = (y - oy) * width - ox;
+                for( int x = x0; x < x1; x++ ) {
+                    dst[d + x] = Math.max( min, Math.min( max, Math.round( v[src + x - x0] ) + shift ) );
+                }
+            }
+        }
+    }
+
+}
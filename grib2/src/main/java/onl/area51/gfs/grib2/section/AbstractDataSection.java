@@ -15,10 +15,9 @@
  */
 package onl.area51.gfs.grib2.section;
 
-import onl.area51.gfs.grib2.io.SubGribInputStream;
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import onl.area51.gfs.grib2.io.ByteBufferGribInputStream;
 import onl.area51.gfs.grib2.io.GribInputStream;
 import static onl.area51.gfs.grib2.section.Section.BASE_SIZE;
 
@@ -48,9 +47,38 @@ public abstract class AbstractDataSection
         dataOffset = (int) (gis.position() - getPos());
     }
 
+    /**
+     * Returns a stream of the data within this section. Where the underlying stream supports it this is a view of its memory rather than a copy, and each
+     * call returns a stream with its own position.
+     * <p>
+     * @return GribInputStream of the data block
+     * <p>
+     * @throws IOException
+     */
     public final GribInputStream subStream()
+            throws IOException
+    {
+        return gis.slice( getPos() + dataOffset, getLength() - dataOffset );
+    }
+
+    /**
+     * Returns the data within this section as a big-endian buffer. Where the underlying stream supports it this is a view of its memory rather than a copy.
+     * <p>
+     * @return ByteBuffer positioned at the start of the data block
+     * <p>
+     * @throws IOException
+     */
+    public final ByteBuffer getBuffer()
+            throws IOException
     {
-        return new SubGribInputStream( gis, getPos() + dataOffset, getLength() - dataOffset );
+        final GribInputStream s = subStream();
+        if( s instanceof ByteBufferGribInputStream ) {
+            return ((ByteBufferGribInputStream) s).getBuffer();
+        }
+
+        final byte[] b = new byte[(int) s.length()];
+        s.readFully( b );
+        return ByteBuffer.wrap( b );
     }
 
 }
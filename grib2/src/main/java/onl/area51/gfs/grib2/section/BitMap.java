@@ -26,7 +26,13 @@ public class BitMap
         extends AbstractDataSection
 {
 
+    /**
+     * Bit map indicator for a bit map previously defined in the same GRIB2 message
+     */
+    public static final int PREVIOUS = 254;
+
     private final int bitMapIndicator;
+    private volatile BitMask mask;
 
     public BitMap( GribInputStream gis )
             throws IOException
@@ -89,4 +95,33 @@ public class BitMap
     {
         return bitMapIndicator == 255;
     }
+
+    /**
+     * The mask specified in this section. It is read the first time it is requested and then cached, so DataSet's sharing this bit map share the mask.
+     * <p>
+     * @param size number of grid points, {@link onl.area51.gfs.grib2.section.grid.GridDefinition#getNoDataPoints()}
+     * <p>
+     * @return BitMask
+     * <p>
+     * @throws IOException if this section does not specify a bit map or it is too short
+     */
+    public BitMask getMask( int size )
+            throws IOException
+    {
+        if( !isBitMapSpecified() ) {
+            throw new IOException( "Bit map not specified in this section, indicator " + bitMapIndicator );
+        }
+
+        BitMask m = mask;
+        if( m == null || m.size() != size ) {
+            try {
+                m = BitMask.read( getBuffer(), size );
+            }
+            catch( IllegalArgumentException ex ) {
+                throw new IOException( ex.getMessage(), ex );
+            }
+            mask = m;
+        }
+        return m;
+    }
 }
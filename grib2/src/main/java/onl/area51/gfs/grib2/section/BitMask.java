@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * The mask of a bit map (Section 6), one bit per grid point, set where the grid point has a value in the Data Section.
+ * <p>
+ * The mask is held as a long[] in the same order as the bit map, i.e. grid point i is bit {@code 63 - (i & 63)} of word {@code i >> 6}, so it is loaded
+ * with one 64 bit read per word and whole words of missing or present points are handled at once. A BitMask is immutable so it may be shared between
+ * DataSet's, see {@link BitMap#getBitMapIndicator()} 254.
+ * <p>
+ * @author peter
+ */
+public final class BitMask
+{
+
+    private final long[] words;
+    // The number of set bits before each word, so getPackedIndex is a lookup rather than a scan
+    private final int[] ranks;
+    private final int size;
+    private final int cardinality;
+
+    private BitMask( long[] words, int size )
+    {
+        this.words = words;
+        this.size = size;
+
+        ranks = new int[words.length];
+        int c = 0;
+        for( int i = 0; i < words.length; i++ ) {
+            ranks[i] = c;
+            c += Long.bitCount( words[i] );
+        }
+        cardinality = c;
+    }
+
+    /**
+     * Read a mask from the content of a bit map
+     * <p>
+     * @param data bit map from octet 7, from its position
+     * @param size number of grid points
+     * <p>
+     * @return BitMask
+     * <p>
+     * @throws IllegalArgumentException if data is shorter than size bits
+     */
+    public static BitMask read( ByteBuffer data, int size )
+    {
+        if( ((long) data.remaining() << 3) < size ) {
+            throw new IllegalArgumentException( "Bit map of " + data.remaining() + " bytes is too short for " + size + " points" );
+        }
+
+        final ByteBuffer b = data.order() == ByteOrder.BIG_ENDIAN ? data : data.duplicate().order( ByteOrder.BIG_ENDIAN );
+        final int base = b.position();
+        final long[] words = new long[(size + 63) >>> 6];
+        final int whole = size >>> 6;
+        for( int i = 0; i < whole; i++ ) {
+            words[i] = b.getLong( base + (i << 3) );
+        }
+
+        final int rem = size & 63;
+        if( rem > 0 ) {
+            long w = 0;
+            for( int i = 0; i < 8; i++ ) {
+                final int idx = base + (whole << 3) + i;
+                w = (w << 8) | (idx < b.limit() ? b.get( idx ) & 0xff : 0);
+            }
+            // Clear the bits after the last point
+            words[whole] = w & (-1L << (64 - rem));
+        }
+
+        return new BitMask( words, size );
+    }
+
+    /**
+     * The number of grid points
+     * <p>
+     * @return size
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The number of grid points with a value, which is the number of values in the Data Section
+     * <p>
+     * @return number of set bits
+     */
+    public int cardinality()
+    {
+        return cardinality;
+    }
+
+    /**
+     * Does a grid point have a value
+     * <p>
+     * @param index grid point
+     * <p>
+     * @return true if the point has a value
+     */
+    public boolean get( int index )
+    {
+        if( index < 0 || index >= size ) {
+            throw new IndexOutOfBoundsException( "Index " + index + " size " + size );
+        }
+        return (words[index >>> 6] << (index & 63)) < 0;
+    }
+
+    /**
+     * The index of the value of a grid point in the Data Section
+     * <p>
+     * @param index grid point
+     * <p>
+     * @return index within the packed values or -1 if the point has no value
+     */
+    public int getPackedIndex( int index )
+    {
+        if( !get( index ) ) {
+            return -1;
+        }
+        final int w = index >>> 6;
+        final int c = ranks[w];
+        // Bits of this word before index
+        final int bit = index & 63;
+        return bit == 0 ? c : c + Long.bitCount( words[w] >>> (64 - bit) );
+    }
+
+    /**
+     * Expand packed values onto the full grid in place.
+     * <p>
+     * The first {@link #cardinality()} values of dst are the packed values. On return dst holds {@link #size()} values, one per grid point, with missing
+     * for points without a value. The expansion runs from the end so no value is overwritten before it is moved.
+     * <p>
+     * @param dst     buffer of at least size() values, from index 0
+     * @param missing value for points without a value
+     */
+    public void expand( FloatBuffer dst, float missing )
+    {
+        if( dst.limit() < size ) {
+            throw new IllegalArgumentException( "Buffer of " + dst.limit() + " cannot hold " + size + " points" );
+        }
+
+        int src = cardinality;
+        for( int w = words.length - 1; w >= 0 && src < (w + 1) << 6; w-- ) {
+            final long word = words[w];
+            final int base = w << 6;
+            final int end = Math.min( size, base + 64 );
+
+            if( word == 0 ) {
+                for( int i = base; i < end; i++ ) {
+                    dst.put( i, missing );
+                }
+            }
+            else if( word == -1L ) {
+                for( int i = end - 1; i >= base; i-- ) {
+                    dst.put( i, dst.get( --src ) );
+                }
+            }
+            else {
+                for( int i = end - 1; i >= base; i-- ) {
+                    dst.put( i, (word << (i - base)) < 0 ? dst.get( --src ) : missing );
+                }
+            }
+        }
+    }
+
+}
@@ -34,6 +34,16 @@ public abstract class Block
         pos = gis.position();
     }
 
+    /**
+     * Create a block whose position is already known, e.g. from an index
+     * <p>
+     * @param pos position of the block within the file
+     */
+    protected Block( long pos )
+    {
+        this.pos = pos;
+    }
+
     public abstract int getLength();
 
     public final long getPos()
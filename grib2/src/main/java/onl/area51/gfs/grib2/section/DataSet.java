@@ -16,16 +16,38 @@
 package onl.area51.gfs.grib2.section;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import onl.area51.gfs.grib2.field.Field;
+import onl.area51.gfs.grib2.field.FieldPool;
 import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.io.PositionalGribInputStream;
+import onl.area51.gfs.grib2.section.data.DataRepresentation;
+import onl.area51.gfs.grib2.section.data.DataSection;
+import onl.area51.gfs.grib2.section.data.GroupIndex;
+import onl.area51.gfs.grib2.section.grid.GridDefinition;
+import onl.area51.gfs.grib2.section.grid.GridPoints;
+import onl.area51.gfs.grib2.section.grid.GridWindow;
+import onl.area51.gfs.grib2.section.grid.Interpolation;
+import onl.area51.gfs.grib2.section.grid.LatLongGrid;
 import onl.area51.gfs.grib2.section.product.AbstractForecastProduct;
 import onl.area51.gfs.grib2.section.product.ProductDefinition;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+import uk.trainwatch.io.IOFunction;
 
 /**
  * A dataset within a grib file
  * <p>
+ * A DataSet either parses all of its sections when created, or when lazy or created from known section positions (e.g. from an index) parses each section
+ * the first time it is requested with {@link #get(SectionType)}.
+ * <p>
  * @author peter
  */
 public class DataSet
@@ -34,14 +56,38 @@ public class DataSet
 
     private static final int END_MARKER = 0x37373737;
 
+    private final GribInputStream gis;
     private final Header header;
-    private final Map<SectionType, ? super Section> sections = new HashMap<>();
+    private final Map<SectionType, Section> sections = new ConcurrentHashMap<>();
+    // Position of each section indexed by SectionType.ordinal(), -1 if not present
+    private final long[] sectionPos = new long[SectionType.values().length];
+    private volatile BitMask bitMask;
+    private volatile GroupIndex groupIndex;
+    // Reads the GroupIndex the first time it is needed, null once read or if there is none
+    private volatile IOFunction<DataSet, GroupIndex> groupIndexReader;
 
     public DataSet( GribInputStream gis )
             throws IOException
+    {
+        this( gis, false );
+    }
+
+    /**
+     * Read a DataSet from the current position of a stream
+     * <p>
+     * @param gis  stream
+     * @param lazy if true only the position of each section is recorded and the section is parsed the first time it is requested. If false all sections are
+     *             parsed now.
+     * <p>
+     * @throws IOException
+     */
+    public DataSet( GribInputStream gis, boolean lazy )
+            throws IOException
     {
         super( gis );
+        this.gis = gis;
         header = new Header( gis );
+        Arrays.fill( sectionPos, -1L );
 
         int length;
         do {
@@ -49,11 +95,21 @@ public class DataSet
             length = gis.readInt();
             if( length != END_MARKER ) {
                 SectionType type = SectionType.lookup( gis.readUnsignedByte() );
+                if( type == SectionType.BIT_MAP && sectionPos[type.ordinal()] > -1 && gis.readUnsignedByte() == BitMap.PREVIOUS ) {
+                    // Keep the bit map previously defined in this message
+                    type = null;
+                }
                 if( type != null ) {
-                    gis.seek( pos );
-                    Section section = type.read( header, gis );
-                    if( section != null ) {
-                        sections.put( type, section );
+                    if( lazy ) {
+                        sectionPos[type.ordinal()] = pos;
+                    }
+                    else {
+                        gis.seek( pos );
+                        Section section = type.read( header, gis );
+                        if( section != null ) {
+                            sections.put( type, section );
+                            sectionPos[type.ordinal()] = pos;
+                        }
                     }
                 }
                 gis.seek( pos + length );
@@ -64,14 +120,94 @@ public class DataSet
         seekNextSection( gis );
     }
 
+    /**
+     * Create a DataSet whose section positions are already known. No sections are read until they are requested.
+     * <p>
+     * @param gis        stream to read sections from
+     * @param header     the header of this DataSet
+     * @param sectionPos position of each section indexed by {@link SectionType#ordinal()}, -1 if not present
+     */
+    public DataSet( GribInputStream gis, Header header, long[] sectionPos )
+    {
+        this( gis, header, sectionPos, (IOFunction<DataSet, GroupIndex>) null );
+    }
+
+    /**
+     * Create a DataSet whose section positions and {@link GroupIndex} are already known. No sections are read until they are requested.
+     * <p>
+     * @param gis        stream to read sections from
+     * @param header     the header of this DataSet
+     * @param sectionPos position of each section indexed by {@link SectionType#ordinal()}, -1 if not present
+     * @param groupIndex GroupIndex of the Data Section, null for none
+     */
+    public DataSet( GribInputStream gis, Header header, long[] sectionPos, GroupIndex groupIndex )
+    {
+        this( gis, header, sectionPos, (IOFunction<DataSet, GroupIndex>) null );
+        this.groupIndex = groupIndex;
+    }
+
+    /**
+     * Create a DataSet whose section positions are already known and whose {@link GroupIndex} is read the first time it is needed, e.g. from a
+     * {@link onl.area51.gfs.grib2.Grib2Index}. No sections are read until they are requested.
+     * <p>
+     * @param gis              stream to read sections from
+     * @param header           the header of this DataSet
+     * @param sectionPos       position of each section indexed by {@link SectionType#ordinal()}, -1 if not present
+     * @param groupIndexReader reads the GroupIndex of the Data Section, null for none
+     */
+    public DataSet( GribInputStream gis, Header header, long[] sectionPos, IOFunction<DataSet, GroupIndex> groupIndexReader )
+    {
+        super( header.getPos() );
+        this.gis = gis;
+        this.header = header;
+        this.groupIndexReader = groupIndexReader;
+        System.arraycopy( sectionPos, 0, this.sectionPos, 0, this.sectionPos.length );
+    }
+
     public <T extends Section> T get( SectionType type )
     {
-        return (T) sections.get( type );
+        Section section = sections.get( type );
+        if( section == null && sectionPos[type.ordinal()] > -1 ) {
+            section = sections.computeIfAbsent( type, this::read );
+        }
+        return (T) section;
+    }
+
+    /**
+     * Read a section. The stream is shared so it is read positionally through its own cursor, leaving the stream untouched and allowing sections of
+     * different DataSet's to be read from different threads at the same time.
+     * <p>
+     * @param type SectionType to read
+     * <p>
+     * @return Section
+     */
+    private Section read( SectionType type )
+    {
+        try {
+            return type.read( header, new PositionalGribInputStream( gis, sectionPos[type.ordinal()] ) );
+        }
+        catch( IOException ex ) {
+            throw new UncheckedIOException( ex );
+        }
+    }
+
+    /**
+     * The position of a section within the file
+     * <p>
+     * @param type SectionType
+     * <p>
+     * @return position or -1 if the section is not present
+     */
+    public long getSectionPos( SectionType type )
+    {
+        return sectionPos[type.ordinal()];
     }
 
     public Collection<SectionType> getSectionTypes()
     {
-        return sections.keySet();
+        return Stream.of( SectionType.values() )
+                .filter( t -> sectionPos[t.ordinal()] > -1 )
+                .collect( Collectors.toList() );
     }
 
     @Override
@@ -85,6 +221,321 @@ public class DataSet
         return header;
     }
 
+    /**
+     * The bit map which applies to this DataSet.
+     * <p>
+     * A bit map with indicator {@link BitMap#PREVIOUS} is, by Code Table 6.0, the one previously defined in the same message. Parsing keeps that bit map in
+     * place of the later section so its mask, once read, is shared by the fields reusing it. Bit maps are never taken from another message.
+     * <p>
+     * @return BitMask or null if no bit map applies
+     * <p>
+     * @throws IOException if the bit map cannot be resolved or is one predefined by the originating center
+     */
+    public BitMask getBitMask()
+            throws IOException
+    {
+        BitMask m = bitMask;
+        if( m == null ) {
+            m = resolveBitMask();
+            bitMask = m;
+        }
+        return m;
+    }
+
+    private BitMask resolveBitMask()
+            throws IOException
+    {
+        final BitMap bitMap = get( SectionType.BIT_MAP );
+        if( bitMap == null || bitMap.isNoBitMap() ) {
+            return null;
+        }
+        if( bitMap.getBitMapIndicator() == BitMap.PREVIOUS ) {
+            throw new IOException( "No bit map previously defined in the same message for " + this );
+        }
+        if( !bitMap.isBitMapSpecified() ) {
+            throw new IOException( "Predefined bit map " + bitMap.getBitMapIndicator() + " is not supported" );
+        }
+        return bitMap.getMask( getGridDefinition().getNoDataPoints() );
+    }
+
+    private GridDefinition getGridDefinition()
+            throws IOException
+    {
+        final GridDefinition grid = get( SectionType.GRID_DEFINITION );
+        if( grid == null ) {
+            throw new IOException( "No grid definition in " + this );
+        }
+        return grid;
+    }
+
+    /**
+     * Decode the values of this DataSet. If a bit map applies there is a value for every grid point, those without a value being NaN.
+     * <p>
+     * @param direct true for an off-heap field which must be closed when finished with
+     * <p>
+     * @return Field of the values
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( boolean direct )
+            throws IOException
+    {
+        return getDataRepresentation().decode( getDataSection(), getBitMask(), direct );
+    }
+
+    /**
+     * Decode the values of this DataSet into a Field borrowed from a pool. If a bit map applies there is a value for every grid point, those without a value
+     * being NaN.
+     * <p>
+     * @param pool FieldPool, closing the returned field returns it to the pool
+     * <p>
+     * @return Field of the values
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( FieldPool pool )
+            throws IOException
+    {
+        return getDataRepresentation().decode( getDataSection(), getBitMask(), pool );
+    }
+
+    /**
+     * Decode the values of this DataSet within a window of the grid into a new Field, reading no more of the Data Section than the packing requires.
+     * <p>
+     * Complex packed data is decoded from the start unless this DataSet has a {@link GroupIndex}.
+     * <p>
+     * @param window the window, see {@link onl.area51.gfs.grib2.section.grid.LatLongGrid#getWindow(double, double, double, double)}
+     * @param direct true for an off-heap field which must be closed when finished with
+     * <p>
+     * @return Field of the values row by row, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( GridWindow window, boolean direct )
+            throws IOException
+    {
+        return getDataRepresentation().decode( getDataSection(), getBitMask(), getGroupIndex(), window, direct );
+    }
+
+    /**
+     * Decode the values of this DataSet within a window of the grid into a Field borrowed from a pool.
+     * <p>
+     * @param window the window
+     * @param pool   FieldPool, closing the returned field returns it to the pool
+     * <p>
+     * @return Field of the values row by row, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( GridWindow window, FieldPool pool )
+            throws IOException
+    {
+        return getDataRepresentation().decode( getDataSection(), getBitMask(), getGroupIndex(), window, pool );
+    }
+
+    /**
+     * The value at a location, interpolated bilinearly from the surrounding grid points. Only those grid points are decoded.
+     * <p>
+     * @param lat latitude in degrees
+     * @param lon longitude in degrees
+     * <p>
+     * @return value or NaN if the location is outside the grid
+     * <p>
+     * @throws IOException
+     */
+    public float valueAt( double lat, double lon )
+            throws IOException
+    {
+        return valueAt( lat, lon, Interpolation.BILINEAR );
+    }
+
+    /**
+     * The value at a location. Only the grid points needed are decoded.
+     * <p>
+     * @param lat           latitude in degrees
+     * @param lon           longitude in degrees
+     * @param interpolation Interpolation
+     * <p>
+     * @return value or NaN if the location is outside the grid
+     * <p>
+     * @throws IOException
+     */
+    public float valueAt( double lat, double lon, Interpolation interpolation )
+            throws IOException
+    {
+        final float[] out = new float[1];
+        valuesAt( new double[]{ lat }, new double[]{ lon }, out, interpolation );
+        return out[0];
+    }
+
+    /**
+     * The value at each of a set of locations, interpolated bilinearly from the surrounding grid points. Only those grid points are decoded.
+     * <p>
+     * @param lats latitude of each location in degrees
+     * @param lons longitude of each location in degrees
+     * @param out  value at each location, NaN if outside the grid
+     * <p>
+     * @throws IOException
+     */
+    public void valuesAt( double[] lats, double[] lons, float[] out )
+            throws IOException
+    {
+        valuesAt( lats, lons, out, Interpolation.BILINEAR );
+    }
+
+    /**
+     * The value at each of a set of locations. Only the grid points needed are decoded.
+     * <p>
+     * @param lats          latitude of each location in degrees
+     * @param lons          longitude of each location in degrees
+     * @param out           value at each location, NaN if outside the grid
+     * @param interpolation Interpolation
+     * <p>
+     * @throws IOException
+     */
+    public void valuesAt( double[] lats, double[] lons, float[] out, Interpolation interpolation )
+            throws IOException
+    {
+        valuesAt( getLatLongGrid().getPoints( lats, lons, interpolation ), out );
+    }
+
+    /**
+     * The value at each of a set of locations whose grid points are already known, e.g. when the same locations are wanted from many DataSet's on the same
+     * grid. Only the grid points needed are decoded.
+     * <p>
+     * @param points GridPoints from {@link LatLongGrid#getPoints(double[], double[], Interpolation)} of this DataSet's grid
+     * @param out    value at each location, NaN if outside the grid
+     * <p>
+     * @throws IOException
+     */
+    public void valuesAt( GridPoints points, float[] out )
+            throws IOException
+    {
+        points.interpolate( decode( points ), out );
+    }
+
+    /**
+     * Decode the values of the grid points of a GridPoints
+     * <p>
+     * @param points GridPoints of this DataSet's grid
+     * <p>
+     * @return value of each of {@link GridPoints#getPoints()}
+     * <p>
+     * @throws IOException
+     */
+    public float[] decode( GridPoints points )
+            throws IOException
+    {
+        final float[] values = new float[points.getPointCount()];
+        getDataRepresentation().decode( getDataSection(), getBitMask(), getGroupIndex(), points.getPoints(), values.length, FloatBuffer.wrap( values ) );
+        return values;
+    }
+
+    /**
+     * The grid of this DataSet
+     * <p>
+     * @return LatLongGrid
+     * <p>
+     * @throws IOException                   if there is no grid definition
+     * @throws UnsupportedOperationException if the grid is not a latitude/longitude grid
+     */
+    public LatLongGrid getLatLongGrid()
+            throws IOException
+    {
+        final GridDefinition grid = getGridDefinition();
+        if( !(grid instanceof LatLongGrid) ) {
+            throw new UnsupportedOperationException( "Grid of " + this + " is not a latitude/longitude grid" );
+        }
+        return (LatLongGrid) grid;
+    }
+
+    /**
+     * The {@link GroupIndex} of the Data Section, allowing complex packed data to be decoded from part way through
+     * <p>
+     * @return GroupIndex or null if none has been created or read from an index
+     * <p>
+     * @throws IOException if the GroupIndex could not be read
+     */
+    public GroupIndex getGroupIndex()
+            throws IOException
+    {
+        // The reader is cleared after the index is set, so read in the opposite order
+        final IOFunction<DataSet, GroupIndex> reader = groupIndexReader;
+        GroupIndex index = groupIndex;
+        if( index == null && reader != null ) {
+            // Two threads may both read it but each gets an equivalent view
+            index = reader.apply( this );
+            groupIndex = index;
+            groupIndexReader = null;
+        }
+        return index;
+    }
+
+    /**
+     * Create the {@link GroupIndex} of the Data Section if the packing uses one and this DataSet does not have one already. This decodes the data once.
+     * <p>
+     * @return GroupIndex or null if the packing does not use one
+     * <p>
+     * @throws IOException
+     */
+    public GroupIndex createGroupIndex()
+            throws IOException
+    {
+        GroupIndex index = getGroupIndex();
+        if( index == null ) {
+            index = getDataRepresentation().createGroupIndex( getDataSection() );
+            groupIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * A read only view of the values of this DataSet without decoding or copying them, only possible when they are stored as 32 bit IEEE floats.
+     * <p>
+     * Where a bit map applies the view only holds the values of the points present in {@link #getBitMask()}.
+     * <p>
+     * @return FloatBuffer or null if the values must be decoded
+     * <p>
+     * @throws IOException
+     */
+    public FloatBuffer asFloatBuffer()
+            throws IOException
+    {
+        return getDataRepresentation().asFloatBuffer( getDataSection() );
+    }
+
+    private DataRepresentation getDataRepresentation()
+            throws IOException
+    {
+        final DataRepresentation rep = get( SectionType.DATA_REPRESENTATION );
+        if( rep == null ) {
+            throw new IOException( "No data representation in " + this );
+        }
+        return rep;
+    }
+
+    private DataSection getDataSection()
+            throws IOException
+    {
+        final DataSection data = get( SectionType.DATA );
+        if( data == null ) {
+            throw new IOException( "No data in " + this );
+        }
+        return data;
+    }
+
+    /**
+     * Test this DataSet against a filter. Only the product definition is read.
+     * <p>
+     * @param filter ProductFilter
+     * <p>
+     * @return true if the filter accepts this DataSet
+     */
+    public boolean matches( ProductFilter filter )
+    {
+        return filter.test( header.getDiscipline(), get( SectionType.PRODUCT_DEFINITION ) );
+    }
+
     @Override
     public String toString()
     {
@@ -78,6 +78,11 @@ public class Header
         extends Block
 {
 
+    /**
+     * Length of Section 0 in octets, the shortest possible message
+     */
+    public static final int SIZE = 16;
+
     private final Discipline discipline;
     private final int edition;
     private final long totalLength;
@@ -105,6 +110,22 @@ public class Header
         }
     }
 
+    /**
+     * Create a header from values already known, e.g. from an index, without reading the file
+     * <p>
+     * @param pos         position of the message within the file
+     * @param discipline  discipline
+     * @param edition     edition
+     * @param totalLength total length of the message
+     */
+    public Header( long pos, Discipline discipline, int edition, long totalLength )
+    {
+        super( pos );
+        this.discipline = discipline;
+        this.edition = edition;
+        this.totalLength = totalLength;
+    }
+
     public Discipline getDiscipline()
     {
         return discipline;
@@ -16,13 +16,16 @@
 package onl.area51.gfs.grib2.section.data;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import onl.area51.gfs.grib2.io.GribInputStream;
 
 /**
- *
+ * The fields common to the grid point packing templates 5.0, 5.2 and 5.3. Values are unpacked as Y = (R + X * 2^E) / 10^D.
+ * <p>
  * @author peter
  */
-public class AbstractPacking
+public abstract class AbstractPacking
         implements Packing
 {
 
@@ -31,15 +34,22 @@ public class AbstractPacking
     private final int decimalScaleFactor;
     private final int noBits;
     private final OriginalFieldValue typeOriginalFieldValues;
+    private final double scaledReferenceValue;
+    private final double scale;
 
     protected AbstractPacking( GribInputStream gis )
             throws IOException
     {
         referenceValue = gis.readFloat();
-        binaryScaleFactor = gis.readShort();
-        decimalScaleFactor = gis.readShort();
+        binaryScaleFactor = gis.readSignMagnitudeShort();
+        decimalScaleFactor = gis.readSignMagnitudeShort();
         noBits = gis.readUnsignedByte();
         typeOriginalFieldValues = OriginalFieldValue.lookup( gis.readUnsignedByte() );
+
+        // Y = (R + X * 2^E) / 10^D = R / 10^D + X * (2^E / 10^D)
+        final double decimal = Math.pow( 10, -decimalScaleFactor );
+        scaledReferenceValue = referenceValue * decimal;
+        scale = Math.scalb( decimal, binaryScaleFactor );
     }
 
     public float getReferenceValue()
@@ -67,4 +77,84 @@ public class AbstractPacking
         return typeOriginalFieldValues;
     }
 
+    /**
+     * The reference value with the decimal scale factor applied, R / 10^D
+     * <p>
+     * @return scaled reference value
+     */
+    public final double getScaledReferenceValue()
+    {
+        return scaledReferenceValue;
+    }
+
+    /**
+     * The multiplier for a packed value, 2^E / 10^D
+     * <p>
+     * @return scale
+     */
+    public final double getScale()
+    {
+        return scale;
+    }
+
+    /**
+     * Convert a packed value to its real value, (R + X * 2^E) / 10^D
+     * <p>
+     * @param x packed value
+     * <p>
+     * @return value
+     */
+    public final float unpack( long x )
+    {
+        return (float) (scaledReferenceValue + x * scale);
+    }
+
+    /**
+     * Convert packed values to real values, (R + X * 2^E) / 10^D, writing them to a buffer with absolute puts
+     * <p>
+     * @param x     packed values, signed
+     * @param count number of values
+     * @param ref   scaled reference value, {@link #getScaledReferenceValue()}
+     * @param scale {@link #getScale()}
+     * @param dst   destination
+     * @param pos   index in dst of the first value
+     */
+    protected static void scale( int[] x, int count, double ref, double scale, FloatBuffer dst, int pos )
+    {
+        DecodeKernel.INSTANCE.scale( x, count, ref, scale, dst, pos );
+    }
+
+    /**
+     * Undo spatial differencing in place. This is a prefix sum of the differences plus the overall minimum.
+     * <p>
+     * @param x     differences, replaced by the original values
+     * @param count number of values
+     * @param order order of spatial differencing, 1 or 2
+     * @param ival1 first original value
+     * @param ival2 second original value, only used when order is 2
+     * @param minsd overall minimum of the differences
+     */
+    protected static void undifference( int[] x, int count, int order, int ival1, int ival2, int minsd )
+    {
+        DecodeKernel.INSTANCE.undifference( x, count, order, ival1, ival2, minsd );
+    }
+
+    /**
+     * Ensure the data holds enough bits for a number of values
+     * <p>
+     * @param data  data
+     * @param count number of values
+     * @param bits  bits per value
+     * <p>
+     * @throws IOException if the data is too short
+     */
+    protected static void checkLength( ByteBuffer data, int count, int bits )
+            throws IOException
+    {
+        final long required = ((long) count * bits + 7) >>> 3;
+        if( data.remaining() < required ) {
+            throw new IOException( "Data section too short, " + count + " x " + bits + " bits requires " + required + " bytes, have " + data.remaining() );
+        }
+    }
+
 }
@@ -16,8 +16,13 @@
 package onl.area51.gfs.grib2.section.data;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import onl.area51.gfs.grib2.field.Field;
+import onl.area51.gfs.grib2.field.FieldPool;
 import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.section.BitMask;
 import onl.area51.gfs.grib2.section.Section;
+import onl.area51.gfs.grib2.section.grid.GridWindow;
 
 /**
  *
@@ -66,4 +71,287 @@ public class DataRepresentation
         return (P) packing;
     }
 
+    /**
+     * A read only view of the values in a Data Section without decoding or copying them, possible when they are stored as 32 bit IEEE floats (Template
+     * 5.4). Where the file is memory mapped the view is of the mapping itself.
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * <p>
+     * @return view of {@link #getNoDataPoints()} values or null if they must be decoded
+     * <p>
+     * @throws IOException
+     */
+    public FloatBuffer asFloatBuffer( DataSection data )
+            throws IOException
+    {
+        return packing.asFloatBuffer( data.getBuffer(), noDataPoints );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * @param dst  destination, the values are written from its position which is then advanced by {@link #getNoDataPoints()}
+     * <p>
+     * @throws IOException
+     */
+    public void decode( DataSection data, FloatBuffer dst )
+            throws IOException
+    {
+        packing.decode( data.getBuffer(), noDataPoints, dst );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param dst    destination
+     * @param offset offset in dst of the first value
+     * <p>
+     * @throws IOException
+     */
+    public void decode( DataSection data, float[] dst, int offset )
+            throws IOException
+    {
+        packing.decode( data.getBuffer(), noDataPoints, dst, offset );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a Field
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * @param dst  destination, values are written from index 0
+     * <p>
+     * @throws IOException
+     */
+    public void decode( DataSection data, Field dst )
+            throws IOException
+    {
+        packing.decode( data.getBuffer(), noDataPoints, dst );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a new Field
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param direct true for an off-heap field which must be closed when finished with
+     * <p>
+     * @return Field of {@link #getNoDataPoints()} values
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, boolean direct )
+            throws IOException
+    {
+        return decode( data, null, direct );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a Field borrowed from a pool
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * @param pool FieldPool, closing the returned field returns it to the pool
+     * <p>
+     * @return Field of {@link #getNoDataPoints()} values
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, FieldPool pool )
+            throws IOException
+    {
+        return decode( data, null, pool );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a new Field, expanding them onto the full grid with a bit map
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param mask   the bit map which applies, null for none
+     * @param direct true for an off-heap field which must be closed when finished with
+     * <p>
+     * @return Field of one value per grid point, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, BitMask mask, boolean direct )
+            throws IOException
+    {
+        final int size = getFieldSize( mask );
+        return decode( data, mask, direct ? Field.direct( size ) : Field.heap( size ) );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a Field borrowed from a pool, expanding them onto the full grid with a bit
+     * map
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * @param mask the bit map which applies, null for none
+     * @param pool FieldPool, closing the returned field returns it to the pool
+     * <p>
+     * @return Field of one value per grid point, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, BitMask mask, FieldPool pool )
+            throws IOException
+    {
+        return decode( data, mask, pool.borrow( getFieldSize( mask ) ) );
+    }
+
+    private int getFieldSize( BitMask mask )
+            throws IOException
+    {
+        if( mask == null ) {
+            return noDataPoints;
+        }
+        if( mask.cardinality() != noDataPoints ) {
+            throw new IOException( "Bit map has " + mask.cardinality() + " values but data has " + noDataPoints );
+        }
+        return mask.size();
+    }
+
+    private Field decode( DataSection data, BitMask mask, Field field )
+            throws IOException
+    {
+        try {
+            decode( data, field );
+            if( mask != null ) {
+                mask.expand( field.getBuffer(), Float.NaN );
+            }
+            return field;
+        }
+        catch( IOException | RuntimeException ex ) {
+            field.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Decode the values of selected grid points, reading no more of the Data Section than the packing requires
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param mask   the bit map which applies, null for none
+     * @param points index of each grid point required, in any order
+     * @param n      number of points
+     * @param dst    destination, the values are written from its position which is then advanced by n. Points without a value in the bit map are NaN.
+     * <p>
+     * @throws IOException
+     */
+    public void decode( DataSection data, BitMask mask, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, mask, null, points, n, dst );
+    }
+
+    /**
+     * Decode the values of selected grid points, using a {@link GroupIndex} to start part way through the Data Section
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param mask   the bit map which applies, null for none
+     * @param index  GroupIndex from {@link #createGroupIndex(DataSection)} or null for none
+     * @param points index of each grid point required, in any order
+     * @param n      number of points
+     * @param dst    destination, the values are written from its position which is then advanced by n. Points without a value in the bit map are NaN.
+     * <p>
+     * @throws IOException
+     */
+    public void decode( DataSection data, BitMask mask, GroupIndex index, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        final int size = getFieldSize( mask );
+        final int[] packed = new int[n];
+        for( int i = 0; i < n; i++ ) {
+            final int p = points[i];
+            if( p < 0 || p >= size ) {
+                throw new IndexOutOfBoundsException( "Point " + p + " of " + size );
+            }
+            packed[i] = mask == null ? p : mask.getPackedIndex( p );
+        }
+        packing.decode( data.getBuffer(), noDataPoints, index, packed, n, dst );
+    }
+
+    /**
+     * Decode the values within a window of the grid into a new Field
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param mask   the bit map which applies, null for none
+     * @param index  GroupIndex from {@link #createGroupIndex(DataSection)} or null for none
+     * @param window the window, see {@link onl.area51.gfs.grib2.section.grid.LatLongGrid#getWindow(double, double, double, double)}
+     * @param direct true for an off-heap field which must be closed when finished with
+     * <p>
+     * @return Field of {@link GridWindow#size()} values row by row, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, BitMask mask, GroupIndex index, GridWindow window, boolean direct )
+            throws IOException
+    {
+        final int size = window.size();
+        return decode( data, mask, index, window, direct ? Field.direct( size ) : Field.heap( size ) );
+    }
+
+    /**
+     * Decode the values within a window of the grid into a Field borrowed from a pool
+     * <p>
+     * @param data   the DataSection from the same DataSet
+     * @param mask   the bit map which applies, null for none
+     * @param index  GroupIndex from {@link #createGroupIndex(DataSection)} or null for none
+     * @param window the window
+     * @param pool   FieldPool, closing the returned field returns it to the pool
+     * <p>
+     * @return Field of {@link GridWindow#size()} values row by row, NaN where the bit map has no value
+     * <p>
+     * @throws IOException
+     */
+    public Field decode( DataSection data, BitMask mask, GroupIndex index, GridWindow window, FieldPool pool )
+            throws IOException
+    {
+        return decode( data, mask, index, window, pool.borrow( window.size() ) );
+    }
+
+    private Field decode( DataSection data, BitMask mask, GroupIndex index, GridWindow window, Field field )
+            throws IOException
+    {
+        try {
+            decode( data, mask, index, window.getIndexes(), window.size(), field.getBuffer() );
+            return field;
+        }
+        catch( IOException | RuntimeException ex ) {
+            field.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Build the {@link GroupIndex} of a Data Section, so selected points may be decoded without reading all of the groups before them
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * <p>
+     * @return GroupIndex or null if the packing does not use one
+     * <p>
+     * @throws IOException
+     */
+    public GroupIndex createGroupIndex( DataSection data )
+            throws IOException
+    {
+        return packing.createGroupIndex( data.getBuffer(), noDataPoints );
+    }
+
+    /**
+     * Decode the values in a Data Section packed using this representation into a new array
+     * <p>
+     * @param data the DataSection from the same DataSet
+     * <p>
+     * @return array of {@link #getNoDataPoints()} values
+     * <p>
+     * @throws IOException
+     */
+    public float[] decode( DataSection data )
+            throws IOException
+    {
+        final float[] dst = new float[noDataPoints];
+        decode( data, dst, 0 );
+        return dst;
+    }
+
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.nio.FloatBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The per value steps of decoding which follow unpacking: undoing spatial differencing and scaling.
+ * <p>
+ * This implementation is scalar. When running on Java 17 or later with the {@code jdk.incubator.vector} module present (i.e. started with
+ * {@code --add-modules jdk.incubator.vector}) a version using the Vector API is used instead, which gives bit identical results. It is held in the
+ * multi-release part of the jar so it is ignored by older runtimes. Setting the system property {@code onl.area51.gfs.grib2.vector} to false disables it.
+ * <p>
+ * @author peter
+ */
+class DecodeKernel
+{
+
+    private static final Logger LOG = Logger.getLogger( DecodeKernel.class.getName() );
+
+    private static final String VECTOR_KERNEL = "onl.area51.gfs.grib2.section.data.VectorDecodeKernel";
+
+    static final DecodeKernel INSTANCE = create();
+
+    private static DecodeKernel create()
+    {
+        if( Boolean.parseBoolean( System.getProperty( "onl.area51.gfs.grib2.vector", "true" ) ) ) {
+            try {
+                final DecodeKernel kernel = (DecodeKernel) Class.forName( VECTOR_KERNEL ).getDeclaredConstructor().newInstance();
+                if( kernel.isSupported() ) {
+                    LOG.log( Level.FINE, "Using Vector API decoding" );
+                    return kernel;
+                }
+            }
+            catch( ReflectiveOperationException | LinkageError ex ) {
+                // Not Java 17+ or the module is not present
+                LOG.log( Level.FINE, "Vector API not available", ex );
+            }
+        }
+        return new DecodeKernel();
+    }
+
+    protected boolean isSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Convert packed values to real values, (R + X * 2^E) / 10^D, writing them to a buffer with absolute puts
+     * <p>
+     * @param x     packed values, signed
+     * @param count number of values
+     * @param ref   scaled reference value
+     * @param scale 2^E / 10^D
+     * @param dst   destination
+     * @param pos   index in dst of the first value
+     */
+    void scale( int[] x, int count, double ref, double scale, FloatBuffer dst, int pos )
+    {
+        for( int i = 0; i < count; i++ ) {
+            dst.put( pos + i, (float) (ref + x[i] * scale) );
+        }
+    }
+
+    /**
+     * Undo spatial differencing in place. This is a prefix sum of the differences plus the overall minimum.
+     * <p>
+     * @param x     differences, replaced by the original values
+     * @param count number of values
+     * @param order order of spatial differencing, 1 or 2
+     * @param ival1 first original value
+     * @param ival2 second original value, only used when order is 2
+     * @param minsd overall minimum of the differences
+     */
+    void undifference( int[] x, int count, int order, int ival1, int ival2, int minsd )
+    {
+        if( count == 0 ) {
+            return;
+        }
+        x[0] = ival1;
+        if( order == 1 ) {
+            for( int i = 1; i < count; i++ ) {
+                x[i] += minsd + x[i - 1];
+            }
+        }
+        else if( order == 2 && count > 1 ) {
+            x[1] = ival2;
+            for( int i = 2; i < count; i++ ) {
+                x[i] += minsd + 2 * x[i - 1] - x[i - 2];
+            }
+        }
+    }
+
+}
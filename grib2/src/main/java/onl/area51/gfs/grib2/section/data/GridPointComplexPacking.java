@@ -16,10 +16,19 @@
 package onl.area51.gfs.grib2.section.data;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import onl.area51.gfs.grib2.io.BitReader;
+import onl.area51.gfs.grib2.io.BitUnpacker;
 import onl.area51.gfs.grib2.io.GribInputStream;
 
 /**
- *
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.2
+ * <p>
+ * Grid point data - complex packing. The values are split into groups, each with its own reference, bit width and length.
+ * <p>
  * @author peter
  */
 public class GridPointComplexPacking
@@ -115,4 +124,570 @@ public class GridPointComplexPacking
         return numberBitsScaledGroupLengths;
     }
 
+    /**
+     * The value used for missing values. If {@link #getMissingValueManagementUsed()} is 0 this is NaN.
+     * <p>
+     * @return primary missing value
+     */
+    public float getPrimaryMissingValue()
+    {
+        return missingValue( 1, primaryMissingValueSubstitute );
+    }
+
+    /**
+     * The value used for secondary missing values. If {@link #getMissingValueManagementUsed()} is not 2 this is NaN.
+     * <p>
+     * @return secondary missing value
+     */
+    public float getSecondaryMissingValue()
+    {
+        return missingValue( 2, secondaryMissingValueSubstitute );
+    }
+
+    private float missingValue( int management, int substitute )
+    {
+        if( missingValueManagementUsed < management ) {
+            return Float.NaN;
+        }
+        return getTypeOriginalFieldValues() == OriginalFieldValue.INTEGER ? substitute : Float.intBitsToFloat( substitute );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, dst, 0, 0 );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, null, points, n, dst, 0, 0 );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, GroupIndex index, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, index, points, n, dst, 0, 0 );
+    }
+
+    @Override
+    public GroupIndex createGroupIndex( ByteBuffer data, int count )
+            throws IOException
+    {
+        return createGroupIndex( data, count, 0, 0 );
+    }
+
+    /**
+     * Decode complex packed data, optionally with spatial differencing.
+     * <p>
+     * The group references, widths and lengths are unpacked with the {@link BitUnpacker} for their width. The packed values are then expanded, spatial
+     * differencing undone over the non-missing values and finally the values are scaled.
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of values
+     * @param dst    destination
+     * @param order  order of spatial differencing, 0 for none
+     * @param octets number of octets holding each of the extra descriptors when order is not 0
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    protected final void decode( ByteBuffer data, int count, FloatBuffer dst, int order, int octets )
+            throws IOException
+    {
+        final int start = dst.position();
+        final double ref = getScaledReferenceValue();
+        final double scale = getScale();
+
+        if( numberGroups == 0 ) {
+            final float v = (float) ref;
+            for( int i = 0; i < count; i++ ) {
+                dst.put( start + i, v );
+            }
+            dst.position( start + count );
+            return;
+        }
+
+        try {
+            final Scratch scratch = Scratch.get();
+            final Groups groups = new Groups( data, order, octets, scratch, 0, numberGroups );
+
+            // The packed values of the non-missing points, spatial differencing only applies to those
+            final int[] x = scratch.ints( Scratch.VALUES, count );
+            // When missing value management is used, 0 for a value, 1 primary, 2 secondary missing
+            final byte[] missing = missingValueManagementUsed > 0 ? scratch.bytes( count ) : null;
+
+            final int k = unpack( groups, count, 0, 0L, count, x, missing );
+
+            if( order > 0 ) {
+                undifference( x, k, order, groups.ival1, groups.ival2, groups.minsd );
+            }
+
+            if( missing == null ) {
+                scale( x, count, ref, scale, dst, start );
+            }
+            else {
+                final float missing1 = getPrimaryMissingValue();
+                final float missing2 = getSecondaryMissingValue();
+                for( int i = 0, j = 0; i < count; i++ ) {
+                    switch( missing[i] ) {
+                        case 0:
+                            dst.put( start + i, (float) (ref + x[j++] * scale) );
+                            break;
+                        case 1:
+                            dst.put( start + i, missing1 );
+                            break;
+                        default:
+                            dst.put( start + i, missing2 );
+                            break;
+                    }
+                }
+            }
+        }
+        catch( IndexOutOfBoundsException | BufferUnderflowException ex ) {
+            throw new IOException( "Data section too short", ex );
+        }
+
+        dst.position( start + count );
+    }
+
+    /**
+     * Decode selected values of complex packed data, optionally with spatial differencing.
+     * <p>
+     * Without spatial differencing the bit offset of each group follows from the widths and lengths alone, so only the required values are read and groups
+     * without any are skipped. With spatial differencing each value depends on all those before it, so the groups are unpacked up to the last point
+     * required.
+     * <p>
+     * With a {@link GroupIndex} decoding starts at the checkpoint before each run of points, so only the descriptors and values of the groups between
+     * checkpoints holding a point are read.
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of values
+     * @param index  GroupIndex of this data or null for none
+     * @param points index of each value required, in any order. An index of -1 writes NaN.
+     * @param n      number of points
+     * @param dst    destination
+     * @param order  order of spatial differencing, 0 for none
+     * @param octets number of octets holding each of the extra descriptors when order is not 0
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    protected final void decode( ByteBuffer data, int count, GroupIndex index, int[] points, int n, FloatBuffer dst, int order, int octets )
+            throws IOException
+    {
+        final int start = dst.position();
+
+        // The points in ascending order, each with where its value goes
+        final long[] sorted = new long[n];
+        int m = 0;
+        for( int i = 0; i < n; i++ ) {
+            final int p = points[i];
+            if( p < 0 ) {
+                dst.put( start + i, Float.NaN );
+            }
+            else if( p >= count ) {
+                throw new IndexOutOfBoundsException( "Point " + p + " of " + count );
+            }
+            else {
+                sorted[m++] = ((long) p << 32) | i;
+            }
+        }
+        Arrays.sort( sorted, 0, m );
+
+        if( m > 0 && numberGroups == 0 ) {
+            final float v = (float) getScaledReferenceValue();
+            for( int s = 0; s < m; s++ ) {
+                dst.put( start + (int) sorted[s], v );
+            }
+        }
+        else if( m > 0 ) {
+            try {
+                final Scratch scratch = Scratch.get();
+                if( index == null ) {
+                    final Groups groups = new Groups( data, order, octets, scratch, 0, numberGroups );
+                    decodePoints( groups, count, 0, 0L, sorted, 0, m, dst, start, scratch );
+                }
+                else {
+                    final int interval = index.getInterval();
+                    if( index.getCheckpoints() != (numberGroups + interval - 1) / interval ) {
+                        throw new IOException( index + " does not match " + numberGroups + " groups" );
+                    }
+
+                    // Each run of points between two checkpoints is decoded from the first of them
+                    for( int s = 0; s < m; ) {
+                        final int c = index.find( (int) (sorted[s] >>> 32) );
+                        final int end = c + 1 < index.getCheckpoints() ? index.getFirstPoint( c + 1 ) : count;
+                        int e = s + 1;
+                        while( e < m && (int) (sorted[e] >>> 32) < end ) {
+                            e++;
+                        }
+
+                        final int g0 = c * interval;
+                        final Groups groups = new Groups( data, order, octets, scratch, g0, Math.min( interval, numberGroups - g0 ) );
+                        groups.valueIndex = index.getValueIndex( c );
+                        groups.previous = index.getPrevious( c );
+                        groups.previous2 = index.getPrevious2( c );
+                        decodePoints( groups, count, index.getFirstPoint( c ), index.getBitOffset( c ), sorted, s, e, dst, start, scratch );
+                        s = e;
+                    }
+                }
+            }
+            catch( IndexOutOfBoundsException | BufferUnderflowException ex ) {
+                throw new IOException( "Data section too short", ex );
+            }
+        }
+
+        dst.position( start + n );
+    }
+
+    /**
+     * Decode a run of points from the start of a range of groups
+     * <p>
+     * @param groups  the groups
+     * @param count   the number of values in the field
+     * @param first   the first point of the groups
+     * @param bit     bit offset of the first packed value of the groups
+     * @param sorted  points in ascending order, each with its index in dst in the low 32 bits
+     * @param s       first entry in sorted to decode
+     * @param e       entry after the last to decode
+     * @param dst     destination
+     * @param start   position in dst of the first point
+     * @param scratch scratch space
+     */
+    private void decodePoints( Groups groups, int count, int first, long bit, long[] sorted, int s, int e, FloatBuffer dst, int start, Scratch scratch )
+            throws IOException
+    {
+        final double ref = getScaledReferenceValue();
+        final double scale = getScale();
+        final float missing1 = getPrimaryMissingValue();
+        final float missing2 = getSecondaryMissingValue();
+
+        if( groups.order > 0 ) {
+            // Every value up to the last point is needed to undo the differencing
+            final int limit = (int) (sorted[e - 1] >>> 32) + 1;
+            final int[] x = scratch.ints( Scratch.VALUES, limit - first );
+            final byte[] missing = missingValueManagementUsed > 0 ? scratch.bytes( limit - first ) : null;
+            final int k = unpack( groups, count, first, bit, limit, x, missing );
+            undifference( x, k, groups );
+
+            // Index into x of the value of point i, counting the non-missing values before it
+            int i = first, j = 0;
+            for( ; s < e; s++ ) {
+                final int p = (int) (sorted[s] >>> 32);
+                if( missing != null ) {
+                    for( ; i < p; i++ ) {
+                        if( missing[i - first] == 0 ) {
+                            j++;
+                        }
+                    }
+                }
+                final int code = missing == null ? 0 : missing[p - first];
+                final float v = code == 0 ? (float) (ref + x[missing == null ? p - first : j] * scale) : code == 1 ? missing1 : missing2;
+                dst.put( start + (int) sorted[s], v );
+            }
+            return;
+        }
+
+        // Without differencing read each value directly from its group
+        final long refMissing1 = (1L << getNoBits()) - 1;
+        final long refMissing2 = refMissing1 - 1;
+        final BitReader values = new BitReader( groups.data, groups.valuesOffset );
+        for( int g = 0; g < groups.count && s < e; g++ ) {
+            final int width = groups.width( g );
+            final int length = groups.length( g );
+            if( length < 0 || first + length > count ) {
+                throw new IOException( "Groups hold more than " + count + " values" );
+            }
+
+            final int end = first + length;
+            final long groupRef = groups.refs[g] & 0xffffffffL;
+            final long valMissing1 = (1L << width) - 1;
+            final long valMissing2 = valMissing1 - 1;
+            for( ; s < e && (int) (sorted[s] >>> 32) < end; s++ ) {
+                final int p = (int) (sorted[s] >>> 32);
+                final float v;
+                if( width == 0 ) {
+                    v = isMissing( groupRef, refMissing1, refMissing2 ) ? (groupRef == refMissing1 ? missing1 : missing2)
+                        : (float) (ref + groupRef * scale);
+                }
+                else {
+                    values.seek( bit + (long) (p - first) * width );
+                    final long x = values.read( width );
+                    v = isMissing( x, valMissing1, valMissing2 ) ? (x == valMissing1 ? missing1 : missing2)
+                        : (float) (ref + (int) (groupRef + x) * scale);
+                }
+                dst.put( start + (int) sorted[s], v );
+            }
+
+            bit += (long) width * length;
+            first = end;
+        }
+
+        if( s < e ) {
+            throw new IOException( "Groups hold " + first + " values, expected " + count );
+        }
+    }
+
+    private boolean isMissing( long v, long missing1, long missing2 )
+    {
+        return missingValueManagementUsed > 0 && (v == missing1 || (missingValueManagementUsed == 2 && v == missing2));
+    }
+
+    /**
+     * Expand a range of groups into the packed values of the non-missing points
+     * <p>
+     * @param groups  group descriptors
+     * @param count   the number of values in the field
+     * @param first   the first point of the groups
+     * @param bit     bit offset of the first packed value of the groups
+     * @param limit   stop after the group holding this point, count for all of them
+     * @param x       the packed values of the non-missing points
+     * @param missing if not null, per point from first 0 for a value, 1 primary, 2 secondary missing
+     * <p>
+     * @return the number of non-missing values in x
+     * <p>
+     * @throws IOException if the groups are invalid
+     */
+    private int unpack( Groups groups, int count, int first, long bit, int limit, int[] x, byte[] missing )
+            throws IOException
+    {
+        final BitReader values = new BitReader( groups.data, groups.valuesOffset );
+        values.seek( bit );
+        final long refMissing1 = (1L << getNoBits()) - 1;
+        final long refMissing2 = refMissing1 - 1;
+
+        int n = first;
+        int k = 0;
+        for( int g = 0; g < groups.count && n < limit; g++ ) {
+            final int groupRef = groups.refs[g];
+            final int width = groups.width( g );
+            final int length = groups.length( g );
+
+            if( width > 32 ) {
+                throw new IOException( "Invalid group width " + width );
+            }
+            if( length < 0 || n + length > count ) {
+                throw new IOException( "Groups hold more than " + count + " values" );
+            }
+
+            // Only as much of the last group as is needed
+            final int len = Math.min( length, limit - n );
+            final int m = n - first;
+            if( width == 0 ) {
+                final long r = groupRef & 0xffffffffL;
+                if( missing != null && isMissing( r, refMissing1, refMissing2 ) ) {
+                    Arrays.fill( missing, m, m + len, (byte) (r == refMissing1 ? 1 : 2) );
+                }
+                else {
+                    if( missing != null ) {
+                        Arrays.fill( missing, m, m + len, (byte) 0 );
+                    }
+                    Arrays.fill( x, k, k + len, groupRef );
+                    k += len;
+                }
+            }
+            else if( missing == null ) {
+                values.unpack( width, len, x, k );
+                for( int i = k, e = k + len; i < e; i++ ) {
+                    x[i] += groupRef;
+                }
+                k += len;
+            }
+            else {
+                final long valMissing1 = (1L << width) - 1;
+                final long valMissing2 = valMissing1 - 1;
+                for( int i = 0; i < len; i++ ) {
+                    final long v = values.read( width );
+                    if( v == valMissing1 ) {
+                        missing[m + i] = 1;
+                    }
+                    else if( missingValueManagementUsed == 2 && v == valMissing2 ) {
+                        missing[m + i] = 2;
+                    }
+                    else {
+                        missing[m + i] = 0;
+                        x[k++] = groupRef + (int) v;
+                    }
+                }
+            }
+            n += len;
+        }
+
+        if( limit == count ? n != count : n < limit ) {
+            throw new IOException( "Groups hold " + n + " values, expected " + count );
+        }
+        return k;
+    }
+
+    /**
+     * Undo spatial differencing over values which may start part way through the field, continuing from the state recorded for the groups
+     */
+    private static void undifference( int[] x, int count, Groups groups )
+    {
+        if( groups.valueIndex == 0 ) {
+            undifference( x, count, groups.order, groups.ival1, groups.ival2, groups.minsd );
+            return;
+        }
+
+        int p1 = groups.previous;
+        int p2 = groups.previous2;
+        for( int i = 0, k = groups.valueIndex; i < count; i++, k++ ) {
+            if( groups.order == 2 && k == 1 ) {
+                x[i] = groups.ival2;
+            }
+            else {
+                x[i] += groups.minsd + (groups.order == 1 ? p1 : 2 * p1 - p2);
+            }
+            p2 = p1;
+            p1 = x[i];
+        }
+    }
+
+    /**
+     * Build a {@link GroupIndex} by decoding every group
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of values
+     * @param order  order of spatial differencing, 0 for none
+     * @param octets number of octets holding each of the extra descriptors when order is not 0
+     * <p>
+     * @return GroupIndex or null if the data has no groups
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    protected final GroupIndex createGroupIndex( ByteBuffer data, int count, int order, int octets )
+            throws IOException
+    {
+        if( numberGroups == 0 ) {
+            return null;
+        }
+
+        try {
+            final Scratch scratch = Scratch.get();
+            final Groups groups = new Groups( data, order, octets, scratch, 0, numberGroups );
+            final int[] x = scratch.ints( Scratch.VALUES, count );
+            final byte[] missing = missingValueManagementUsed > 0 ? scratch.bytes( count ) : null;
+            final int k = unpack( groups, count, 0, 0L, count, x, missing );
+            if( order > 0 ) {
+                undifference( x, k, order, groups.ival1, groups.ival2, groups.minsd );
+            }
+
+            final GroupIndex index = GroupIndex.create( numberGroups );
+            final int interval = index.getInterval();
+            long bit = 0;
+            int first = 0;
+            int valueIndex = 0;
+            for( int g = 0; g < numberGroups; g++ ) {
+                if( g % interval == 0 ) {
+                    index.set( g / interval, bit, first, valueIndex,
+                               valueIndex > 0 ? x[valueIndex - 1] : 0,
+                               valueIndex > 1 ? x[valueIndex - 2] : 0 );
+                }
+
+                final int length = groups.length( g );
+                if( missing == null ) {
+                    valueIndex += length;
+                }
+                else {
+                    for( int i = first; i < first + length; i++ ) {
+                        if( missing[i] == 0 ) {
+                            valueIndex++;
+                        }
+                    }
+                }
+                bit += (long) groups.width( g ) * length;
+                first += length;
+            }
+            return index;
+        }
+        catch( IndexOutOfBoundsException | BufferUnderflowException ex ) {
+            throw new IOException( "Data section too short", ex );
+        }
+    }
+
+    /**
+     * The number of bytes used by one value per group
+     */
+    private int regionLength( int bits )
+    {
+        return (int) (((long) numberGroups * bits + 7) >>> 3);
+    }
+
+    /**
+     * The descriptors at the start of the Data Section: the extra descriptors for spatial differencing then the reference, width and length of each group.
+     * <p>
+     * Only the descriptors of a range of groups are unpacked. The range must start with a multiple of 8 so they start on a byte boundary.
+     */
+    private final class Groups
+    {
+
+        final ByteBuffer data;
+        final int order;
+        // The first group and number of groups unpacked
+        final int first;
+        final int count;
+        final int[] refs;
+        final int[] widths;
+        final int[] lengths;
+        // Offset in data of the packed values
+        final int valuesOffset;
+        int ival1;
+        int ival2;
+        int minsd;
+        // The number of non-missing values before the first group and the last two of them, from a GroupIndex
+        int valueIndex;
+        int previous;
+        int previous2;
+
+        Groups( ByteBuffer data, int order, int octets, Scratch scratch, int first, int count )
+        {
+            this.data = data;
+            this.order = order;
+            this.first = first;
+            this.count = count;
+            int pos = data.position();
+
+            // The extra descriptors for spatial differencing, each a sign-magnitude value of octets bytes
+            if( order > 0 && octets > 0 ) {
+                final BitReader c = new BitReader( data, pos );
+                ival1 = (int) c.readSignMagnitude( octets << 3 );
+                if( order == 2 ) {
+                    ival2 = (int) c.readSignMagnitude( octets << 3 );
+                }
+                minsd = (int) c.readSignMagnitude( octets << 3 );
+                pos += (order + 1) * octets;
+            }
+
+            // Group references, widths and lengths each start on a byte boundary so use the kernel for their width
+            final int refBits = getNoBits();
+            refs = scratch.ints( Scratch.GROUP_REFS, count );
+            BitUnpacker.forWidth( refBits ).unpack( data, pos + (int) (((long) first * refBits) >>> 3), refBits, count, refs, 0 );
+            pos += regionLength( refBits );
+
+            widths = scratch.ints( Scratch.GROUP_WIDTHS, count );
+            BitUnpacker.forWidth( numberBitsGroupWidths )
+                    .unpack( data, pos + (int) (((long) first * numberBitsGroupWidths) >>> 3), numberBitsGroupWidths, count, widths, 0 );
+            pos += regionLength( numberBitsGroupWidths );
+
+            lengths = scratch.ints( Scratch.GROUP_LENGTHS, count );
+            BitUnpacker.forWidth( numberBitsScaledGroupLengths )
+                    .unpack( data, pos + (int) (((long) first * numberBitsScaledGroupLengths) >>> 3), numberBitsScaledGroupLengths, count, lengths, 0 );
+            pos += regionLength( numberBitsScaledGroupLengths );
+
+            valuesOffset = pos;
+        }
+
+        int width( int g )
+        {
+            return referenceGroupWidths + widths[g];
+        }
+
+        int length( int g )
+        {
+            return first + g == numberGroups - 1 ? trueLengthLastGroup : referenceGroupLengths + lengths[g] * incrementGroupLengths;
+        }
+    }
+
 }
@@ -16,10 +16,15 @@
 package onl.area51.gfs.grib2.section.data;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import onl.area51.gfs.grib2.io.GribInputStream;
 
 /**
- *
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.3
+ * <p>
+ * Grid point data - complex packing and spatial differencing
+ * <p>
  * @author peter
  */
 public class GridPointComplexSpatialDifferencingPacking
@@ -38,4 +43,53 @@ public class GridPointComplexSpatialDifferencingPacking
         noOctetsRequired = gis.readUnsignedByte();
     }
 
+    /**
+     * Order of spatial differencing, 1 or 2
+     * <p>
+     * @return order
+     */
+    public int getOrderSpatialDifference()
+    {
+        return orderSpatialDifference;
+    }
+
+    /**
+     * The number of octets required in the Data Section for each of the extra descriptors, i.e. the first value(s) of the original field and the overall
+     * minimum of the differences
+     * <p>
+     * @return number of octets
+     */
+    public int getNoOctetsRequired()
+    {
+        return noOctetsRequired;
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, dst, orderSpatialDifference, noOctetsRequired );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, null, points, n, dst, orderSpatialDifference, noOctetsRequired );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, GroupIndex index, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, index, points, n, dst, orderSpatialDifference, noOctetsRequired );
+    }
+
+    @Override
+    public GroupIndex createGroupIndex( ByteBuffer data, int count )
+            throws IOException
+    {
+        return createGroupIndex( data, count, orderSpatialDifference, noOctetsRequired );
+    }
+
 }
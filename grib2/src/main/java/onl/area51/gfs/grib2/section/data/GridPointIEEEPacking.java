@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import onl.area51.gfs.grib2.io.GribInputStream;
+
+/**
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.4
+ * <p>
+ * Grid point data - IEEE floating point, the values are stored unpacked in big-endian IEEE 754 format.
+ * <p>
+ * As 32 bit values need no decoding they can be read in place with {@link #asFloatBuffer(ByteBuffer, int)}.
+ * <p>
+ * @author peter
+ */
+public class GridPointIEEEPacking
+        implements Packing
+{
+
+    /**
+     * IEEE 32-bit (I=4 in Section 7)
+     */
+    public static final int PRECISION_32 = 1;
+    /**
+     * IEEE 64-bit (I=8 in Section 7)
+     */
+    public static final int PRECISION_64 = 2;
+    /**
+     * IEEE 128-bit (I=16 in Section 7)
+     */
+    public static final int PRECISION_128 = 3;
+
+    private final int precision;
+
+    public GridPointIEEEPacking( GribInputStream gis )
+            throws IOException
+    {
+        precision = gis.readUnsignedByte();
+    }
+
+    /**
+     * Precision, Code Table 5.7
+     * <p>
+     * @return {@link #PRECISION_32}, {@link #PRECISION_64} or {@link #PRECISION_128}
+     */
+    public int getPrecision()
+    {
+        return precision;
+    }
+
+    @Override
+    public FloatBuffer asFloatBuffer( ByteBuffer data, int count )
+            throws IOException
+    {
+        return precision == PRECISION_32 ? view( data, count, 4 ).asFloatBuffer().asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        final int start = dst.position();
+        switch( precision ) {
+            case PRECISION_32:
+                dst.put( view( data, count, 4 ).asFloatBuffer() );
+                break;
+
+            case PRECISION_64:
+                final DoubleBuffer src = view( data, count, 8 ).asDoubleBuffer();
+                for( int i = 0; i < count; i++ ) {
+                    dst.put( start + i, (float) src.get( i ) );
+                }
+                dst.position( start + count );
+                break;
+
+            default:
+                throw new IOException( "Unsupported IEEE precision " + precision );
+        }
+    }
+
+    /**
+     * Values are read directly from their position in the data
+     */
+    @Override
+    public void decode( ByteBuffer data, int count, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        final int start = dst.position();
+        switch( precision ) {
+            case PRECISION_32:
+                final FloatBuffer src32 = view( data, count, 4 ).asFloatBuffer();
+                for( int i = 0; i < n; i++ ) {
+                    dst.put( start + i, points[i] < 0 ? Float.NaN : src32.get( points[i] ) );
+                }
+                break;
+
+            case PRECISION_64:
+                final DoubleBuffer src64 = view( data, count, 8 ).asDoubleBuffer();
+                for( int i = 0; i < n; i++ ) {
+                    dst.put( start + i, points[i] < 0 ? Float.NaN : (float) src64.get( points[i] ) );
+                }
+                break;
+
+            default:
+                throw new IOException( "Unsupported IEEE precision " + precision );
+        }
+        dst.position( start + n );
+    }
+
+    /**
+     * A big-endian view of the values in the data
+     */
+    private static ByteBuffer view( ByteBuffer data, int count, int size )
+            throws IOException
+    {
+        final long required = (long) count * size;
+        if( data.remaining() < required ) {
+            throw new IOException( "Data section too short, " + count + " x " + size + " bytes requires " + required + " bytes, have " + data.remaining() );
+        }
+
+        final ByteBuffer b = data.slice().order( ByteOrder.BIG_ENDIAN );
+        b.limit( (int) required );
+        return b;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.jpeg2000.JPEG2000Decoder;
+
+/**
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.40
+ * <p>
+ * Grid point data - JPEG 2000 code stream format, the packed values are the samples of a single component JPEG 2000 image. Values are unpacked as with
+ * {@link GridPointSimplePacking}.
+ * <p>
+ * The image is decoded by {@link JPEG2000Decoder} which decodes the code-blocks of the image in parallel.
+ * <p>
+ * @author peter
+ */
+public class GridPointJPEG2000Packing
+        extends AbstractPacking
+{
+
+    /**
+     * Lossless compression
+     */
+    public static final int LOSSLESS = 0;
+    /**
+     * Lossy compression
+     */
+    public static final int LOSSY = 1;
+
+    private final int typeOfCompression;
+    private final int targetCompressionRatio;
+
+    public GridPointJPEG2000Packing( GribInputStream gis )
+            throws IOException
+    {
+        super( gis );
+        typeOfCompression = gis.readUnsignedByte();
+        targetCompressionRatio = gis.readUnsignedByte();
+    }
+
+    /**
+     * Type of compression, Code Table 5.40
+     * <p>
+     * @return {@link #LOSSLESS}, {@link #LOSSY} or 255 if missing
+     */
+    public int getTypeOfCompression()
+    {
+        return typeOfCompression;
+    }
+
+    /**
+     * Target compression ratio, M:1, only valid when lossy
+     * <p>
+     * @return M
+     */
+    public int getTargetCompressionRatio()
+    {
+        return targetCompressionRatio;
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        final int start = dst.position();
+        final double ref = getScaledReferenceValue();
+
+        if( getNoBits() == 0 || !data.hasRemaining() ) {
+            // A constant field, there is no image
+            final float v = (float) ref;
+            for( int i = 0; i < count; i++ ) {
+                dst.put( start + i, v );
+            }
+        }
+        else {
+            final JPEG2000Decoder decoder = new JPEG2000Decoder( data );
+            final long size = (long) decoder.getWidth() * decoder.getHeight();
+            if( size < count ) {
+                throw new IOException( "JPEG 2000 image of " + decoder.getWidth() + "x" + decoder.getHeight() + " cannot hold " + count + " values" );
+            }
+
+            final int[] x = Scratch.get().ints( Scratch.VALUES, (int) size );
+            decoder.decode( x );
+            scale( x, count, ref, getScale(), dst, start );
+        }
+
+        dst.position( start + count );
+    }
+
+}
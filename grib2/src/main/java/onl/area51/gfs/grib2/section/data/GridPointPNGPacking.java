@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStreamImpl;
+import onl.area51.gfs.grib2.io.GribInputStream;
+
+/**
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.41
+ * <p>
+ * Grid point data - PNG, the packed values are the samples of a PNG image with a depth of {@link #getNoBits()}, the bands of each pixel forming one value.
+ * Values are unpacked as with {@link GridPointSimplePacking}.
+ * <p>
+ * The image is read by the JDK's PNG {@link ImageReader} directly from the Data Section. Each thread keeps its reader and destination image so a sequence of
+ * fields of the same size does not create a new image per field.
+ * <p>
+ * @author peter
+ */
+public class GridPointPNGPacking
+        extends AbstractPacking
+{
+
+    private static final ThreadLocal<Decoder> DECODER = new ThreadLocal<>();
+
+    public GridPointPNGPacking( GribInputStream gis )
+            throws IOException
+    {
+        super( gis );
+    }
+
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        final int start = dst.position();
+        final double ref = getScaledReferenceValue();
+
+        if( getNoBits() == 0 ) {
+            // A constant field, there is no image
+            final float v = (float) ref;
+            for( int i = 0; i < count; i++ ) {
+                dst.put( start + i, v );
+            }
+        }
+        else {
+            Decoder decoder = DECODER.get();
+            if( decoder == null ) {
+                decoder = new Decoder();
+                DECODER.set( decoder );
+            }
+            decoder.decode( data, count, ref, getScale(), dst, start );
+        }
+
+        dst.position( start + count );
+    }
+
+    /**
+     * The per thread state for reading images
+     */
+    private static final class Decoder
+    {
+
+        private final ImageReader reader;
+        private final ImageReadParam param;
+        private BufferedImage image;
+
+        Decoder()
+                throws IOException
+        {
+            final Iterator<ImageReader> it = ImageIO.getImageReadersByFormatName( "png" );
+            if( !it.hasNext() ) {
+                throw new IOException( "No PNG ImageReader available" );
+            }
+            reader = it.next();
+            param = reader.getDefaultReadParam();
+        }
+
+        void decode( ByteBuffer data, int count, double ref, double scale, FloatBuffer dst, int start )
+                throws IOException
+        {
+            try {
+                reader.setInput( new BufferImageInputStream( data ), true, true );
+
+                final int width = reader.getWidth( 0 );
+                final int height = reader.getHeight( 0 );
+                if( (long) width * height < count ) {
+                    throw new IOException( "PNG of " + width + "x" + height + " cannot hold " + count + " values" );
+                }
+
+                param.setDestination( getImage( width, height ) );
+                final WritableRaster raster = reader.read( 0, param ).getRaster();
+
+                final SampleModel sm = raster.getSampleModel();
+                final int bands = sm.getNumBands();
+                final int[] sampleSize = sm.getSampleSize();
+                final int[] x = Scratch.get().ints( Scratch.VALUES, width * bands );
+                int depth = 0;
+                for( int b: sampleSize ) {
+                    depth += b;
+                }
+
+                for( int y = 0, i = 0; y < height && i < count; y++ ) {
+                    final int n = Math.min( width, count - i );
+                    raster.getPixels( 0, y, n, 1, x );
+
+                    if( bands > 1 ) {
+                        // Combine the bands of each pixel into a single value, first band most significant
+                        for( int p = 0; p < n; p++ ) {
+                            int v = 0;
+                            for( int b = 0; b < bands; b++ ) {
+                                v = (v << sampleSize[b]) | x[p * bands + b];
+                            }
+                            x[p] = v;
+                        }
+                    }
+
+                    if( depth == 32 ) {
+                        // 32 bit values are unsigned
+                        for( int p = 0; p < n; p++ ) {
+                            dst.put( start + i + p, (float) (ref + (x[p] & 0xffffffffL) * scale) );
+                        }
+                    }
+                    else {
+                        scale( x, n, ref, scale, dst, start + i );
+                    }
+                    i += n;
+                }
+            }
+            catch( IllegalArgumentException ex ) {
+                throw new IOException( "Invalid PNG", ex );
+            }
+            finally {
+                reader.setInput( null );
+            }
+        }
+
+        /**
+         * The destination image, reused when the previous one is compatible
+         */
+        private BufferedImage getImage( int width, int height )
+                throws IOException
+        {
+            ImageTypeSpecifier type = reader.getRawImageType( 0 );
+            if( type == null ) {
+                type = reader.getImageTypes( 0 ).next();
+            }
+            if( image == null
+                || image.getWidth() != width
+                || image.getHeight() != height
+                || !image.getColorModel().equals( type.getColorModel() )
+                || image.getSampleModel().getDataType() != type.getSampleModel().getDataType() ) {
+                image = type.createBufferedImage( width, height );
+            }
+            return image;
+        }
+    }
+
+    /**
+     * An ImageInputStream reading directly from a buffer, so the PNG is not copied nor cached
+     */
+    private static final class BufferImageInputStream
+            extends ImageInputStreamImpl
+    {
+
+        private final ByteBuffer data;
+
+        BufferImageInputStream( ByteBuffer data )
+        {
+            this.data = data.slice();
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            checkClosed();
+            if( streamPos >= data.limit() ) {
+                return -1;
+            }
+            bitOffset = 0;
+            return data.get( (int) streamPos++ ) & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len )
+                throws IOException
+        {
+            checkClosed();
+            if( len == 0 ) {
+                return 0;
+            }
+            bitOffset = 0;
+
+            final int n = (int) Math.min( len, data.limit() - streamPos );
+            if( n <= 0 ) {
+                return -1;
+            }
+
+            final ByteBuffer src = data.duplicate();
+            src.position( (int) streamPos );
+            src.get( b, off, n );
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length()
+        {
+            return data.limit();
+        }
+    }
+
+}
@@ -16,20 +16,137 @@
 package onl.area51.gfs.grib2.section.data;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import onl.area51.gfs.grib2.io.BitReader;
+import onl.area51.gfs.grib2.io.BitUnpacker;
 import onl.area51.gfs.grib2.io.GribInputStream;
 
 /**
- *
+ * GRIB2 - DATA REPRESENTATION TEMPLATE 5.0
+ * <p>
+ * Grid point data - simple packing, each value is an unsigned integer of {@link #getNoBits()} bits packed without padding.
+ * <p>
+ * Values are unpacked in chunks by the {@link BitUnpacker} for the width then scaled.
+ * <p>
  * @author peter
  */
 public class GridPointSimplePacking
         extends AbstractPacking
 {
 
+    /**
+     * Number of values unpacked at a time before being scaled
+     */
+    private static final int CHUNK_SIZE = 4096;
+
     public GridPointSimplePacking( GribInputStream gis )
             throws IOException
     {
         super( gis );
     }
 
+    @Override
+    public void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException
+    {
+        final int bits = getNoBits();
+        final int start = dst.position();
+        final double ref = getScaledReferenceValue();
+
+        if( bits == 0 ) {
+            // A constant field
+            final float v = (float) ref;
+            for( int i = 0; i < count; i++ ) {
+                dst.put( start + i, v );
+            }
+        }
+        else {
+            checkLength( data, count, bits );
+
+            final double scale = getScale();
+            final BitUnpacker unpacker = BitUnpacker.forWidth( bits );
+            final int offset = data.position();
+            final int[] x = Scratch.get().ints( Scratch.VALUES, Math.min( count, CHUNK_SIZE ) );
+            for( int i = 0; i < count; i += CHUNK_SIZE ) {
+                final int n = Math.min( CHUNK_SIZE, count - i );
+                // CHUNK_SIZE is a multiple of 8 so every chunk starts on a byte boundary
+                unpacker.unpack( data, offset + (int) (((long) i * bits) >>> 3), bits, n, x, 0 );
+                if( bits == 32 ) {
+                    for( int j = 0; j < n; j++ ) {
+                        dst.put( start + i + j, (float) (ref + (x[j] & 0xffffffffL) * scale) );
+                    }
+                }
+                else {
+                    scale( x, n, ref, scale, dst, start + i );
+                }
+            }
+        }
+
+        dst.position( start + count );
+    }
+
+    /**
+     * Each value is read from its bit offset, runs of consecutive points being unpacked together, so no other values are touched.
+     */
+    @Override
+    public void decode( ByteBuffer data, int count, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        final int bits = getNoBits();
+        final int start = dst.position();
+        final double ref = getScaledReferenceValue();
+
+        if( bits == 0 ) {
+            final float v = (float) ref;
+            for( int i = 0; i < n; i++ ) {
+                dst.put( start + i, points[i] < 0 ? Float.NaN : v );
+            }
+        }
+        else {
+            checkLength( data, count, bits );
+
+            final double scale = getScale();
+            final BitReader reader = new BitReader( data, data.position() );
+            final int[] x = Scratch.get().ints( Scratch.VALUES, Math.min( n, CHUNK_SIZE ) );
+            int i = 0;
+            while( i < n ) {
+                final int p = points[i];
+                if( p < 0 ) {
+                    dst.put( start + i, Float.NaN );
+                    i++;
+                    continue;
+                }
+                if( p >= count ) {
+                    throw new IndexOutOfBoundsException( "Point " + p + " of " + count );
+                }
+
+                // The run of consecutive points from here
+                int run = 1;
+                while( run < CHUNK_SIZE && i + run < n && points[i + run] == p + run && p + run < count ) {
+                    run++;
+                }
+
+                reader.seek( (long) p * bits );
+                if( run == 1 ) {
+                    // A lone point, e.g. from a decimated window, is cheaper read directly
+                    dst.put( start + i, (float) (ref + reader.read( bits ) * scale) );
+                }
+                else if( bits == 32 ) {
+                    reader.unpack( bits, run, x, 0 );
+                    for( int j = 0; j < run; j++ ) {
+                        dst.put( start + i + j, (float) (ref + (x[j] & 0xffffffffL) * scale) );
+                    }
+                }
+                else {
+                    reader.unpack( bits, run, x, 0 );
+                    scale( x, run, ref, scale, dst, start + i );
+                }
+                i += run;
+            }
+        }
+
+        dst.position( start + n );
+    }
+
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An index into the groups of a complex packed Data Section (Templates 5.2 and 5.3), so decoding may start part way through a field rather than walking
+ * every group before the points required.
+ * <p>
+ * Every {@link #INTERVAL} groups a checkpoint records the bit offset of the group's packed values, the index of its first point, the number of non-missing
+ * values before it and, for spatial differencing, the last two values before it. The index is built once by decoding the field, see
+ * {@link DataRepresentation#createGroupIndex(DataSection)}, and may be stored in a {@link onl.area51.gfs.grib2.Grib2Index}.
+ * <p>
+ * A GroupIndex is a view of a big-endian buffer so one read from a memory mapped index is used in place.
+ * <p>
+ * @author peter
+ */
+public final class GroupIndex
+{
+
+    /**
+     * Groups between checkpoints. This is a multiple of 8 so the descriptors of the first group of each checkpoint start on a byte boundary.
+     */
+    public static final int INTERVAL = 64;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int CHECKPOINT_SIZE = 24;
+
+    // Checkpoint layout
+    private static final int OFF_BIT_OFFSET = 0;
+    private static final int OFF_FIRST_POINT = 8;
+    private static final int OFF_VALUE_INDEX = 12;
+    private static final int OFF_PREVIOUS = 16;
+    private static final int OFF_PREVIOUS2 = 20;
+
+    private final ByteBuffer buffer;
+    private final int interval;
+    private final int checkpoints;
+
+    private GroupIndex( ByteBuffer buffer )
+    {
+        this.buffer = buffer;
+        interval = buffer.getInt( 0 );
+        checkpoints = buffer.getInt( 4 );
+    }
+
+    /**
+     * Create an empty index to be filled in with {@link #set(int, long, int, int, int, int)}
+     * <p>
+     * @param numberGroups number of groups in the field
+     * <p>
+     * @return GroupIndex
+     */
+    static GroupIndex create( int numberGroups )
+    {
+        final int checkpoints = (numberGroups + INTERVAL - 1) / INTERVAL;
+        final ByteBuffer b = ByteBuffer.allocate( HEADER_SIZE + checkpoints * CHECKPOINT_SIZE );
+        b.putInt( 0, INTERVAL ).putInt( 4, checkpoints );
+        return new GroupIndex( b );
+    }
+
+    /**
+     * Read an index written by {@link #write(ByteBuffer)}
+     * <p>
+     * @param b buffer from its position to its limit
+     * <p>
+     * @return GroupIndex, a view of b
+     * <p>
+     * @throws IOException if b does not hold a valid index
+     */
+    public static GroupIndex read( ByteBuffer b )
+            throws IOException
+    {
+        final ByteBuffer buffer = b.slice().order( ByteOrder.BIG_ENDIAN );
+        if( buffer.limit() < HEADER_SIZE ) {
+            throw new IOException( "Group index too short" );
+        }
+        final int interval = buffer.getInt( 0 );
+        final int checkpoints = buffer.getInt( 4 );
+        if( interval <= 0 || (interval & 7) != 0 || checkpoints < 0 || buffer.limit() != HEADER_SIZE + (long) checkpoints * CHECKPOINT_SIZE ) {
+            throw new IOException( "Invalid group index" );
+        }
+        return new GroupIndex( buffer );
+    }
+
+    /**
+     * The number of bytes {@link #write(ByteBuffer)} will write
+     * <p>
+     * @return size in bytes
+     */
+    public int byteSize()
+    {
+        return buffer.limit();
+    }
+
+    /**
+     * Write this index
+     * <p>
+     * @param dst destination, from its position which is advanced by {@link #byteSize()}
+     */
+    public void write( ByteBuffer dst )
+    {
+        final ByteBuffer b = buffer.duplicate();
+        b.clear();
+        dst.put( b );
+    }
+
+    /**
+     * Groups between checkpoints
+     * <p>
+     * @return interval
+     */
+    public int getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * The number of checkpoints, checkpoint c being at group {@code c * getInterval()}
+     * <p>
+     * @return number of checkpoints
+     */
+    public int getCheckpoints()
+    {
+        return checkpoints;
+    }
+
+    void set( int checkpoint, long bitOffset, int firstPoint, int valueIndex, int previous, int previous2 )
+    {
+        final int p = HEADER_SIZE + checkpoint * CHECKPOINT_SIZE;
+        buffer.putLong( p + OFF_BIT_OFFSET, bitOffset )
+                .putInt( p + OFF_FIRST_POINT, firstPoint )
+                .putInt( p + OFF_VALUE_INDEX, valueIndex )
+                .putInt( p + OFF_PREVIOUS, previous )
+                .putInt( p + OFF_PREVIOUS2, previous2 );
+    }
+
+    /**
+     * The offset in bits of the first packed value of a checkpoint, relative to the first packed value of the field
+     * <p>
+     * @param checkpoint checkpoint
+     * <p>
+     * @return bit offset
+     */
+    long getBitOffset( int checkpoint )
+    {
+        return buffer.getLong( HEADER_SIZE + checkpoint * CHECKPOINT_SIZE + OFF_BIT_OFFSET );
+    }
+
+    /**
+     * The index of the first point of a checkpoint
+     * <p>
+     * @param checkpoint checkpoint
+     * <p>
+     * @return point
+     */
+    int getFirstPoint( int checkpoint )
+    {
+        return buffer.getInt( HEADER_SIZE + checkpoint * CHECKPOINT_SIZE + OFF_FIRST_POINT );
+    }
+
+    /**
+     * The number of non-missing values before a checkpoint
+     * <p>
+     * @param checkpoint checkpoint
+     * <p>
+     * @return value index
+     */
+    int getValueIndex( int checkpoint )
+    {
+        return buffer.getInt( HEADER_SIZE + checkpoint * CHECKPOINT_SIZE + OFF_VALUE_INDEX );
+    }
+
+    /**
+     * The last value before a checkpoint, after spatial differencing has been undone
+     * <p>
+     * @param checkpoint checkpoint
+     * <p>
+     * @return value
+     */
+    int getPrevious( int checkpoint )
+    {
+        return buffer.getInt( HEADER_SIZE + checkpoint * CHECKPOINT_SIZE + OFF_PREVIOUS );
+    }
+
+    /**
+     * The value before {@link #getPrevious(int)}
+     * <p>
+     * @param checkpoint checkpoint
+     * <p>
+     * @return value
+     */
+    int getPrevious2( int checkpoint )
+    {
+        return buffer.getInt( HEADER_SIZE + checkpoint * CHECKPOINT_SIZE + OFF_PREVIOUS2 );
+    }
+
+    /**
+     * The last checkpoint starting at or before a point
+     * <p>
+     * @param point point
+     * <p>
+     * @return checkpoint
+     */
+    int find( int point )
+    {
+        int lo = 0;
+        int hi = checkpoints - 1;
+        while( lo < hi ) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if( getFirstPoint( mid ) <= point ) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GroupIndex[" + checkpoints + " checkpoints every " + interval + " groups]";
+    }
+
+}
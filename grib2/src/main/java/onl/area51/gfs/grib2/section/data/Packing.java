@@ -15,11 +15,147 @@
  */
 package onl.area51.gfs.grib2.section.data;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import onl.area51.gfs.grib2.field.Field;
+
 /**
+ * The template specific part of the Data Representation Section which describes how the values in the Data Section are packed.
  *
  * @author peter
  */
 public interface Packing
 {
-    
+
+    /**
+     * A view of the values in a Data Section without decoding or copying them. This is only possible when the values are stored as 32 bit big-endian floats.
+     * <p>
+     * @param data  the content of the Data Section from octet 6
+     * @param count the number of packed values, i.e. {@link DataRepresentation#getNoDataPoints()}
+     * <p>
+     * @return read only view of count values, or null if the values must be decoded
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default FloatBuffer asFloatBuffer( ByteBuffer data, int count )
+            throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Unpack the values in a Data Section.
+     * <p>
+     * The values are written with absolute puts starting at the position of dst, which is then advanced by count. The position of data is not changed.
+     * <p>
+     * @param data  the content of the Data Section from octet 6
+     * @param count the number of packed values, i.e. {@link DataRepresentation#getNoDataPoints()}
+     * @param dst   destination
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    void decode( ByteBuffer data, int count, FloatBuffer dst )
+            throws IOException;
+
+    /**
+     * Unpack the values in a Data Section into an array
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of packed values, i.e. {@link DataRepresentation#getNoDataPoints()}
+     * @param dst    destination
+     * @param offset offset in dst of the first value
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default void decode( ByteBuffer data, int count, float[] dst, int offset )
+            throws IOException
+    {
+        decode( data, count, FloatBuffer.wrap( dst, offset, count ) );
+    }
+
+    /**
+     * Unpack selected values from a Data Section.
+     * <p>
+     * The values are written with absolute puts starting at the position of dst, which is then advanced by n. The position of data is not changed.
+     * <p>
+     * This implementation unpacks every value then selects those required. Implementations which can find a value without unpacking those before it
+     * override this.
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of packed values, i.e. {@link DataRepresentation#getNoDataPoints()}
+     * @param points index of each value required, in any order. An index of -1 writes NaN.
+     * @param n      number of points
+     * @param dst    destination
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default void decode( ByteBuffer data, int count, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        final float[] values = new float[count];
+        decode( data, count, values, 0 );
+
+        final int start = dst.position();
+        for( int i = 0; i < n; i++ ) {
+            final int p = points[i];
+            dst.put( start + i, p < 0 ? Float.NaN : values[p] );
+        }
+        dst.position( start + n );
+    }
+
+    /**
+     * Unpack selected values from a Data Section using a {@link GroupIndex} to start part way through the data.
+     * <p>
+     * This implementation ignores the index, only complex packing has one.
+     * <p>
+     * @param data   the content of the Data Section from octet 6
+     * @param count  the number of packed values
+     * @param index  GroupIndex from {@link #createGroupIndex(ByteBuffer, int)} or null for none
+     * @param points index of each value required, in any order. An index of -1 writes NaN.
+     * @param n      number of points
+     * @param dst    destination
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default void decode( ByteBuffer data, int count, GroupIndex index, int[] points, int n, FloatBuffer dst )
+            throws IOException
+    {
+        decode( data, count, points, n, dst );
+    }
+
+    /**
+     * Build the {@link GroupIndex} of a Data Section. This decodes the whole section so is as costly as {@link #decode(ByteBuffer, int, FloatBuffer)}.
+     * <p>
+     * @param data  the content of the Data Section from octet 6
+     * @param count the number of packed values
+     * <p>
+     * @return GroupIndex or null if this packing does not use one
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default GroupIndex createGroupIndex( ByteBuffer data, int count )
+            throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Unpack the values in a Data Section into a {@link Field}, starting at index 0
+     * <p>
+     * @param data  the content of the Data Section from octet 6
+     * @param count the number of packed values, i.e. {@link DataRepresentation#getNoDataPoints()}
+     * @param dst   destination, at least count in size
+     * <p>
+     * @throws IOException if the data is invalid
+     */
+    default void decode( ByteBuffer data, int count, Field dst )
+            throws IOException
+    {
+        if( dst.size() < count ) {
+            throw new IllegalArgumentException( "Field of " + dst.size() + " cannot hold " + count + " values" );
+        }
+        decode( data, count, dst.getBuffer() );
+    }
+
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+/**
+ * Per thread working arrays for the decoders, so decoding a sequence of fields of the same size does not allocate a new array per field.
+ * <p>
+ * The arrays are only grown, never cleared, so their content is undefined when returned.
+ * <p>
+ * @author peter
+ */
+final class Scratch
+{
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial( Scratch::new );
+
+    static final int GROUP_REFS = 0;
+    static final int GROUP_WIDTHS = 1;
+    static final int GROUP_LENGTHS = 2;
+    static final int VALUES = 3;
+
+    private final int[][] ints = new int[4][0];
+    private byte[] bytes = new byte[0];
+
+    static Scratch get()
+    {
+        return SCRATCH.get();
+    }
+
+    /**
+     * An int array of at least size
+     * <p>
+     * @param slot which array, one of the constants in this class
+     * @param size minimum size
+     * <p>
+     * @return int[]
+     */
+    int[] ints( int slot, int size )
+    {
+        if( ints[slot].length < size ) {
+            ints[slot] = new int[size];
+        }
+        return ints[slot];
+    }
+
+    /**
+     * A byte array of at least size
+     * <p>
+     * @param size minimum size
+     * <p>
+     * @return byte[]
+     */
+    byte[] bytes( int size )
+    {
+        if( bytes.length < size ) {
+            bytes = new byte[size];
+        }
+        return bytes;
+    }
+
+}
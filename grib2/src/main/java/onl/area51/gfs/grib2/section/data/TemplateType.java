@@ -32,9 +32,9 @@ public enum TemplateType
     MATRIX_VALUE_AT_GRID_POINT( 1 ),
     GRID_POINT_COMPLEX( 2, GridPointComplexPacking::new ),
     GRID_POINT_COMPLEX_SPATIAL( 3, GridPointComplexSpatialDifferencingPacking::new ),
-    GRID_POINT_IEEE( 4 ),
-    GRID_POINT_JPEG2000( 40 ),
-    GRID_POINT_PNG( 41 ),
+    GRID_POINT_IEEE( 4, GridPointIEEEPacking::new ),
+    GRID_POINT_JPEG2000( 40, GridPointJPEG2000Packing::new ),
+    GRID_POINT_PNG( 41, GridPointPNGPacking::new ),
     SPECTRAL_DATA_SIMPLE( 50 ),
     SPECTRAL_DATA_COMPLEX( 51 ),
     GRID_POINT_SIMPLE_LOG( 61 ),
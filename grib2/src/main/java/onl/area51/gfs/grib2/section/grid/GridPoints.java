@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.grid;
+
+import java.util.Arrays;
+import onl.area51.gfs.grib2.field.Field;
+
+/**
+ * A set of locations on a grid, each with the grid points and weights needed to find its value, see
+ * {@link LatLongGrid#getPoints(double[], double[], Interpolation)}.
+ * <p>
+ * The grid points used by all of the locations are held once each in ascending order, {@link #getPoints()}, so their values can be decoded together and
+ * then {@link #interpolate(float[], float[])} gives the value at each location. A GridPoints is immutable so it may be reused for every field on the same
+ * grid.
+ * <p>
+ * @author peter
+ */
+public final class GridPoints
+{
+
+    /**
+     * Grid points per location
+     */
+    static final int CORNERS = 4;
+
+    private final int size;
+    // Distinct grid points in ascending order
+    private final int[] points;
+    // For each corner of each location the index in points, -1 if unused
+    private final int[] slots;
+    private final float[] weights;
+
+    /**
+     * @param indexes grid point of each corner of each location, -1 if unused. A location without any lies outside the grid.
+     * @param weights weight of each corner
+     */
+    GridPoints( int[] indexes, float[] weights )
+    {
+        size = indexes.length / CORNERS;
+        this.weights = weights;
+
+        final int[] sorted = Arrays.stream( indexes ).filter( i -> i >= 0 ).sorted().distinct().toArray();
+        points = sorted;
+        slots = new int[indexes.length];
+        for( int i = 0; i < indexes.length; i++ ) {
+            slots[i] = indexes[i] < 0 ? -1 : Arrays.binarySearch( sorted, indexes[i] );
+        }
+    }
+
+    /**
+     * The number of locations
+     * <p>
+     * @return size
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The number of distinct grid points used by the locations
+     * <p>
+     * @return number of points
+     */
+    public int getPointCount()
+    {
+        return points.length;
+    }
+
+    /**
+     * The distinct grid points used by the locations, as indexes in the order the points are stored in the Data Section
+     * <p>
+     * @return copy of the points in ascending order
+     */
+    public int[] getPoints()
+    {
+        return points.clone();
+    }
+
+    /**
+     * Is a location within the grid
+     * <p>
+     * @param location location
+     * <p>
+     * @return true if the location has a value
+     */
+    public boolean isInside( int location )
+    {
+        return slots[location * CORNERS] >= 0;
+    }
+
+    /**
+     * Find the value at each location from the values of {@link #getPoints()}.
+     * <p>
+     * A location outside the grid is NaN, as is one where a grid point it uses with a non-zero weight is NaN, e.g. not present in a bit map.
+     * <p>
+     * @param values value of each of {@link #getPoints()}
+     * @param out    value at each location
+     */
+    public void interpolate( float[] values, float[] out )
+    {
+        interpolate( values, out, 0, 1 );
+    }
+
+    /**
+     * Find the value at each location from the values of {@link #getPoints()}, writing them to a strided array, e.g. one column of a matrix
+     * <p>
+     * @param values value of each of {@link #getPoints()}
+     * @param out    destination
+     * @param offset index in out of the first location
+     * @param stride distance in out between locations
+     */
+    public void interpolate( float[] values, float[] out, int offset, int stride )
+    {
+        for( int l = 0, c = 0, o = offset; l < size; l++, c += CORNERS, o += stride ) {
+            if( slots[c] < 0 ) {
+                out[o] = Float.NaN;
+                continue;
+            }
+
+            double v = 0;
+            for( int k = c; k < c + CORNERS; k++ ) {
+                if( slots[k] >= 0 && weights[k] != 0 ) {
+                    v += weights[k] * values[slots[k]];
+                }
+            }
+            out[o] = (float) v;
+        }
+    }
+
+    /**
+     * Find the value at each location from a decoded field
+     * <p>
+     * @param field field of one value per grid point, e.g. from {@link onl.area51.gfs.grib2.section.DataSet#decode(boolean)}
+     * @param out   value at each location
+     */
+    public void valuesAt( Field field, float[] out )
+    {
+        final float[] values = new float[points.length];
+        for( int i = 0; i < points.length; i++ ) {
+            values[i] = field.get( points[i] );
+        }
+        interpolate( values, out );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GridPoints[" + size + " locations, " + points.length + " points]";
+    }
+
+}
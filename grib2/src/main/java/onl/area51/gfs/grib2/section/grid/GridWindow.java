@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.grid;
+
+/**
+ * A rectangular window onto the points of a grid in the order they are stored in the Data Section, as rows of {@link #getRowLength()} consecutive points.
+ * <p>
+ * Columns wrap around at the end of a row, so on a global grid a window may cross the meridian where the grid starts. Rows do not wrap.
+ * <p>
+ * A window may be decimated with {@link #decimate(int, int)} to take every Nth row and column, e.g. for a low resolution overview of a field.
+ * <p>
+ * @author peter
+ */
+public final class GridWindow
+{
+
+    private final int rowLength;
+    private final int firstRow;
+    private final int rows;
+    private final int rowStep;
+    private final int firstColumn;
+    private final int columns;
+    private final int columnStep;
+
+    /**
+     * @param rowLength   number of points in each row of the grid
+     * @param firstRow    first row of the window
+     * @param rows        number of rows in the window
+     * @param firstColumn first column of the window
+     * @param columns     number of columns in the window, at most rowLength
+     */
+    public GridWindow( int rowLength, int firstRow, int rows, int firstColumn, int columns )
+    {
+        this( rowLength, firstRow, rows, 1, firstColumn, columns, 1 );
+    }
+
+    /**
+     * @param rowLength   number of points in each row of the grid
+     * @param firstRow    first row of the window
+     * @param rows        number of rows in the window
+     * @param rowStep     rows of the grid between each row of the window
+     * @param firstColumn first column of the window
+     * @param columns     number of columns in the window
+     * @param columnStep  columns of the grid between each column of the window. The columns may span at most rowLength.
+     */
+    public GridWindow( int rowLength, int firstRow, int rows, int rowStep, int firstColumn, int columns, int columnStep )
+    {
+        if( rowLength <= 0 || firstRow < 0 || rows <= 0 || rowStep <= 0 || firstColumn < 0 || firstColumn >= rowLength || columns <= 0 || columnStep <= 0
+            || (long) (columns - 1) * columnStep >= rowLength ) {
+            throw new IllegalArgumentException( "Invalid window " + rows + "x" + columns + " at " + firstRow + "," + firstColumn
+                                                + " step " + rowStep + "," + columnStep + " of rows of " + rowLength );
+        }
+        this.rowLength = rowLength;
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.rowStep = rowStep;
+        this.firstColumn = firstColumn;
+        this.columns = columns;
+        this.columnStep = columnStep;
+    }
+
+    /**
+     * The number of points in each row of the grid
+     * <p>
+     * @return row length
+     */
+    public int getRowLength()
+    {
+        return rowLength;
+    }
+
+    public int getFirstRow()
+    {
+        return firstRow;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    public int getRowStep()
+    {
+        return rowStep;
+    }
+
+    public int getFirstColumn()
+    {
+        return firstColumn;
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public int getColumnStep()
+    {
+        return columnStep;
+    }
+
+    /**
+     * The number of points in this window
+     * <p>
+     * @return rows * columns
+     */
+    public int size()
+    {
+        return rows * columns;
+    }
+
+    /**
+     * Does this window wrap around the end of the rows
+     * <p>
+     * @return true if the columns wrap
+     */
+    public boolean isWrapped()
+    {
+        return firstColumn + (columns - 1) * columnStep >= rowLength;
+    }
+
+    /**
+     * A window of every Nth row and column of this one, starting with its first point
+     * <p>
+     * @param rowStep    take every rowStep'th row
+     * @param columnStep take every columnStep'th column
+     * <p>
+     * @return GridWindow
+     */
+    public GridWindow decimate( int rowStep, int columnStep )
+    {
+        if( rowStep <= 0 || columnStep <= 0 ) {
+            throw new IllegalArgumentException( "Invalid step " + rowStep + "," + columnStep );
+        }
+        return new GridWindow( rowLength,
+                               firstRow, (rows + rowStep - 1) / rowStep, this.rowStep * rowStep,
+                               firstColumn, (columns + columnStep - 1) / columnStep, this.columnStep * columnStep );
+    }
+
+    /**
+     * The index within the grid of a point of this window
+     * <p>
+     * @param row    row within this window
+     * @param column column within this window
+     * <p>
+     * @return index in the Data Section
+     */
+    public int getIndex( int row, int column )
+    {
+        final int c = firstColumn + column * columnStep;
+        return (firstRow + row * rowStep) * rowLength + (c < rowLength ? c : c - rowLength);
+    }
+
+    /**
+     * The index within the grid of every point of this window, row by row
+     * <p>
+     * @return indexes in the Data Section, {@link #size()} in length
+     */
+    public int[] getIndexes()
+    {
+        final int[] indexes = new int[size()];
+        int k = 0;
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < columns; c++ ) {
+                indexes[k++] = getIndex( r, c );
+            }
+        }
+        return indexes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "GridWindow[" + rows + "x" + columns + " at " + firstRow + "," + firstColumn
+               + (rowStep == 1 && columnStep == 1 ? "" : " step " + rowStep + "," + columnStep)
+               + " of " + rowLength + "]";
+    }
+
+}
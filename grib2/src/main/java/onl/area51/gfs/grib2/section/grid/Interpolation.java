@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.grid;
+
+/**
+ * How the value at a location between grid points is found
+ * <p>
+ * @author peter
+ */
+public enum Interpolation
+{
+
+    /**
+     * The value of the nearest grid point
+     */
+    NEAREST,
+    /**
+     * Bilinear interpolation between the four grid points surrounding the location
+     */
+    BILINEAR
+
+}
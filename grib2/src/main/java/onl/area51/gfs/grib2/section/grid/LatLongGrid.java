@@ -16,6 +16,8 @@
 package onl.area51.gfs.grib2.section.grid;
 
 import java.io.IOException;
+import java.util.Arrays;
+import onl.area51.gfs.grib2.field.Field;
 import onl.area51.gfs.grib2.io.GribInputStream;
 
 /**
@@ -29,6 +31,9 @@ public class LatLongGrid
         extends GridDefinition
 {
 
+    // Tolerance in grid points when finding the points within a box
+    private static final double EPSILON = 1e-6;
+
     private final int shapeOfEarth;
     private final int scaleFactorOfRadius;
     private final int scaleValueOfRadius;
@@ -63,6 +68,9 @@ public class LatLongGrid
     private final boolean pointsNotOffsetY;
     private final boolean noPointsXY;
 
+    // Degrees per unit of the angles
+    private final double unit;
+
     public LatLongGrid( GribInputStream gis )
             throws IOException
     {
@@ -85,30 +93,36 @@ public class LatLongGrid
         basicAngleOfInitialProductionDomain = gis.readInt();
         subdivisionsOfBasicAngle = gis.readInt();
 
-        latFirstPoint = gis.readInt();
-        longFirstPoint = gis.readInt();
+        latFirstPoint = gis.readSignMagnitudeInt();
+        longFirstPoint = gis.readSignMagnitudeInt();
 
+        // Flag bits are numbered from 1, the most significant
         final int resolutionComponentFlags = gis.readUnsignedByte();
-        iDirectionIncrementsGiven = (resolutionComponentFlags & 0x4) == 0x4;
-        jDirectionIncrementsGiven = (resolutionComponentFlags & 0x8) == 0x8;
-        resolvedUVrelative = (resolutionComponentFlags & 0x10) == 0x10;
+        iDirectionIncrementsGiven = (resolutionComponentFlags & 0x20) == 0x20;
+        jDirectionIncrementsGiven = (resolutionComponentFlags & 0x10) == 0x10;
+        resolvedUVrelative = (resolutionComponentFlags & 0x08) == 0x08;
 
-        latLastPoint = gis.readInt();
-        longLastPoint = gis.readInt();
+        latLastPoint = gis.readSignMagnitudeInt();
+        longLastPoint = gis.readSignMagnitudeInt();
 
         iDirectionIncrement = gis.readInt();
         jDirectorionIncrement = gis.readInt();
 
         final int scanningModeFlags = gis.readUnsignedByte();
-        pointsFirstRowNegativeX = (resolutionComponentFlags & 0x1) == 0x1;
-        pointsFirstRowNegativeY = (resolutionComponentFlags & 0x2) == 0x2;
-        adjacentPointsConsecutiveXY = (resolutionComponentFlags & 0x4) == 0x4;
-        adjacentRowsScanOppositeDirection = (resolutionComponentFlags & 0x8) == 0x8;
-        pointsOddRowsNotOffsetX = (resolutionComponentFlags & 0x10) == 0x10;
-        pointsEvenRowsNotOffsetX = (resolutionComponentFlags & 0x20) == 0x20;
-        pointsNotOffsetY = (resolutionComponentFlags & 0x40) == 0x40;
-        noPointsXY = (resolutionComponentFlags & 0x80) == 0x80;
-
+        pointsFirstRowNegativeX = (scanningModeFlags & 0x80) == 0x80;
+        pointsFirstRowNegativeY = (scanningModeFlags & 0x40) == 0x40;
+        adjacentPointsConsecutiveXY = (scanningModeFlags & 0x20) == 0x20;
+        adjacentRowsScanOppositeDirection = (scanningModeFlags & 0x10) == 0x10;
+        pointsOddRowsNotOffsetX = (scanningModeFlags & 0x08) == 0x08;
+        pointsEvenRowsNotOffsetX = (scanningModeFlags & 0x04) == 0x04;
+        pointsNotOffsetY = (scanningModeFlags & 0x02) == 0x02;
+        noPointsXY = (scanningModeFlags & 0x01) == 0x01;
+
+        // Angles are in micro-degrees unless a basic angle and its subdivisions are given
+        unit = basicAngleOfInitialProductionDomain == 0 || basicAngleOfInitialProductionDomain == -1
+               || subdivisionsOfBasicAngle == 0 || subdivisionsOfBasicAngle == -1
+               ? 1e-6
+               : (double) basicAngleOfInitialProductionDomain / subdivisionsOfBasicAngle;
     }
 
     public int getShapeOfEarth()
@@ -312,4 +326,293 @@ public class LatLongGrid
         return noPointsXY;
     }
 
+    /**
+     * Convert an angle of this grid, e.g. {@link #getLatFirstPoint()}, to degrees
+     * <p>
+     * @param angle angle in units of this grid
+     * <p>
+     * @return degrees
+     */
+    public double toDegrees( int angle )
+    {
+        return angle * unit;
+    }
+
+    /**
+     * The increment between points along a parallel in degrees, derived from the first and last points if not given
+     * <p>
+     * @return Di in degrees
+     */
+    public double getDi()
+    {
+        if( iDirectionIncrementsGiven && iDirectionIncrement != -1 ) {
+            return iDirectionIncrement * unit;
+        }
+        final double span = normalize( (longLastPoint - longFirstPoint) * unit * (pointsFirstRowNegativeX ? -1 : 1) );
+        return noPointsAlongParallel > 1 ? span / (noPointsAlongParallel - 1) : 360;
+    }
+
+    /**
+     * The increment between points along a meridian in degrees, derived from the first and last points if not given
+     * <p>
+     * @return Dj in degrees
+     */
+    public double getDj()
+    {
+        if( jDirectionIncrementsGiven && jDirectorionIncrement != -1 ) {
+            return jDirectorionIncrement * unit;
+        }
+        return noPointsAlingMeridian > 1 ? Math.abs( latLastPoint - latFirstPoint ) * unit / (noPointsAlingMeridian - 1) : 180;
+    }
+
+    /**
+     * Does this grid go all of the way around the globe, so the first point of a row follows the last
+     * <p>
+     * @return true if global in longitude
+     */
+    public boolean isGlobal()
+    {
+        final double di = getDi();
+        return noPointsAlongParallel * di > 360 - di / 2;
+    }
+
+    /**
+     * The latitude of row j of the grid
+     * <p>
+     * @param j row, 0 being the first
+     * <p>
+     * @return latitude in degrees
+     */
+    public double getLatitude( int j )
+    {
+        return latFirstPoint * unit + j * (pointsFirstRowNegativeY ? getDj() : -getDj());
+    }
+
+    /**
+     * The longitude of column i of the grid
+     * <p>
+     * @param i column, 0 being the first
+     * <p>
+     * @return longitude in degrees, 0 to 360
+     */
+    public double getLongitude( int i )
+    {
+        return normalize( longFirstPoint * unit + i * (pointsFirstRowNegativeX ? -getDi() : getDi()) );
+    }
+
+    private static double normalize( double longitude )
+    {
+        final double l = longitude % 360;
+        return l < 0 ? l + 360 : l;
+    }
+
+    /**
+     * The index of a point in the Data Section, i.e. in the order the points are scanned
+     * <p>
+     * @param i column
+     * @param j row
+     * <p>
+     * @return index
+     */
+    public int getIndex( int i, int j )
+    {
+        final int ni = noPointsAlongParallel;
+        final int nj = noPointsAlingMeridian;
+        if( adjacentPointsConsecutiveXY ) {
+            return i * nj + (adjacentRowsScanOppositeDirection && (i & 1) == 1 ? nj - 1 - j : j);
+        }
+        return j * ni + (adjacentRowsScanOppositeDirection && (j & 1) == 1 ? ni - 1 - i : i);
+    }
+
+    /**
+     * The grid points and weights giving the value at each of a set of locations. Each location is found directly from the first point, increments and
+     * scanning mode of this grid, wrapping in longitude where the grid is global.
+     * <p>
+     * @param lats          latitude of each location in degrees
+     * @param lons          longitude of each location in degrees, either -180 to 180 or 0 to 360
+     * @param interpolation Interpolation
+     * <p>
+     * @return GridPoints, a location outside this grid has no points
+     */
+    public GridPoints getPoints( double[] lats, double[] lons, Interpolation interpolation )
+    {
+        if( lats.length != lons.length ) {
+            throw new IllegalArgumentException( "Have " + lats.length + " latitudes but " + lons.length + " longitudes" );
+        }
+
+        final int ni = noPointsAlongParallel;
+        final int nj = noPointsAlingMeridian;
+        final boolean global = isGlobal();
+        final double lat0 = latFirstPoint * unit;
+        final double dlat = pointsFirstRowNegativeY ? getDj() : -getDj();
+        final double lon0 = longFirstPoint * unit;
+        final double di = getDi();
+
+        final int[] indexes = new int[lats.length * GridPoints.CORNERS];
+        final float[] weights = new float[indexes.length];
+        Arrays.fill( indexes, -1 );
+
+        for( int l = 0, c = 0; l < lats.length; l++, c += GridPoints.CORNERS ) {
+            // Position in grid units from the first point in the scan direction
+            final double fj = (lats[l] - lat0) / dlat;
+            double fi = normalize( (lons[l] - lon0) * (pointsFirstRowNegativeX ? -1 : 1) ) / di;
+            if( fi > 360 / di - EPSILON ) {
+                // Just west of the first column, which on a global grid is also just east of the last
+                fi = 0;
+            }
+            if( fj < -EPSILON || fj > nj - 1 + EPSILON || (!global && fi > ni - 1 + EPSILON) ) {
+                continue;
+            }
+
+            if( interpolation == Interpolation.NEAREST ) {
+                final int i = (int) Math.round( fi );
+                indexes[c] = getIndex( i < ni ? i : global ? 0 : ni - 1, Math.min( nj - 1, Math.max( 0, (int) Math.round( fj ) ) ) );
+                weights[c] = 1;
+                continue;
+            }
+
+            // The cell containing the location, snapping to a row or column when on it so a point beyond the edge is never used
+            int i0 = (int) Math.floor( fi + EPSILON );
+            double wi = Math.max( 0, fi - i0 );
+            if( wi < EPSILON ) {
+                wi = 0;
+            }
+            int i1 = wi == 0 ? i0 : i0 + 1;
+            if( i1 >= ni ) {
+                i1 -= ni;
+            }
+
+            final int j0 = Math.max( 0, (int) Math.floor( fj + EPSILON ) );
+            double wj = Math.max( 0, fj - j0 );
+            if( wj < EPSILON ) {
+                wj = 0;
+            }
+            final int j1 = wj == 0 ? j0 : j0 + 1;
+
+            indexes[c] = getIndex( i0, j0 );
+            indexes[c + 1] = getIndex( i1, j0 );
+            indexes[c + 2] = getIndex( i0, j1 );
+            indexes[c + 3] = getIndex( i1, j1 );
+            weights[c] = (float) ((1 - wi) * (1 - wj));
+            weights[c + 1] = (float) (wi * (1 - wj));
+            weights[c + 2] = (float) ((1 - wi) * wj);
+            weights[c + 3] = (float) (wi * wj);
+        }
+
+        return new GridPoints( indexes, weights );
+    }
+
+    /**
+     * The value at a location from a decoded field of this grid
+     * <p>
+     * @param field         field of one value per grid point
+     * @param lat           latitude in degrees
+     * @param lon           longitude in degrees
+     * @param interpolation Interpolation
+     * <p>
+     * @return value or NaN if the location is outside this grid
+     */
+    public float valueAt( Field field, double lat, double lon, Interpolation interpolation )
+    {
+        final float[] out = new float[1];
+        getPoints( new double[]{ lat }, new double[]{ lon }, interpolation ).valuesAt( field, out );
+        return out[0];
+    }
+
+    /**
+     * The value at each of a set of locations from a decoded field of this grid
+     * <p>
+     * @param field         field of one value per grid point
+     * @param lats          latitude of each location in degrees
+     * @param lons          longitude of each location in degrees
+     * @param out           value at each location, NaN if outside this grid
+     * @param interpolation Interpolation
+     */
+    public void valuesAt( Field field, double[] lats, double[] lons, float[] out, Interpolation interpolation )
+    {
+        getPoints( lats, lons, interpolation ).valuesAt( field, out );
+    }
+
+    /**
+     * The window of every point of this grid
+     * <p>
+     * @return GridWindow in the order the points are stored
+     */
+    public GridWindow getWindow()
+    {
+        return adjacentPointsConsecutiveXY
+               ? new GridWindow( noPointsAlingMeridian, 0, noPointsAlongParallel, 0, noPointsAlingMeridian )
+               : new GridWindow( noPointsAlongParallel, 0, noPointsAlingMeridian, 0, noPointsAlongParallel );
+    }
+
+    /**
+     * The window of the points of this grid within a latitude/longitude box.
+     * <p>
+     * The box may cross the meridian where a global grid starts, e.g. west -30 and east 20 on a grid from 0 to 359.75. Longitudes may be given either as
+     * -180 to 180 or 0 to 360.
+     * <p>
+     * @param south southern latitude
+     * @param west  western longitude
+     * @param north northern latitude
+     * @param east  eastern longitude
+     * <p>
+     * @return GridWindow in the order the points are stored
+     * <p>
+     * @throws IllegalArgumentException      if the box contains no points of this grid
+     * @throws UnsupportedOperationException if adjacent rows scan in opposite directions
+     */
+    public GridWindow getWindow( double south, double west, double north, double east )
+    {
+        if( adjacentRowsScanOppositeDirection ) {
+            throw new UnsupportedOperationException( "Windows of grids whose rows scan in opposite directions are not supported" );
+        }
+
+        final int ni = noPointsAlongParallel;
+        final int nj = noPointsAlingMeridian;
+
+        // Rows, j increases away from the first latitude in the scan direction
+        final double lat0 = latFirstPoint * unit;
+        final double dlat = pointsFirstRowNegativeY ? getDj() : -getDj();
+        final double ja = (south - lat0) / dlat;
+        final double jb = (north - lat0) / dlat;
+        final int j0 = Math.max( 0, (int) Math.ceil( Math.min( ja, jb ) - EPSILON ) );
+        final int j1 = Math.min( nj - 1, (int) Math.floor( Math.max( ja, jb ) + EPSILON ) );
+
+        // Columns, measured from the first point in the scan direction
+        final double di = getDi();
+        final double width = east - west >= 360 ? 360 : normalize( east - west );
+        final double offset = normalize( ((pointsFirstRowNegativeX ? east : west) - longFirstPoint * unit) * (pointsFirstRowNegativeX ? -1 : 1) );
+        int i0 = 0;
+        int columns = 0;
+        if( isGlobal() ) {
+            i0 = (int) Math.ceil( offset / di - EPSILON );
+            columns = Math.min( ni, (int) Math.floor( (offset + width) / di + EPSILON ) - i0 + 1 );
+            i0 %= ni;
+        }
+        else {
+            // The box may overlap the start of the grid after wrapping
+            final double span = (ni - 1) * di;
+            for( double o: new double[]{ offset - 360, offset } ) {
+                final int a = (int) Math.ceil( Math.max( o, 0 ) / di - EPSILON );
+                final int b = (int) Math.floor( Math.min( o + width, span ) / di + EPSILON );
+                if( b - a + 1 > columns ) {
+                    i0 = a;
+                    columns = b - a + 1;
+                }
+            }
+        }
+
+        if( j1 < j0 || columns <= 0 ) {
+            throw new IllegalArgumentException( "No points within " + south + "," + west + " " + north + "," + east );
+        }
+
+        if( !adjacentPointsConsecutiveXY ) {
+            return new GridWindow( ni, j0, j1 - j0 + 1, i0, columns );
+        }
+        if( i0 + columns > ni ) {
+            throw new UnsupportedOperationException( "Windows wrapping around a grid stored by column are not supported" );
+        }
+        return new GridWindow( nj, i0, columns, j0, j1 - j0 + 1 );
+    }
+
 }
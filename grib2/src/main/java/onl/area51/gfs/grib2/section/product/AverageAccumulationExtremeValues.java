@@ -18,7 +18,8 @@ package onl.area51.gfs.grib2.section.product;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
@@ -26,9 +27,10 @@ import onl.area51.gfs.grib2.io.GribInputStream;
 import onl.area51.gfs.grib2.section.Header;
 
 /**
- * GRIB2 - PRODUCT DEFINITION TEMPLATE 4.0
+ * GRIB2 - PRODUCT DEFINITION TEMPLATE 4.8
  * <p>
- * Analysis or forecast at a horizontal level or in a horizontal layer at a point in time
+ * Average, accumulation, extreme values or other statistically processed values at a horizontal level or in a horizontal layer in a continuous or
+ * non-continuous time interval
  * <p>
  * @param <T> Type of final Product
  * <p>
@@ -42,8 +44,7 @@ public class AverageAccumulationExtremeValues<T extends Product>
     private final int numTimeRangeSpecs;
     private final int totalDataValuesMissing;
 
-    private final TimeRange outermostTimeRange;
-    private final Collection<TimeRange> timeRanges;
+    private final List<TimeRange> timeRanges;
 
     public AverageAccumulationExtremeValues( Header header, GribInputStream gis )
             throws IOException
@@ -56,10 +57,10 @@ public class AverageAccumulationExtremeValues<T extends Product>
 
             numTimeRangeSpecs = gis.readUnsignedByte();
             totalDataValuesMissing = gis.readInt();
-            outermostTimeRange = new TimeRange( gis );
+            // The first of the time range specifications is the outermost
             timeRanges = IntStream.range( 0, numTimeRangeSpecs )
                     .mapToObj( i -> new TimeRange( gis ) )
-                    .collect( Collectors.toList() );
+                    .collect( Collectors.collectingAndThen( Collectors.toList(), Collections::unmodifiableList ) );
         }
         catch( UncheckedIOException ex ) {
             throw ex.getCause();
@@ -71,6 +72,36 @@ public class AverageAccumulationExtremeValues<T extends Product>
         return endOfOverallTimeInterval;
     }
 
+    public int getNumTimeRangeSpecs()
+    {
+        return numTimeRangeSpecs;
+    }
+
+    public int getTotalDataValuesMissing()
+    {
+        return totalDataValuesMissing;
+    }
+
+    /**
+     * The outermost time range, over which the statistical processing was done
+     * <p>
+     * @return TimeRange or null if there are no time range specifications
+     */
+    public TimeRange getOutermostTimeRange()
+    {
+        return timeRanges.isEmpty() ? null : timeRanges.get( 0 );
+    }
+
+    /**
+     * The time range specifications, outermost first
+     * <p>
+     * @return unmodifiable list of TimeRange's
+     */
+    public List<TimeRange> getTimeRanges()
+    {
+        return timeRanges;
+    }
+
     public static class TimeRange
     {
 
@@ -101,6 +132,11 @@ public class AverageAccumulationExtremeValues<T extends Product>
             return statProcessUsed;
         }
 
+        public StatisticalProcess getStatisticalProcess()
+        {
+            return StatisticalProcess.lookup( statProcessUsed );
+        }
+
         public int getTypeTimeIncrement()
         {
             return typeTimeIncrement;
@@ -111,6 +147,11 @@ public class AverageAccumulationExtremeValues<T extends Product>
             return indicatorUnitOfTimeRange;
         }
 
+        public UnitOfTimeRange getUnitOfTimeRange()
+        {
+            return UnitOfTimeRange.lookup( indicatorUnitOfTimeRange );
+        }
+
         public int getLengthTimeRangeStatProcessingDone()
         {
             return lengthTimeRangeStatProcessingDone;
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.product;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import onl.area51.gfs.grib2.section.Discipline;
+
+/**
+ * A filter of messages by the key fields of their product definition (Section 4).
+ * <p>
+ * Filters are combined with {@link #and(ProductFilter)} and {@link #or(ProductFilter)}, e.g. 850hPa temperature at T+12:
+ * <pre>
+ * ProductFilter filter = ProductFilter.product( Temperature.TMP )
+ *         .and( ProductFilter.level( FixedSurfaceType.ISOBARIC_SURFACE, 85000 ) )
+ *         .and( ProductFilter.forecastTime( 12 ) );
+ * </pre>
+ * Messages whose product definition is not an {@link AbstractForecastProduct} are tested with a category and surface type of MISSING, a null product and
+ * level and a forecast time of -1.
+ * <p>
+ * @author peter
+ */
+@FunctionalInterface
+public interface ProductFilter
+{
+
+    /**
+     * Test a message
+     * <p>
+     * @param discipline   the discipline from the header
+     * @param category     the parameter category
+     * @param product      the product, null if not known
+     * @param surfaceType  type of the first fixed surface
+     * @param level        value of the first fixed surface, null if not known
+     * @param forecastTime forecast time in units of the product's time range
+     * <p>
+     * @return true to keep the message
+     */
+    boolean test( Discipline discipline, ParameterCategory category, Product product, FixedSurfaceType surfaceType, BigDecimal level, int forecastTime );
+
+    /**
+     * Test a message against its product definition
+     * <p>
+     * @param discipline the discipline from the header
+     * @param def        the product definition, may be null
+     * <p>
+     * @return true to keep the message
+     */
+    default boolean test( Discipline discipline, ProductDefinition def )
+    {
+        if( def instanceof AbstractForecastProduct ) {
+            final AbstractForecastProduct<?> prod = (AbstractForecastProduct<?>) def;
+            return test( discipline,
+                         prod.getParameterCategory(),
+                         prod.getProduct(),
+                         prod.getFirstFixedSurfaceType(),
+                         prod.getFirstFixedSurface(),
+                         prod.getForecastTime() );
+        }
+        return test( discipline, ParameterCategory.MISSING, null, FixedSurfaceType.MISSING, null, -1 );
+    }
+
+    default ProductFilter and( ProductFilter other )
+    {
+        return ( d, c, p, s, l, f ) -> test( d, c, p, s, l, f ) && other.test( d, c, p, s, l, f );
+    }
+
+    default ProductFilter or( ProductFilter other )
+    {
+        return ( d, c, p, s, l, f ) -> test( d, c, p, s, l, f ) || other.test( d, c, p, s, l, f );
+    }
+
+    default ProductFilter negate()
+    {
+        return ( d, c, p, s, l, f ) -> !test( d, c, p, s, l, f );
+    }
+
+    /**
+     * Accept all messages
+     * <p>
+     * @return ProductFilter
+     */
+    static ProductFilter all()
+    {
+        return ( d, c, p, s, l, f ) -> true;
+    }
+
+    static ProductFilter discipline( Discipline discipline )
+    {
+        return ( d, c, p, s, l, f ) -> d == discipline;
+    }
+
+    static ProductFilter category( ParameterCategory first, ParameterCategory... rest )
+    {
+        final Set<ParameterCategory> categories = EnumSet.of( first, rest );
+        return ( d, c, p, s, l, f ) -> categories.contains( c );
+    }
+
+    /**
+     * Accept messages for any of the given products, e.g. {@code product( Momentum.UGRD, Momentum.VGRD )}
+     * <p>
+     * @param products products to accept
+     * <p>
+     * @return ProductFilter
+     */
+    static ProductFilter product( Product... products )
+    {
+        final Set<Product> set = new HashSet<>( Arrays.asList( products ) );
+        return ( d, c, p, s, l, f ) -> p != null && set.contains( p );
+    }
+
+    static ProductFilter surface( FixedSurfaceType first, FixedSurfaceType... rest )
+    {
+        final Set<FixedSurfaceType> types = EnumSet.of( first, rest );
+        return ( d, c, p, s, l, f ) -> types.contains( s );
+    }
+
+    /**
+     * Accept messages at a specific level of a fixed surface, e.g. {@code level( FixedSurfaceType.ISOBARIC_SURFACE, 50000 )} for 500hPa
+     * <p>
+     * @param type  type of surface
+     * @param value value of the surface in the units of type
+     * <p>
+     * @return ProductFilter
+     */
+    static ProductFilter level( FixedSurfaceType type, double value )
+    {
+        final BigDecimal v = BigDecimal.valueOf( value );
+        return ( d, c, p, s, l, f ) -> s == type && l != null && l.compareTo( v ) == 0;
+    }
+
+    static ProductFilter forecastTime( int forecastTime )
+    {
+        return ( d, c, p, s, l, f ) -> f == forecastTime;
+    }
+
+    /**
+     * Accept messages whose forecast time is within a range
+     * <p>
+     * @param from first forecast time, inclusive
+     * @param to   last forecast time, inclusive
+     * <p>
+     * @return ProductFilter
+     */
+    static ProductFilter forecastTime( int from, int to )
+    {
+        return ( d, c, p, s, l, f ) -> f >= from && f <= to;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.product;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Type of statistical processing, Code Table 4.10
+ * <p>
+ * @author peter
+ */
+public enum StatisticalProcess
+{
+
+    AVERAGE( 0, "Average", "avg" ),
+    ACCUMULATION( 1, "Accumulation", "acc" ),
+    MAXIMUM( 2, "Maximum", "max" ),
+    MINIMUM( 3, "Minimum", "min" ),
+    DIFFERENCE_END_START( 4, "Difference (value at the end of the time range minus value at the beginning)", "diff" ),
+    ROOT_MEAN_SQUARE( 5, "Root Mean Square", "rms" ),
+    STANDARD_DEVIATION( 6, "Standard Deviation", "sd" ),
+    COVARIANCE( 7, "Covariance (temporal variance)", "cov" ),
+    DIFFERENCE_START_END( 8, "Difference (value at the beginning of the time range minus value at the end)", "diff" ),
+    RATIO( 9, "Ratio", "ratio" ),
+    STANDARDIZED_ANOMALY( 10, "Standardized Anomaly", "anom" ),
+    SUMMATION( 11, "Summation", "sum" ),
+    RESERVED( -1, "Reserved", "" ),
+    MISSING( 255, "Missing", "" );
+
+    private final int code;
+    private final String label;
+    private final String abbrev;
+
+    private static final Map<Integer, StatisticalProcess> CODES = new ConcurrentHashMap<>();
+
+    static {
+        for( StatisticalProcess d: values() ) {
+            if( d != MISSING && d != RESERVED ) {
+                CODES.put( d.code, d );
+            }
+        }
+    }
+
+    public static StatisticalProcess lookup( int code )
+    {
+        if( code == 255 ) {
+            return MISSING;
+        }
+        return CODES.getOrDefault( code, RESERVED );
+    }
+
+    private StatisticalProcess( int code, String label, String abbrev )
+    {
+        this.code = code;
+        this.label = label;
+        this.abbrev = abbrev;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public String getAbbrev()
+    {
+        return abbrev;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.nio.FloatBuffer;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link DecodeKernel} using the Vector API.
+ * <p>
+ * Scaling converts each lane to double and applies the same multiply then add as the scalar kernel, with no fused operations, so the results are bit
+ * identical. Undoing spatial differencing is a prefix sum in int arithmetic, which wraps identically however the additions are grouped.
+ * <p>
+ * @author peter
+ */
+class VectorDecodeKernel
+        extends DecodeKernel
+{
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = DOUBLES.length();
+    // int and float species with the same number of lanes as DOUBLES
+    private static final VectorSpecies<Integer> INTS = LANES < 2 ? null : VectorSpecies.of( int.class, VectorShape.forBitSize( LANES * Integer.SIZE ) );
+    private static final VectorSpecies<Float> FLOATS = LANES < 2 ? null : VectorSpecies.of( float.class, VectorShape.forBitSize( LANES * Float.SIZE ) );
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @Override
+    protected boolean isSupported()
+    {
+        // With a single lane there is nothing to gain
+        return LANES > 1;
+    }
+
+    @Override
+    void scale( int[] x, int count, double ref, double scale, FloatBuffer dst, int pos )
+    {
+        final float[] out;
+        final int outOffset;
+        if( dst.hasArray() ) {
+            out = dst.array();
+            outOffset = dst.arrayOffset() + pos;
+            scale( x, 0, count, ref, scale, out, outOffset );
+        }
+        else {
+            final float[] chunk = new float[Math.min( count, CHUNK_SIZE )];
+            for( int i = 0; i < count; i += CHUNK_SIZE ) {
+                final int n = Math.min( CHUNK_SIZE, count - i );
+                scale( x, i, n, ref, scale, chunk, 0 );
+                dst.put( pos + i, chunk, 0, n );
+            }
+        }
+    }
+
+    private static void scale( int[] x, int from, int count, double ref, double scale, float[] out, int outOffset )
+    {
+        final DoubleVector refV = DoubleVector.broadcast( DOUBLES, ref );
+        final DoubleVector scaleV = DoubleVector.broadcast( DOUBLES, scale );
+        final int bound = INTS.loopBound( count );
+        int i = 0;
+        for( ; i < bound; i += LANES ) {
+            final DoubleVector v = (DoubleVector) IntVector.fromArray( INTS, x, from + i ).convertShape( VectorOperators.I2D, DOUBLES, 0 );
+            final FloatVector f = (FloatVector) v.mul( scaleV ).add( refV ).convertShape( VectorOperators.D2F, FLOATS, 0 );
+            f.intoArray( out, outOffset + i );
+        }
+        for( ; i < count; i++ ) {
+            out[outOffset + i] = (float) (ref + x[from + i] * scale);
+        }
+    }
+
+    @Override
+    void undifference( int[] x, int count, int order, int ival1, int ival2, int minsd )
+    {
+        if( count == 0 ) {
+            return;
+        }
+        x[0] = ival1;
+        if( order == 1 ) {
+            prefixSum( x, 1, count, ival1, minsd );
+        }
+        else if( order == 2 && count > 1 ) {
+            // x[i] - x[i-1] is the prefix sum of the differences, and x the prefix sum of that
+            x[1] = ival2;
+            prefixSum( x, 2, count, ival2 - ival1, minsd );
+            prefixSum( x, 2, count, ival2, 0 );
+        }
+    }
+
+    /**
+     * Replace x[from..to) with the inclusive prefix sum of (x[i] + add) starting from carry
+     */
+    private static void prefixSum( int[] x, int from, int to, int carry, int add )
+    {
+        final IntVector zero = IntVector.zero( INTS );
+        final IntVector addV = IntVector.broadcast( INTS, add );
+        final int bound = from + INTS.loopBound( to - from );
+        int i = from;
+        for( ; i < bound; i += LANES ) {
+            IntVector v = IntVector.fromArray( INTS, x, i ).add( addV );
+            // In register scan, log2(LANES) steps of shift and add
+            for( int k = 1; k < LANES; k <<= 1 ) {
+                v = v.add( zero.slice( LANES - k, v ) );
+            }
+            v = v.add( carry );
+            v.intoArray( x, i );
+            carry = v.lane( LANES - 1 );
+        }
+        for( ; i < to; i++ ) {
+            carry += x[i] + add;
+            x[i] = carry;
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+import onl.area51.gfs.grib2.io.GribInputStream;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.product.AbstractForecastProduct;
+import onl.area51.gfs.grib2.section.product.FixedSurfaceType;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+import onl.area51.gfs.grib2.section.product.meteo.Temperature;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class Grib2FileBuilderTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file( long totalLength )
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(),
+                                           TestMessages.simpleMessage( 4, 3, 0, 0, 0, 0f, 0, 0, 8, new int[12] ),
+                                           TestMessages.simpleMessage( 4, 3, 0, 1, 0, 0f, 0, 0, 8, new int[12] ) );
+        // Corrupt the total length of the second message
+        try( RandomAccessFile raf = new RandomAccessFile( f, "rw" ) ) {
+            raf.seek( raf.length() / 2 + 8 );
+            raf.writeLong( totalLength );
+        }
+        return f;
+    }
+
+    @Test
+    public void parallel()
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(),
+                                           TestMessages.simpleMessage( 4, 3, 0, 0, 0, 0f, 0, 0, 8, new int[12] ),
+                                           TestMessages.simpleMessage( 4, 3, 0, 1, 0, 0f, 0, 0, 8, new int[12] ) );
+        try( Grib2File g = new Grib2FileBuilder( f ).parallel().build() ) {
+            assertEquals( 2, g.size() );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void zeroLength()
+            throws IOException
+    {
+        new Grib2FileBuilder( file( 0 ) ).parallel().build();
+    }
+
+    @Test( expected = IOException.class )
+    public void negativeLength()
+            throws IOException
+    {
+        new Grib2FileBuilder( file( -100 ) ).parallel().build();
+    }
+
+    @Test( expected = IOException.class )
+    public void pastEnd()
+            throws IOException
+    {
+        new Grib2FileBuilder( file( 1 << 20 ) ).parallel().build();
+    }
+
+    private File messages( int count )
+            throws IOException
+    {
+        final Random r = new Random( count );
+        final byte[][] messages = new byte[count][];
+        for( int m = 0; m < count; m++ ) {
+            final int[] x = new int[12];
+            for( int i = 0; i < x.length; i++ ) {
+                x[i] = r.nextInt( 1 << 10 );
+            }
+            messages[m] = TestMessages.simpleMessage( 4, 3, 0, m % 8, m, 0.5f * m, -2, 0, 10, x );
+        }
+        return TestMessages.write( folder.newFile(), messages );
+    }
+
+    /**
+     * Lazy DataSet's read their sections positionally, so decoding them all from several threads at once gives what a serial read of the file gives
+     */
+    @Test
+    public void concurrentLazy()
+            throws IOException,
+                   InterruptedException,
+                   ExecutionException
+    {
+        final File f = messages( 64 );
+        final List<float[]> expected = new ArrayList<>();
+        try( Grib2File g = new Grib2File( f ) ) {
+            for( int i = 0; i < g.size(); i++ ) {
+                expected.add( g.get( i ).decode( false ).toArray() );
+            }
+        }
+
+        final List<UnaryOperator<Grib2FileBuilder>> builders = new ArrayList<>();
+        builders.add( b -> b.lazy() );
+        builders.add( b -> b.lazy().parallel() );
+        builders.add( b -> b.lazy().mapped() );
+        // Writes the index then reads it
+        builders.add( b -> b.lazy().index() );
+        builders.add( b -> b.lazy().index() );
+
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            for( UnaryOperator<Grib2FileBuilder> builder: builders ) {
+                try( Grib2File g = builder.apply( new Grib2FileBuilder( f ) ).build() ) {
+                    assertEquals( expected.size(), g.size() );
+
+                    final List<Future<?>> tasks = new ArrayList<>();
+                    for( int t = 0; t < 8; t++ ) {
+                        final List<Integer> order = new ArrayList<>();
+                        for( int i = 0; i < g.size(); i++ ) {
+                            order.add( i );
+                        }
+                        Collections.shuffle( order, new Random( t ) );
+                        tasks.add( executor.submit( () -> {
+                            for( int i: order ) {
+                                final DataSet ds = g.get( i );
+                                assertEquals( i, ((AbstractForecastProduct<?>) ds.get( SectionType.PRODUCT_DEFINITION )).getForecastTime() );
+                                assertArrayEquals( "message " + i, expected.get( i ), ds.decode( false ).toArray(), 0f );
+                            }
+                            return null;
+                        } ) );
+                    }
+                    for( Future<?> task: tasks ) {
+                        task.get();
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A cursor from newInputStream is independent of the file and of other cursors
+     */
+    @Test
+    public void newInputStream()
+            throws IOException
+    {
+        final File f = messages( 2 );
+        try( Grib2File g = new Grib2File( f ) ) {
+            try( GribInputStream a = g.newInputStream();
+                 GribInputStream b = g.newInputStream() ) {
+                assertEquals( 0, a.position() );
+                assertEquals( f.length(), a.length() );
+                a.seek( g.get( 1 ).getPos() );
+                assertEquals( 0x47524942, b.readInt() );
+                assertEquals( 0x47524942, a.readInt() );
+                assertEquals( 4, b.position() );
+            }
+            // Closing the cursors leaves the file open
+            assertEquals( 12, g.get( 1 ).decode( false ).toArray().length );
+        }
+    }
+
+    /**
+     * A message on an isobaric surface with the level encoded with a scale factor
+     */
+    private static byte[] isobaric( int category, int number, int forecastTime, int level, int scale )
+            throws IOException
+    {
+        final byte[] product = TestMessages.product( category, number, forecastTime, 100, level );
+        product[23] = (byte) scale;
+        return TestMessages.message( 0,
+                                     TestMessages.identification(),
+                                     TestMessages.globalGrid( 4, 3 ),
+                                     product,
+                                     TestMessages.simplePacking( 12, forecastTime, 0, 0, 8 ),
+                                     TestMessages.bitMap( 255, null ),
+                                     TestMessages.data( TestMessages.pack( new int[12], 8 ) ) );
+    }
+
+    private static List<Integer> forecastTimes( Grib2File g )
+    {
+        final List<Integer> l = new ArrayList<>();
+        g.stream().forEach( ds -> l.add( ((AbstractForecastProduct<?>) ds.get( SectionType.PRODUCT_DEFINITION )).getForecastTime() ) );
+        return l;
+    }
+
+    /**
+     * The same messages are kept whether the filter is applied to a scan or to the index
+     */
+    @Test
+    public void filter()
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(),
+                                           // TMP 500hPa encoded as 50000 and as 500000 with a scale factor of 1
+                                           isobaric( 0, 0, 0, 50000, 0 ),
+                                           isobaric( 0, 0, 3, 500000, 1 ),
+                                           // TMP 850hPa
+                                           isobaric( 0, 0, 6, 85000, 0 ),
+                                           // UGRD 500hPa
+                                           isobaric( 2, 2, 9, 50000, 0 ),
+                                           isobaric( 0, 0, 12, 50000, 0 ) );
+        final ProductFilter filter = ProductFilter.product( Temperature.TMP )
+                .and( ProductFilter.level( FixedSurfaceType.ISOBARIC_SURFACE, 50000 ) )
+                .and( ProductFilter.forecastTime( 12 ).negate() );
+        final List<Integer> expected = Arrays.asList( 0, 3 );
+
+        try( Grib2File g = new Grib2FileBuilder( f ).filter( filter ).build() ) {
+            assertEquals( expected, forecastTimes( g ) );
+        }
+        try( Grib2File g = new Grib2FileBuilder( f ).parallel().filter( filter ).build() ) {
+            assertEquals( expected, forecastTimes( g ) );
+        }
+
+        // The first build scans the file and writes the index, the second filters the index
+        final File indexFile = Grib2Index.getIndexFile( f );
+        assertFalse( indexFile.exists() );
+        try( Grib2File g = new Grib2FileBuilder( f ).index().filter( filter ).build() ) {
+            assertEquals( expected, forecastTimes( g ) );
+        }
+        assertTrue( indexFile.exists() );
+        final long modified = indexFile.lastModified();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().filter( filter ).build() ) {
+            assertEquals( expected, forecastTimes( g ) );
+        }
+        assertEquals( modified, indexFile.lastModified() );
+
+        // The index holds every message, not just those accepted
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertEquals( Arrays.asList( 0, 3, 6, 9, 12 ), forecastTimes( g ) );
+        }
+        try( Grib2File g = new Grib2FileBuilder( f ).index().filter( ProductFilter.all().negate() ).build() ) {
+            assertEquals( 0, g.size() );
+        }
+    }
+
+}
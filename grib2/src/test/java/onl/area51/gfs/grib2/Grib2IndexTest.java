@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import onl.area51.gfs.grib2.TestMessages.BitWriter;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.data.GroupIndex;
+import onl.area51.gfs.grib2.section.data.TemplateType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Writing and reading the version 2 index, with and without group indexes
+ * <p>
+ * @author peter
+ */
+public class Grib2IndexTest
+{
+
+    private static final float[] COMPLEX = { 1.2f, 1.25f, 1.3f, 1.35f, 1.9f, 1.9f, 1.9f, 1.9f, 1.55f, 1.6f, 1.6f, 1.55f, 1.4f, 1.05f, 1.3f, 1.15f };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A complex packed message of 4 groups on a 4x4 grid decoding to {@link #COMPLEX}
+     */
+    private static byte[] complexMessage()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        for( int v: new int[]{ 3, 17, 10, 0 } ) {
+            w.write( v, 5 );
+        }
+        w.align();
+        for( int v: new int[]{ 2, 0, 1, 3 } ) {
+            w.write( v, 2 );
+        }
+        w.align();
+        for( int v: new int[]{ 0, 0, 0, 3 } ) {
+            w.write( v, 2 );
+        }
+        w.align();
+        for( int v: new int[]{ 0, 1, 2, 3 } ) {
+            w.write( v, 2 );
+        }
+        for( int v: new int[]{ 0, 1, 1, 0 } ) {
+            w.write( v, 1 );
+        }
+        for( int v: new int[]{ 7, 0, 5, 2 } ) {
+            w.write( v, 3 );
+        }
+        return TestMessages.message( 0,
+                                     TestMessages.identification(),
+                                     TestMessages.globalGrid( 4, 4 ),
+                                     TestMessages.product( 0, 1, 6, 1, 0 ),
+                                     TestMessages.complexPacking( 16, 10.5f, -1, 1, 5, 0, 0f, 0f, 4, 2, 4, 4, 2, 0, 0 ),
+                                     TestMessages.bitMap( 255, null ),
+                                     TestMessages.data( w.toByteArray() ) );
+    }
+
+    private File file()
+            throws IOException
+    {
+        final int[] x = new int[16];
+        for( int i = 0; i < x.length; i++ ) {
+            x[i] = i;
+        }
+        return TestMessages.write( folder.newFile(),
+                                   TestMessages.simpleMessage( 4, 4, 0, 0, 3, 0f, 0, 0, 8, x ),
+                                   complexMessage() );
+    }
+
+    private static void assertEntries( File file, Grib2Index index )
+            throws IOException
+    {
+        assertNotNull( index );
+        assertEquals( 2, index.size() );
+
+        try( Grib2File g = new Grib2FileBuilder( file ).build() ) {
+            for( int i = 0; i < 2; i++ ) {
+                final Grib2Index.Entry e = index.get( i );
+                final DataSet ds = g.get( i );
+                assertEquals( ds.getPos(), e.getOffset() );
+                assertEquals( ds.getHeader().getTotalLength(), e.getTotalLength() );
+                assertEquals( i, e.getProduct().getCode() );
+                assertEquals( i == 0 ? 3 : 6, e.getForecastTime() );
+                assertEquals( 16, e.getNoDataPoints() );
+                for( SectionType type: SectionType.values() ) {
+                    assertEquals( type.toString(), ds.getSectionPos( type ), e.getSectionPos( type ) );
+                }
+            }
+        }
+        assertEquals( TemplateType.GRID_POINT_SIMPLE, index.get( 0 ).getDataTemplate() );
+        assertEquals( TemplateType.GRID_POINT_COMPLEX, index.get( 1 ).getDataTemplate() );
+    }
+
+    @Test
+    public void roundTrip()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertEquals( 2, g.size() );
+        }
+        assertTrue( Grib2Index.getIndexFile( f ).isFile() );
+
+        for( boolean map: new boolean[]{ false, true } ) {
+            final Grib2Index index = Grib2Index.read( f, map );
+            assertEntries( f, index );
+            assertFalse( index.hasGroupIndexes() );
+            assertFalse( index.get( 1 ).hasGroupIndex() );
+            assertNull( index.get( 1 ).getGroupIndex() );
+        }
+
+        // Opened from the index
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertNull( g.get( 1 ).getGroupIndex() );
+            assertArrayEquals( COMPLEX, g.get( 1 ).decode( false ).toArray(), 0f );
+        }
+    }
+
+    @Test
+    public void groupIndexes()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            assertNotNull( g.get( 1 ).getGroupIndex() );
+        }
+
+        for( boolean map: new boolean[]{ false, true } ) {
+            final Grib2Index index = Grib2Index.read( f, map );
+            assertEntries( f, index );
+            assertTrue( index.hasGroupIndexes() );
+            assertFalse( index.get( 0 ).hasGroupIndex() );
+            assertNull( index.get( 0 ).getGroupIndex() );
+            assertTrue( index.get( 1 ).hasGroupIndex() );
+            final GroupIndex groupIndex = index.get( 1 ).getGroupIndex();
+            assertEquals( 1, groupIndex.getCheckpoints() );
+        }
+
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            final DataSet ds = g.get( 1 );
+            assertNotNull( ds.getGroupIndex() );
+            assertSame( ds.getGroupIndex(), ds.createGroupIndex() );
+            assertArrayEquals( COMPLEX, ds.decode( false ).toArray(), 0f );
+        }
+    }
+
+    /**
+     * An index without group indexes is rewritten when they are requested
+     */
+    @Test
+    public void groupIndexesRequested()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertEquals( 2, g.size() );
+        }
+        assertFalse( Grib2Index.read( f, false ).hasGroupIndexes() );
+
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            assertNotNull( g.get( 1 ).getGroupIndex() );
+        }
+        assertTrue( Grib2Index.read( f, false ).hasGroupIndexes() );
+    }
+
+    @Test
+    public void staleModified()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertEquals( 2, g.size() );
+        }
+        assertNotNull( Grib2Index.read( f, false ) );
+
+        assertTrue( f.setLastModified( f.lastModified() - 60000L ) );
+        assertNull( Grib2Index.read( f, false ) );
+        assertNull( Grib2Index.read( f, true ) );
+    }
+
+    @Test
+    public void staleSize()
+            throws IOException
+    {
+        final File f = file();
+        final long modified = f.lastModified();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().build() ) {
+            assertEquals( 2, g.size() );
+        }
+
+        try( RandomAccessFile raf = new RandomAccessFile( f, "rw" ) ) {
+            raf.setLength( raf.length() + 1 );
+        }
+        assertTrue( f.setLastModified( modified ) );
+        assertNull( Grib2Index.read( f, false ) );
+    }
+
+    /**
+     * The group index is only read when its DataSet needs it, so a corrupt one does not stop the index being used
+     */
+    @Test
+    public void groupIndexReadLazily()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            assertEquals( 2, g.size() );
+        }
+
+        final File indexFile = Grib2Index.getIndexFile( f );
+        try( RandomAccessFile raf = new RandomAccessFile( indexFile, "rw" ) ) {
+            // Interval of the only group index, which follows the records
+            raf.seek( 32 + 2 * 112 );
+            raf.writeInt( 3 );
+        }
+        assertNotNull( Grib2Index.read( f, false ) );
+
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            assertEquals( 2, g.size() );
+            assertNull( g.get( 0 ).getGroupIndex() );
+            try {
+                g.get( 1 ).getGroupIndex();
+                fail( "Invalid group index read" );
+            }
+            catch( IOException ex ) {
+                assertEquals( "Invalid group index", ex.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * A group index outside the index file invalidates the index when it is read, not when the message is decoded
+     */
+    @Test
+    public void invalidGroupIndexPosition()
+            throws IOException
+    {
+        final File f = file();
+        try( Grib2File g = new Grib2FileBuilder( f ).index().groupIndex().build() ) {
+            assertEquals( 2, g.size() );
+        }
+
+        final File indexFile = Grib2Index.getIndexFile( f );
+        try( RandomAccessFile raf = new RandomAccessFile( indexFile, "rw" ) ) {
+            // Length of the group index of the second record
+            raf.seek( 32 + 112 + 104 );
+            raf.writeInt( 1 << 20 );
+        }
+        assertNull( Grib2Index.read( f, false ) );
+    }
+
+}
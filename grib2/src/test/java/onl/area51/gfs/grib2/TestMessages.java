@@ -0,0 +1,538 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import onl.area51.gfs.grib2.io.ByteBufferGribInputStream;
+import onl.area51.gfs.grib2.section.DataSet;
+
+/**
+ * Builds GRIB2 messages byte by byte for the tests.
+ * <p>
+ * Each method returns a complete section including its length and number, {@link #message(int, byte[]...)} wraps them in Section 0 and the end section.
+ * <p>
+ * @author peter
+ */
+public final class TestMessages
+{
+
+    private TestMessages()
+    {
+    }
+
+    /**
+     * Body of a section being built
+     */
+    private static final class Body
+            extends DataOutputStream
+    {
+
+        Body()
+        {
+            super( new ByteArrayOutputStream() );
+        }
+
+        byte[] toByteArray()
+        {
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+
+    /**
+     * A value in the sign and magnitude form used by GRIB2, the sign being the top bit
+     * <p>
+     * @param v    value
+     * @param bits width of the field
+     * <p>
+     * @return encoded value
+     */
+    public static int signMagnitude( int v, int bits )
+    {
+        return v < 0 ? (1 << (bits - 1)) | -v : v;
+    }
+
+    public static byte[] section( int number, byte[] body )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeInt( body.length + 5 );
+        b.writeByte( number );
+        b.write( body );
+        return b.toByteArray();
+    }
+
+    /**
+     * Section 1 for an NCEP forecast from 2015-06-01 06:00
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] identification()
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeShort( 7 );
+        b.writeShort( 0 );
+        b.writeByte( 2 );
+        b.writeByte( 1 );
+        b.writeByte( 1 );
+        b.writeShort( 2015 );
+        b.writeByte( 6 );
+        b.writeByte( 1 );
+        b.writeByte( 6 );
+        b.writeByte( 0 );
+        b.writeByte( 0 );
+        b.writeByte( 0 );
+        b.writeByte( 1 );
+        return section( 1, b.toByteArray() );
+    }
+
+    /**
+     * Section 3, Template 3.0 latitude/longitude grid scanning west to east then north to south
+     * <p>
+     * @param ni  points along a parallel
+     * @param nj  points along a meridian
+     * @param la1 latitude of the first point in microdegrees
+     * @param lo1 longitude of the first point in microdegrees
+     * @param di  i direction increment in microdegrees
+     * @param dj  j direction increment in microdegrees
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] latLonGrid( int ni, int nj, int la1, int lo1, int di, int dj )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeByte( 0 );
+        b.writeInt( ni * nj );
+        b.writeByte( 0 );
+        b.writeByte( 0 );
+        b.writeShort( 0 );
+        b.writeByte( 6 );
+        b.writeByte( 0 );
+        b.writeInt( 0 );
+        b.writeByte( 0 );
+        b.writeInt( 0 );
+        b.writeByte( 0 );
+        b.writeInt( 0 );
+        b.writeInt( ni );
+        b.writeInt( nj );
+        b.writeInt( 0 );
+        b.writeInt( -1 );
+        b.writeInt( signMagnitude( la1, 32 ) );
+        b.writeInt( lo1 );
+        b.writeByte( 0x30 );
+        b.writeInt( signMagnitude( la1 - (nj - 1) * dj, 32 ) );
+        b.writeInt( lo1 + (ni - 1) * di );
+        b.writeInt( di );
+        b.writeInt( dj );
+        b.writeByte( 0 );
+        return section( 3, b.toByteArray() );
+    }
+
+    /**
+     * A global grid starting at 90N 0E
+     * <p>
+     * @param ni points along a parallel
+     * @param nj points along a meridian, including both poles
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] globalGrid( int ni, int nj )
+            throws IOException
+    {
+        return latLonGrid( ni, nj, 90000000, 0, 360000000 / ni, 180000000 / (nj - 1) );
+    }
+
+    /**
+     * Section 4, Template 4.0 analysis or forecast at a horizontal level
+     * <p>
+     * @param category     parameter category
+     * @param number       parameter number
+     * @param forecastTime forecast time in hours
+     * @param surface      type of the first fixed surface
+     * @param level        value of the first fixed surface
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] product( int category, int number, int forecastTime, int surface, int level )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeShort( 0 );
+        b.writeShort( 0 );
+        b.writeByte( category );
+        b.writeByte( number );
+        b.writeByte( 2 );
+        b.writeByte( 0 );
+        b.writeByte( 96 );
+        b.writeShort( 0 );
+        b.writeByte( 0 );
+        b.writeByte( 1 );
+        b.writeInt( forecastTime );
+        b.writeByte( surface );
+        b.writeByte( 0 );
+        b.writeInt( level );
+        b.writeByte( 255 );
+        b.writeByte( 0 );
+        b.writeInt( 0 );
+        return section( 4, b.toByteArray() );
+    }
+
+    /**
+     * Section 4, Template 4.8 statistically processed values at a horizontal level over one time range in hours
+     * <p>
+     * @param category     parameter category
+     * @param number       parameter number
+     * @param forecastTime start of the time range in hours
+     * @param surface      type of the first fixed surface
+     * @param level        value of the first fixed surface
+     * @param process      statistical process, Code Table 4.10
+     * @param length       length of the time range in hours
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] statisticalProduct( int category, int number, int forecastTime, int surface, int level, int process, int length )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.write( product( category, number, forecastTime, surface, level ), 5, 29 );
+        // End of the overall time interval
+        b.writeShort( 2015 );
+        b.writeByte( 6 );
+        b.writeByte( 1 );
+        b.writeByte( 6 + forecastTime + length );
+        b.writeByte( 0 );
+        b.writeByte( 0 );
+        // One time range and no missing values
+        b.writeByte( 1 );
+        b.writeInt( 0 );
+        b.writeByte( process );
+        b.writeByte( 2 );
+        b.writeByte( 1 );
+        b.writeInt( length );
+        b.writeByte( 255 );
+        b.writeInt( 0 );
+
+        final byte[] section = section( 4, b.toByteArray() );
+        // Template 4.8
+        section[7] = 0;
+        section[8] = 8;
+        return section;
+    }
+
+    /**
+     * Section 5, Template 5.0 simple packing
+     * <p>
+     * @param count     number of packed values
+     * @param reference reference value R
+     * @param binary    binary scale factor E
+     * @param decimal   decimal scale factor D
+     * @param bits      bits per value
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] simplePacking( int count, float reference, int binary, int decimal, int bits )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeInt( count );
+        b.writeShort( 0 );
+        b.writeFloat( reference );
+        b.writeShort( signMagnitude( binary, 16 ) );
+        b.writeShort( signMagnitude( decimal, 16 ) );
+        b.writeByte( bits );
+        b.writeByte( 0 );
+        return section( 5, b.toByteArray() );
+    }
+
+    /**
+     * Section 5, Template 5.2 complex packing or 5.3 complex packing and spatial differencing
+     * <p>
+     * @param count           number of packed values
+     * @param reference       reference value R
+     * @param binary          binary scale factor E
+     * @param decimal         decimal scale factor D
+     * @param bits            bits per group reference
+     * @param management      missing value management
+     * @param missing1        primary missing value substitute
+     * @param missing2        secondary missing value substitute
+     * @param groups          number of groups
+     * @param widthBits       bits per group width
+     * @param referenceLength reference for group lengths
+     * @param lastLength      true length of the last group
+     * @param lengthBits      bits per scaled group length
+     * @param order           order of spatial differencing, 0 for Template 5.2
+     * @param octets          octets per extra descriptor when differencing
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] complexPacking( int count, float reference, int binary, int decimal, int bits, int management, float missing1, float missing2,
+                                         int groups, int widthBits, int referenceLength, int lastLength, int lengthBits, int order, int octets )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeInt( count );
+        b.writeShort( order == 0 ? 2 : 3 );
+        b.writeFloat( reference );
+        b.writeShort( signMagnitude( binary, 16 ) );
+        b.writeShort( signMagnitude( decimal, 16 ) );
+        b.writeByte( bits );
+        // Floating point
+        b.writeByte( 0 );
+        // Group splitting, general
+        b.writeByte( 1 );
+        b.writeByte( management );
+        b.writeFloat( missing1 );
+        b.writeFloat( missing2 );
+        b.writeInt( groups );
+        // Reference for group widths
+        b.writeByte( 0 );
+        b.writeByte( widthBits );
+        b.writeInt( referenceLength );
+        // Length increment
+        b.writeByte( 1 );
+        b.writeInt( lastLength );
+        b.writeByte( lengthBits );
+        if( order != 0 ) {
+            b.writeByte( order );
+            b.writeByte( octets );
+        }
+        return section( 5, b.toByteArray() );
+    }
+
+    /**
+     * Section 6
+     * <p>
+     * @param indicator bit map indicator, 0 for a bit map in this section
+     * @param mask      the bit map or null
+     * <p>
+     * @return section
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] bitMap( int indicator, byte[] mask )
+            throws IOException
+    {
+        final Body b = new Body();
+        b.writeByte( indicator );
+        if( mask != null ) {
+            b.write( mask );
+        }
+        return section( 6, b.toByteArray() );
+    }
+
+    /**
+     * A bit map, one bit per point
+     * <p>
+     * @param present true for each point with a value
+     * <p>
+     * @return packed bits
+     */
+    public static byte[] mask( boolean[] present )
+    {
+        final byte[] b = new byte[(present.length + 7) / 8];
+        for( int i = 0; i < present.length; i++ ) {
+            if( present[i] ) {
+                b[i >>> 3] |= 0x80 >>> (i & 7);
+            }
+        }
+        return b;
+    }
+
+    public static byte[] data( byte[] packed )
+            throws IOException
+    {
+        return section( 7, packed );
+    }
+
+    /**
+     * Pack unsigned integers most significant bit first without padding
+     * <p>
+     * @param x    values
+     * @param bits bits per value
+     * <p>
+     * @return packed bytes
+     */
+    public static byte[] pack( int[] x, int bits )
+    {
+        final BitWriter w = new BitWriter();
+        for( int v: x ) {
+            w.write( v, bits );
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * Wrap sections into a message
+     * <p>
+     * @param discipline discipline of the message
+     * @param sections   sections 1 to 7 in order
+     * <p>
+     * @return message
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] message( int discipline, byte[]... sections )
+            throws IOException
+    {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for( byte[] s: sections ) {
+            body.write( s );
+        }
+        body.write( "7777".getBytes( StandardCharsets.US_ASCII ) );
+
+        final Body b = new Body();
+        b.writeBytes( "GRIB" );
+        b.writeShort( 0 );
+        b.writeByte( discipline );
+        b.writeByte( 2 );
+        b.writeLong( 16 + body.size() );
+        b.write( body.toByteArray() );
+        return b.toByteArray();
+    }
+
+    /**
+     * A simple packed message on a global grid, values being (R + X * 2^E) / 10^D
+     * <p>
+     * @param ni           points along a parallel
+     * @param nj           points along a meridian
+     * @param category     parameter category
+     * @param number       parameter number
+     * @param forecastTime forecast time in hours
+     * @param reference    reference value R
+     * @param binary       binary scale factor E
+     * @param decimal      decimal scale factor D
+     * @param bits         bits per value
+     * @param x            packed values
+     * <p>
+     * @return message
+     * <p>
+     * @throws IOException
+     */
+    public static byte[] simpleMessage( int ni, int nj, int category, int number, int forecastTime, float reference, int binary, int decimal, int bits,
+                                        int[] x )
+            throws IOException
+    {
+        return message( 0,
+                        identification(),
+                        globalGrid( ni, nj ),
+                        product( category, number, forecastTime, 1, 0 ),
+                        simplePacking( x.length, reference, binary, decimal, bits ),
+                        bitMap( 255, null ),
+                        data( pack( x, bits ) ) );
+    }
+
+    /**
+     * Parse a message held in memory
+     * <p>
+     * @param message the message
+     * <p>
+     * @return DataSet
+     * <p>
+     * @throws IOException
+     */
+    public static DataSet dataSet( byte[] message )
+            throws IOException
+    {
+        return new DataSet( new ByteBufferGribInputStream( ByteBuffer.wrap( message ) ) );
+    }
+
+    /**
+     * Write messages to a file
+     * <p>
+     * @param file     file to write
+     * @param messages messages in order
+     * <p>
+     * @return file
+     * <p>
+     * @throws IOException
+     */
+    public static File write( File file, byte[]... messages )
+            throws IOException
+    {
+        try( OutputStream os = new FileOutputStream( file ) ) {
+            for( byte[] m: messages ) {
+                os.write( m );
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes values of any width most significant bit first
+     */
+    public static final class BitWriter
+    {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int current;
+        private int used;
+
+        public BitWriter write( long value, int bits )
+        {
+            for( int i = bits - 1; i >= 0; i-- ) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if( ++used == 8 ) {
+                    out.write( current );
+                    current = 0;
+                    used = 0;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Pad to the next octet with zero bits
+         * <p>
+         * @return this
+         */
+        public BitWriter align()
+        {
+            while( used != 0 ) {
+                write( 0, 1 );
+            }
+            return this;
+        }
+
+        public byte[] toByteArray()
+        {
+            align();
+            return out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.Grib2FileBuilder;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.data.DataRepresentation;
+import onl.area51.gfs.grib2.section.data.DataSection;
+import onl.area51.gfs.grib2.section.data.Packing;
+import onl.area51.gfs.grib2.section.data.TemplateType;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes every message of a data representation template from a GFS file.
+ * <p>
+ * The packedBytes secondary result is the throughput in bytes per second of packed input, i.e. the size of the Data Sections decoded.
+ * <p>
+ * @author peter
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class DecodeBenchmark
+{
+
+    @Param( "/home/peter/Downloads/gfs.t06z.pgrb2.0p25.f012" )
+    private String file;
+
+    @Param( {"GRID_POINT_SIMPLE", "GRID_POINT_COMPLEX", "GRID_POINT_COMPLEX_SPATIAL"} )
+    private TemplateType template;
+
+    private Grib2File grib;
+    private final List<Packing> packings = new ArrayList<>();
+    private final List<ByteBuffer> data = new ArrayList<>();
+    private final List<Integer> counts = new ArrayList<>();
+    private FloatBuffer dst;
+
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Counters
+    {
+
+        public long packedBytes;
+
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            packedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        grib = new Grib2FileBuilder( new File( file ) )
+                .mapped()
+                .build();
+
+        int max = 0;
+        for( int i = 0; i < grib.size(); i++ ) {
+            final DataSet dataSet = grib.get( i );
+            final DataRepresentation rep = dataSet.get( SectionType.DATA_REPRESENTATION );
+            if( rep != null && rep.getTemplateType() == template ) {
+                final DataSection section = dataSet.get( SectionType.DATA );
+                packings.add( rep.getPacking() );
+                data.add( section.getBuffer() );
+                counts.add( rep.getNoDataPoints() );
+                max = Math.max( max, rep.getNoDataPoints() );
+            }
+        }
+        dst = FloatBuffer.allocate( max );
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        grib.close();
+    }
+
+    @Benchmark
+    public FloatBuffer decode( Counters counters )
+            throws IOException
+    {
+        for( int i = 0; i < packings.size(); i++ ) {
+            final ByteBuffer b = data.get( i );
+            dst.clear();
+            packings.get( i ).decode( b, counts.get( i ), dst );
+            counters.packedBytes += b.remaining();
+        }
+        return dst;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import onl.area51.gfs.grib2.io.BitUnpacker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the specialised {@link BitUnpacker} kernels with the generic kernel and a byte at a time accumulator, unpacking a 0.25° field.
+ * <p>
+ * Run with {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main UnpackBenchmark}
+ * <p>
+ * @author peter
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class UnpackBenchmark
+{
+
+    /**
+     * Number of points in a 0.25° global grid
+     */
+    private static final int POINTS = 1440 * 721;
+
+    @Param( {"8", "10", "12", "16", "24"} )
+    private int bits;
+
+    private ByteBuffer data;
+    private int[] dst;
+
+    @Setup
+    public void setup()
+    {
+        final byte[] b = new byte[(int) (((long) POINTS * bits + 7) >>> 3)];
+        new Random( bits ).nextBytes( b );
+        data = ByteBuffer.allocateDirect( b.length );
+        data.put( b ).flip();
+        dst = new int[POINTS];
+    }
+
+    @Benchmark
+    public int[] specialised()
+    {
+        BitUnpacker.forWidth( bits ).unpack( data, 0, bits, POINTS, dst, 0 );
+        return dst;
+    }
+
+    @Benchmark
+    public int[] generic()
+    {
+        BitUnpacker.GENERIC.unpack( data, 0, bits, POINTS, dst, 0 );
+        return dst;
+    }
+
+    @Benchmark
+    public int[] byteAccumulator()
+    {
+        final long mask = (1L << bits) - 1;
+        long acc = 0;
+        int avail = 0;
+        int p = 0;
+        for( int i = 0; i < POINTS; i++ ) {
+            while( avail < bits ) {
+                acc = (acc << 8) | (data.get( p++ ) & 0xff);
+                avail += 8;
+            }
+            avail -= bits;
+            dst[i] = (int) ((acc >>> avail) & mask);
+        }
+        return dst;
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.Grib2FileBuilder;
+import onl.area51.gfs.grib2.field.Field;
+import onl.area51.gfs.grib2.field.FieldPool;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.data.DataRepresentation;
+import onl.area51.gfs.grib2.section.data.TemplateType;
+import onl.area51.gfs.grib2.section.grid.GridWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decodes every message of a data representation template from a GFS file, either in full or as an overview of every Nth row and column.
+ * <p>
+ * Compare overview against full for the same template to see what decoding a decimated window saves.
+ * <p>
+ * @author peter
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class WindowBenchmark
+{
+
+    @Param( "/home/peter/Downloads/gfs.t06z.pgrb2.0p25.f012" )
+    private String file;
+
+    @Param( {"GRID_POINT_SIMPLE", "GRID_POINT_COMPLEX", "GRID_POINT_COMPLEX_SPATIAL"} )
+    private TemplateType template;
+
+    @Param( "8" )
+    private int step;
+
+    private Grib2File grib;
+    private FieldPool pool;
+    private final List<DataSet> dataSets = new ArrayList<>();
+    private final List<GridWindow> windows = new ArrayList<>();
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        grib = new Grib2FileBuilder( new File( file ) )
+                .mapped()
+                .build();
+        pool = new FieldPool( false, 4 );
+
+        for( int i = 0; i < grib.size(); i++ ) {
+            final DataSet dataSet = grib.get( i );
+            final DataRepresentation rep = dataSet.get( SectionType.DATA_REPRESENTATION );
+            if( rep != null && rep.getTemplateType() == template ) {
+                dataSets.add( dataSet );
+                windows.add( dataSet.getLatLongGrid().getWindow().decimate( step, step ) );
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+            throws IOException
+    {
+        pool.close();
+        grib.close();
+    }
+
+    @Benchmark
+    public float full()
+            throws IOException
+    {
+        float sum = 0;
+        for( DataSet dataSet: dataSets ) {
+            try( Field field = dataSet.decode( pool ) ) {
+                sum += field.get( 0 );
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float overview()
+            throws IOException
+    {
+        float sum = 0;
+        for( int i = 0; i < dataSets.size(); i++ ) {
+            try( Field field = dataSets.get( i ).decode( windows.get( i ), pool ) ) {
+                sum += field.get( 0 );
+            }
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import onl.area51.gfs.grib2.Grib2Index;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.grid.Interpolation;
+import onl.area51.gfs.grib2.section.product.FixedSurfaceType;
+import onl.area51.gfs.grib2.section.product.ParameterCategory;
+import onl.area51.gfs.grib2.section.product.ProductFilter;
+import onl.area51.gfs.grib2.section.product.StatisticalProcess;
+import onl.area51.gfs.grib2.section.product.UnitOfTimeRange;
+import onl.area51.gfs.grib2.section.product.meteo.Moisture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class GfsRunTest
+{
+
+    private static final double[] LATS = { 45, -30 };
+    private static final double[] LONS = { 10, -160 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Total precipitation at the surface accumulated from start to start + length hours, every grid point being value
+     */
+    private static byte[] apcp( int start, int length, int value )
+            throws IOException
+    {
+        final int[] x = new int[12];
+        Arrays.fill( x, value );
+        return TestMessages.message( 0,
+                                     TestMessages.identification(),
+                                     TestMessages.globalGrid( 4, 3 ),
+                                     TestMessages.statisticalProduct( 1, 8, start, 1, 0, 1, length ),
+                                     TestMessages.simplePacking( x.length, 0f, 0, 0, 8 ),
+                                     TestMessages.bitMap( 255, null ),
+                                     TestMessages.data( TestMessages.pack( x, 8 ) ) );
+    }
+
+    private static Parameter accumulation( int hours )
+    {
+        return new Parameter( ParameterCategory.MOISTURE, Moisture.APCP, FixedSurfaceType.GROUND_WATER_SURFACE, BigDecimal.ZERO,
+                              FixedSurfaceType.MISSING, null, StatisticalProcess.ACCUMULATION, UnitOfTimeRange.HOUR, hours );
+    }
+
+    private Meteogram extract( File dir )
+            throws IOException
+    {
+        final GfsRun run = new GfsRun( dir, 6 );
+        return run.extract( LATS, LONS, ProductFilter.product( Moisture.APCP ), Interpolation.NEAREST );
+    }
+
+    /**
+     * The 6 hour and run total accumulations are separate series, the repeated 0-6 hour accumulation at f006 being used once
+     */
+    @Test
+    public void accumulations()
+            throws IOException
+    {
+        final File dir = folder.newFolder();
+        TestMessages.write( new File( dir, GfsRun.getFileName( 6, "0p25", 6 ) ), apcp( 0, 6, 5 ), apcp( 0, 6, 5 ) );
+        TestMessages.write( new File( dir, GfsRun.getFileName( 6, "0p25", 12 ) ), apcp( 6, 6, 3 ), apcp( 0, 12, 8 ) );
+
+        final Meteogram meteogram = extract( dir );
+        assertArrayEquals( new int[]{ 6, 12 }, meteogram.getHours() );
+        assertEquals( Arrays.asList( accumulation( 6 ), accumulation( 12 ) ), meteogram.getParameters() );
+        for( int s = 0; s < LATS.length; s++ ) {
+            assertArrayEquals( new float[]{ 5, 3 }, meteogram.getSeries( s, accumulation( 6 ) ), 0f );
+            assertArrayEquals( new float[]{ Float.NaN, 8 }, meteogram.getSeries( s, accumulation( 12 ) ), 0f );
+        }
+    }
+
+    /**
+     * A file with two different messages for the same parameter uses the first and says so
+     */
+    @Test
+    public void conflictingDuplicates()
+            throws IOException
+    {
+        final File dir = folder.newFolder();
+        TestMessages.write( new File( dir, GfsRun.getFileName( 6, "0p25", 6 ) ), apcp( 0, 6, 5 ), apcp( 0, 6, 7 ) );
+
+        final List<LogRecord> records = new ArrayList<>();
+        final Handler handler = new Handler()
+        {
+            @Override
+            public void publish( LogRecord record )
+            {
+                records.add( record );
+            }
+
+            @Override
+            public void flush()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        final Logger log = Logger.getLogger( GfsRun.class.getName() );
+        log.addHandler( handler );
+        try {
+            final Meteogram meteogram = extract( dir );
+            assertEquals( Arrays.asList( accumulation( 6 ) ), meteogram.getParameters() );
+            assertArrayEquals( new float[]{ 5 }, meteogram.getSeries( 0, accumulation( 6 ) ), 0f );
+        }
+        finally {
+            log.removeHandler( handler );
+        }
+        assertEquals( 1, records.size() );
+        assertEquals( Level.WARNING, records.get( 0 ).getLevel() );
+    }
+
+    /**
+     * By default the data directory is only read, no index being written
+     */
+    @Test
+    public void noIndex()
+            throws IOException
+    {
+        final File dir = folder.newFolder();
+        final File file = new File( dir, GfsRun.getFileName( 6, "0p25", 6 ) );
+        TestMessages.write( file, apcp( 0, 6, 5 ) );
+
+        final GfsRun run = new GfsRun( dir, 6 );
+        assertFalse( run.isIndex() );
+        run.extract( LATS, LONS, ProductFilter.product( Moisture.APCP ), Interpolation.NEAREST );
+        assertFalse( Grib2Index.getIndexFile( file ).exists() );
+        assertArrayEquals( new String[]{ file.getName() }, dir.list() );
+    }
+
+    /**
+     * With the index enabled it is written by the first extraction and used by the next
+     */
+    @Test
+    public void index()
+            throws IOException
+    {
+        final File dir = folder.newFolder();
+        final File file = new File( dir, GfsRun.getFileName( 6, "0p25", 6 ) );
+        TestMessages.write( file, apcp( 0, 6, 5 ) );
+
+        final GfsRun run = new GfsRun( dir, 6 ).setIndex( true );
+        assertTrue( run.isIndex() );
+        final Meteogram first = run.extract( LATS, LONS, ProductFilter.product( Moisture.APCP ), Interpolation.NEAREST );
+        final File index = Grib2Index.getIndexFile( file );
+        assertTrue( index.exists() );
+        final long modified = index.lastModified();
+
+        final Meteogram second = run.extract( LATS, LONS, ProductFilter.product( Moisture.APCP ), Interpolation.NEAREST );
+        assertEquals( modified, index.lastModified() );
+        for( int s = 0; s < LATS.length; s++ ) {
+            assertArrayEquals( first.getSeries( s, accumulation( 6 ) ), second.getSeries( s, accumulation( 6 ) ), 0f );
+            assertArrayEquals( new float[]{ 5 }, second.getSeries( s, accumulation( 6 ) ), 0f );
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.product.FixedSurfaceType;
+import onl.area51.gfs.grib2.section.product.ParameterCategory;
+import onl.area51.gfs.grib2.section.product.StatisticalProcess;
+import onl.area51.gfs.grib2.section.product.UnitOfTimeRange;
+import onl.area51.gfs.grib2.section.product.meteo.Moisture;
+import onl.area51.gfs.grib2.section.product.meteo.Temperature;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class ParameterTest
+{
+
+    private static Parameter layer( String top, String bottom )
+    {
+        return new Parameter( ParameterCategory.TEMPERATURE, Temperature.TMP, FixedSurfaceType.DEPTH_BELOW_LAND, new BigDecimal( top ),
+                              FixedSurfaceType.DEPTH_BELOW_LAND, new BigDecimal( bottom ), null, UnitOfTimeRange.MISSING, 0 );
+    }
+
+    private static Parameter accumulation( int hours )
+    {
+        return new Parameter( ParameterCategory.MOISTURE, Moisture.APCP, FixedSurfaceType.GROUND_WATER_SURFACE, BigDecimal.ZERO,
+                              FixedSurfaceType.MISSING, null, StatisticalProcess.ACCUMULATION, UnitOfTimeRange.HOUR, hours );
+    }
+
+    @Test
+    public void secondSurface()
+    {
+        assertEquals( layer( "0.1", "0.4" ), layer( "0.10", "0.400" ) );
+        assertEquals( layer( "0.1", "0.4" ).hashCode(), layer( "0.10", "0.400" ).hashCode() );
+        assertNotEquals( layer( "0.1", "0.4" ), layer( "0.1", "1" ) );
+        assertEquals( "TMP DEPTH_BELOW_LAND 0.1 - DEPTH_BELOW_LAND 0.4", layer( "0.1", "0.4" ).toString() );
+
+        // The value of a missing second surface is ignored
+        assertEquals( new Parameter( ParameterCategory.MOISTURE, Moisture.APCP, FixedSurfaceType.GROUND_WATER_SURFACE, BigDecimal.ZERO ),
+                      new Parameter( ParameterCategory.MOISTURE, Moisture.APCP, FixedSurfaceType.GROUND_WATER_SURFACE, BigDecimal.ZERO,
+                                     FixedSurfaceType.MISSING, BigDecimal.TEN, null, UnitOfTimeRange.HOUR, 6 ) );
+    }
+
+    @Test
+    public void timeRange()
+    {
+        assertEquals( accumulation( 6 ), accumulation( 6 ) );
+        assertNotEquals( accumulation( 6 ), accumulation( 12 ) );
+        assertNotEquals( accumulation( 6 ), new Parameter( ParameterCategory.MOISTURE, Moisture.APCP, FixedSurfaceType.GROUND_WATER_SURFACE,
+                                                           BigDecimal.ZERO ) );
+        assertEquals( "APCP GROUND_WATER_SURFACE 0 6 Hour acc", accumulation( 6 ).toString() );
+    }
+
+    /**
+     * The time range of Template 4.8 is part of the parameter but its start, the forecast time, is not
+     */
+    @Test
+    public void of()
+            throws IOException
+    {
+        final byte[] packing = TestMessages.simplePacking( 12, 0f, 0, 0, 0 );
+        final Parameter p = Parameter.of( TestMessages.dataSet( TestMessages.message( 0, TestMessages.identification(), TestMessages.globalGrid( 4, 3 ),
+                                                                                      TestMessages.statisticalProduct( 1, 8, 6, 1, 0, 1, 6 ),
+                                                                                      packing ) ) );
+        assertEquals( accumulation( 6 ), p );
+        assertEquals( p, Parameter.of( TestMessages.dataSet( TestMessages.message( 0, TestMessages.identification(), TestMessages.globalGrid( 4, 3 ),
+                                                                                   TestMessages.statisticalProduct( 1, 8, 0, 1, 0, 1, 6 ),
+                                                                                   packing ) ) ) );
+        assertNotEquals( p, Parameter.of( TestMessages.dataSet( TestMessages.message( 0, TestMessages.identification(), TestMessages.globalGrid( 4, 3 ),
+                                                                                      TestMessages.statisticalProduct( 1, 8, 0, 1, 0, 1, 12 ),
+                                                                                      packing ) ) ) );
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.extract;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.grid.Interpolation;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class StationExtractorTest
+{
+
+    /**
+     * Each column of the matrix holds the value of every station for its DataSet, as found one at a time
+     */
+    @Test
+    public void extract()
+            throws IOException
+    {
+        final List<DataSet> dataSets = new ArrayList<>();
+        for( int p = 0; p < 37; p++ ) {
+            final int[] x = new int[8 * 5];
+            for( int i = 0; i < x.length; i++ ) {
+                x[i] = (i * 7 + p * 13) & 0xff;
+            }
+            dataSets.add( TestMessages.dataSet( TestMessages.simpleMessage( 8, 5, 0, p, 0, 0f, 0, 0, 8, x ) ) );
+        }
+
+        final double[] lats = { 90, 45, 12.5, -33.25, -90, 60, 10 };
+        final double[] lons = { 0, -9, 100, 359.5, 180, 181, -170 };
+        for( Interpolation interpolation: Interpolation.values() ) {
+            final StationMatrix matrix = new StationExtractor( lats, lons, interpolation ).extract( dataSets );
+            assertEquals( lats.length, matrix.getStations() );
+            assertEquals( dataSets.size(), matrix.getParameterCount() );
+            for( int p = 0; p < dataSets.size(); p++ ) {
+                for( int s = 0; s < lats.length; s++ ) {
+                    assertEquals( interpolation + " station " + s + " parameter " + p,
+                                  dataSets.get( p ).valueAt( lats[s], lons[s], interpolation ), matrix.get( s, p ), 0f );
+                }
+            }
+        }
+    }
+
+}
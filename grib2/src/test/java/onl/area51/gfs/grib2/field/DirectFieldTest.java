@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class DirectFieldTest
+{
+
+    @Test
+    public void values()
+    {
+        try( Field field = Field.direct( 100 ) ) {
+            assertEquals( 100, field.size() );
+            for( int i = 0; i < field.size(); i++ ) {
+                field.set( i, i * 0.5f );
+            }
+            field.set( 99, Float.NaN );
+
+            final FloatBuffer b = field.getBuffer();
+            assertTrue( b.isDirect() );
+            assertEquals( 0, b.position() );
+            assertEquals( 100, b.limit() );
+            assertEquals( 10.5f, b.get( 21 ), 0f );
+
+            final float[] a = field.toArray();
+            assertEquals( 100, a.length );
+            for( int i = 0; i < 99; i++ ) {
+                assertEquals( i * 0.5f, field.get( i ), 0f );
+                assertEquals( i * 0.5f, a[i], 0f );
+            }
+            assertTrue( Float.isNaN( a[99] ) );
+        }
+    }
+
+    @Test
+    public void empty()
+    {
+        try( Field field = Field.direct( 0 ) ) {
+            assertEquals( 0, field.size() );
+            assertEquals( 0, field.toArray().length );
+        }
+    }
+
+    /**
+     * A closed field cannot be used, but a view taken before it was closed still reads the values as the memory is not freed under it
+     */
+    @Test
+    public void closed()
+    {
+        final Field field = Field.direct( 16 );
+        field.set( 3, 42f );
+        final FloatBuffer view = field.getBuffer();
+
+        assertFalse( field.isReleased() );
+        field.close();
+        assertTrue( field.isReleased() );
+        // Closing again has no effect
+        field.close();
+        assertTrue( field.isReleased() );
+
+        assertEquals( 42f, view.get( 3 ), 0f );
+        System.gc();
+        assertEquals( 42f, view.get( 3 ), 0f );
+
+        try {
+            field.get( 3 );
+            fail( "get after close" );
+        }
+        catch( IllegalStateException ex ) {
+        }
+        try {
+            field.set( 3, 1f );
+            fail( "set after close" );
+        }
+        catch( IllegalStateException ex ) {
+        }
+        try {
+            field.getBuffer();
+            fail( "getBuffer after close" );
+        }
+        catch( IllegalStateException ex ) {
+        }
+        try {
+            field.toArray();
+            fail( "toArray after close" );
+        }
+        catch( IllegalStateException ex ) {
+        }
+    }
+
+    /**
+     * Reads racing with close either see the values or fail cleanly
+     */
+    @Test
+    public void closeWhileReading()
+            throws InterruptedException
+    {
+        for( int n = 0; n < 50; n++ ) {
+            final Field field = Field.direct( 1 << 16 );
+            field.set( 1000, 7f );
+            final AtomicReference<Float> wrong = new AtomicReference<>();
+            final Thread reader = new Thread( () -> {
+                try {
+                    for( int i = 0; i < 100000; i++ ) {
+                        final float v = field.get( 1000 );
+                        if( v != 7f ) {
+                            wrong.set( v );
+                        }
+                    }
+                }
+                catch( IllegalStateException ex ) {
+                }
+            } );
+            reader.start();
+            field.close();
+            reader.join();
+            assertNull( wrong.get() );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void negativeSize()
+    {
+        Field.direct( -1 );
+    }
+
+    /**
+     * The size in bytes would overflow an int
+     */
+    @Test( expected = IllegalArgumentException.class )
+    public void tooLarge()
+    {
+        Field.direct( DirectField.MAX_SIZE + 1 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void overflow()
+    {
+        Field.direct( Integer.MAX_VALUE );
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.field;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class FieldPoolTest
+{
+
+    private static void assertCounts( FieldPool pool, long hits, long misses, long returns, long discards )
+    {
+        assertEquals( "hits", hits, pool.getHits() );
+        assertEquals( "misses", misses, pool.getMisses() );
+        assertEquals( "returns", returns, pool.getReturns() );
+        assertEquals( "discards", discards, pool.getDiscards() );
+    }
+
+    /**
+     * A returned field is lent out again, sharing its memory
+     */
+    @Test
+    public void borrowReturn()
+    {
+        for( boolean direct: new boolean[]{ false, true } ) {
+            try( FieldPool pool = new FieldPool( direct, 2 ) ) {
+                assertEquals( 0, pool.getHitRatio(), 0 );
+
+                final Field a = pool.borrow( 10 );
+                assertEquals( 10, a.size() );
+                assertEquals( direct, a.getBuffer().isDirect() );
+                a.set( 4, 12.5f );
+                a.close();
+                assertTrue( a.isReleased() );
+                assertCounts( pool, 0, 1, 1, 0 );
+
+                try( Field b = pool.borrow( 10 ) ) {
+                    assertFalse( b.isReleased() );
+                    assertEquals( 12.5f, b.get( 4 ), 0f );
+                }
+                assertCounts( pool, 1, 1, 2, 0 );
+                assertEquals( 0.5, pool.getHitRatio(), 0 );
+
+                // Another size is a miss
+                pool.borrow( 11 ).close();
+                assertCounts( pool, 1, 2, 3, 0 );
+            }
+        }
+    }
+
+    /**
+     * Up to maxPerSize fields are kept, the rest being released
+     */
+    @Test
+    public void full()
+    {
+        try( FieldPool pool = new FieldPool( true, 2 ) ) {
+            final List<Field> fields = new ArrayList<>();
+            for( int i = 0; i < 5; i++ ) {
+                fields.add( pool.borrow( 8 ) );
+            }
+            assertCounts( pool, 0, 5, 0, 0 );
+
+            fields.forEach( Field::close );
+            assertCounts( pool, 0, 5, 2, 3 );
+
+            fields.clear();
+            for( int i = 0; i < 3; i++ ) {
+                fields.add( pool.borrow( 8 ) );
+            }
+            assertCounts( pool, 2, 6, 2, 3 );
+            fields.forEach( Field::close );
+            assertCounts( pool, 2, 6, 4, 4 );
+        }
+    }
+
+    /**
+     * Closing a borrowed field twice returns it once
+     */
+    @Test
+    public void doubleClose()
+    {
+        try( FieldPool pool = new FieldPool( false, 4 ) ) {
+            final Field a = pool.borrow( 8 );
+            a.close();
+            a.close();
+            assertCounts( pool, 0, 1, 1, 0 );
+
+            // Only one field is pooled, so the second borrow misses
+            final Field b = pool.borrow( 8 );
+            final Field c = pool.borrow( 8 );
+            assertCounts( pool, 1, 2, 1, 0 );
+            b.close();
+            c.close();
+
+            try {
+                a.get( 0 );
+                fail( "get after close" );
+            }
+            catch( IllegalStateException ex ) {
+            }
+        }
+    }
+
+    /**
+     * Fields returned once the pool is closed are released rather than kept
+     */
+    @Test
+    public void closed()
+    {
+        final FieldPool pool = new FieldPool( true, 4 );
+        final Field a = pool.borrow( 8 );
+        final Field b = pool.borrow( 8 );
+        a.close();
+        assertCounts( pool, 0, 2, 1, 0 );
+
+        pool.close();
+        b.close();
+        assertCounts( pool, 0, 2, 1, 1 );
+
+        try {
+            pool.borrow( 8 );
+            fail( "borrow after close" );
+        }
+        catch( IllegalStateException ex ) {
+        }
+        // Closing again has no effect
+        pool.close();
+    }
+
+    @Test
+    public void clear()
+    {
+        try( FieldPool pool = new FieldPool( false, 4 ) ) {
+            pool.borrow( 8 ).close();
+            pool.clear();
+            // Cleared pools still lend and keep fields
+            pool.borrow( 8 ).close();
+            pool.borrow( 8 ).close();
+            assertCounts( pool, 1, 2, 3, 0 );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void maxPerSize()
+    {
+        new FieldPool( false, 0 );
+    }
+
+    /**
+     * Decoding fields of different sizes in turn through a pool, so both the pool and the decoder's scratch arrays are reused and grown
+     */
+    @Test
+    public void decode()
+            throws IOException
+    {
+        final int[][] shapes = { { 4, 3 }, { 2, 3 }, { 5, 4 }, { 4, 3 }, { 5, 4 }, { 2, 3 } };
+        try( FieldPool pool = new FieldPool( true, 1 ) ) {
+            for( int[] shape: shapes ) {
+                final int[] x = new int[shape[0] * shape[1]];
+                for( int i = 0; i < x.length; i++ ) {
+                    x[i] = (i * 7 + shape[0]) & 0x3f;
+                }
+                final DataSet ds = TestMessages.dataSet( TestMessages.simpleMessage( shape[0], shape[1], 0, 0, 0, 1f, 0, 0, 6, x ) );
+                try( Field field = ds.decode( pool ) ) {
+                    assertEquals( x.length, field.size() );
+                    for( int i = 0; i < x.length; i++ ) {
+                        assertEquals( 1f + x[i], field.get( i ), 0f );
+                    }
+                }
+            }
+            assertCounts( pool, 3, 3, 6, 0 );
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class BitReaderTest
+{
+
+    /**
+     * Pack values most significant bit first, one bit at a time
+     */
+    private static byte[] pack( long[] values, int bits )
+    {
+        final byte[] b = new byte[(int) (((long) values.length * bits + 7) / 8)];
+        long pos = 0;
+        for( long v: values ) {
+            for( int i = bits - 1; i >= 0; i--, pos++ ) {
+                if( ((v >>> i) & 1) != 0 ) {
+                    b[(int) (pos >>> 3)] |= 0x80 >>> (pos & 7);
+                }
+            }
+        }
+        return b;
+    }
+
+    private static long[] random( int count, int bits, long seed )
+    {
+        final Random r = new Random( seed );
+        final long[] v = new long[count];
+        for( int i = 0; i < count; i++ ) {
+            v[i] = r.nextLong() & ((1L << bits) - 1);
+        }
+        return v;
+    }
+
+    @Test
+    public void readAllWidths()
+    {
+        for( int bits = 0; bits <= 32; bits++ ) {
+            final long[] expected = random( 1000, bits, bits );
+            final BitReader reader = new BitReader( ByteBuffer.wrap( pack( expected, bits ) ) );
+            for( int i = 0; i < expected.length; i++ ) {
+                assertEquals( "bits " + bits + " value " + i, expected[i], reader.read( bits ) );
+            }
+        }
+    }
+
+    @Test
+    public void unpackAllWidths()
+    {
+        for( int bits = 0; bits <= 32; bits++ ) {
+            final long[] expected = random( 1001, bits, bits );
+            final int[] actual = new int[expected.length + 2];
+            final BitReader reader = new BitReader( ByteBuffer.wrap( pack( expected, bits ) ) );
+            reader.unpack( bits, expected.length, actual, 2 );
+            for( int i = 0; i < expected.length; i++ ) {
+                assertEquals( "bits " + bits + " value " + i, expected[i], actual[i + 2] & 0xffffffffL );
+            }
+            assertEquals( (long) bits * expected.length, reader.position() );
+        }
+    }
+
+    @Test
+    public void offsetAndAlign()
+    {
+        final ByteBuffer b = ByteBuffer.wrap( new byte[]{ 0x55, (byte) 0xa5, (byte) 0xf0, (byte) 0xf0 } );
+        final BitReader reader = new BitReader( b, 1 );
+        assertEquals( 0xa, reader.read( 4 ) );
+        reader.align();
+        assertEquals( 0xf0, reader.read( 8 ) );
+        assertEquals( -7, reader.readSignMagnitude( 4 ) );
+        assertEquals( 4, reader.remaining() );
+    }
+
+    @Test( expected = BufferUnderflowException.class )
+    public void underflow()
+    {
+        new BitReader( ByteBuffer.wrap( new byte[ 3 ] ) ).unpack( 7, 4, new int[ 4 ] );
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class BitUnpackerTest
+{
+
+    @Test
+    public void kernelsMatchValues()
+    {
+        final Random r = new Random( 42 );
+        for( int bits = 0; bits <= 32; bits++ ) {
+            for( int count: new int[]{ 1, 2, 3, 5, 7, 8, 9, 5003 } ) {
+                final long[] expected = new long[count];
+                final long mask = (1L << bits) - 1;
+                final byte[] b = new byte[3 + (int) (((long) count * bits + 7) / 8)];
+                long pos = 3 << 3;
+                for( int i = 0; i < count; i++ ) {
+                    expected[i] = r.nextLong() & mask;
+                    for( int j = bits - 1; j >= 0; j--, pos++ ) {
+                        if( ((expected[i] >>> j) & 1) != 0 ) {
+                            b[(int) (pos >>> 3)] |= 0x80 >>> (pos & 7);
+                        }
+                    }
+                }
+
+                final int[] actual = new int[count + 1];
+                BitUnpacker.forWidth( bits ).unpack( ByteBuffer.wrap( b ), 3, bits, count, actual, 1 );
+                for( int i = 0; i < count; i++ ) {
+                    assertEquals( "bits " + bits + " count " + count + " value " + i, expected[i], actual[i + 1] & 0xffffffffL );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void selection()
+    {
+        assertEquals( BitUnpacker.BITS_12, BitUnpacker.forWidth( 12 ) );
+        assertEquals( BitUnpacker.GENERIC, BitUnpacker.forWidth( 13 ) );
+    }
+
+}
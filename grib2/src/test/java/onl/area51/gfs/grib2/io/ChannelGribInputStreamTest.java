@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Reads through small windows so every read lands on, or straddles, the edge of a window
+ * <p>
+ * @author peter
+ */
+public class ChannelGribInputStreamTest
+{
+
+    private static final int[] WINDOWS = { 8, 13, 64 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] data;
+    private File file;
+
+    private ChannelGribInputStream open( int window )
+            throws IOException
+    {
+        if( file == null ) {
+            data = new byte[1000];
+            new Random( 1 ).nextBytes( data );
+            file = folder.newFile();
+            Files.write( file.toPath(), data );
+        }
+        return new ChannelGribInputStream( FileChannel.open( file.toPath(), StandardOpenOption.READ ), window );
+    }
+
+    /**
+     * Every primitive at every offset, read in sequence so the window is refilled part way through a value
+     */
+    @Test
+    public void primitives()
+            throws IOException
+    {
+        for( int window: WINDOWS ) {
+            for( int width: new int[]{ 1, 2, 4, 8 } ) {
+                try( ChannelGribInputStream s = open( window ) ) {
+                    final ByteBuffer expected = ByteBuffer.wrap( data );
+                    for( int start = 0; start < width; start++ ) {
+                        s.seek( start );
+                        for( int p = start; p + width <= data.length; p += width ) {
+                            final String m = "window " + window + " at " + p;
+                            switch( width ) {
+                                case 1:
+                                    assertEquals( m, data[p] & 0xff, s.readUnsignedByte() );
+                                    break;
+                                case 2:
+                                    assertEquals( m, expected.getShort( p ), s.readShort() );
+                                    break;
+                                case 4:
+                                    assertEquals( m, expected.getInt( p ), s.readInt() );
+                                    break;
+                                default:
+                                    assertEquals( m, expected.getLong( p ), s.readLong() );
+                                    break;
+                            }
+                            assertEquals( m, p + width, s.position() );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads shorter and longer than the window, the latter going directly into the destination
+     */
+    @Test
+    public void readArray()
+            throws IOException
+    {
+        for( int window: WINDOWS ) {
+            for( int len: new int[]{ 1, 7, window - 1, window, window + 1, 3 * window + 5, 500 } ) {
+                try( ChannelGribInputStream s = open( window ) ) {
+                    // Part of the window is buffered before the large read
+                    s.seek( 3 );
+                    s.readInt();
+                    for( int p = 7; p + len <= data.length; p += len ) {
+                        final byte[] b = new byte[len];
+                        s.readFully( b );
+                        assertArrayEquals( "window " + window + " len " + len + " at " + p, Arrays.copyOfRange( data, p, p + len ), b );
+                        assertEquals( p + len, s.position() );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seek()
+            throws IOException
+    {
+        final Random r = new Random( 2 );
+        for( int window: WINDOWS ) {
+            try( ChannelGribInputStream s = open( window ) ) {
+                for( int i = 0; i < 500; i++ ) {
+                    // Backwards and forwards, within and beyond the window
+                    final int p = r.nextInt( data.length - 4 );
+                    s.seek( p );
+                    assertEquals( p, s.position() );
+                    assertEquals( "window " + window + " at " + p, ByteBuffer.wrap( data ).getInt( p ), s.readInt() );
+                    if( r.nextBoolean() ) {
+                        s.seek( p + 1 );
+                        assertEquals( data[p + 1] & 0xff, s.read() );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void endOfFile()
+            throws IOException
+    {
+        for( int window: WINDOWS ) {
+            try( ChannelGribInputStream s = open( window ) ) {
+                assertEquals( data.length, s.length() );
+
+                s.seek( data.length - 1 );
+                assertEquals( data[data.length - 1] & 0xff, s.read() );
+                assertEquals( -1, s.read() );
+                assertEquals( -1, s.read( new byte[4], 0, 4 ) );
+
+                // A short read returns what there is
+                s.seek( data.length - 3 );
+                assertEquals( 3, s.read( new byte[2 * window], 0, 2 * window ) );
+
+                s.seek( data.length - 3 );
+                try {
+                    s.readInt();
+                    fail( "Read past end" );
+                }
+                catch( EOFException ex ) {
+                }
+
+                s.seek( data.length - 3 );
+                try {
+                    s.readFully( new byte[4] );
+                    fail( "Read past end" );
+                }
+                catch( EOFException ex ) {
+                }
+
+                // Beyond the end
+                s.seek( data.length + 10 );
+                assertEquals( -1, s.read() );
+            }
+        }
+    }
+
+    /**
+     * Slices are read into the heap independently of the stream's window and position
+     */
+    @Test
+    public void slice()
+            throws IOException
+    {
+        for( int window: WINDOWS ) {
+            try( ChannelGribInputStream s = open( window ) ) {
+                s.seek( 7 );
+                for( int len: new int[]{ 0, 1, window - 1, window + 1, 300 } ) {
+                    for( int p = 0; p + len <= data.length; p += 13 ) {
+                        final GribInputStream slice = s.slice( p, len );
+                        assertEquals( len, slice.length() );
+                        final byte[] b = new byte[len];
+                        slice.readFully( b );
+                        assertArrayEquals( "window " + window + " len " + len + " at " + p, Arrays.copyOfRange( data, p, p + len ), b );
+                        assertEquals( -1, slice.read() );
+                    }
+                }
+                assertEquals( 7, s.position() );
+                assertEquals( data[7] & 0xff, s.read() );
+
+                try {
+                    s.slice( data.length - 4, 5 );
+                    fail( "Slice past end" );
+                }
+                catch( EOFException ex ) {
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.TestMessages;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * A multi-message file mapped in tiny segments so reads, seeks and slices cross segment boundaries, compared with {@link ChannelGribInputStream}
+ * <p>
+ * @author peter
+ */
+public class MappedGribInputStreamTest
+{
+
+    private static final int[] SEGMENTS = { 16, 17, 23, 64 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private byte[] data;
+
+    private File file()
+            throws IOException
+    {
+        if( file == null ) {
+            final byte[][] messages = new byte[5][];
+            for( int m = 0; m < messages.length; m++ ) {
+                final int[] x = new int[12];
+                for( int i = 0; i < x.length; i++ ) {
+                    x[i] = (i * 37 + m * 11) & 0xfff;
+                }
+                messages[m] = TestMessages.simpleMessage( 4, 3, 0, m, m * 6, 1.5f * m, -1, 1, 12, x );
+            }
+            file = TestMessages.write( folder.newFile(), messages );
+            data = Files.readAllBytes( file.toPath() );
+        }
+        return file;
+    }
+
+    private MappedGribInputStream mapped( int segmentSize )
+            throws IOException
+    {
+        return new MappedGribInputStream( FileChannel.open( file().toPath(), StandardOpenOption.READ ), segmentSize );
+    }
+
+    private ChannelGribInputStream channel()
+            throws IOException
+    {
+        return new ChannelGribInputStream( file() );
+    }
+
+    private static byte[] toArray( GribInputStream s )
+            throws IOException
+    {
+        final byte[] b = new byte[(int) s.length()];
+        s.readFully( b );
+        return b;
+    }
+
+    /**
+     * Every primitive at every offset, readInt and readLong crossing a boundary going through the scratch buffer
+     */
+    @Test
+    public void primitives()
+            throws IOException
+    {
+        for( int segment: SEGMENTS ) {
+            try( MappedGribInputStream m = mapped( segment );
+                 ChannelGribInputStream c = channel() ) {
+                assertEquals( c.length(), m.length() );
+                for( int p = 0; p + 8 <= data.length; p++ ) {
+                    final String msg = "segment " + segment + " at " + p;
+                    for( GribInputStream s: new GribInputStream[]{ m, c } ) {
+                        s.seek( p );
+                    }
+                    assertEquals( msg, c.readLong(), m.readLong() );
+                    m.seek( p );
+                    c.seek( p );
+                    assertEquals( msg, c.readInt(), m.readInt() );
+                    assertEquals( msg, c.readShort(), m.readShort() );
+                    assertEquals( msg, c.readUnsignedByte(), m.readUnsignedByte() );
+                    assertEquals( msg, c.position(), m.position() );
+                    m.seek( p );
+                    c.seek( p );
+                    assertEquals( msg, Float.floatToRawIntBits( c.readFloat() ), Float.floatToRawIntBits( m.readFloat() ) );
+                    assertEquals( msg, c.readSignMagnitudeShort(), m.readSignMagnitudeShort() );
+                }
+            }
+        }
+    }
+
+    /**
+     * The whole file read in sequence, one primitive after another, as when parsing
+     */
+    @Test
+    public void sequential()
+            throws IOException
+    {
+        for( int segment: SEGMENTS ) {
+            try( MappedGribInputStream m = mapped( segment ) ) {
+                final ByteBuffer expected = ByteBuffer.wrap( data );
+                int p = 0;
+                while( p + 12 <= data.length ) {
+                    assertEquals( "segment " + segment + " at " + p, expected.getInt( p ), m.readInt() );
+                    assertEquals( "segment " + segment + " at " + (p + 4), expected.getLong( p + 4 ), m.readLong() );
+                    p += 12;
+                    assertEquals( p, m.position() );
+                }
+                while( p < data.length ) {
+                    assertEquals( data[p++] & 0xff, m.read() );
+                }
+                assertEquals( -1, m.read() );
+            }
+        }
+    }
+
+    @Test
+    public void readFully()
+            throws IOException
+    {
+        for( int segment: SEGMENTS ) {
+            try( MappedGribInputStream m = mapped( segment ) ) {
+                assertArrayEquals( "segment " + segment, data, toArray( m ) );
+                for( int len: new int[]{ 1, 5, segment, segment + 1, 3 * segment + 2 } ) {
+                    for( int p = 0; p + len <= data.length; p += 3 ) {
+                        final byte[] b = new byte[len];
+                        m.seek( p );
+                        m.readFully( b );
+                        assertArrayEquals( "segment " + segment + " len " + len + " at " + p, Arrays.copyOfRange( data, p, p + len ), b );
+                        assertEquals( p + len, m.position() );
+                    }
+                }
+
+                m.seek( data.length - 3 );
+                try {
+                    m.readFully( new byte[4] );
+                    fail( "Read past end" );
+                }
+                catch( EOFException ex ) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void seek()
+            throws IOException
+    {
+        final Random r = new Random( 3 );
+        for( int segment: SEGMENTS ) {
+            try( MappedGribInputStream m = mapped( segment ) ) {
+                for( int i = 0; i < 1000; i++ ) {
+                    final int p = r.nextInt( data.length - 8 );
+                    m.seek( p );
+                    assertEquals( p, m.position() );
+                    assertEquals( "segment " + segment + " at " + p, ByteBuffer.wrap( data ).getLong( p ), m.readLong() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Slices within one segment are views of it, those crossing a boundary are mapped separately. Both match the channel's slice.
+     */
+    @Test
+    public void slice()
+            throws IOException
+    {
+        for( int segment: SEGMENTS ) {
+            try( MappedGribInputStream m = mapped( segment );
+                 ChannelGribInputStream c = channel() ) {
+                for( int len: new int[]{ 0, 1, 4, segment - 1, segment, segment + 1, 2 * segment + 3 } ) {
+                    for( int p = 0; p + len <= data.length; p++ ) {
+                        final String msg = "segment " + segment + " len " + len + " at " + p;
+                        final GribInputStream ms = m.slice( p, len );
+                        assertEquals( msg, len, ms.length() );
+                        assertArrayEquals( msg, toArray( c.slice( p, len ) ), toArray( ms ) );
+                    }
+                }
+
+                // Slicing does not move the stream
+                m.seek( 5 );
+                m.slice( 20, 40 );
+                assertEquals( 5, m.position() );
+                assertEquals( data[5] & 0xff, m.read() );
+
+                try {
+                    m.slice( data.length - 4, 5 );
+                    fail( "Slice past end" );
+                }
+                catch( EOFException ex ) {
+                }
+            }
+        }
+    }
+
+    /**
+     * A file parsed and decoded through tiny segments gives the same values as through the channel
+     */
+    @Test
+    public void grib2File()
+            throws IOException
+    {
+        for( int segment: SEGMENTS ) {
+            try( Grib2File m = new Grib2File( file(), mapped( segment ) );
+                 Grib2File c = new Grib2File( file(), channel() ) ) {
+                assertEquals( 5, m.size() );
+                assertEquals( c.size(), m.size() );
+                for( int i = 0; i < c.size(); i++ ) {
+                    assertArrayEquals( "segment " + segment + " message " + i,
+                                       c.get( i ).decode( false ).toArray(), m.get( i ).decode( false ).toArray(), 0f );
+                }
+            }
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void segmentTooSmall()
+            throws IOException
+    {
+        mapped( 7 );
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.jpeg2000;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Decodes code streams written by the JJ2000 5.2 reference encoder and compares the samples with those from the JJ2000 decoder, held as PGX files
+ * alongside them.
+ * <p>
+ * The images are 37x29 at 12 bits or 70x45 at 16 bits so code-blocks, precincts and tiles are partial at the edges.
+ * <p>
+ * @author peter
+ */
+public class JPEG2000DecoderTest
+{
+
+    private static byte[] resource( String name )
+            throws IOException
+    {
+        try( InputStream is = JPEG2000DecoderTest.class.getResourceAsStream( name ) ) {
+            assertNotNull( name, is );
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int l;
+            while( (l = is.read( buf )) > -1 ) {
+                os.write( buf, 0, l );
+            }
+            return os.toByteArray();
+        }
+    }
+
+    /**
+     * Read a single component PGX file, "PG ML + depth width height" then big endian samples
+     */
+    private static int[] pgx( String name, int width, int height, int depth )
+            throws IOException
+    {
+        final byte[] b = resource( name );
+        int p = 0;
+        while( b[p] != '\n' ) {
+            p++;
+        }
+        assertEquals( "PG ML + " + depth + " " + width + " " + height, new String( b, 0, p, "US-ASCII" ) );
+        p++;
+
+        final int bytes = (depth + 7) >> 3;
+        final int[] x = new int[width * height];
+        for( int i = 0; i < x.length; i++ ) {
+            int v = 0;
+            for( int j = 0; j < bytes; j++ ) {
+                v = (v << 8) | (b[p++] & 0xff);
+            }
+            x[i] = v;
+        }
+        return x;
+    }
+
+    private static void assertDecodes( String name, int width, int height, int depth, int tolerance )
+            throws IOException
+    {
+        final JPEG2000Decoder decoder = new JPEG2000Decoder( ByteBuffer.wrap( resource( name + ".j2k" ) ) );
+        assertEquals( width, decoder.getWidth() );
+        assertEquals( height, decoder.getHeight() );
+        assertEquals( depth, decoder.getDepth() );
+        assertFalse( decoder.isSigned() );
+
+        final int[] x = new int[width * height];
+        decoder.decode( x );
+
+        final int[] expected = pgx( name + ".pgx", width, height, depth );
+        for( int i = 0; i < x.length; i++ ) {
+            if( Math.abs( expected[i] - x[i] ) > tolerance ) {
+                fail( name + " sample " + (i % width) + "," + (i / width) + " expected " + expected[i] + " but was " + x[i] );
+            }
+        }
+    }
+
+    /**
+     * Reversible 5-3 wavelet, 3 levels, 8 quality layers
+     */
+    @Test
+    public void lossless53()
+            throws IOException
+    {
+        assertDecodes( "lossless53", 37, 29, 12, 0 );
+    }
+
+    /**
+     * Irreversible 9-7 wavelet at 2 bits per sample. Rounding of the inverse transform may differ by one between implementations.
+     */
+    @Test
+    public void lossy97()
+            throws IOException
+    {
+        assertDecodes( "lossy97", 37, 29, 12, 1 );
+    }
+
+    /**
+     * 32x16 tiles, 9 in all with partial tiles on the right and bottom edges
+     */
+    @Test
+    public void tiles()
+            throws IOException
+    {
+        assertDecodes( "tiles", 70, 45, 16, 0 );
+    }
+
+    /**
+     * 16x16 precincts at the highest resolution, 8x8 below, with 8x8 code-blocks
+     */
+    @Test
+    public void precincts()
+            throws IOException
+    {
+        assertDecodes( "precincts", 70, 45, 16, 0 );
+    }
+
+    /**
+     * Resolution-position-component-layer progression over 4 tiles with precincts and 3 layers
+     */
+    @Test
+    public void rpcl()
+            throws IOException
+    {
+        assertDecodes( "rpcl", 70, 45, 16, 0 );
+    }
+
+    /**
+     * Position-component-resolution-layer progression with precincts and 4 layers
+     */
+    @Test
+    public void pcrl()
+            throws IOException
+    {
+        assertDecodes( "pcrl", 70, 45, 16, 0 );
+    }
+
+    /**
+     * Code-block style 0x27: selective arithmetic coding bypass, reset of the MQ contexts, termination on each pass and segmentation symbols
+     */
+    @Test
+    public void codeBlockStyles()
+            throws IOException
+    {
+        assertDecodes( "styles", 70, 45, 16, 0 );
+    }
+
+}
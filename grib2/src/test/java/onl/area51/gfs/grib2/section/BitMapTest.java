@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.Grib2FileBuilder;
+import onl.area51.gfs.grib2.TestMessages;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Bit maps reused within a message with indicator 254
+ * <p>
+ * @author peter
+ */
+public class BitMapTest
+{
+
+    private static final boolean[] PRESENT = { true, false, false, true, true, true, false, true, false, true, true, false };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The sections of one field on a 4x3 grid with a bit map section
+     */
+    private static byte[][] field( int number, int indicator, boolean[] present, int offset )
+            throws IOException
+    {
+        int count = 0;
+        for( boolean p: present ) {
+            if( p ) {
+                count++;
+            }
+        }
+        final int[] x = new int[count];
+        for( int i = 0; i < x.length; i++ ) {
+            x[i] = offset + i;
+        }
+        return new byte[][]{
+            TestMessages.product( 0, number, 0, 1, 0 ),
+            TestMessages.simplePacking( x.length, 0f, 0, 0, 8 ),
+            TestMessages.bitMap( indicator, indicator == 0 ? TestMessages.mask( present ) : null ),
+            TestMessages.data( TestMessages.pack( x, 8 ) )
+        };
+    }
+
+    /**
+     * A message of one or more fields sharing a 4x3 grid
+     */
+    private static byte[] message( byte[][]... fields )
+            throws IOException
+    {
+        final List<byte[]> sections = new ArrayList<>();
+        sections.add( TestMessages.identification() );
+        sections.add( TestMessages.globalGrid( 4, 3 ) );
+        for( byte[][] f: fields ) {
+            sections.addAll( Arrays.asList( f ) );
+        }
+        return TestMessages.message( 0, sections.toArray( new byte[sections.size()][] ) );
+    }
+
+    private static byte[] message( int number, int indicator, int offset )
+            throws IOException
+    {
+        return message( field( number, indicator, PRESENT, offset ) );
+    }
+
+    private static void assertValues( DataSet ds, boolean[] present, int offset )
+            throws IOException
+    {
+        final float[] v = ds.decode( false ).toArray();
+        assertEquals( present.length, v.length );
+        int x = offset;
+        for( int i = 0; i < v.length; i++ ) {
+            if( present[i] ) {
+                assertEquals( "point " + i, x++, v[i], 0f );
+            }
+            else {
+                assertTrue( "point " + i, Float.isNaN( v[i] ) );
+            }
+        }
+    }
+
+    private static Grib2FileBuilder[] builders( File f )
+    {
+        return new Grib2FileBuilder[]{
+            new Grib2FileBuilder( f ),
+            new Grib2FileBuilder( f ).lazy(),
+            new Grib2FileBuilder( f ).parallel(),
+            // Writes then reads the index
+            new Grib2FileBuilder( f ).index(),
+            new Grib2FileBuilder( f ).index()
+        };
+    }
+
+    /**
+     * A second field in a message with indicator 254 reuses the bit map of the first
+     */
+    @Test
+    public void sameMessage()
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(),
+                                           message( field( 0, 0, PRESENT, 10 ), field( 2, 254, PRESENT, 20 ) ) );
+        for( Grib2FileBuilder b: builders( f ) ) {
+            try( Grib2File g = b.build() ) {
+                assertEquals( 1, g.size() );
+                final DataSet ds = g.get( 0 );
+                assertEquals( 0, ds.<BitMap>get( SectionType.BIT_MAP ).getBitMapIndicator() );
+                assertValues( ds, PRESENT, 20 );
+            }
+        }
+    }
+
+    /**
+     * Each message with its own bit map uses it, not one from an earlier message
+     */
+    @Test
+    public void ownBitMap()
+            throws IOException
+    {
+        final boolean[] other = new boolean[PRESENT.length];
+        for( int i = 0; i < other.length; i++ ) {
+            other[i] = !PRESENT[i];
+        }
+        final File f = TestMessages.write( folder.newFile(),
+                                           message( field( 0, 0, PRESENT, 10 ) ),
+                                           message( field( 2, 0, other, 20 ) ),
+                                           message( field( 0, 0, PRESENT, 30 ), field( 2, 0, other, 40 ) ) );
+        for( Grib2FileBuilder b: builders( f ) ) {
+            try( Grib2File g = b.build() ) {
+                assertEquals( 3, g.size() );
+                assertValues( g.get( 0 ), PRESENT, 10 );
+                assertValues( g.get( 1 ), other, 20 );
+                assertValues( g.get( 2 ), other, 40 );
+                assertNotSame( g.get( 0 ).getBitMask(), g.get( 1 ).getBitMask() );
+            }
+        }
+    }
+
+    /**
+     * Indicator 254 never refers to a bit map in another message
+     */
+    @Test
+    public void previousMessage()
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(), message( 0, 0, 10 ), message( 1, 254, 20 ) );
+        for( Grib2FileBuilder b: builders( f ) ) {
+            try( Grib2File g = b.build() ) {
+                assertValues( g.get( 0 ), PRESENT, 10 );
+                try {
+                    g.get( 1 ).getBitMask();
+                    fail( "Bit map taken from another message" );
+                }
+                catch( IOException ex ) {
+                }
+            }
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void noPrevious()
+            throws IOException
+    {
+        try( Grib2File g = new Grib2File( TestMessages.write( folder.newFile(), message( 1, 254, 20 ) ) ) ) {
+            g.get( 0 ).getBitMask();
+        }
+    }
+
+}
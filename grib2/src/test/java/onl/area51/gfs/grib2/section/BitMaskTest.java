@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import onl.area51.gfs.grib2.TestMessages;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class BitMaskTest
+{
+
+    /**
+     * A mask of 5 whole words then a partial one: all present, all missing, mixed, all present, all missing then mixed
+     */
+    private static boolean[] pattern( int rem )
+    {
+        final Random r = new Random( 16 );
+        final boolean[] present = new boolean[5 * 64 + rem];
+        for( int i = 0; i < present.length; i++ ) {
+            switch( i >>> 6 ) {
+                case 0:
+                case 3:
+                    present[i] = true;
+                    break;
+                case 1:
+                case 4:
+                    present[i] = false;
+                    break;
+                default:
+                    present[i] = r.nextBoolean();
+            }
+        }
+        return present;
+    }
+
+    private static BitMask mask( boolean[] present )
+    {
+        final byte[] b = TestMessages.mask( present );
+        // Set the unused bits of the last octet, they must be ignored
+        if( (present.length & 7) != 0 ) {
+            b[b.length - 1] |= 0xff >>> (present.length & 7);
+        }
+        return BitMask.read( ByteBuffer.wrap( b ), present.length );
+    }
+
+    private static void assertExpands( boolean[] present, FloatBuffer dst )
+    {
+        final BitMask mask = mask( present );
+        int count = 0;
+        for( boolean p: present ) {
+            count += p ? 1 : 0;
+        }
+        assertEquals( present.length, mask.size() );
+        assertEquals( count, mask.cardinality() );
+
+        // The packed values followed by junk which must be overwritten
+        for( int i = 0; i < present.length; i++ ) {
+            dst.put( i, i < count ? i + 1 : -1 );
+        }
+        mask.expand( dst, Float.NaN );
+
+        int v = 0;
+        for( int i = 0; i < present.length; i++ ) {
+            assertEquals( "point " + i, present[i], mask.get( i ) );
+            if( present[i] ) {
+                assertEquals( "point " + i, v, mask.getPackedIndex( i ) );
+                v++;
+                assertEquals( "point " + i, v, dst.get( i ), 0f );
+            }
+            else {
+                assertEquals( "point " + i, -1, mask.getPackedIndex( i ) );
+                assertTrue( "point " + i, Float.isNaN( dst.get( i ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void expand()
+    {
+        for( int rem: new int[]{ 0, 1, 7, 37, 63 } ) {
+            final boolean[] present = pattern( rem );
+            assertExpands( present, FloatBuffer.allocate( present.length ) );
+            assertExpands( present, ByteBuffer.allocateDirect( present.length * 4 ).asFloatBuffer() );
+        }
+    }
+
+    @Test
+    public void expandPartialLastWord()
+    {
+        // A partial last word all present then all missing
+        for( boolean last: new boolean[]{ true, false } ) {
+            final boolean[] present = pattern( 37 );
+            for( int i = 5 * 64; i < present.length; i++ ) {
+                present[i] = last;
+            }
+            assertExpands( present, FloatBuffer.allocate( present.length ) );
+        }
+    }
+
+    @Test
+    public void expandUniform()
+    {
+        for( boolean value: new boolean[]{ true, false } ) {
+            for( int size: new int[]{ 1, 64, 100, 128 } ) {
+                final boolean[] present = new boolean[size];
+                Arrays.fill( present, value );
+                assertExpands( present, FloatBuffer.allocate( size ) );
+            }
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void tooShort()
+    {
+        BitMask.read( ByteBuffer.allocate( 2 ), 17 );
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import onl.area51.gfs.grib2.Grib2File;
+import onl.area51.gfs.grib2.Grib2FileBuilder;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.io.ByteBufferGribInputStream;
+import onl.area51.gfs.grib2.io.GribInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Lazy DataSet's parse a section only when it is requested, giving the same sections as parsing them all up front
+ * <p>
+ * @author peter
+ */
+public class DataSetTest
+{
+
+    private static final boolean[] PRESENT = { true, true, false, true, false, true, true, true, false, false, true, true };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[][] messages()
+            throws IOException
+    {
+        final int[] x = { 3, 1, 4, 1, 5, 9, 2, 6, 5, 3, 5, 8 };
+        final int[] y = { 27, 18, 28, 18, 28, 45, 90, 45 };
+        return new byte[][]{
+            TestMessages.simpleMessage( 4, 3, 0, 0, 6, 273.15f, -1, 0, 4, x ),
+            TestMessages.message( 0,
+                                  TestMessages.identification(),
+                                  TestMessages.latLonGrid( 4, 3, 10000000, 350000000, 2000000, 1000000 ),
+                                  TestMessages.statisticalProduct( 1, 8, 6, 1, 0, 1, 6 ),
+                                  TestMessages.simplePacking( y.length, 0f, 0, 1, 7 ),
+                                  TestMessages.bitMap( 0, TestMessages.mask( PRESENT ) ),
+                                  TestMessages.data( TestMessages.pack( y, 7 ) ) )
+        };
+    }
+
+    private static void assertSameSections( String msg, DataSet eager, DataSet lazy )
+            throws IOException
+    {
+        assertEquals( msg, eager.getPos(), lazy.getPos() );
+        assertEquals( msg, eager.getLength(), lazy.getLength() );
+        assertEquals( msg, eager.getSectionTypes(), lazy.getSectionTypes() );
+        for( SectionType type: eager.getSectionTypes() ) {
+            final Section e = eager.get( type );
+            final Section l = lazy.get( type );
+            assertNotNull( msg + " " + type, l );
+            assertSame( msg + " " + type, e.getClass(), l.getClass() );
+            assertEquals( msg + " " + type, e.getPos(), l.getPos() );
+            assertEquals( msg + " " + type, e.getLength(), l.getLength() );
+            assertEquals( msg + " " + type, eager.getSectionPos( type ), lazy.getSectionPos( type ) );
+        }
+        assertArrayEquals( msg, eager.decode( false ).toArray(), lazy.decode( false ).toArray(), 0f );
+    }
+
+    @Test
+    public void lazyMatchesEager()
+            throws IOException
+    {
+        int i = 0;
+        for( byte[] m: messages() ) {
+            final DataSet eager = new DataSet( new ByteBufferGribInputStream( ByteBuffer.wrap( m ) ), false );
+            final DataSet lazy = new DataSet( new ByteBufferGribInputStream( ByteBuffer.wrap( m ) ), true );
+            assertSameSections( "message " + i++, eager, lazy );
+        }
+    }
+
+    @Test
+    public void lazyFileMatchesEager()
+            throws IOException
+    {
+        final File f = TestMessages.write( folder.newFile(), messages() );
+        try( Grib2File eager = new Grib2FileBuilder( f ).build();
+             Grib2File lazy = new Grib2FileBuilder( f ).lazy().build() ) {
+            assertEquals( eager.size(), lazy.size() );
+            for( int i = 0; i < eager.size(); i++ ) {
+                assertSameSections( "message " + i, eager.get( i ), lazy.get( i ) );
+            }
+        }
+    }
+
+    private static void assertWithin( List<Long> slices, Section section )
+    {
+        for( long offset: slices ) {
+            assertTrue( "Read at " + offset + " outside " + section.getClass().getSimpleName(),
+                        offset >= section.getPos() && offset < section.getPos() + section.getLength() );
+        }
+    }
+
+    /**
+     * A lazy DataSet reads nothing once parsed other than the sections it is asked for
+     */
+    @Test
+    public void unreferencedNotRead()
+            throws IOException
+    {
+        final byte[] m = messages()[1];
+        final List<Long> slices = new ArrayList<>();
+        final GribInputStream gis = new ByteBufferGribInputStream( ByteBuffer.wrap( m ) )
+        {
+            @Override
+            public GribInputStream slice( long offset, long length )
+                    throws IOException
+            {
+                slices.add( offset );
+                return super.slice( offset, length );
+            }
+        };
+
+        final DataSet lazy = new DataSet( gis, true );
+        assertTrue( slices.isEmpty() );
+
+        final Section product = lazy.get( SectionType.PRODUCT_DEFINITION );
+        assertNotNull( product );
+        assertFalse( slices.isEmpty() );
+        assertWithin( slices, product );
+
+        // Asking again reads nothing
+        slices.clear();
+        assertSame( product, lazy.get( SectionType.PRODUCT_DEFINITION ) );
+        assertTrue( slices.isEmpty() );
+
+        // The grid is read when it is requested
+        final Section grid = lazy.get( SectionType.GRID_DEFINITION );
+        assertNotNull( grid );
+        assertFalse( slices.isEmpty() );
+        assertWithin( slices, grid );
+    }
+
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.TestMessages.BitWriter;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import onl.area51.gfs.grib2.section.grid.GridWindow;
+import onl.area51.gfs.grib2.section.grid.LatLongGrid;
+import org.junit.Test;
+import static onl.area51.gfs.grib2.TestMessages.signMagnitude;
+import static org.junit.Assert.*;
+
+/**
+ * Complex packing and spatial differencing, Templates 5.2 and 5.3, from Section 5 and 7 payloads written bit by bit.
+ * <p>
+ * The expected values match NetCDF-Java's Grib2DataReader, whose complex unpacking follows g2clib's comunpack, except that missing values are the
+ * substitutes from Section 5 as in g2clib rather than NaN. For Template 5.2 with missing values NetCDF-Java treats every constant group as missing so those
+ * follow comunpack.
+ * <p>
+ * @author peter
+ */
+public class GridPointComplexPackingTest
+{
+
+    private static final float MISSING1 = 9999f;
+    private static final float MISSING2 = -9999f;
+
+    /**
+     * Section 5 of Template 5.2, or 5.3 when order is not 0
+     */
+    private static byte[] representation( float reference, int binary, int decimal, int bits, int management,
+                                          int groups, int widthBits, int referenceLength, int lastLength, int lengthBits,
+                                          int order, int octets )
+            throws IOException
+    {
+        return TestMessages.complexPacking( 16, reference, binary, decimal, bits, management, MISSING1, MISSING2,
+                                            groups, widthBits, referenceLength, lastLength, lengthBits, order, octets );
+    }
+
+    /**
+     * A message of 16 points on a 4x4 grid
+     */
+    private static DataSet dataSet( byte[] representation, BitWriter data )
+            throws IOException
+    {
+        return TestMessages.dataSet( TestMessages.message( 0,
+                                                           TestMessages.identification(),
+                                                           TestMessages.globalGrid( 4, 4 ),
+                                                           TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                           representation,
+                                                           TestMessages.bitMap( 255, null ),
+                                                           TestMessages.data( data.toByteArray() ) ) );
+    }
+
+    private static void write( BitWriter w, int bits, int... values )
+    {
+        for( int v: values ) {
+            w.write( v, bits );
+        }
+    }
+
+    /**
+     * Decode the field whole, then each point in reverse order with and without a GroupIndex
+     */
+    private static void assertDecodes( float[] expected, DataSet ds )
+            throws IOException
+    {
+        assertArrayEquals( expected, ds.decode( false ).toArray(), 0f );
+
+        final DataRepresentation rep = ds.get( SectionType.DATA_REPRESENTATION );
+        final DataSection data = ds.get( SectionType.DATA );
+        final int[] points = new int[expected.length];
+        for( int i = 0; i < points.length; i++ ) {
+            points[i] = points.length - 1 - i;
+        }
+        for( GroupIndex index: new GroupIndex[]{ null, rep.createGroupIndex( data ) } ) {
+            final float[] actual = new float[points.length];
+            rep.decode( data, null, index, points, points.length, FloatBuffer.wrap( actual ) );
+            for( int i = 0; i < points.length; i++ ) {
+                assertEquals( "point " + points[i] + " index " + index, expected[points[i]], actual[i], 0f );
+            }
+        }
+    }
+
+    /**
+     * Four groups including a constant one, with the scaled length of the last group being wrong so only its true length works
+     */
+    @Test
+    public void complex()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        // Group references, widths and scaled lengths each padded to an octet
+        write( w, 5, 3, 17, 10, 0 );
+        write( w.align(), 2, 2, 0, 1, 3 );
+        write( w.align(), 2, 0, 0, 0, 3 );
+        write( w.align(), 2, 0, 1, 2, 3 );
+        write( w, 1, 0, 1, 1, 0 );
+        write( w, 3, 7, 0, 5, 2 );
+
+        // Y = (10.5 + X * 2^-1) / 10^1
+        assertDecodes( new float[]{ 1.2f, 1.25f, 1.3f, 1.35f, 1.9f, 1.9f, 1.9f, 1.9f, 1.55f, 1.6f, 1.6f, 1.55f, 1.4f, 1.05f, 1.3f, 1.15f },
+                       dataSet( representation( 10.5f, -1, 1, 5, 0, 4, 2, 4, 4, 2, 0, 0 ), w ) );
+    }
+
+    /**
+     * First order differencing with a negative first value and minimum difference in sign and magnitude form
+     */
+    @Test
+    public void firstOrder()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        // ival1 -5, minsd -3
+        write( w, 16, signMagnitude( -5, 16 ), signMagnitude( -3, 16 ) );
+        write( w, 3, 0, 2 );
+        write( w.align(), 2, 3, 2 );
+        write( w.align(), 1, 0, 0 );
+        write( w.align(), 3, 0, 1, 6, 3, 0, 7, 2, 5 );
+        write( w, 2, 0, 3, 1, 2, 3, 3, 0, 1 );
+
+        assertDecodes( new float[]{ -5f, -7f, -4f, -4f, -7f, -3f, -4f, -2f, -3f, -1f, -1f, 0f, 2f, 4f, 3f, 3f },
+                       dataSet( representation( 0, 0, 0, 3, 0, 2, 2, 8, 8, 1, 1, 2 ), w ) );
+    }
+
+    /**
+     * Second order differencing with negative ival1, ival2 and minimum difference, and a negative decimal scale factor
+     */
+    @Test
+    public void secondOrder()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        // ival1 -300, ival2 -290, minsd -4
+        write( w, 16, signMagnitude( -300, 16 ), signMagnitude( -290, 16 ), signMagnitude( -4, 16 ) );
+        write( w, 2, 0, 1 );
+        write( w.align(), 2, 3, 3 );
+        write( w.align(), 1, 0, 0 );
+        write( w.align(), 3, 0, 0, 1, 7, 4, 0, 6, 3 );
+        write( w, 3, 2, 5, 0, 3, 4, 1, 2, 6 );
+
+        assertDecodes( new float[]{ -3000f, -2900f, -2830f, -2730f, -2630f, -2570f, -2490f, -2420f,
+                                    -2360f, -2280f, -2230f, -2180f, -2120f, -2080f, -2050f, -1990f },
+                       dataSet( representation( 0, 0, -1, 2, 0, 2, 2, 8, 8, 1, 2, 2 ), w ) );
+    }
+
+    /**
+     * Primary missing values, a group reference of all ones with a width of 0 for a whole group and all ones within a group
+     */
+    @Test
+    public void primaryMissing()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        write( w, 4, 2, 15, 5, 9 );
+        write( w.align(), 2, 2, 0, 0, 3 );
+        write( w.align(), 1, 0, 0, 0, 0 );
+        write( w.align(), 2, 0, 3, 2, 1 );
+        write( w, 3, 6, 0, 7, 5 );
+
+        final float m = MISSING1;
+        assertDecodes( new float[]{ 102f, m, 104f, 103f, m, m, m, m, 105f, 105f, 105f, 105f, 115f, 109f, m, 114f },
+                       dataSet( representation( 100, 0, 0, 4, 1, 4, 2, 4, 4, 1, 0, 0 ), w ) );
+    }
+
+    /**
+     * Secondary missing values are one less than all ones, both for group references and within a group
+     */
+    @Test
+    public void secondaryMissing()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        write( w, 4, 15, 14, 3, 1 );
+        write( w.align(), 2, 0, 0, 3, 2 );
+        write( w.align(), 1, 0, 0, 0, 0 );
+        write( w.align(), 3, 7, 6, 0, 5 );
+        write( w, 2, 3, 0, 2, 1 );
+
+        final float p = MISSING1;
+        final float s = MISSING2;
+        assertDecodes( new float[]{ p, p, p, p, s, s, s, s, p, s, 3f, 8f, p, 1f, s, 2f },
+                       dataSet( representation( 0, 0, 0, 4, 2, 4, 2, 4, 4, 1, 0, 0 ), w ) );
+    }
+
+    /**
+     * With missing values the differencing runs over the values present only
+     */
+    @Test
+    public void secondOrderMissing()
+            throws IOException
+    {
+        final BitWriter w = new BitWriter();
+        // ival1 20, ival2 -7, minsd -2
+        write( w, 16, signMagnitude( 20, 16 ), signMagnitude( -7, 16 ), signMagnitude( -2, 16 ) );
+        write( w, 3, 0, 7, 1 );
+        write( w.align(), 2, 3, 0, 2 );
+        write( w.align(), 1, 0, 0, 0 );
+        write( w.align(), 3, 0, 7, 0, 3, 1, 7 );
+        write( w, 2, 2, 0, 3, 1 );
+
+        final float m = MISSING1;
+        assertDecodes( new float[]{ 20f, m, -7f, -33f, -60f, m, m, m, m, m, m, m, -86f, -113f, m, -140f },
+                       dataSet( representation( 0, 0, 0, 3, 1, 3, 2, 6, 4, 1, 2, 2 ), w ) );
+    }
+
+    private static int bitsFor( int v )
+    {
+        return Math.max( 1, 32 - Integer.numberOfLeadingZeros( v ) );
+    }
+
+    /**
+     * A message on a global grid with its values complex packed (Template 5.2) in groups of random lengths, some constant
+     * <p>
+     * @param ni      points along a parallel
+     * @param nj      points along a meridian
+     * @param x       the values to pack
+     * @param present the bit map, null for none
+     * @param seed    seed for the group lengths
+     */
+    private static DataSet packed( int ni, int nj, int[] x, boolean[] present, long seed )
+            throws IOException
+    {
+        final Random r = new Random( seed );
+        final List<int[]> groups = new ArrayList<>();
+        for( int p = 0; p < x.length; ) {
+            final int len = Math.min( x.length - p, 1 + r.nextInt( 9 ) );
+            groups.add( Arrays.copyOfRange( x, p, p + len ) );
+            p += len;
+        }
+
+        final int ng = groups.size();
+        final int[] refs = new int[ng];
+        final int[] widths = new int[ng];
+        int refLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for( int g = 0; g < ng; g++ ) {
+            final int[] v = groups.get( g );
+            refs[g] = Arrays.stream( v ).min().getAsInt();
+            final int range = Arrays.stream( v ).max().getAsInt() - refs[g];
+            widths[g] = range == 0 ? 0 : bitsFor( range );
+            if( g < ng - 1 || ng == 1 ) {
+                refLength = Math.min( refLength, v.length );
+                maxLength = Math.max( maxLength, v.length );
+            }
+        }
+        final int bits = bitsFor( Arrays.stream( refs ).max().getAsInt() );
+        final int widthBits = bitsFor( Arrays.stream( widths ).max().getAsInt() );
+        final int lengthBits = bitsFor( maxLength - refLength );
+
+        final BitWriter w = new BitWriter();
+        write( w, bits, refs );
+        w.align();
+        write( w, widthBits, widths );
+        w.align();
+        for( int g = 0; g < ng; g++ ) {
+            w.write( g < ng - 1 ? groups.get( g ).length - refLength : 0, lengthBits );
+        }
+        w.align();
+        for( int g = 0; g < ng; g++ ) {
+            if( widths[g] > 0 ) {
+                for( int v: groups.get( g ) ) {
+                    w.write( v - refs[g], widths[g] );
+                }
+            }
+        }
+
+        return TestMessages.dataSet( TestMessages.message( 0,
+                                                           TestMessages.identification(),
+                                                           TestMessages.globalGrid( ni, nj ),
+                                                           TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                           TestMessages.complexPacking( x.length, 0f, 0, 0, bits, 0, MISSING1, MISSING2, ng, widthBits,
+                                                                                        refLength, groups.get( ng - 1 ).length, lengthBits, 0, 0 ),
+                                                           present == null ? TestMessages.bitMap( 255, null ) : TestMessages.bitMap( 0, TestMessages.mask( present ) ),
+                                                           TestMessages.data( w.toByteArray() ) ) );
+    }
+
+    /**
+     * Values with runs of constants so some groups have no width
+     */
+    private static int[] values( int count, long seed )
+    {
+        final Random r = new Random( seed );
+        final int[] x = new int[count];
+        for( int i = 0; i < count; i++ ) {
+            x[i] = i > 0 && r.nextInt( 3 ) == 0 ? x[i - 1] : r.nextInt( 1000 );
+        }
+        return x;
+    }
+
+    /**
+     * Windows decoded directly, skipping the groups holding none of their points with and without a GroupIndex, match the same points of the whole field
+     */
+    private static void assertWindows( DataSet ds )
+            throws IOException
+    {
+        final float[] all = ds.decode( false ).toArray();
+        final LatLongGrid grid = ds.getLatLongGrid();
+        final GridWindow[] windows = {
+            grid.getWindow(),
+            // Across 0, wrapping from the last column to the first
+            grid.getWindow( -40, -60, 40, 45 ),
+            grid.getWindow( 10, 100, 70, 200 ),
+            // The last point alone
+            new GridWindow( 12, 8, 1, 11, 1 ),
+            // The first point alone
+            new GridWindow( 12, 0, 1, 0, 1 ),
+            new GridWindow( 12, 2, 5, 3, 7 ).decimate( 2, 3 ),
+            grid.getWindow().decimate( 4, 5 )
+        };
+        for( int pass = 0; pass < 2; pass++ ) {
+            if( pass == 1 ) {
+                assertNotNull( ds.createGroupIndex() );
+            }
+            for( GridWindow window: windows ) {
+                final int[] indexes = window.getIndexes();
+                final float[] actual = ds.decode( window, false ).toArray();
+                assertEquals( window.toString(), indexes.length, actual.length );
+                for( int k = 0; k < indexes.length; k++ ) {
+                    assertEquals( window + " index " + (pass == 1) + " point " + indexes[k], all[indexes[k]], actual[k], 0f );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void windows()
+            throws IOException
+    {
+        final int[] x = values( 108, 1 );
+        final DataSet ds = packed( 12, 9, x, null, 1 );
+        final float[] all = ds.decode( false ).toArray();
+        for( int i = 0; i < x.length; i++ ) {
+            assertEquals( "point " + i, x[i], all[i], 0f );
+        }
+        assertWindows( ds );
+    }
+
+    /**
+     * With a bit map the window's points are mapped to the packed values, those not present being NaN
+     */
+    @Test
+    public void windowsBitMap()
+            throws IOException
+    {
+        final Random r = new Random( 2 );
+        final boolean[] present = new boolean[108];
+        int count = 0;
+        for( int i = 0; i < present.length; i++ ) {
+            present[i] = i == present.length - 1 || r.nextInt( 4 ) != 0;
+            if( present[i] ) {
+                count++;
+            }
+        }
+        final int[] x = values( count, 2 );
+        final DataSet ds = packed( 12, 9, x, present, 2 );
+        final float[] all = ds.decode( false ).toArray();
+        for( int i = 0, k = 0; i < present.length; i++ ) {
+            if( present[i] ) {
+                assertEquals( "point " + i, x[k++], all[i], 0f );
+            }
+            else {
+                assertTrue( "point " + i, Float.isNaN( all[i] ) );
+            }
+        }
+        assertWindows( ds );
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ReadOnlyBufferException;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.io.ByteBufferGribInputStream;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class GridPointIEEEPackingTest
+{
+
+    private static final float[] FLOATS = {
+        0f, -0f, 1.5f, -273.15f, 0.1f,
+        // Denormals
+        Float.MIN_VALUE, -Float.MIN_VALUE, 1e-40f, Float.MIN_NORMAL / 2,
+        Float.MIN_NORMAL, Float.MAX_VALUE, -Float.MAX_VALUE,
+        Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY,
+        Float.NaN, Float.intBitsToFloat( 0x7fc12345 )
+    };
+
+    private static final double[] DOUBLES = {
+        0, -0.0, 1.5, -273.15, 0.1, Math.PI,
+        // Denormal as a float, underflowing to zero and denormal as a double
+        1e-40, Float.MIN_VALUE, 1e-50, Double.MIN_VALUE,
+        // Overflowing a float
+        1e39, -1e300, Float.MAX_VALUE,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN
+    };
+
+    private static GridPointIEEEPacking packing( int precision )
+            throws IOException
+    {
+        return new GridPointIEEEPacking( new ByteBufferGribInputStream( ByteBuffer.wrap( new byte[]{ (byte) precision } ) ) );
+    }
+
+    /**
+     * The values big-endian, after some leading bytes which are not part of the data, in a heap or direct buffer of either byte order
+     */
+    private static ByteBuffer data( byte[] values, boolean direct, ByteOrder order )
+    {
+        final ByteBuffer b = direct ? ByteBuffer.allocateDirect( values.length + 3 ) : ByteBuffer.allocate( values.length + 3 );
+        b.put( new byte[3] ).put( values ).flip();
+        b.position( 3 );
+        return b.order( order );
+    }
+
+    private static byte[] floats()
+    {
+        final ByteBuffer b = ByteBuffer.allocate( FLOATS.length * 4 );
+        for( float f: FLOATS ) {
+            b.putFloat( f );
+        }
+        return b.array();
+    }
+
+    private static byte[] doubles()
+    {
+        final ByteBuffer b = ByteBuffer.allocate( DOUBLES.length * 8 );
+        for( double d: DOUBLES ) {
+            b.putDouble( d );
+        }
+        return b.array();
+    }
+
+    @Test
+    public void precision32()
+            throws IOException
+    {
+        final GridPointIEEEPacking packing = packing( GridPointIEEEPacking.PRECISION_32 );
+        for( boolean direct: new boolean[]{ false, true } ) {
+            for( ByteOrder order: new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+                for( boolean directDst: new boolean[]{ false, true } ) {
+                    final ByteBuffer data = data( floats(), direct, order );
+                    final FloatBuffer dst = directDst
+                                            ? ByteBuffer.allocateDirect( (FLOATS.length + 2) * 4 ).order( ByteOrder.nativeOrder() ).asFloatBuffer()
+                                            : FloatBuffer.allocate( FLOATS.length + 2 );
+                    dst.position( 1 );
+                    packing.decode( data, FLOATS.length, dst );
+                    assertEquals( 1 + FLOATS.length, dst.position() );
+                    assertEquals( 3, data.position() );
+                    assertEquals( order, data.order() );
+                    for( int i = 0; i < FLOATS.length; i++ ) {
+                        assertEquals( "value " + i + " direct " + direct + " " + order,
+                                      Float.floatToRawIntBits( FLOATS[i] ), Float.floatToRawIntBits( dst.get( 1 + i ) ) );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles are narrowed to floats as a Java cast would
+     */
+    @Test
+    public void precision64()
+            throws IOException
+    {
+        final GridPointIEEEPacking packing = packing( GridPointIEEEPacking.PRECISION_64 );
+        for( boolean direct: new boolean[]{ false, true } ) {
+            for( ByteOrder order: new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+                final ByteBuffer data = data( doubles(), direct, order );
+                final FloatBuffer dst = FloatBuffer.allocate( DOUBLES.length + 1 );
+                dst.position( 1 );
+                packing.decode( data, DOUBLES.length, dst );
+                assertEquals( 1 + DOUBLES.length, dst.position() );
+                for( int i = 0; i < DOUBLES.length; i++ ) {
+                    assertEquals( "value " + i + " direct " + direct + " " + order,
+                                  Float.floatToIntBits( (float) DOUBLES[i] ), Float.floatToIntBits( dst.get( 1 + i ) ) );
+                }
+            }
+        }
+        assertEquals( 0f, (float) 1e-50, 0f );
+        assertEquals( Float.POSITIVE_INFINITY, (float) 1e39, 0f );
+        assertEquals( Float.MIN_VALUE, (float) (double) Float.MIN_VALUE, 0f );
+    }
+
+    /**
+     * Selected points are read in place, negative points being NaN
+     */
+    @Test
+    public void points()
+            throws IOException
+    {
+        final int[] points = { 4, 0, -1, 15, 7, 7 };
+        for( int precision: new int[]{ GridPointIEEEPacking.PRECISION_32, GridPointIEEEPacking.PRECISION_64 } ) {
+            final boolean p32 = precision == GridPointIEEEPacking.PRECISION_32;
+            final ByteBuffer data = data( p32 ? floats() : doubles(), true, ByteOrder.LITTLE_ENDIAN );
+            final FloatBuffer dst = FloatBuffer.allocate( points.length + 2 );
+            dst.position( 2 );
+            packing( precision ).decode( data, p32 ? FLOATS.length : DOUBLES.length, points, points.length, dst );
+            assertEquals( 2 + points.length, dst.position() );
+            for( int i = 0; i < points.length; i++ ) {
+                final float expected = points[i] < 0 ? Float.NaN : p32 ? FLOATS[points[i]] : (float) DOUBLES[points[i]];
+                assertEquals( "precision " + precision + " point " + i, Float.floatToIntBits( expected ), Float.floatToIntBits( dst.get( 2 + i ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void asFloatBuffer()
+            throws IOException
+    {
+        final GridPointIEEEPacking packing = packing( GridPointIEEEPacking.PRECISION_32 );
+        for( boolean direct: new boolean[]{ false, true } ) {
+            for( ByteOrder order: new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+                final ByteBuffer data = data( floats(), direct, order );
+                final FloatBuffer view = packing.asFloatBuffer( data, FLOATS.length );
+                assertTrue( view.isReadOnly() );
+                assertEquals( 0, view.position() );
+                assertEquals( FLOATS.length, view.limit() );
+                assertEquals( 3, data.position() );
+                for( int i = 0; i < FLOATS.length; i++ ) {
+                    assertEquals( "value " + i, Float.floatToRawIntBits( FLOATS[i] ), Float.floatToRawIntBits( view.get( i ) ) );
+                }
+                try {
+                    view.put( 0, 1f );
+                    fail( "View is writable" );
+                }
+                catch( ReadOnlyBufferException ex ) {
+                }
+
+                // A view not a copy
+                data.put( 3, (byte) 0x3f ).put( 4, (byte) 0x80 ).put( 5, (byte) 0 ).put( 6, (byte) 0 );
+                assertEquals( 1f, view.get( 0 ), 0f );
+            }
+        }
+
+        assertNull( packing( GridPointIEEEPacking.PRECISION_64 ).asFloatBuffer( data( doubles(), false, ByteOrder.BIG_ENDIAN ), DOUBLES.length ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void precision128()
+            throws IOException
+    {
+        final GridPointIEEEPacking packing = packing( GridPointIEEEPacking.PRECISION_128 );
+        assertEquals( GridPointIEEEPacking.PRECISION_128, packing.getPrecision() );
+        assertNull( packing.asFloatBuffer( ByteBuffer.allocate( 32 ), 2 ) );
+        packing.decode( ByteBuffer.allocate( 32 ), 2, FloatBuffer.allocate( 2 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void precision128Points()
+            throws IOException
+    {
+        packing( GridPointIEEEPacking.PRECISION_128 ).decode( ByteBuffer.allocate( 32 ), 2, new int[]{ 0 }, 1, FloatBuffer.allocate( 1 ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void tooShort()
+            throws IOException
+    {
+        packing( GridPointIEEEPacking.PRECISION_64 ).decode( ByteBuffer.allocate( 31 ), 4, FloatBuffer.allocate( 4 ) );
+    }
+
+    /**
+     * A message using Template 5.4 decoded through its DataSet
+     */
+    @Test
+    public void message()
+            throws IOException
+    {
+        final ByteBuffer rep = ByteBuffer.allocate( 7 );
+        rep.putInt( 12 ).putShort( (short) 4 ).put( (byte) GridPointIEEEPacking.PRECISION_32 );
+        final byte[] values = new byte[48];
+        System.arraycopy( floats(), 0, values, 0, values.length );
+        final DataSet ds = TestMessages.dataSet( TestMessages.message( 0,
+                                                                       TestMessages.identification(),
+                                                                       TestMessages.globalGrid( 4, 3 ),
+                                                                       TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                                       TestMessages.section( 5, rep.array() ),
+                                                                       TestMessages.bitMap( 255, null ),
+                                                                       TestMessages.data( values ) ) );
+        final DataRepresentation representation = ds.get( SectionType.DATA_REPRESENTATION );
+        assertTrue( representation.getPacking() instanceof GridPointIEEEPacking );
+
+        final float[] v = ds.decode( false ).toArray();
+        assertEquals( 12, v.length );
+        for( int i = 0; i < v.length; i++ ) {
+            assertEquals( "value " + i, Float.floatToRawIntBits( FLOATS[i] ), Float.floatToRawIntBits( v[i] ) );
+        }
+
+        final FloatBuffer view = representation.asFloatBuffer( ds.get( SectionType.DATA ) );
+        assertEquals( 12, view.remaining() );
+        assertEquals( -273.15f, view.get( 3 ), 0f );
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.jpeg2000.JPEG2000Decoder;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class GridPointJPEG2000PackingTest
+{
+
+    private static byte[] codeStream( String name )
+            throws IOException
+    {
+        try( InputStream is = JPEG2000Decoder.class.getResourceAsStream( name ) ) {
+            assertNotNull( name, is );
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            int l;
+            while( (l = is.read( buf )) > -1 ) {
+                os.write( buf, 0, l );
+            }
+            return os.toByteArray();
+        }
+    }
+
+    /**
+     * Section 5 with Template 5.40
+     */
+    private static byte[] representation( int count, float reference, int binary, int decimal, int bits )
+            throws IOException
+    {
+        final ByteArrayOutputStream b = new ByteArrayOutputStream();
+        final DataOutputStream d = new DataOutputStream( b );
+        d.writeInt( count );
+        d.writeShort( 40 );
+        d.writeFloat( reference );
+        d.writeShort( TestMessages.signMagnitude( binary, 16 ) );
+        d.writeShort( TestMessages.signMagnitude( decimal, 16 ) );
+        d.writeByte( bits );
+        d.writeByte( 0 );
+        d.writeByte( GridPointJPEG2000Packing.LOSSLESS );
+        d.writeByte( 255 );
+        return TestMessages.section( 5, b.toByteArray() );
+    }
+
+    private static DataSet dataSet( int ni, int nj, float reference, int binary, int decimal, int bits, byte[] data )
+            throws IOException
+    {
+        return TestMessages.dataSet( TestMessages.message( 0,
+                                                           TestMessages.identification(),
+                                                           TestMessages.globalGrid( ni, nj ),
+                                                           TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                           representation( ni * nj, reference, binary, decimal, bits ),
+                                                           TestMessages.bitMap( 255, null ),
+                                                           TestMessages.data( data ) ) );
+    }
+
+    /**
+     * The packed values are the samples of the image, scaled as for simple packing
+     */
+    @Test
+    public void image()
+            throws IOException
+    {
+        final byte[] j2k = codeStream( "lossless53.j2k" );
+        final JPEG2000Decoder decoder = new JPEG2000Decoder( ByteBuffer.wrap( j2k ) );
+        final int[] x = new int[decoder.getWidth() * decoder.getHeight()];
+        decoder.decode( x );
+
+        final DataSet ds = dataSet( 37, 29, 1.5f, -2, -1, 12, j2k );
+        final GridPointJPEG2000Packing packing = (GridPointJPEG2000Packing) ((DataRepresentation) ds.get( SectionType.DATA_REPRESENTATION )).getPacking();
+        assertEquals( GridPointJPEG2000Packing.LOSSLESS, packing.getTypeOfCompression() );
+
+        final float[] y = ds.decode( false ).toArray();
+        assertEquals( x.length, y.length );
+        for( int i = 0; i < x.length; i++ ) {
+            assertEquals( "value " + i, (1.5f + x[i] * 0.25f) * 10f, y[i], 0f );
+        }
+    }
+
+    /**
+     * With no bits the field is constant, there is no code stream and every value is the reference value
+     */
+    @Test
+    public void constantField()
+            throws IOException
+    {
+        final float[] y = dataSet( 4, 3, 273.25f, 0, -1, 0, new byte[0] ).decode( false ).toArray();
+        assertEquals( 12, y.length );
+        for( float v: y ) {
+            assertEquals( 2732.5f, v, 0f );
+        }
+    }
+
+    /**
+     * An image smaller than the grid is rejected rather than leaving values undefined
+     */
+    @Test( expected = IOException.class )
+    public void imageTooSmall()
+            throws IOException
+    {
+        dataSet( 40, 29, 0f, 0, 0, 12, codeStream( "lossless53.j2k" ) ).decode( false );
+    }
+
+}
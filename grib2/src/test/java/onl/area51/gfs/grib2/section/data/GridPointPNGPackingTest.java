@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Fields encoded as PNG images with ImageIO and decoded back
+ * <p>
+ * @author peter
+ */
+public class GridPointPNGPackingTest
+{
+
+    /**
+     * Encode values as a PNG of the given depth, the bands of each pixel holding the value most significant first
+     */
+    private static byte[] png( int width, int height, int depth, long[] x )
+            throws IOException
+    {
+        final BufferedImage image;
+        switch( depth ) {
+            case 8:
+                image = new BufferedImage( width, height, BufferedImage.TYPE_BYTE_GRAY );
+                break;
+            case 16:
+                image = new BufferedImage( width, height, BufferedImage.TYPE_USHORT_GRAY );
+                break;
+            case 24:
+                image = new BufferedImage( width, height, BufferedImage.TYPE_3BYTE_BGR );
+                break;
+            case 32:
+                image = new BufferedImage( width, height, BufferedImage.TYPE_4BYTE_ABGR );
+                break;
+            default:
+                throw new IllegalArgumentException( "depth " + depth );
+        }
+
+        final WritableRaster raster = image.getRaster();
+        final int bands = raster.getNumBands();
+        final int bits = depth / bands;
+        final int[] pixel = new int[bands];
+        for( int i = 0; i < x.length; i++ ) {
+            for( int b = 0; b < bands; b++ ) {
+                pixel[b] = (int) (x[i] >>> (bits * (bands - 1 - b))) & ((1 << bits) - 1);
+            }
+            raster.setPixel( i % width, i / width, pixel );
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertTrue( ImageIO.write( image, "png", os ) );
+        return os.toByteArray();
+    }
+
+    private static long[] values( int count, int depth, long seed )
+    {
+        final Random r = new Random( seed );
+        final long[] x = new long[count];
+        for( int i = 0; i < count; i++ ) {
+            x[i] = r.nextLong() & ((1L << depth) - 1);
+        }
+        // The extremes
+        x[0] = 0;
+        x[count - 1] = (1L << depth) - 1;
+        return x;
+    }
+
+    /**
+     * Section 5, Template 5.41
+     */
+    private static byte[] pngPacking( int count, float reference, int binary, int decimal, int bits )
+            throws IOException
+    {
+        final byte[] section = TestMessages.simplePacking( count, reference, binary, decimal, bits );
+        section[9] = 0;
+        section[10] = 41;
+        return section;
+    }
+
+    private static DataSet message( int ni, int nj, float reference, int binary, int decimal, int depth, byte[] png )
+            throws IOException
+    {
+        return TestMessages.dataSet( TestMessages.message( 0,
+                                                           TestMessages.identification(),
+                                                           TestMessages.globalGrid( ni, nj ),
+                                                           TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                           pngPacking( ni * nj, reference, binary, decimal, depth ),
+                                                           TestMessages.bitMap( 255, null ),
+                                                           TestMessages.data( png ) ) );
+    }
+
+    /**
+     * Y = (R + X * 2^E) / 10^D
+     */
+    private static void assertValues( String msg, long[] x, float reference, int binary, int decimal, float[] y )
+    {
+        assertEquals( msg, x.length, y.length );
+        for( int i = 0; i < x.length; i++ ) {
+            final double expected = (reference + x[i] * Math.pow( 2, binary )) / Math.pow( 10, decimal );
+            assertEquals( msg + " value " + i, (float) expected, y[i], Math.ulp( (float) expected ) );
+        }
+    }
+
+    private static void roundTrip( int ni, int nj, int depth, float reference, int binary, int decimal )
+            throws IOException
+    {
+        final long[] x = values( ni * nj, depth, ni * 31 + depth );
+        final DataSet ds = message( ni, nj, reference, binary, decimal, depth, png( ni, nj, depth, x ) );
+        assertTrue( ds.<DataRepresentation>get( SectionType.DATA_REPRESENTATION ).getPacking() instanceof GridPointPNGPacking );
+        assertValues( ni + "x" + nj + " depth " + depth, x, reference, binary, decimal, ds.decode( false ).toArray() );
+    }
+
+    @Test
+    public void depth8()
+            throws IOException
+    {
+        roundTrip( 4, 3, 8, 1.5f, -1, 0 );
+    }
+
+    @Test
+    public void depth16()
+            throws IOException
+    {
+        roundTrip( 7, 5, 16, -20f, 0, 1 );
+    }
+
+    /**
+     * Three 8 bit bands
+     */
+    @Test
+    public void depth24()
+            throws IOException
+    {
+        roundTrip( 6, 4, 24, 0f, -8, 0 );
+    }
+
+    /**
+     * Four 8 bit bands, the values being unsigned
+     */
+    @Test
+    public void depth32()
+            throws IOException
+    {
+        roundTrip( 5, 5, 32, 100f, -16, -1 );
+    }
+
+    /**
+     * The reader and destination image kept by a thread are reused or replaced as the size and depth of the images change
+     */
+    @Test
+    public void reuse()
+            throws IOException
+    {
+        final int[][] shapes = { { 4, 3, 8 }, { 4, 3, 8 }, { 9, 2, 8 }, { 4, 3, 16 }, { 3, 4, 8 }, { 4, 3, 24 }, { 4, 3, 8 }, { 20, 10, 32 }, { 4, 3, 8 } };
+        int seed = 0;
+        for( int[] s: shapes ) {
+            final long[] x = values( s[0] * s[1], s[2], seed++ );
+            final DataSet ds = message( s[0], s[1], 0f, 0, 0, s[2], png( s[0], s[1], s[2], x ) );
+            assertValues( s[0] + "x" + s[1] + " depth " + s[2], x, 0f, 0, 0, ds.decode( false ).toArray() );
+        }
+    }
+
+    /**
+     * The PNG is read in place from heap or direct buffers starting part way through, and the buffer's position is left alone
+     */
+    @Test
+    public void buffers()
+            throws IOException
+    {
+        final long[] x = values( 12, 16, 5 );
+        final byte[] png = png( 4, 3, 16, x );
+        final AbstractPacking packing = message( 4, 3, 0f, 0, 0, 16, png ).<DataRepresentation>get( SectionType.DATA_REPRESENTATION ).getPacking();
+
+        for( boolean direct: new boolean[]{ false, true } ) {
+            final ByteBuffer data = direct ? ByteBuffer.allocateDirect( png.length + 10 ) : ByteBuffer.allocate( png.length + 10 );
+            data.put( new byte[7] ).put( png ).put( new byte[3] ).flip();
+            data.position( 7 );
+            data.limit( 7 + png.length );
+
+            final FloatBuffer dst = FloatBuffer.allocate( 14 );
+            dst.position( 2 );
+            packing.decode( data, 12, dst );
+            assertEquals( 14, dst.position() );
+            assertEquals( 7, data.position() );
+            for( int i = 0; i < x.length; i++ ) {
+                assertEquals( "direct " + direct + " value " + i, x[i], dst.get( 2 + i ), 0f );
+            }
+        }
+    }
+
+    /**
+     * An image larger than the grid is allowed, the extra pixels being ignored
+     */
+    @Test
+    public void largerImage()
+            throws IOException
+    {
+        final long[] x = values( 16, 8, 9 );
+        final DataSet ds = message( 5, 3, 0f, 0, 0, 8, png( 4, 4, 8, x ) );
+        final float[] y = ds.decode( false ).toArray();
+        assertEquals( 15, y.length );
+        for( int i = 0; i < y.length; i++ ) {
+            assertEquals( "value " + i, x[i], y[i], 0f );
+        }
+    }
+
+    @Test( expected = IOException.class )
+    public void imageTooSmall()
+            throws IOException
+    {
+        message( 4, 4, 0f, 0, 0, 8, png( 3, 3, 8, values( 9, 8, 1 ) ) ).decode( false );
+    }
+
+    @Test( expected = IOException.class )
+    public void notPng()
+            throws IOException
+    {
+        final byte[] png = png( 4, 3, 8, values( 12, 8, 1 ) );
+        // Corrupt the signature
+        png[1] = 'X';
+        message( 4, 3, 0f, 0, 0, 8, png ).decode( false );
+    }
+
+    /**
+     * With no bits every value is the reference value and there is no image
+     */
+    @Test
+    public void constantField()
+            throws IOException
+    {
+        final float[] y = message( 4, 3, 273.25f, 0, -1, 0, new byte[0] ).decode( false ).toArray();
+        assertEquals( 12, y.length );
+        for( float v: y ) {
+            assertEquals( 2732.5f, v, 0f );
+        }
+    }
+
+}
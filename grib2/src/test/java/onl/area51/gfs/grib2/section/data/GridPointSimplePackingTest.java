@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.io.IOException;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import onl.area51.gfs.grib2.section.SectionType;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class GridPointSimplePackingTest
+{
+
+    private static float[] decode( float reference, int binary, int decimal, int bits, int[] x )
+            throws IOException
+    {
+        final DataSet ds = TestMessages.dataSet( TestMessages.simpleMessage( 4, 3, 0, 0, 0, reference, binary, decimal, bits, x ) );
+        final AbstractPacking packing = ((DataRepresentation) ds.get( SectionType.DATA_REPRESENTATION )).getPacking();
+        assertEquals( binary, packing.getBinaryScaleFactor() );
+        assertEquals( decimal, packing.getDecimalScaleFactor() );
+        return ds.decode( false ).toArray();
+    }
+
+    /**
+     * E and D are sign and magnitude, not two's complement
+     */
+    @Test
+    public void negativeScaleFactors()
+            throws IOException
+    {
+        final int[] x = { 0, 1, 2, 3, 100, 1000, 4095, 7, 8, 9, 10, 11 };
+        // Y = (R + X * 2^-2) / 10^-1, exact in binary
+        final float[] y = decode( 1.5f, -2, -1, 12, x );
+        for( int i = 0; i < x.length; i++ ) {
+            assertEquals( "value " + i, (1.5f + x[i] * 0.25f) * 10f, y[i], 0f );
+        }
+    }
+
+    @Test
+    public void positiveScaleFactors()
+            throws IOException
+    {
+        final int[] x = { 0, 1, 2, 3, 100, 1000, 4095, 7, 8, 9, 10, 11 };
+        final float[] y = decode( 2500f, 3, 2, 12, x );
+        for( int i = 0; i < x.length; i++ ) {
+            assertEquals( "value " + i, (2500 + x[i] * 8.0) / 100.0, y[i], 1e-4 );
+        }
+    }
+
+    /**
+     * With no bits every value is the reference value and the Data Section is empty
+     */
+    @Test
+    public void constantField()
+            throws IOException
+    {
+        final float[] y = decode( 273.25f, 0, -1, 0, new int[12] );
+        assertEquals( 12, y.length );
+        for( float v: y ) {
+            assertEquals( 2732.5f, v, 0f );
+        }
+    }
+
+    /**
+     * 32 bit values are unsigned
+     */
+    @Test
+    public void thirtyTwoBits()
+            throws IOException
+    {
+        final int[] x = { 0, 1, -1, 0x7fffffff, 0x80000000, 0x12345678, 0xdeadbeef, 42, 0xfffffffe, 3, 4, 5 };
+        final float[] y = decode( 0f, 0, 0, 32, x );
+        for( int i = 0; i < x.length; i++ ) {
+            assertEquals( "value " + i, (float) (x[i] & 0xffffffffL), y[i], 0f );
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class ScratchTest
+{
+
+    /**
+     * Arrays are only replaced when a larger one is needed
+     */
+    @Test
+    public void growth()
+    {
+        final Scratch scratch = new Scratch();
+        final int[] a = scratch.ints( Scratch.VALUES, 10 );
+        assertTrue( a.length >= 10 );
+        assertSame( a, scratch.ints( Scratch.VALUES, 5 ) );
+        assertSame( a, scratch.ints( Scratch.VALUES, a.length ) );
+
+        final int[] b = scratch.ints( Scratch.VALUES, a.length + 1 );
+        assertNotSame( a, b );
+        assertTrue( b.length > a.length );
+        assertSame( b, scratch.ints( Scratch.VALUES, 10 ) );
+
+        final byte[] c = scratch.bytes( 100 );
+        assertTrue( c.length >= 100 );
+        assertSame( c, scratch.bytes( 1 ) );
+        assertTrue( scratch.bytes( 101 ).length >= 101 );
+    }
+
+    /**
+     * Each slot has its own array
+     */
+    @Test
+    public void slots()
+    {
+        final Scratch scratch = new Scratch();
+        final int[] refs = scratch.ints( Scratch.GROUP_REFS, 8 );
+        final int[] widths = scratch.ints( Scratch.GROUP_WIDTHS, 8 );
+        final int[] lengths = scratch.ints( Scratch.GROUP_LENGTHS, 8 );
+        final int[] values = scratch.ints( Scratch.VALUES, 8 );
+        assertNotSame( refs, widths );
+        assertNotSame( widths, lengths );
+        assertNotSame( lengths, values );
+
+        scratch.ints( Scratch.VALUES, 1000 );
+        assertSame( refs, scratch.ints( Scratch.GROUP_REFS, 8 ) );
+    }
+
+    @Test
+    public void perThread()
+            throws InterruptedException
+    {
+        final Scratch mine = Scratch.get();
+        assertSame( mine, Scratch.get() );
+
+        final AtomicReference<Scratch> other = new AtomicReference<>();
+        final Thread t = new Thread( () -> other.set( Scratch.get() ) );
+        t.start();
+        t.join();
+        assertNotNull( other.get() );
+        assertNotSame( mine, other.get() );
+    }
+
+}
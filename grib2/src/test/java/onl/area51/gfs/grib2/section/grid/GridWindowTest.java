@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.grid;
+
+import java.io.IOException;
+import java.util.Random;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Decimated windows decoded through the selected points path against a full decode subsampled point by point.
+ * <p>
+ * @author peter
+ */
+public class GridWindowTest
+{
+
+    private static final int NI = 13;
+    private static final int NJ = 9;
+
+    private static DataSet dataSet()
+            throws IOException
+    {
+        final Random r = new Random( 21 );
+        final int[] x = new int[NI * NJ];
+        for( int i = 0; i < x.length; i++ ) {
+            x[i] = r.nextInt( 1 << 12 );
+        }
+        return TestMessages.dataSet( TestMessages.simpleMessage( NI, NJ, 0, 0, 0, 0f, 0, 0, 12, x ) );
+    }
+
+    /**
+     * The grid indexes of a window's points, stepping through the rows and columns of the grid
+     */
+    private static int[] subsample( int firstRow, int rows, int rowStep, int firstColumn, int columns, int columnStep )
+    {
+        final int[] indexes = new int[rows * columns];
+        int k = 0;
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < columns; c++ ) {
+                indexes[k++] = (firstRow + r * rowStep) * NI + (firstColumn + c * columnStep) % NI;
+            }
+        }
+        return indexes;
+    }
+
+    private static void assertWindow( DataSet ds, GridWindow window, int firstRow, int rows, int rowStep, int firstColumn, int columns,
+                                      int columnStep )
+            throws IOException
+    {
+        assertEquals( window.toString(), firstRow, window.getFirstRow() );
+        assertEquals( window.toString(), rows, window.getRows() );
+        assertEquals( window.toString(), rowStep, window.getRowStep() );
+        assertEquals( window.toString(), firstColumn, window.getFirstColumn() );
+        assertEquals( window.toString(), columns, window.getColumns() );
+        assertEquals( window.toString(), columnStep, window.getColumnStep() );
+
+        final int[] indexes = subsample( firstRow, rows, rowStep, firstColumn, columns, columnStep );
+        assertArrayEquals( window.toString(), indexes, window.getIndexes() );
+        assertEquals( window.toString(), indexes.length, window.size() );
+
+        final float[] all = ds.decode( false ).toArray();
+        final float[] expected = new float[indexes.length];
+        for( int k = 0; k < indexes.length; k++ ) {
+            expected[k] = all[indexes[k]];
+        }
+        assertArrayEquals( window.toString(), expected, ds.decode( window, false ).toArray(), 0f );
+    }
+
+    /**
+     * Steps that divide the grid exactly keep the last row and column
+     */
+    @Test
+    public void evenSteps()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        final GridWindow window = ds.getLatLongGrid().getWindow();
+        assertWindow( ds, window, 0, NJ, 1, 0, NI, 1 );
+        assertWindow( ds, window.decimate( 4, 3 ), 0, 3, 4, 0, 5, 3 );
+        assertWindow( ds, window.decimate( 8, 12 ), 0, 2, 8, 0, 2, 12 );
+    }
+
+    /**
+     * Steps that do not divide the grid stop short of the last row and column
+     */
+    @Test
+    public void unevenSteps()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        final GridWindow window = ds.getLatLongGrid().getWindow();
+        assertWindow( ds, window.decimate( 3, 5 ), 0, 3, 3, 0, 3, 5 );
+        assertWindow( ds, window.decimate( 5, 7 ), 0, 2, 5, 0, 2, 7 );
+        assertWindow( ds, window.decimate( 2, 2 ), 0, 5, 2, 0, 7, 2 );
+        // Steps beyond the window leave just its first point
+        assertWindow( ds, window.decimate( NJ, NI ), 0, 1, NJ, 0, 1, NI );
+        assertWindow( ds, window.decimate( 100, 100 ), 0, 1, 100, 0, 1, 100 );
+    }
+
+    /**
+     * Decimating a decimated window multiplies the steps
+     */
+    @Test
+    public void decimateTwice()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        final GridWindow window = ds.getLatLongGrid().getWindow().decimate( 2, 2 );
+        assertWindow( ds, window.decimate( 2, 3 ), 0, 3, 4, 0, 3, 6 );
+    }
+
+    /**
+     * A window across the meridian where the grid starts wraps from the last column to the first, including when decimated
+     */
+    @Test
+    public void wrapped()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        final GridWindow window = new GridWindow( NI, 2, 6, 9, 8 );
+        assertTrue( window.isWrapped() );
+        assertWindow( ds, window, 2, 6, 1, 9, 8, 1 );
+        assertWindow( ds, window.decimate( 2, 3 ), 2, 3, 2, 9, 3, 3 );
+        assertTrue( window.decimate( 2, 3 ).isWrapped() );
+        // Every fourth column from 9 is 9 then 13, i.e. column 0
+        assertWindow( ds, window.decimate( 5, 4 ), 2, 2, 5, 9, 2, 4 );
+        // A step of 8 from 9 would reach column 4, beyond the window's 8 columns, so only 9 is kept
+        assertWindow( ds, window.decimate( 1, 8 ), 2, 6, 1, 9, 1, 8 );
+        assertFalse( window.decimate( 1, 8 ).isWrapped() );
+    }
+
+    /**
+     * A box across 180 degrees on the global grid, which starts at 0, does not wrap while one across 0 does
+     */
+    @Test
+    public void antimeridian()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        final LatLongGrid grid = ds.getLatLongGrid();
+
+        final GridWindow across180 = grid.getWindow( -30, 150, 30, 210 );
+        assertFalse( across180.isWrapped() );
+        assertWindow( ds, across180.decimate( 2, 2 ), across180.getFirstRow(), (across180.getRows() + 1) / 2, 2,
+                      across180.getFirstColumn(), (across180.getColumns() + 1) / 2, 2 );
+
+        final GridWindow across0 = grid.getWindow( -30, -60, 30, 60 );
+        assertTrue( across0.isWrapped() );
+        assertWindow( ds, across0.decimate( 2, 2 ), across0.getFirstRow(), (across0.getRows() + 1) / 2, 2,
+                      across0.getFirstColumn(), (across0.getColumns() + 1) / 2, 2 );
+    }
+
+    /**
+     * Windows ending on the last row and column of the grid
+     */
+    @Test
+    public void lastRowAndColumn()
+            throws IOException
+    {
+        final DataSet ds = dataSet();
+        assertWindow( ds, new GridWindow( NI, NJ - 1, 1, NI - 1, 1 ), NJ - 1, 1, 1, NI - 1, 1, 1 );
+        assertWindow( ds, new GridWindow( NI, NJ - 1, 1, 0, NI ), NJ - 1, 1, 1, 0, NI, 1 );
+        assertWindow( ds, new GridWindow( NI, 0, NJ, NI - 1, 1 ), 0, NJ, 1, NI - 1, 1, 1 );
+        assertWindow( ds, new GridWindow( NI, 2, 7, 4, 9 ).decimate( 3, 4 ), 2, 3, 3, 4, 3, 4 );
+        assertWindow( ds, new GridWindow( NI, 0, NJ, 1, 3, NI, 1 ).decimate( 4, 6 ), 0, 3, 4, 3, 3, 6 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void invalidStep()
+    {
+        new GridWindow( NI, 0, NJ, 0, NI ).decimate( 0, 1 );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void columnsBeyondRow()
+    {
+        new GridWindow( NI, 0, NJ, 1, 0, 8, 2 );
+    }
+
+}
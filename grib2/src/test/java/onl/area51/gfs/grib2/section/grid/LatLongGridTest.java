@@ -0,0 +1,314 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.grid;
+
+import java.io.IOException;
+import onl.area51.gfs.grib2.TestMessages;
+import onl.area51.gfs.grib2.section.DataSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Locating points on a latitude/longitude grid. The value of grid point (i,j) is 100j + i so an interpolated value shows which points were used.
+ * <p>
+ * @author peter
+ */
+public class LatLongGridTest
+{
+
+    private static LatLongGrid grid( byte[] section )
+            throws IOException
+    {
+        return TestMessages.dataSet( TestMessages.message( 0, TestMessages.identification(), section ) ).getLatLongGrid();
+    }
+
+    /**
+     * A global 8x5 grid, 45 degrees apart
+     */
+    private static LatLongGrid global()
+            throws IOException
+    {
+        return grid( TestMessages.globalGrid( 8, 5 ) );
+    }
+
+    /**
+     * A 5x4 grid from 50N 10W to 47N 6W at 1 degree
+     */
+    private static LatLongGrid regional()
+            throws IOException
+    {
+        return grid( TestMessages.latLonGrid( 5, 4, 50000000, 350000000, 1000000, 1000000 ) );
+    }
+
+    private static float value( int i, int j )
+    {
+        return 100 * j + i;
+    }
+
+    /**
+     * The value at each location, the grid scanning west to east then north to south
+     */
+    private static float[] values( LatLongGrid grid, double[] lats, double[] lons, Interpolation interpolation )
+    {
+        final int ni = grid.getNoPointsAlongParallel();
+        final GridPoints points = grid.getPoints( lats, lons, interpolation );
+        final int[] p = points.getPoints();
+        final float[] v = new float[p.length];
+        for( int k = 0; k < p.length; k++ ) {
+            assertTrue( "point " + p[k], p[k] >= 0 && p[k] < ni * grid.getNoPointsAlingMeridian() );
+            v[k] = value( p[k] % ni, p[k] / ni );
+        }
+        final float[] out = new float[lats.length];
+        points.interpolate( v, out );
+        return out;
+    }
+
+    /**
+     * Just west of 0 on a global grid lies between the last and first columns
+     */
+    @Test
+    public void wrapWestOfZero()
+            throws IOException
+    {
+        final float[] v = values( global(), new double[]{ 45, 45, 22.5, 45 }, new double[]{ -9, 351, -22.5, 360 - 1e-8 }, Interpolation.BILINEAR );
+        // 36 of the 45 degrees from column 7 to column 0
+        assertEquals( 0.2f * value( 7, 1 ) + 0.8f * value( 0, 1 ), v[0], 1e-4f );
+        assertEquals( v[0], v[1], 0f );
+        // Half way between rows 1 and 2
+        assertEquals( 0.25f * (value( 7, 1 ) + value( 0, 1 ) + value( 7, 2 ) + value( 0, 2 )), v[2], 1e-4f );
+        // Within EPSILON of 360 is column 0
+        assertEquals( value( 0, 1 ), v[3], 0f );
+    }
+
+    /**
+     * Locations beyond a regional grid have no points and are NaN
+     */
+    @Test
+    public void outsideRegional()
+            throws IOException
+    {
+        final LatLongGrid grid = regional();
+        assertFalse( grid.isGlobal() );
+
+        final double[] lats = { 48.5, 48.5, 48.5, 51, 46.5, 48.5 };
+        final double[] lons = { -8.5, -5.5, -10.5, -8, -8, 180 };
+        final GridPoints points = grid.getPoints( lats, lons, Interpolation.BILINEAR );
+        assertTrue( points.isInside( 0 ) );
+        for( int l = 1; l < lats.length; l++ ) {
+            assertFalse( "location " + l, points.isInside( l ) );
+        }
+
+        final float[] v = values( grid, lats, lons, Interpolation.BILINEAR );
+        assertEquals( 0.25f * (value( 1, 1 ) + value( 2, 1 ) + value( 1, 2 ) + value( 2, 2 )), v[0], 1e-4f );
+        for( int l = 1; l < lats.length; l++ ) {
+            assertTrue( "location " + l, Float.isNaN( v[l] ) );
+        }
+    }
+
+    /**
+     * A location on, or within EPSILON of, the last row or column snaps to it so no point beyond the edge is used
+     */
+    @Test
+    public void edges()
+            throws IOException
+    {
+        final float[] r = values( regional(), new double[]{ 47, 47 - 1e-9, 50 + 1e-9, 48 }, new double[]{ -6, -6 + 1e-9, -10 - 1e-9, -6 + 1e-9 },
+                                  Interpolation.BILINEAR );
+        assertEquals( value( 4, 3 ), r[0], 0f );
+        assertEquals( value( 4, 3 ), r[1], 1e-4f );
+        assertEquals( value( 0, 0 ), r[2], 1e-4f );
+        assertEquals( value( 4, 2 ), r[3], 1e-4f );
+
+        // The south pole is the last row of a global grid
+        final float[] g = values( global(), new double[]{ -90, -90 - 1e-9, 90 + 1e-9 }, new double[]{ 90, 90, 0 }, Interpolation.BILINEAR );
+        assertEquals( value( 2, 4 ), g[0], 0f );
+        assertEquals( value( 2, 4 ), g[1], 1e-4f );
+        assertEquals( value( 0, 0 ), g[2], 1e-4f );
+    }
+
+    /**
+     * Longitudes from -180 to 180 give the same points as 0 to 360, the nearest column wrapping to the first on a global grid
+     */
+    @Test
+    public void nearestNegativeLongitudes()
+            throws IOException
+    {
+        final LatLongGrid grid = global();
+        final double[] lats = { 10, 10, -80, -80, 30, 30 };
+        final double[] lons = { -170, 190, -20, 340, -180, 180 };
+        final float[] v = values( grid, lats, lons, Interpolation.NEAREST );
+        assertEquals( value( 4, 2 ), v[0], 0f );
+        assertEquals( value( 0, 4 ), v[2], 0f );
+        assertEquals( value( 4, 1 ), v[4], 0f );
+        for( int l = 0; l < lats.length; l += 2 ) {
+            assertEquals( "location " + l, v[l], v[l + 1], 0f );
+        }
+
+        // Regional, west of the first column by less than half a column
+        final float[] r = values( regional(), new double[]{ 48.6 }, new double[]{ -9.6 }, Interpolation.NEAREST );
+        assertEquals( value( 0, 1 ), r[0], 0f );
+    }
+
+    /**
+     * A grid point missing from the bit map makes a location using it NaN, unless its weight is 0
+     */
+    @Test
+    public void maskedCorner()
+            throws IOException
+    {
+        final boolean[] present = new boolean[20];
+        final int[] x = new int[19];
+        for( int i = 0, k = 0; i < present.length; i++ ) {
+            // (1,1) is missing
+            present[i] = i != 6;
+            if( present[i] ) {
+                x[k++] = (int) value( i % 5, i / 5 );
+            }
+        }
+        final DataSet ds = TestMessages.dataSet( TestMessages.message( 0,
+                                                                       TestMessages.identification(),
+                                                                       TestMessages.latLonGrid( 5, 4, 50000000, 350000000, 1000000, 1000000 ),
+                                                                       TestMessages.product( 0, 0, 0, 1, 0 ),
+                                                                       TestMessages.simplePacking( x.length, 0f, 0, 0, 9 ),
+                                                                       TestMessages.bitMap( 0, TestMessages.mask( present ) ),
+                                                                       TestMessages.data( TestMessages.pack( x, 9 ) ) ) );
+
+        final float[] out = new float[4];
+        ds.valuesAt( new double[]{ 48.5, 48.5, 49, 48 }, new double[]{ -8.5, -7.5, -8.5, -9.5 }, out, Interpolation.BILINEAR );
+        assertTrue( Float.isNaN( out[0] ) );
+        assertEquals( 0.25f * (value( 2, 1 ) + value( 3, 1 ) + value( 2, 2 ) + value( 3, 2 )), out[1], 1e-4f );
+        // On row 1 between (1,1) and (2,1)
+        assertTrue( Float.isNaN( out[2] ) );
+        // On row 2 between (0,2) and (1,2), row 1 has no weight
+        assertEquals( 0.5f * (value( 0, 2 ) + value( 1, 2 )), out[3], 1e-4f );
+    }
+
+    /**
+     * The points of a window as (i,j) pairs in the order decoded
+     */
+    private static String points( LatLongGrid grid, GridWindow window )
+    {
+        final int ni = grid.getNoPointsAlongParallel();
+        final StringBuilder sb = new StringBuilder();
+        for( int p: window.getIndexes() ) {
+            sb.append( '(' ).append( p % ni ).append( ',' ).append( p / ni ).append( ')' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A box across 0 on a global grid starting at 0 wraps from the last column to the first, however the longitudes are given
+     */
+    @Test
+    public void windowAcrossZero()
+            throws IOException
+    {
+        final LatLongGrid grid = global();
+        final GridWindow w = grid.getWindow( -10, -50, 50, 50 );
+        assertEquals( 8, w.getRowLength() );
+        assertEquals( 1, w.getFirstRow() );
+        assertEquals( 2, w.getRows() );
+        assertEquals( 7, w.getFirstColumn() );
+        assertEquals( 3, w.getColumns() );
+        assertTrue( w.isWrapped() );
+        assertEquals( "(7,1)(0,1)(1,1)(7,2)(0,2)(1,2)", points( grid, w ) );
+
+        assertEquals( points( grid, w ), points( grid, grid.getWindow( -10, 310, 50, 50 ) ) );
+        assertEquals( points( grid, w ), points( grid, grid.getWindow( -10, 310, 50, 410 ) ) );
+
+        // Every column, starting from the west of the box
+        final GridWindow all = grid.getWindow( 0, -45, 0, 315 );
+        assertEquals( 8, all.getColumns() );
+        assertEquals( "(7,2)(0,2)(1,2)(2,2)(3,2)(4,2)(5,2)(6,2)", points( grid, all ) );
+    }
+
+    /**
+     * A box across 180 on a global grid starting at 0 does not wrap
+     */
+    @Test
+    public void windowAcross180()
+            throws IOException
+    {
+        final LatLongGrid grid = global();
+        final GridWindow w = grid.getWindow( -90, 100, -40, -100 );
+        assertFalse( w.isWrapped() );
+        assertEquals( "(3,3)(4,3)(5,3)(3,4)(4,4)(5,4)", points( grid, w ) );
+        assertEquals( points( grid, w ), points( grid, grid.getWindow( -90, 100, -40, 260 ) ) );
+        assertEquals( points( grid, w ), points( grid, grid.getWindow( -90, -260, -40, -100 ) ) );
+
+        // On 180 exactly
+        assertEquals( "(4,0)(4,1)(4,2)(4,3)(4,4)", points( grid, grid.getWindow( -90, 180, 90, -180 ) ) );
+    }
+
+    /**
+     * Regional grids crossing 0 and 180
+     */
+    @Test
+    public void windowRegional()
+            throws IOException
+    {
+        // 4W to 4E
+        final LatLongGrid zero = grid( TestMessages.latLonGrid( 9, 3, 10000000, 356000000, 1000000, 1000000 ) );
+        assertEquals( "(2,0)(3,0)(4,0)(5,0)(6,0)", points( zero, zero.getWindow( 10, -2, 10, 2 ) ) );
+        assertEquals( "(2,0)(3,0)(4,0)(5,0)(6,0)", points( zero, zero.getWindow( 10, 358, 10, 2 ) ) );
+        // Clipped to the grid
+        assertEquals( "(5,1)(6,1)(7,1)(8,1)", points( zero, zero.getWindow( 9, 1, 9, 10 ) ) );
+        assertEquals( "(0,2)(1,2)", points( zero, zero.getWindow( 0, -20, 8, -3 ) ) );
+        assertEquals( 27, zero.getWindow( -90, -180, 90, 180 ).size() );
+
+        // 176E to 176W
+        final LatLongGrid dateLine = grid( TestMessages.latLonGrid( 9, 3, -30000000, 176000000, 1000000, 1000000 ) );
+        assertEquals( "(2,1)(3,1)(4,1)(5,1)(6,1)", points( dateLine, dateLine.getWindow( -31, 178, -31, -178 ) ) );
+        assertEquals( "(2,1)(3,1)(4,1)(5,1)(6,1)", points( dateLine, dateLine.getWindow( -31, 178, -31, 182 ) ) );
+        assertEquals( "(7,2)(8,2)", points( dateLine, dateLine.getWindow( -40, -177, -32, -170 ) ) );
+    }
+
+    /**
+     * Boxes with no points of the grid
+     */
+    @Test
+    public void windowOutside()
+            throws IOException
+    {
+        final LatLongGrid grid = regional();
+        final double[][] boxes = {
+            // East, west, north and south of the grid
+            { 47, -5, 50, 0 },
+            { 47, -20, 50, -11 },
+            { 51, -10, 60, -6 },
+            { 40, -10, 46, -6 },
+            // Between two columns
+            { 47, -8.7, 50, -8.2 },
+            // The opposite side of the world
+            { 47, 170, 50, 174 }
+        };
+        for( double[] b: boxes ) {
+            try {
+                fail( "Window " + grid.getWindow( b[0], b[1], b[2], b[3] ) + " for " + b[0] + "," + b[1] + " " + b[2] + "," + b[3] );
+            }
+            catch( IllegalArgumentException ex ) {
+            }
+        }
+
+        try {
+            global().getWindow( 10, 0, 20, 10 );
+            fail( "Window between rows" );
+        }
+        catch( IllegalArgumentException ex ) {
+        }
+    }
+
+}
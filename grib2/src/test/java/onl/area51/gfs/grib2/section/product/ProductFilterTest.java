@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.product;
+
+import java.math.BigDecimal;
+import onl.area51.gfs.grib2.section.Discipline;
+import onl.area51.gfs.grib2.section.product.meteo.Momentum;
+import onl.area51.gfs.grib2.section.product.meteo.Temperature;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author peter
+ */
+public class ProductFilterTest
+{
+
+    private static final BigDecimal HPA_500 = BigDecimal.valueOf( 50000 );
+
+    private static boolean tmp( ProductFilter filter, BigDecimal level, int forecastTime )
+    {
+        return filter.test( Discipline.METEOROLOGICAL, ParameterCategory.TEMPERATURE, Temperature.TMP, FixedSurfaceType.ISOBARIC_SURFACE, level,
+                            forecastTime );
+    }
+
+    private static boolean ugrd( ProductFilter filter )
+    {
+        return filter.test( Discipline.METEOROLOGICAL, ParameterCategory.MOMENTUM, Momentum.UGRD, FixedSurfaceType.GROUND_WATER_SURFACE, BigDecimal.ZERO,
+                            6 );
+    }
+
+    @Test
+    public void all()
+    {
+        assertTrue( tmp( ProductFilter.all(), HPA_500, 0 ) );
+        assertTrue( ugrd( ProductFilter.all() ) );
+        assertFalse( ugrd( ProductFilter.all().negate() ) );
+    }
+
+    @Test
+    public void and()
+    {
+        final ProductFilter tmp = ProductFilter.product( Temperature.TMP );
+        final ProductFilter t6 = ProductFilter.forecastTime( 6 );
+        assertTrue( tmp( tmp.and( t6 ), HPA_500, 6 ) );
+        assertFalse( tmp( tmp.and( t6 ), HPA_500, 12 ) );
+        assertFalse( ugrd( tmp.and( t6 ) ) );
+        assertTrue( ugrd( ProductFilter.surface( FixedSurfaceType.GROUND_WATER_SURFACE ).and( t6 ) ) );
+    }
+
+    @Test
+    public void or()
+    {
+        final ProductFilter either = ProductFilter.product( Temperature.TMP ).or( ProductFilter.forecastTime( 6 ) );
+        assertTrue( tmp( either, HPA_500, 0 ) );
+        assertTrue( ugrd( either ) );
+        assertFalse( ugrd( ProductFilter.product( Temperature.TMP ).or( ProductFilter.forecastTime( 12 ) ) ) );
+    }
+
+    @Test
+    public void negate()
+    {
+        final ProductFilter notTmp = ProductFilter.product( Temperature.TMP ).negate();
+        assertFalse( tmp( notTmp, HPA_500, 0 ) );
+        assertTrue( ugrd( notTmp ) );
+        assertTrue( tmp( notTmp.negate(), HPA_500, 0 ) );
+    }
+
+    @Test
+    public void product()
+    {
+        final ProductFilter wind = ProductFilter.product( Momentum.UGRD, Momentum.VGRD );
+        assertTrue( ugrd( wind ) );
+        assertFalse( tmp( wind, HPA_500, 0 ) );
+        // Unknown products never match
+        assertFalse( wind.test( Discipline.METEOROLOGICAL, ParameterCategory.MOMENTUM, null, FixedSurfaceType.MISSING, null, -1 ) );
+    }
+
+    @Test
+    public void category()
+    {
+        assertTrue( tmp( ProductFilter.category( ParameterCategory.MOMENTUM, ParameterCategory.TEMPERATURE ), HPA_500, 0 ) );
+        assertFalse( ugrd( ProductFilter.category( ParameterCategory.TEMPERATURE ) ) );
+        assertTrue( ugrd( ProductFilter.discipline( Discipline.METEOROLOGICAL ) ) );
+        assertFalse( ugrd( ProductFilter.discipline( Discipline.HYDROLOGICAL ) ) );
+    }
+
+    /**
+     * Levels are compared by value, so the scale they were encoded with does not matter
+     */
+    @Test
+    public void level()
+    {
+        final ProductFilter filter = ProductFilter.level( FixedSurfaceType.ISOBARIC_SURFACE, 50000 );
+        assertTrue( tmp( filter, new BigDecimal( "50000" ), 0 ) );
+        assertTrue( tmp( filter, new BigDecimal( "50000.0" ), 0 ) );
+        assertTrue( tmp( filter, BigDecimal.valueOf( 500000, 1 ), 0 ) );
+        assertTrue( tmp( filter, BigDecimal.valueOf( 500, -2 ), 0 ) );
+        assertTrue( tmp( ProductFilter.level( FixedSurfaceType.ISOBARIC_SURFACE, 50000.0 ), HPA_500, 0 ) );
+
+        assertFalse( tmp( filter, new BigDecimal( "50000.5" ), 0 ) );
+        assertFalse( tmp( filter, null, 0 ) );
+        // Same value on another surface
+        assertFalse( ProductFilter.level( FixedSurfaceType.GROUND_WATER_SURFACE, 50000 )
+                .test( Discipline.METEOROLOGICAL, ParameterCategory.TEMPERATURE, Temperature.TMP, FixedSurfaceType.ISOBARIC_SURFACE, HPA_500, 0 ) );
+    }
+
+    @Test
+    public void forecastTime()
+    {
+        assertTrue( tmp( ProductFilter.forecastTime( 3, 6 ), HPA_500, 3 ) );
+        assertTrue( tmp( ProductFilter.forecastTime( 3, 6 ), HPA_500, 6 ) );
+        assertFalse( tmp( ProductFilter.forecastTime( 3, 6 ), HPA_500, 7 ) );
+        assertFalse( tmp( ProductFilter.forecastTime( 3, 6 ), HPA_500, 2 ) );
+    }
+
+    /**
+     * A definition that is not a forecast product is tested with missing values
+     */
+    @Test
+    public void unknownDefinition()
+    {
+        assertTrue( ProductFilter.surface( FixedSurfaceType.MISSING ).test( Discipline.METEOROLOGICAL, null ) );
+        assertTrue( ProductFilter.forecastTime( -1 ).test( Discipline.METEOROLOGICAL, null ) );
+        assertFalse( ProductFilter.product( Temperature.TMP ).test( Discipline.METEOROLOGICAL, null ) );
+    }
+
+}
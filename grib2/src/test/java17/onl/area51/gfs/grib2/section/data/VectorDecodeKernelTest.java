@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 peter.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package onl.area51.gfs.grib2.section.data;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import jdk.incubator.vector.DoubleVector;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the Vector API kernel is bit identical to the scalar one. Run by the vector profile with {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * @author peter
+ */
+public class VectorDecodeKernelTest
+{
+
+    private static final int LANES = DoubleVector.SPECIES_PREFERRED.length();
+
+    private final DecodeKernel scalar = new DecodeKernel();
+    private final DecodeKernel vector = DecodeKernel.INSTANCE;
+    private final Random random = new Random( 17 );
+
+    /**
+     * Every count up to a few vectors, so every tail length, then some large ones
+     */
+    private static int[] counts()
+    {
+        final int[] counts = new int[4 * LANES + 6];
+        for( int i = 0; i < counts.length - 3; i++ ) {
+            counts[i] = i;
+        }
+        counts[counts.length - 3] = 1000;
+        counts[counts.length - 2] = 1037;
+        counts[counts.length - 1] = 5003;
+        return counts;
+    }
+
+    private int[] values( int count, int bound )
+    {
+        final int[] x = new int[count];
+        for( int i = 0; i < count; i++ ) {
+            x[i] = bound == 0 ? random.nextInt() : random.nextInt( bound ) - bound / 2;
+        }
+        return x;
+    }
+
+    @Test
+    public void vectorKernelInUse()
+    {
+        assertEquals( "VectorDecodeKernel", vector.getClass().getSimpleName() );
+    }
+
+    @Test
+    public void scale()
+    {
+        final int[][] factors = { { 0, 0 }, { -3, 2 }, { 4, -1 }, { -10, 0 }, { 0, 5 } };
+        for( int count: counts() ) {
+            for( int bound: new int[]{ 1 << 16, 0 } ) {
+                for( int[] f: factors ) {
+                    final int[] x = values( count, bound );
+                    final double ref = random.nextDouble() * 1000 - 500;
+                    final double scale = Math.scalb( Math.pow( 10, -f[1] ), f[0] );
+                    final String msg = "count " + count + " E " + f[0] + " D " + f[1];
+
+                    final float[] expected = new float[count + 3];
+                    scalar.scale( x, count, ref, scale, FloatBuffer.wrap( expected ), 3 );
+
+                    // Heap, heap with an array offset and direct destinations
+                    final float[] heap = new float[count + 3];
+                    vector.scale( x, count, ref, scale, FloatBuffer.wrap( heap ), 3 );
+                    assertBitsEqual( msg, expected, heap );
+
+                    final float[] backing = new float[count + 5];
+                    final FloatBuffer sliced = FloatBuffer.wrap( backing, 2, count + 3 ).slice();
+                    vector.scale( x, count, ref, scale, sliced, 3 );
+                    assertBitsEqual( msg, expected, Arrays.copyOfRange( backing, 2, count + 5 ) );
+
+                    final FloatBuffer direct = ByteBuffer.allocateDirect( (count + 3) * 4 ).asFloatBuffer();
+                    vector.scale( x, count, ref, scale, direct, 3 );
+                    final float[] actual = new float[count + 3];
+                    direct.get( actual );
+                    assertBitsEqual( msg, expected, actual );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void undifference()
+    {
+        for( int order = 1; order <= 2; order++ ) {
+            for( int count: counts() ) {
+                // Small differences as in real data, then any int so the sums wrap
+                for( int bound: new int[]{ 1 << 10, 0 } ) {
+                    final int[] x = values( count, bound );
+                    final int ival1 = random.nextInt( 1 << 20 ) - (1 << 19);
+                    final int ival2 = random.nextInt( 1 << 20 ) - (1 << 19);
+                    final int minsd = -random.nextInt( 1 << 8 );
+
+                    final int[] expected = x.clone();
+                    scalar.undifference( expected, count, order, ival1, ival2, minsd );
+                    final int[] actual = x.clone();
+                    vector.undifference( actual, count, order, ival1, ival2, minsd );
+                    assertArrayEquals( "order " + order + " count " + count, expected, actual );
+                }
+            }
+        }
+    }
+
+    private static void assertBitsEqual( String msg, float[] expected, float[] actual )
+    {
+        assertEquals( msg, expected.length, actual.length );
+        for( int i = 0; i < expected.length; i++ ) {
+            assertEquals( msg + " value " + i, Float.floatToRawIntBits( expected[i] ), Float.floatToRawIntBits( actual[i] ) );
+        }
+    }
+
+}